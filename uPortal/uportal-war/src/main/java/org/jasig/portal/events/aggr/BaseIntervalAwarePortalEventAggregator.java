@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -45,7 +46,7 @@ public abstract class BaseIntervalAwarePortalEventAggregator<
             T extends BaseAggregationImpl<K,?>,
             K extends BaseAggregationKey>
     extends BasePortalEventAggregator<E>
-    implements IntervalAwarePortalEventAggregator<E> {
+    implements ParallelIntervalAwarePortalEventAggregator<E> {
     
     private final String aggregationsCacheKey = this.getClass().getName() + ".AGGREGATIONS_FOR_INTERVAL";
     private AggregationIntervalHelper aggregationIntervalHelper;
@@ -61,8 +62,10 @@ public abstract class BaseIntervalAwarePortalEventAggregator<
     protected abstract BaseAggregationPrivateDao<T, K> getAggregationDao();
 
     /**
-     * Called for each {@link BaseAggregationImpl} that needs to be updated 
-     * 
+     * Called for each {@link BaseAggregationImpl} that needs to be updated. May be called from a thread other than
+     * the one that loaded the aggregation so implementations must only modify the aggregation and must not use the
+     * EntityManager or the eventAggregationContext.
+     *
      * @param e The {@link PortalEvent} to get the data from
      * @param intervalInfo The info about the interval the aggregation is for
      * @param aggregation The aggregation to update
@@ -84,8 +87,21 @@ public abstract class BaseIntervalAwarePortalEventAggregator<
             EventAggregationContext eventAggregationContext,
             Map<AggregationInterval, AggregationIntervalInfo> currentIntervals) {
         
+        this.prepareAggregateEvent(e, eventSession, eventAggregationContext, currentIntervals).run();
+    }
+
+    @AggrEventsTransactional
+    @Override
+    public final Runnable prepareAggregateEvent(E e, EventSession eventSession,
+            EventAggregationContext eventAggregationContext,
+            Map<AggregationInterval, AggregationIntervalInfo> currentIntervals) {
+        
         final BaseAggregationPrivateDao<T, K> aggregationDao = this.getAggregationDao();
         
+        //Aggregations to update and the interval each one is for
+        final List<AggregationIntervalInfo> intervalInfos = new ArrayList<AggregationIntervalInfo>();
+        final List<T> aggregations = new ArrayList<T>();
+        
         for (Map.Entry<AggregationInterval, AggregationIntervalInfo> intervalInfoEntry : currentIntervals.entrySet()) {
             final AggregationIntervalInfo intervalInfo = intervalInfoEntry.getValue();
 
@@ -99,7 +115,7 @@ public abstract class BaseIntervalAwarePortalEventAggregator<
             //Groups this event is for
             final Set<AggregatedGroupMapping> groupMappings = eventSession.getGroupMappings();
             
-            //For each group get/create then update the aggregation
+            //For each group get/create the aggregation
             for (final AggregatedGroupMapping groupMapping : groupMappings) {
                 final K key = this.createAggregationKey(e, eventAggregationContext, intervalInfo, groupMapping);
 
@@ -117,10 +133,12 @@ public abstract class BaseIntervalAwarePortalEventAggregator<
                     aggregationsCache.put(key, aggregation);
                 }
                 
-                //Update the aggregation with the event
-                updateAggregation(e, eventAggregationContext, intervalInfo, aggregation);
+                intervalInfos.add(intervalInfo);
+                aggregations.add(aggregation);
             }
         }
+        
+        return new AggregationUpdate(e, eventAggregationContext, intervalInfos, aggregations);
     }
 
     @AggrEventsTransactional
@@ -175,4 +193,29 @@ public abstract class BaseIntervalAwarePortalEventAggregator<
         
         return unclosedAggregations.size();
     }
+
+    /**
+     * Updates each of the loaded aggregations with the event
+     */
+    private final class AggregationUpdate implements Runnable {
+        private final E e;
+        private final EventAggregationContext eventAggregationContext;
+        private final List<AggregationIntervalInfo> intervalInfos;
+        private final List<T> aggregations;
+
+        public AggregationUpdate(E e, EventAggregationContext eventAggregationContext,
+                List<AggregationIntervalInfo> intervalInfos, List<T> aggregations) {
+            this.e = e;
+            this.eventAggregationContext = eventAggregationContext;
+            this.intervalInfos = intervalInfos;
+            this.aggregations = aggregations;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < this.aggregations.size(); i++) {
+                updateAggregation(this.e, this.eventAggregationContext, this.intervalInfos.get(i), this.aggregations.get(i));
+            }
+        }
+    }
 }
@@ -24,6 +24,7 @@ import javax.persistence.Access;
 import javax.persistence.AccessType;
 import javax.persistence.Column;
 import javax.persistence.Embedded;
+import javax.persistence.Lob;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
@@ -31,16 +32,19 @@ import javax.persistence.Transient;
 
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMapping;
 import org.jasig.portal.events.aggr.stat.JpaStatisticalSummary;
+import org.jasig.portal.events.aggr.stat.LatencyHistogram;
 
 /**
- * Base for aggregate entities that track timed statistics
+ * Base for aggregate entities that track timed statistics. Along with the summary statistics a
+ * {@link LatencyHistogram} of the values is persisted so percentiles remain available after the
+ * interval is complete.
  * 
  * @author Eric Dalquist
  */
 @Access(AccessType.FIELD)
 @MappedSuperclass
 public abstract class BaseTimedAggregationStatsImpl<K extends BaseAggregationKey, D extends BaseGroupedAggregationDiscriminator>
-        extends BaseAggregationImpl<K,D> implements TimedAggregationStatistics, Serializable {
+        extends BaseAggregationImpl<K,D> implements TimedAggregationStatistics, TimedAggregationPercentiles, Serializable {
     private static final long serialVersionUID = 1L;
         
     @Column(name = "TIME_COUNT", nullable = false)
@@ -79,12 +83,19 @@ public abstract class BaseTimedAggregationStatsImpl<K extends BaseAggregationKey
     @Column(name = "SECOND_MOMENT_TIME", nullable = false)
     private double secondMoment;
     
+    @Lob
+    @Column(name = "TIME_HISTOGRAM", length = 16000)
+    private byte[] timeHistogramData;
+    
     @Embedded
     private JpaStatisticalSummary statisticalSummary;
     
     @Column(name = "STATS_COMPLETE", nullable = false)
     private boolean complete = false;
 
+    @Transient
+    private LatencyHistogram timeHistogram;
+
     @Transient
     private boolean modified = false;
     
@@ -159,6 +170,37 @@ public abstract class BaseTimedAggregationStatsImpl<K extends BaseAggregationKey
         return this.secondMoment;
     }
 
+    @Override
+    public final double getPercentile(double percentile) {
+        final LatencyHistogram histogram = this.getOrLoadTimeHistogram();
+        if (histogram == null) {
+            return Double.NaN;
+        }
+        return histogram.getPercentile(percentile);
+    }
+
+    @Override
+    public final LatencyHistogram getTimeHistogram() {
+        final LatencyHistogram copy = new LatencyHistogram();
+        final LatencyHistogram histogram = this.getOrLoadTimeHistogram();
+        if (histogram != null) {
+            copy.merge(histogram);
+        }
+        return copy;
+    }
+
+    /**
+     * @return The histogram, null if no values have been added
+     */
+    private LatencyHistogram getOrLoadTimeHistogram() {
+        LatencyHistogram histogram = this.timeHistogram;
+        if (histogram == null && this.timeHistogramData != null) {
+            histogram = LatencyHistogram.fromByteArray(this.timeHistogramData);
+            this.timeHistogram = histogram;
+        }
+        return histogram;
+    }
+
     /**
      * Check if the interval is complete, must be called by super classes if overridden
      */
@@ -194,6 +236,13 @@ public abstract class BaseTimedAggregationStatsImpl<K extends BaseAggregationKey
         
         this.statisticalSummary.addValue(v);
         
+        LatencyHistogram histogram = this.getOrLoadTimeHistogram();
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            this.timeHistogram = histogram;
+        }
+        histogram.add((long) v);
+        
         this.modified = true;
     }
 
@@ -221,6 +270,9 @@ public abstract class BaseTimedAggregationStatsImpl<K extends BaseAggregationKey
         this.geometricMean = this.statisticalSummary.getGeometricMean();
         this.sumOfLogs = this.statisticalSummary.getSumOfLogs();
         this.secondMoment = this.statisticalSummary.getSecondMoment();
+        if (this.timeHistogram != null) {
+            this.timeHistogramData = this.timeHistogram.toByteArray();
+        }
         
         this.modified = false;
     }
@@ -0,0 +1,221 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * HyperLogLog sketch that estimates the number of distinct strings added to it in a fixed amount of
+ * memory. With precision {@code p} the sketch uses {@code 2^p} one byte registers and has a relative
+ * standard error of about {@code 1.04 / sqrt(2^p)}, 1.6% at precision 12 and 0.8% at precision 14.
+ * <p>
+ * Sketches with the same precision can be merged, the result estimates the number of distinct strings
+ * added to either sketch. This allows sketches for shorter intervals or individual groups to be
+ * combined into a sketch for a longer interval or set of groups.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision Number of bits used to select a register, between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    /**
+     * @return true if the sketch changed as a result of the add, false if the value did not change the estimate
+     */
+    public boolean add(String value) {
+        final long hash = HASH_FUNCTION.hashString(value, Charsets.UTF_8).asLong();
+        final int index = (int) (hash >>> (Long.SIZE - this.precision));
+        //Guard bit keeps the rank bounded when the remaining bits are all zero
+        final long remaining = (hash << this.precision) | (1L << (this.precision - 1));
+        final byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > this.registers[index]) {
+            this.registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Merge the other sketch into this one
+     *
+     * @throws IllegalArgumentException if the sketches have different precisions
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != this.precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog with precision " + other.precision + " into precision " + this.precision);
+        }
+        for (int i = 0; i < this.registers.length; i++) {
+            if (other.registers[i] > this.registers[i]) {
+                this.registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return Estimated number of distinct values added to the sketch
+     */
+    public long cardinality() {
+        final int m = this.registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (final byte register : this.registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        final double estimate = alpha(m) * m * m / sum;
+        //Linear counting is much more accurate while many registers are still empty
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return Compact serialized form of the sketch, the precision followed by the deflated registers
+     */
+    public byte[] toByteArray() {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(this.registers);
+            deflater.finish();
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+            out.write(this.precision);
+            final byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                final int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param data Sketch serialized by {@link #toByteArray()}
+     * @throws IllegalArgumentException if the data is not a valid serialized sketch
+     */
+    public static HyperLogLog fromByteArray(byte[] data) {
+        if (data == null || data.length < 1) {
+            throw new IllegalArgumentException("No HyperLogLog data");
+        }
+        final int precision = data[0];
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Invalid HyperLogLog precision: " + precision);
+        }
+
+        final byte[] registers = new byte[1 << precision];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            int offset = 0;
+            while (offset < registers.length && !inflater.finished()) {
+                final int length = inflater.inflate(registers, offset, registers.length - offset);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += length;
+            }
+            if (offset != registers.length) {
+                throw new IllegalArgumentException("Truncated HyperLogLog data, expected " + registers.length + " registers but found " + offset);
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid HyperLogLog data", e);
+        }
+        finally {
+            inflater.end();
+        }
+
+        return new HyperLogLog(precision, registers);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.precision + Arrays.hashCode(this.registers);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        final HyperLogLog other = (HyperLogLog) obj;
+        return this.precision == other.precision && Arrays.equals(this.registers, other.registers);
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog [precision=" + this.precision + ", cardinality=" + this.cardinality() + "]";
+    }
+}
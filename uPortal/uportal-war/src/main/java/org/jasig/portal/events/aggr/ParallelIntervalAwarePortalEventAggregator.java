@@ -0,0 +1,52 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+import java.util.Map;
+
+import org.jasig.portal.events.PortalEvent;
+import org.jasig.portal.events.aggr.session.EventSession;
+
+/**
+ * An {@link IntervalAwarePortalEventAggregator} that can split aggregating an event into loading the affected
+ * aggregations, which uses the AggrEventsDb EntityManager and must happen on the aggregation thread, and updating
+ * them, which only modifies the already loaded aggregations and can be run on another thread.
+ * <br/>
+ * The update returned by {@link #prepareAggregateEvent(PortalEvent, EventSession, EventAggregationContext, Map)}
+ * must not use the EntityManager or the {@link EventAggregationContext}. The caller guarantees that updates for
+ * an aggregator type are applied in the order they were prepared, one at a time, and that all updates have
+ * completed before {@link #handleIntervalBoundary(AggregationInterval, EventAggregationContext, Map)} is called
+ * or the EntityManager is flushed.
+ * 
+ * @param <E> The {@link PortalEvent} type handled by this aggregator
+ */
+public interface ParallelIntervalAwarePortalEventAggregator<E extends PortalEvent> extends IntervalAwarePortalEventAggregator<E> {
+    /**
+     * Load or create the aggregations the event applies to, equivalent to
+     * {@link #aggregateEvent(PortalEvent, EventSession, EventAggregationContext, Map)} when the returned update
+     * is run immediately.
+     * 
+     * @param e The event to aggregate
+     * @param eventSession Information about the event session associated with the event
+     * @param eventAggregationContext Context used to store stateful information for an event aggregation run
+     * @param currentIntervals Information about all of the intervals the event exists in.
+     * @return The update that applies the event to the loaded aggregations
+     */
+    Runnable prepareAggregateEvent(E e, EventSession eventSession, EventAggregationContext eventAggregationContext, Map<AggregationInterval, AggregationIntervalInfo> currentIntervals);
+}
@@ -0,0 +1,197 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jasig.portal.events.handlers.db.AggregationAbortedException;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Applies aggregation updates on a pool of worker threads. Each update is submitted with a partition key,
+ * updates with the same key are applied one at a time in the order they were submitted while updates with
+ * different keys are applied in parallel.
+ * <br/>
+ * Updates are buffered and handed to the executor in batches, the submitting thread keeps preparing the next
+ * batch while the previous one is applied. {@link #flush()} must be called before anything modified by the
+ * updates is read or persisted. Instances are not thread safe, all methods must be called from the thread
+ * submitting the updates.
+ * <br/>
+ * A failed update is reported by {@link #submit(Object, Runnable)} or {@link #flush()}, whichever call next
+ * waits for the running batches, as an {@link AggregationAbortedException}. The events already handed to the
+ * aggregators can't be told apart from the ones the failed update belonged to so the whole aggregation run
+ * has to be rolled back, {@link org.jasig.portal.events.handlers.db.IPortalEventDao#aggregatePortalEvents}
+ * rethrows the exception instead of marking the current event as failed.
+ */
+class PartitionedAggregationUpdater {
+    private final ExecutorService executorService;
+    private final int batchSize;
+    
+    private final Map<Object, List<Runnable>> pendingUpdates = new LinkedHashMap<Object, List<Runnable>>();
+    private final List<UpdateBatch> runningBatches = new ArrayList<UpdateBatch>();
+    private int pendingCount = 0;
+    
+    /**
+     * @param executorService Executor the updates are applied with
+     * @param batchSize Number of updates to buffer before handing them to the executor
+     */
+    public PartitionedAggregationUpdater(ExecutorService executorService, int batchSize) {
+        this.executorService = executorService;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Queue an update to be applied after all previously submitted updates for the same partition
+     * 
+     * @throws AggregationAbortedException if an update from a previous batch failed
+     */
+    public void submit(Object partition, Runnable update) {
+        List<Runnable> updates = this.pendingUpdates.get(partition);
+        if (updates == null) {
+            updates = new ArrayList<Runnable>();
+            this.pendingUpdates.put(partition, updates);
+        }
+        updates.add(update);
+        this.pendingCount++;
+        
+        if (this.pendingCount >= this.batchSize) {
+            //The previous batch has to be complete so that updates for a partition never run concurrently
+            this.awaitRunningBatches();
+            this.submitPendingUpdates();
+        }
+    }
+    
+    /**
+     * Apply all submitted updates, returns once every update has completed.
+     * 
+     * @throws AggregationAbortedException if an update failed, the remaining updates are discarded
+     */
+    public void flush() {
+        this.awaitRunningBatches();
+        this.submitPendingUpdates();
+        this.awaitRunningBatches();
+    }
+    
+    /**
+     * Discard all pending updates and stop any running ones, used when the aggregation run has failed. Returns
+     * once none of the submitted updates is running anymore.
+     */
+    public void cancel() {
+        this.pendingUpdates.clear();
+        this.pendingCount = 0;
+        for (final UpdateBatch batch : this.runningBatches) {
+            batch.cancel();
+        }
+        for (final UpdateBatch batch : this.runningBatches) {
+            batch.awaitStopped();
+        }
+        this.runningBatches.clear();
+    }
+    
+    private void submitPendingUpdates() {
+        for (final List<Runnable> updates : this.pendingUpdates.values()) {
+            final UpdateBatch batch = new UpdateBatch(updates);
+            batch.future = this.executorService.submit(batch);
+            this.runningBatches.add(batch);
+        }
+        this.pendingUpdates.clear();
+        this.pendingCount = 0;
+    }
+    
+    private void awaitRunningBatches() {
+        try {
+            for (final Iterator<UpdateBatch> batchItr = this.runningBatches.iterator(); batchItr.hasNext(); ) {
+                batchItr.next().future.get();
+                batchItr.remove();
+            }
+        }
+        catch (InterruptedException e) {
+            this.cancel();
+            Thread.currentThread().interrupt();
+            throw new AggregationAbortedException("Interrupted while waiting for aggregation updates to complete", e);
+        }
+        catch (ExecutionException e) {
+            this.cancel();
+            throw new AggregationAbortedException("Aggregation update failed", e.getCause());
+        }
+    }
+    
+    /**
+     * Applies the updates for one partition in order
+     */
+    private static final class UpdateBatch implements Runnable {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch stopped = new CountDownLatch(1);
+        private final List<Runnable> updates;
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        public UpdateBatch(List<Runnable> updates) {
+            this.updates = updates;
+        }
+
+        @Override
+        public void run() {
+            if (!this.started.compareAndSet(false, true)) {
+                //Cancelled before it started
+                return;
+            }
+            
+            try {
+                for (final Runnable update : this.updates) {
+                    if (this.cancelled) {
+                        return;
+                    }
+                    update.run();
+                }
+            }
+            finally {
+                this.stopped.countDown();
+            }
+        }
+        
+        /**
+         * Stop the batch before its next update, interrupts the update currently running
+         */
+        public void cancel() {
+            this.cancelled = true;
+            if (this.started.compareAndSet(false, true)) {
+                this.stopped.countDown();
+            }
+            this.future.cancel(true);
+        }
+        
+        /**
+         * Wait for a cancelled batch to finish the update it was running, if any
+         */
+        public void awaitStopped() {
+            Uninterruptibles.awaitUninterruptibly(this.stopped);
+        }
+    }
+}
@@ -24,6 +24,8 @@ import org.jasig.portal.events.aggr.IEventAggregatorStatus.ProcessingType;
 import org.jasig.portal.events.aggr.dao.IEventAggregationManagementDao;
 import org.jasig.portal.events.handlers.db.IPortalEventDao;
 import org.jasig.portal.jpa.BaseAggrEventsJpaDao.AggrEventsTransactional;
+import org.jasig.portal.jpa.ChunkedPurger;
+import org.jasig.portal.jpa.ChunkedPurger.PurgeResult;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 import org.joda.time.ReadablePeriod;
@@ -33,6 +35,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.google.common.base.Function;
+
 @Service
 public class PortalEventPurgerImpl implements PortalEventPurger {
     protected final Logger logger = LoggerFactory.getLogger(getClass());
@@ -41,6 +45,7 @@ public class PortalEventPurgerImpl implements PortalEventPurger {
     private IPortalInfoProvider portalInfoProvider;
     private IPortalEventDao portalEventDao;
     private IClusterLockService clusterLockService;
+    private ChunkedPurger chunkedPurger;
     
     private ReadablePeriod purgeDelay = Period.days(1);
     
@@ -49,6 +54,11 @@ public class PortalEventPurgerImpl implements PortalEventPurger {
         this.clusterLockService = clusterLockService;
     }
 
+    @Autowired
+    public void setChunkedPurger(ChunkedPurger chunkedPurger) {
+        this.chunkedPurger = chunkedPurger;
+    }
+
     @Autowired
     public void setEventAggregationManagementDao(IEventAggregationManagementDao eventAggregationManagementDao) {
         this.eventAggregationManagementDao = eventAggregationManagementDao;
@@ -117,9 +127,17 @@ public class PortalEventPurgerImpl implements PortalEventPurger {
         try {
             currentThread.setName(currentName + "-" + purgeEnd);
         
-            //Purge events
+            //Purge events in chunks, each chunk is committed in its own raw events transaction
             logger.debug("Starting purge of events before {}", purgeEnd);
-            events = portalEventDao.deletePortalEventsBefore(purgeEnd);
+            final DateTime chunkPurgeEnd = purgeEnd;
+            final PurgeResult purgeResult = this.chunkedPurger.purge("PortalEventPurger.rawEvents", new Function<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer maxEvents) {
+                    return portalEventDao.deletePortalEventsBefore(chunkPurgeEnd, maxEvents);
+                }
+            });
+            events = purgeResult.getDeleted();
+            complete = complete && purgeResult.isComplete();
         }
         finally {
             currentThread.setName(currentName);
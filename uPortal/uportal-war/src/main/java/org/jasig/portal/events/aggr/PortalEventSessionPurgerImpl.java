@@ -22,7 +22,8 @@ import org.jasig.portal.concurrency.locking.IClusterLockService;
 import org.jasig.portal.events.aggr.IEventAggregatorStatus.ProcessingType;
 import org.jasig.portal.events.aggr.dao.IEventAggregationManagementDao;
 import org.jasig.portal.events.aggr.session.EventSessionDao;
-import org.jasig.portal.jpa.BaseAggrEventsJpaDao.AggrEventsTransactional;
+import org.jasig.portal.jpa.ChunkedPurger;
+import org.jasig.portal.jpa.ChunkedPurger.PurgeResult;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 import org.joda.time.ReadablePeriod;
@@ -32,6 +33,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.google.common.base.Function;
+
 @Service
 public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
     protected final Logger logger = LoggerFactory.getLogger(getClass());
@@ -39,6 +42,7 @@ public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
     private IEventAggregationManagementDao eventAggregationManagementDao;
     private EventSessionDao eventSessionDao;
     private IClusterLockService clusterLockService;
+    private ChunkedPurger chunkedPurger;
     
     private ReadablePeriod eventSessionDuration = Period.days(1);
     
@@ -47,6 +51,11 @@ public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
         this.eventSessionDao = eventSessionDao;
     }
 
+    @Autowired
+    public void setChunkedPurger(ChunkedPurger chunkedPurger) {
+        this.chunkedPurger = chunkedPurger;
+    }
+
     @Autowired
     public void setClusterLockService(IClusterLockService clusterLockService) {
         this.clusterLockService = clusterLockService;
@@ -62,8 +71,10 @@ public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
         this.eventSessionDuration = eventSessionDuration;
     }
 
+    /*
+     * Not transactional, each chunk of event sessions is purged and committed in its own transaction
+     */
     @Override
-    @AggrEventsTransactional
     public EventProcessingResult doPurgeEventSessions() {
         if (!this.clusterLockService.isLockOwner(PURGE_EVENT_SESSION_LOCK_NAME)) {
             throw new IllegalStateException("The cluster lock " + PURGE_EVENT_SESSION_LOCK_NAME + " must be owned by the current thread and server");
@@ -76,8 +87,13 @@ public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
         
         final DateTime lastEventDate = eventAggregatorStatus.getLastEventDate();
         final DateTime sessionPurgeDate = lastEventDate.minus(eventSessionDuration);
-        final int purgeCount = eventSessionDao.purgeEventSessionsBefore(sessionPurgeDate);
+        final PurgeResult purgeResult = this.chunkedPurger.purge("PortalEventSessionPurger.eventSessions", new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer maxSessions) {
+                return eventSessionDao.purgeEventSessionsBefore(sessionPurgeDate, maxSessions);
+            }
+        });
         
-        return new EventProcessingResult(purgeCount, null, sessionPurgeDate, true);
+        return new EventProcessingResult(purgeResult.getDeleted(), null, sessionPurgeDate, purgeResult.isComplete());
     }
 }
@@ -29,6 +29,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Resource;
 import javax.persistence.EntityManager;
@@ -62,6 +65,7 @@ import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
@@ -72,9 +76,11 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 @Service
-public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implements PortalRawEventsAggregator, DisposableBean {
+@ManagedResource("uPortal:section=Framework,name=PortalRawEventsAggregator")
+public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implements PortalRawEventsAggregator, PortalRawEventsAggregatorMXBean, DisposableBean {
     private static final String EVENT_SESSION_CACHE_KEY_SOURCE = AggregateEventsHandler.class.getName() + "-EventSession";
 
     private IClusterLockService clusterLockService;
@@ -95,6 +101,13 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
     private int cleanUnclosedAggregationsBatchSize = 1000;
     private int cleanUnclosedIntervalsBatchSize = 315;
     private ReadablePeriod aggregationDelay = Period.seconds(30);
+    private int parallelAggregationThreads = 0;
+    private int parallelAggregationBatchSize = 1000;
+    private ExecutorService aggregationUpdateExecutor;
+    
+    private volatile int lastAggregatedEventCount = 0;
+    private volatile long lastAggregationDuration = 0;
+    private volatile long totalAggregatedEvents = 0;
     
     private final Map<Class<?>, List<String>> entityCollectionRoles = new HashMap<Class<?>, List<String>>();
     private volatile boolean shutdown = false;
@@ -193,6 +206,16 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
 		this.cleanUnclosedIntervalsBatchSize = cleanUnclosedIntervalsBatchSize;
 	}
 
+    @Value("${org.jasig.portal.events.aggr.PortalRawEventsAggregatorImpl.parallelAggregationThreads:0}")
+    public void setParallelAggregationThreads(int parallelAggregationThreads) {
+        this.parallelAggregationThreads = parallelAggregationThreads;
+    }
+    
+    @Value("${org.jasig.portal.events.aggr.PortalRawEventsAggregatorImpl.parallelAggregationBatchSize:1000}")
+    public void setParallelAggregationBatchSize(int parallelAggregationBatchSize) {
+        this.parallelAggregationBatchSize = parallelAggregationBatchSize;
+    }
+
 	public void setShutdown(boolean shutdown) {
 		this.shutdown = shutdown;
 	}
@@ -200,6 +223,59 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
 	@Override
     public void destroy() throws Exception {
         this.shutdown = true;
+        
+        synchronized (this) {
+            if (this.aggregationUpdateExecutor != null) {
+                this.aggregationUpdateExecutor.shutdownNow();
+                this.aggregationUpdateExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+    
+    @Override
+    public int getLastAggregatedEventCount() {
+        return this.lastAggregatedEventCount;
+    }
+
+    @Override
+    public long getLastAggregationDuration() {
+        return this.lastAggregationDuration;
+    }
+
+    @Override
+    public double getLastAggregationEventsPerSecond() {
+        final long duration = this.lastAggregationDuration;
+        if (duration <= 0) {
+            return 0;
+        }
+        return this.lastAggregatedEventCount * 1000d / duration;
+    }
+
+    @Override
+    public long getTotalAggregatedEvents() {
+        return this.totalAggregatedEvents;
+    }
+
+    @Override
+    public int getParallelAggregationThreads() {
+        return this.parallelAggregationThreads > 1 ? this.parallelAggregationThreads : 0;
+    }
+    
+    /**
+     * @return The updater to apply aggregation updates with, null if updates should be applied on the aggregation thread
+     */
+    private PartitionedAggregationUpdater createAggregationUpdater() {
+        if (this.parallelAggregationThreads <= 1) {
+            return null;
+        }
+        
+        synchronized (this) {
+            if (this.aggregationUpdateExecutor == null) {
+                this.aggregationUpdateExecutor = Executors.newFixedThreadPool(this.parallelAggregationThreads, 
+                        new ThreadFactoryBuilder().setNameFormat("EventAggregation-%d").setDaemon(true).build());
+            }
+            return new PartitionedAggregationUpdater(this.aggregationUpdateExecutor, this.parallelAggregationBatchSize);
+        }
     }
 
     private void checkShutdown() {
@@ -384,6 +460,14 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
         return new EventProcessingResult(closedAggregations, lastCleanUnclosedDate, lastAggregatedDate, !cleanUnclosedEnd.isBefore(lastAggregatedDate));
     }
     
+    private void recordThroughput(int eventCount, long duration) {
+        this.lastAggregatedEventCount = eventCount;
+        this.lastAggregationDuration = duration;
+        this.totalAggregatedEvents += eventCount;
+        
+        logger.debug("Aggregated {} events in {}ms ({} events/sec)", new Object[] { eventCount, duration, (long) this.getLastAggregationEventsPerSecond() });
+    }
+    
     @SuppressWarnings("unchecked")
     protected final <T> Class<T> getClass(T object) {
         return (Class<T>)AopProxyUtils.ultimateTargetClass(object);
@@ -474,11 +558,23 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
             
             //Do aggregation, capturing the start and end dates
             eventAggregatorStatus.setLastStart(DateTime.now());
+            final long start = System.nanoTime();
             
-            complete = portalEventDao.aggregatePortalEvents(
-            		lastAggregated, newestEventTime, this.eventAggregationBatchSize, 
-            		new AggregateEventsHandler(events, lastEventDate, eventAggregatorStatus));
+            final AggregateEventsHandler aggregateEventsHandler = new AggregateEventsHandler(events, lastEventDate, eventAggregatorStatus);
+            try {
+                complete = portalEventDao.aggregatePortalEvents(
+                		lastAggregated, newestEventTime, this.eventAggregationBatchSize, 
+                		aggregateEventsHandler);
+                
+                //Wait for all updates to be applied before the aggregations are persisted
+                aggregateEventsHandler.flushUpdates();
+            }
+            catch (RuntimeException e) {
+                aggregateEventsHandler.cancelUpdates();
+                throw e;
+            }
             
+            this.recordThroughput(events.intValue(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
             eventAggregatorStatus.setLastEventDate((DateTime)lastEventDate.getValue());
             eventAggregatorStatus.setLastEnd(DateTime.now());
         }
@@ -556,6 +652,7 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
         private final MutableInt eventCounter;
         private final MutableObject lastEventDate;
         private final IEventAggregatorStatus eventAggregatorStatus;
+        private final PartitionedAggregationUpdater aggregationUpdater = createAggregationUpdater();
         private int intervalsCrossed = 0;
 
         //Local tracking of the current aggregation interval and info about said interval
@@ -687,7 +784,16 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
                     }
                     
                     //Aggregation magic happens here!
-                    portalEventAggregator.aggregateEvent(item, eventSession, eventAggregationContext, aggregatorIntervalInfo);
+                    if (this.aggregationUpdater != null && portalEventAggregator instanceof ParallelIntervalAwarePortalEventAggregator) {
+                        //Load the aggregations here and apply the update on the update threads, partitioned by type as
+                        //aggregators of the same type share the aggregations tracked in the context
+                        final Runnable update = ((ParallelIntervalAwarePortalEventAggregator<PortalEvent>) portalEventAggregator)
+                                .prepareAggregateEvent(item, eventSession, eventAggregationContext, aggregatorIntervalInfo);
+                        this.aggregationUpdater.submit(aggregatorType, update);
+                    }
+                    else {
+                        portalEventAggregator.aggregateEvent(item, eventSession, eventAggregationContext, aggregatorIntervalInfo);
+                    }
                 }
             }
             
@@ -731,7 +837,28 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao implemen
             return eventSession;
         }
         
+        /**
+         * Wait for all aggregation updates to be applied
+         */
+        public void flushUpdates() {
+            if (this.aggregationUpdater != null) {
+                this.aggregationUpdater.flush();
+            }
+        }
+        
+        /**
+         * Discard any aggregation updates that have not been applied
+         */
+        public void cancelUpdates() {
+            if (this.aggregationUpdater != null) {
+                this.aggregationUpdater.cancel();
+            }
+        }
+        
         private void doHandleIntervalBoundary(AggregationInterval interval, Map<AggregationInterval, AggregationIntervalInfo> intervals) {
+            //Aggregations are completed and stored at the boundary, all updates must be applied first
+            this.flushUpdates();
+            
             for (final IntervalAwarePortalEventAggregator<PortalEvent> portalEventAggregator : intervalAwarePortalEventAggregators) {
                 
                 final Class<? extends IPortalEventAggregator<?>> aggregatorType = PortalRawEventsAggregatorImpl.this.getClass(portalEventAggregator);
@@ -0,0 +1,50 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+/**
+ * Throughput of raw event aggregation on this server
+ */
+public interface PortalRawEventsAggregatorMXBean {
+
+    /**
+     * @return Number of events processed by the last aggregation run
+     */
+    int getLastAggregatedEventCount();
+
+    /**
+     * @return Time in milliseconds the last aggregation run spent processing events
+     */
+    long getLastAggregationDuration();
+
+    /**
+     * @return Events processed per second by the last aggregation run, 0 if no events were processed
+     */
+    double getLastAggregationEventsPerSecond();
+
+    /**
+     * @return Number of events processed by all aggregation runs since startup
+     */
+    long getTotalAggregatedEvents();
+
+    /**
+     * @return Number of threads used to apply aggregation updates, 0 if updates are applied on the aggregation thread
+     */
+    int getParallelAggregationThreads();
+}
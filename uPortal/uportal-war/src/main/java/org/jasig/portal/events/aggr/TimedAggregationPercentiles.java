@@ -0,0 +1,44 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+import org.jasig.portal.events.aggr.stat.LatencyHistogram;
+
+/**
+ * Percentile estimates for timed aggregations, backed by a mergeable {@link LatencyHistogram}
+ */
+public interface TimedAggregationPercentiles {
+    /**
+     * Returns the estimated value at the percentile of the values that have been added.
+     * <p>
+     * Double.NaN is returned if no values have been added or the aggregation predates percentile tracking.
+     * </p>
+     * @param percentile Percentile to estimate, greater than 0 and at most 100
+     * @return the estimated percentile value
+     */
+    double getPercentile(double percentile);
+
+    /**
+     * Returns a copy of the histogram of the values that have been added, histograms from several
+     * aggregations can be merged to estimate percentiles over a longer interval or several groups.
+     * 
+     * @return the histogram, empty if no values have been added
+     */
+    LatencyHistogram getTimeHistogram();
+}
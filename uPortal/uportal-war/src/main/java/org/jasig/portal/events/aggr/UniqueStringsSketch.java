@@ -0,0 +1,182 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+import javax.persistence.Cacheable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Inheritance;
+import javax.persistence.InheritanceType;
+import javax.persistence.Lob;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Transient;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+/**
+ * Approximate alternative to {@link UniqueStrings} that tracks the number of unique strings with a
+ * {@link HyperLogLog} sketch. The persisted row is a few KB no matter how many strings are added which
+ * keeps long aggregation intervals cheap to load and update at the cost of a small counting error.
+ */
+@Entity
+@Table(name = "UP_UNIQUE_STR_SKETCH")
+@Inheritance(strategy=InheritanceType.JOINED)
+@SequenceGenerator(
+        name="UP_UNIQUE_STR_SKETCH_GEN",
+        sequenceName="UP_UNIQUE_STR_SKETCH_SEQ",
+        allocationSize=1000
+    )
+@TableGenerator(
+        name="UP_UNIQUE_STR_SKETCH_GEN",
+        pkColumnValue="UP_UNIQUE_STR_SKETCH_PROP",
+        allocationSize=1000
+    )
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+public final class UniqueStringsSketch {
+    @Id
+    @GeneratedValue(generator = "UP_UNIQUE_STR_SKETCH_GEN")
+    @Column(name="UNIQUE_STR_SKETCH_ID")
+    private final long id;
+
+    @Lob
+    @Column(name = "SKETCH_DATA", nullable = false, length = 70000)
+    private byte[] sketchData;
+
+    @Transient
+    private HyperLogLog sketch;
+    
+    @Transient
+    private int size = -1;
+
+    @SuppressWarnings("unused")
+    private UniqueStringsSketch() {
+        this.id = -1;
+    }
+
+    /**
+     * @param precision Precision of the {@link HyperLogLog} sketch
+     */
+    public UniqueStringsSketch(int precision) {
+        this.id = -1;
+        this.sketch = new HyperLogLog(precision);
+    }
+
+    /**
+     * @return true if the estimated number of unique strings may have changed
+     */
+    public boolean add(String e) {
+        final HyperLogLog sketch = this.getSketch();
+        if (sketch.add(e)) {
+            this.sketchModified();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Merge the strings counted by another sketch into this one
+     */
+    public void addAll(UniqueStringsSketch s) {
+        final HyperLogLog sketch = this.getSketch();
+        sketch.merge(s.getSketch());
+        this.sketchModified();
+    }
+
+    /**
+     * @return Estimated number of unique strings
+     */
+    public int size() {
+        int size = this.size;
+        if (size < 0) {
+            size = (int) Math.min(Integer.MAX_VALUE, this.getSketch().cardinality());
+            this.size = size;
+        }
+        return size;
+    }
+
+    public int getPrecision() {
+        return this.getSketch().getPrecision();
+    }
+
+    /**
+     * Serialize the sketch if it was modified, called automatically before the sketch is persisted
+     */
+    @PrePersist
+    @PreUpdate
+    void updateSketchData() {
+        if (this.sketchData == null) {
+            this.sketchData = this.sketch.toByteArray();
+        }
+    }
+
+    /*
+     * The serialized sketch is dropped instead of rebuilt on every register change, clearing it is also what makes
+     * the entity dirty so that updateSketchData is called when the session is flushed.
+     */
+    private void sketchModified() {
+        this.sketchData = null;
+        this.size = -1;
+    }
+
+    private HyperLogLog getSketch() {
+        HyperLogLog sketch = this.sketch;
+        if (sketch == null) {
+            sketch = HyperLogLog.fromByteArray(this.sketchData);
+            this.sketch = sketch;
+        }
+        return sketch;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (int) (id ^ (id >>> 32));
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (id == -1) //If id is -1 then equality must be by instance
+            return false;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        UniqueStringsSketch other = (UniqueStringsSketch) obj;
+        if (id != other.id)
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "UniqueStringsSketch [id=" + id + ", size=" + this.size() + "]";
+    }
+}
@@ -46,6 +46,7 @@ import org.jasig.portal.events.aggr.BaseAggregationImpl;
 import org.jasig.portal.events.aggr.DateDimension;
 import org.jasig.portal.events.aggr.TimeDimension;
 import org.jasig.portal.events.aggr.UniqueStrings;
+import org.jasig.portal.events.aggr.UniqueStringsSketch;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMapping;
 
 /**
@@ -93,6 +94,11 @@ public final class ConcurrentUserAggregationImpl
     @JoinColumn(name = "UNIQUE_STRINGS_ID")
     @Fetch(FetchMode.JOIN)
     private UniqueStrings uniqueStrings;
+
+    @OneToOne(cascade = { CascadeType.ALL }, orphanRemoval=true)
+    @JoinColumn(name = "UNIQUE_STR_SKETCH_ID")
+    @Fetch(FetchMode.JOIN)
+    private UniqueStringsSketch uniqueStringsSketch;
     
     @Transient
     private ConcurrentUserAggregationKey aggregationKey;
@@ -143,25 +149,44 @@ public final class ConcurrentUserAggregationImpl
 
     @Override
     protected boolean isComplete() {
-        return this.concurrentUsers > 0 && this.uniqueStrings == null;
+        return this.concurrentUsers > 0 && this.uniqueStrings == null && this.uniqueStringsSketch == null;
     }
 
     @Override
     protected void completeInterval() {
         this.uniqueStrings = null;
+        this.uniqueStringsSketch = null;
     }
     
     void countSession(String eventSessionId) {
+        this.countSession(eventSessionId, 0);
+    }
+
+    /**
+     * @param sketchPrecision {@link org.jasig.portal.events.aggr.HyperLogLog} precision to approximate the unique
+     *      count with, 0 to count exactly. Only used when the interval's first event session is counted.
+     */
+    void countSession(String eventSessionId, int sketchPrecision) {
         if (isComplete()) {
             this.getLogger().warn("{} is already closed, the event session {} will be ignored on: {}", this.getClass().getSimpleName(), eventSessionId, this);
             return;
         }
         
-        if (this.uniqueStrings == null) {
-            this.uniqueStrings = new UniqueStrings();
+        if (this.uniqueStrings == null && this.uniqueStringsSketch == null) {
+            if (sketchPrecision > 0) {
+                this.uniqueStringsSketch = new UniqueStringsSketch(sketchPrecision);
+            }
+            else {
+                this.uniqueStrings = new UniqueStrings();
+            }
         }
         
-        if (this.uniqueStrings.add(eventSessionId)) {
+        if (this.uniqueStringsSketch != null) {
+            if (this.uniqueStringsSketch.add(eventSessionId)) {
+                this.concurrentUsers = this.uniqueStringsSketch.size();
+            }
+        }
+        else if (this.uniqueStrings.add(eventSessionId)) {
             this.concurrentUsers++;
         }
     }
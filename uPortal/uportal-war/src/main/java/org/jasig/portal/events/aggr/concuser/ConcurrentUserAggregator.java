@@ -28,6 +28,7 @@ import org.jasig.portal.events.aggr.EventAggregationContext;
 import org.jasig.portal.events.aggr.TimeDimension;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMapping;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 /**
  * Event aggregator that uses {@link ConcurrentUserAggregationPrivateDao} to aggregate concurrent user data 
@@ -37,6 +38,17 @@ import org.springframework.beans.factory.annotation.Autowired;
  */
 public class ConcurrentUserAggregator extends BaseIntervalAwarePortalEventAggregator<PortalEvent, ConcurrentUserAggregationImpl, ConcurrentUserAggregationKey> {
     private ConcurrentUserAggregationPrivateDao concurrentUserAggregationDao;
+    private int uniqueCountPrecision = 0;
+
+    /**
+     * Precision of the {@link org.jasig.portal.events.aggr.HyperLogLog} sketch used to approximate concurrent users,
+     * 0 (the default) tracks every unique value exactly. Approximate counting keeps aggregations for long intervals
+     * small, see {@link org.jasig.portal.events.aggr.HyperLogLog} for the error at each precision.
+     */
+    @Value("${org.jasig.portal.events.aggr.concuser.ConcurrentUserAggregator.uniqueCountPrecision:0}")
+    public void setUniqueCountPrecision(int uniqueCountPrecision) {
+        this.uniqueCountPrecision = uniqueCountPrecision;
+    }
 
     @Autowired
     public void setConcurrentUserAggregationDao(ConcurrentUserAggregationPrivateDao concurrentUserAggregationDao) {
@@ -59,7 +71,7 @@ public class ConcurrentUserAggregator extends BaseIntervalAwarePortalEventAggreg
         final String eventSessionId = e.getEventSessionId();
         final int duration = intervalInfo.getDurationTo(e.getTimestampAsDate());
         aggregation.setDuration(duration);
-        aggregation.countSession(eventSessionId);
+        aggregation.countSession(eventSessionId, this.uniqueCountPrecision);
     }
     
     @Override
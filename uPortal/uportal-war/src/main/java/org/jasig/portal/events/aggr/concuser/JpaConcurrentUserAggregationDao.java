@@ -48,13 +48,17 @@ public class JpaConcurrentUserAggregationDao extends
 
     @Override
     protected void addFetches(Root<ConcurrentUserAggregationImpl> root) {
-        root.fetch(ConcurrentUserAggregationImpl_.uniqueStrings, JoinType.LEFT);        
+        root.fetch(ConcurrentUserAggregationImpl_.uniqueStrings, JoinType.LEFT);
+        root.fetch(ConcurrentUserAggregationImpl_.uniqueStringsSketch, JoinType.LEFT);
     }
     
     @Override
     protected void addUnclosedPredicate(CriteriaBuilder cb, Root<ConcurrentUserAggregationImpl> root,
             List<Predicate> keyPredicates) {
-        keyPredicates.add(cb.isNotNull(root.get(ConcurrentUserAggregationImpl_.uniqueStrings)));
+        //Aggregations started in sketch mode only have the sketch
+        keyPredicates.add(cb.or(
+                cb.isNotNull(root.get(ConcurrentUserAggregationImpl_.uniqueStrings)),
+                cb.isNotNull(root.get(ConcurrentUserAggregationImpl_.uniqueStringsSketch))));
     }
 
     @Override
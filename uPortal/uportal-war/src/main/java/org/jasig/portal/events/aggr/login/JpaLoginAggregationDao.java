@@ -47,12 +47,16 @@ public class JpaLoginAggregationDao extends JpaBaseAggregationDao<LoginAggregati
     @Override
     protected void addFetches(Root<LoginAggregationImpl> root) {
         root.fetch(LoginAggregationImpl_.uniqueStrings, JoinType.LEFT);
+        root.fetch(LoginAggregationImpl_.uniqueStringsSketch, JoinType.LEFT);
     }
 
     @Override
     protected void addUnclosedPredicate(CriteriaBuilder cb, Root<LoginAggregationImpl> root,
             List<Predicate> keyPredicates) {
-        keyPredicates.add(cb.isNotNull(root.get(LoginAggregationImpl_.uniqueStrings)));
+        //Aggregations started in sketch mode only have the sketch
+        keyPredicates.add(cb.or(
+                cb.isNotNull(root.get(LoginAggregationImpl_.uniqueStrings)),
+                cb.isNotNull(root.get(LoginAggregationImpl_.uniqueStringsSketch))));
     }
     
     @Override
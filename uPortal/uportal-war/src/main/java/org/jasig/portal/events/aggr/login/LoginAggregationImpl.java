@@ -46,6 +46,7 @@ import org.jasig.portal.events.aggr.BaseAggregationImpl;
 import org.jasig.portal.events.aggr.DateDimension;
 import org.jasig.portal.events.aggr.TimeDimension;
 import org.jasig.portal.events.aggr.UniqueStrings;
+import org.jasig.portal.events.aggr.UniqueStringsSketch;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMapping;
 
 /**
@@ -96,6 +97,11 @@ public final class LoginAggregationImpl
     @Fetch(FetchMode.JOIN)
     private UniqueStrings uniqueStrings;
 
+    @OneToOne(cascade = { CascadeType.ALL }, orphanRemoval=true)
+    @JoinColumn(name = "UNIQUE_STR_SKETCH_ID")
+    @Fetch(FetchMode.JOIN)
+    private UniqueStringsSketch uniqueStringsSketch;
+
     @Transient
     private LoginAggregationKeyImpl aggregationKey;
     @Transient
@@ -149,25 +155,44 @@ public final class LoginAggregationImpl
 
     @Override
     protected boolean isComplete() {
-        return this.loginCount > 0 && this.uniqueStrings == null;
+        return this.loginCount > 0 && this.uniqueStrings == null && this.uniqueStringsSketch == null;
     }
 
     @Override
     protected void completeInterval() {
         this.uniqueStrings = null;
+        this.uniqueStringsSketch = null;
     }
 
     void countUser(String userName) {
+        this.countUser(userName, 0);
+    }
+
+    /**
+     * @param sketchPrecision {@link org.jasig.portal.events.aggr.HyperLogLog} precision to approximate the unique
+     *      count with, 0 to count exactly. Only used when the interval's first user name is counted.
+     */
+    void countUser(String userName, int sketchPrecision) {
         if (isComplete()) {
             this.getLogger().warn("{} is already closed, the user name {} will be ignored on: {}", this.getClass().getSimpleName(), userName, this);
             return;
         }
         
-        if (this.uniqueStrings == null) {
-            this.uniqueStrings = new UniqueStrings();
+        if (this.uniqueStrings == null && this.uniqueStringsSketch == null) {
+            if (sketchPrecision > 0) {
+                this.uniqueStringsSketch = new UniqueStringsSketch(sketchPrecision);
+            }
+            else {
+                this.uniqueStrings = new UniqueStrings();
+            }
         }
         
-        if (this.uniqueStrings.add(userName)) {
+        if (this.uniqueStringsSketch != null) {
+            if (this.uniqueStringsSketch.add(userName)) {
+                this.uniqueLoginCount = this.uniqueStringsSketch.size();
+            }
+        }
+        else if (this.uniqueStrings.add(userName)) {
             this.uniqueLoginCount++;
         }
         this.loginCount++;
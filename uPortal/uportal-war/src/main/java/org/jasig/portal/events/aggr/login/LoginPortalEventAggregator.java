@@ -29,6 +29,7 @@ import org.jasig.portal.events.aggr.EventAggregationContext;
 import org.jasig.portal.events.aggr.TimeDimension;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMapping;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 /**
  * Event aggregator that uses {@link LoginAggregationPrivateDao} to aggregate login events 
@@ -38,6 +39,17 @@ import org.springframework.beans.factory.annotation.Autowired;
  */
 public class LoginPortalEventAggregator extends BaseIntervalAwarePortalEventAggregator<LoginEvent, LoginAggregationImpl, LoginAggregationKey> {
     private LoginAggregationPrivateDao loginAggregationDao;
+    private int uniqueCountPrecision = 0;
+
+    /**
+     * Precision of the {@link org.jasig.portal.events.aggr.HyperLogLog} sketch used to approximate unique logins,
+     * 0 (the default) tracks every unique value exactly. Approximate counting keeps aggregations for long intervals
+     * small, see {@link org.jasig.portal.events.aggr.HyperLogLog} for the error at each precision.
+     */
+    @Value("${org.jasig.portal.events.aggr.login.LoginPortalEventAggregator.uniqueCountPrecision:0}")
+    public void setUniqueCountPrecision(int uniqueCountPrecision) {
+        this.uniqueCountPrecision = uniqueCountPrecision;
+    }
 
     @Autowired
     public void setLoginAggregationDao(LoginAggregationPrivateDao loginAggregationDao) {
@@ -69,6 +81,6 @@ public class LoginPortalEventAggregator extends BaseIntervalAwarePortalEventAggr
         final String userName = e.getUserName();
         final int duration = intervalInfo.getDurationTo(e.getTimestampAsDate());
         aggregation.setDuration(duration);
-        aggregation.countUser(userName);
+        aggregation.countUser(userName, this.uniqueCountPrecision);
     }
 }
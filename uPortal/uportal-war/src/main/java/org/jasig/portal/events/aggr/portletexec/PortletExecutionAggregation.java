@@ -19,6 +19,7 @@
 package org.jasig.portal.events.aggr.portletexec;
 
 import org.jasig.portal.events.aggr.BaseAggregation;
+import org.jasig.portal.events.aggr.TimedAggregationPercentiles;
 import org.jasig.portal.events.aggr.TimedAggregationStatistics;
 import org.jasig.portal.events.aggr.portletexec.PortletExecutionAggregationKey.ExecutionType;
 import org.jasig.portal.events.aggr.portlets.AggregatedPortletMapping;
@@ -30,7 +31,7 @@ import org.jasig.portal.events.aggr.portlets.AggregatedPortletMapping;
  */
 public interface PortletExecutionAggregation 
         extends BaseAggregation<PortletExecutionAggregationKey, PortletExecutionAggregationDiscriminator>,
-        TimedAggregationStatistics {
+        TimedAggregationStatistics, TimedAggregationPercentiles {
 
     /**
      * @return The name of the tab
@@ -49,6 +49,16 @@ public interface EventSessionDao {
     
     /**
      * Purge expired events, expired is defined by the implementation
+     * 
+     * @deprecated Purges every expired session in a single transaction, use {@link #purgeEventSessionsBefore(DateTime, int)}
      */
+    @Deprecated
     int purgeEventSessionsBefore(DateTime lastAggregatedEventDate);
+    
+    /**
+     * Purge at most <code>maxSessions</code> expired event sessions in a single transaction
+     * 
+     * @return The number of event sessions purged, less than <code>maxSessions</code> once there are no more to purge
+     */
+    int purgeEventSessionsBefore(DateTime lastAggregatedEventDate, int maxSessions);
 }
@@ -102,6 +102,8 @@ public class JpaEventSessionDao extends BaseAggrEventsJpaDao implements EventSes
                 criteriaQuery.where(
                         cb.lessThanOrEqualTo(root.get(EventSessionImpl_.lastAccessed), dateTimeParameter)
                     );
+                //Oldest first so bounded purges walk the last accessed index
+                criteriaQuery.orderBy(cb.asc(root.get(EventSessionImpl_.lastAccessed)));
                 
                 return criteriaQuery;
             }
@@ -170,7 +172,7 @@ public class JpaEventSessionDao extends BaseAggrEventsJpaDao implements EventSes
         query.executeUpdate();
     }
 
-    private void purgeEventList(int batchSize, DateTime lastAggregatedEventDate) {
+    private int purgeEventList(int batchSize, DateTime lastAggregatedEventDate) {
         final TypedQuery<EventSessionImpl> query = this.createQuery(this.findExpiredEventSessionsQuery);
         query.setParameter(this.dateTimeParameter, lastAggregatedEventDate);
         query.setMaxResults(batchSize);
@@ -178,8 +180,10 @@ public class JpaEventSessionDao extends BaseAggrEventsJpaDao implements EventSes
         for (final EventSessionImpl eventSession : resultList) {
             this.getEntityManager().remove(eventSession);
         }
+        return resultList.size();
     }
 
+    @Deprecated
     @AggrEventsTransactional
     @Override
     public int purgeEventSessionsBefore(DateTime lastAggregatedEventDate) {
@@ -196,6 +200,12 @@ public class JpaEventSessionDao extends BaseAggrEventsJpaDao implements EventSes
         
         return totalRows;
     }
+
+    @AggrEventsTransactional
+    @Override
+    public int purgeEventSessionsBefore(DateTime lastAggregatedEventDate, int maxSessions) {
+        return purgeEventList(maxSessions, lastAggregatedEventDate);
+    }
     
     /**
      * Get groups for the event
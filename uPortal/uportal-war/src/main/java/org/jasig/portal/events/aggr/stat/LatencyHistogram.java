@@ -0,0 +1,222 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr.stat;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative long values, such as execution times in nanoseconds, used to
+ * estimate percentiles. Each power of two is split into {@link #SUB_BUCKET_COUNT} equal width buckets
+ * so a reported percentile is within about 3% of the true value regardless of magnitude, values
+ * below {@link #SUB_BUCKET_COUNT} are counted exactly.
+ * <p>
+ * Histograms are mergeable: merging the histograms of several intervals or groups produces exactly the
+ * histogram that would have been built from all of their values. Only non-empty buckets are serialized
+ * so a typical histogram is a few hundred bytes.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final long[] counts;
+    private long totalCount;
+
+    public LatencyHistogram() {
+        this.counts = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0
+     */
+    public void add(long value) {
+        this.add(value, 1);
+    }
+
+    /**
+     * Record a value the specified number of times
+     */
+    public void add(long value, long count) {
+        this.counts[bucketIndex(Math.max(0, value))] += count;
+        this.totalCount += count;
+    }
+
+    /**
+     * Merge all values recorded in the other histogram into this one
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+    }
+
+    /**
+     * @return Number of values recorded
+     */
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * @param percentile Percentile to estimate, greater than 0 and at most 100
+     * @return Estimated value at the percentile, {@link Double#NaN} if no values have been recorded
+     */
+    public double getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be greater than 0 and at most 100: " + percentile);
+        }
+        if (this.totalCount == 0) {
+            return Double.NaN;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return bucketMidpoint(i);
+            }
+        }
+
+        //Not reachable unless counts overflowed
+        return bucketMidpoint(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return Serialized form of the histogram, the number of non-empty buckets followed by the index gap and
+     *      count of each non-empty bucket, all as variable length integers
+     */
+    public byte[] toByteArray() {
+        int nonEmpty = 0;
+        for (final long count : this.counts) {
+            if (count != 0) {
+                nonEmpty++;
+            }
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8 + nonEmpty * 4);
+        writeVarLong(out, nonEmpty);
+        int previous = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (this.counts[i] != 0) {
+                writeVarLong(out, i - previous);
+                writeVarLong(out, this.counts[i]);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data Histogram serialized by {@link #toByteArray()}
+     * @throws IllegalArgumentException if the data is not a valid serialized histogram
+     */
+    public static LatencyHistogram fromByteArray(byte[] data) {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int[] position = new int[1];
+        final long nonEmpty = readVarLong(data, position);
+        int index = 0;
+        for (long i = 0; i < nonEmpty; i++) {
+            index += (int) readVarLong(data, position);
+            if (index < 0 || index >= BUCKET_COUNT) {
+                throw new IllegalArgumentException("Invalid LatencyHistogram bucket index: " + index);
+            }
+            final long count = readVarLong(data, position);
+            histogram.counts[index] = count;
+            histogram.totalCount += count;
+        }
+        return histogram;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+    }
+
+    private static double bucketMidpoint(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        return bucketLowerBound(index) + ((1L << shift) - 1) / 2.0;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated LatencyHistogram data");
+            }
+            final byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed LatencyHistogram data");
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.counts);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        final LatencyHistogram other = (LatencyHistogram) obj;
+        return this.totalCount == other.totalCount && Arrays.equals(this.counts, other.counts);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram [totalCount=" + this.totalCount + "]";
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.handlers;
+
+/**
+ * What a bounded {@link QueueingEventHandler} does with events that arrive while its queue is full
+ */
+public enum EventQueueOverflowPolicy {
+    /**
+     * Discard the oldest queued event to make room for the new event
+     */
+    DROP_OLDEST,
+    /**
+     * Discard the new event
+     */
+    DROP_NEW,
+    /**
+     * Once the queue is three quarters full only every Nth new event is queued, the rest are discarded.
+     * New events are discarded once the queue is full.
+     */
+    SAMPLE,
+    /**
+     * Write new events to a file on local disk, they are read back and flushed once the queue has drained.
+     * Requires the handler to implement event serialization.
+     */
+    SPILL;
+}
@@ -18,51 +18,239 @@
  */
 package org.jasig.portal.events.handlers;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.ObjectName;
+
+import org.apache.commons.io.IOUtils;
 import org.jasig.portal.spring.context.FilteringApplicationListener;
+import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEvent;
+import org.springframework.jmx.export.MBeanExportOperations;
 
 /**
  * Queues PortalEvents in a local {@link ConcurrentLinkedQueue} and flushes the events to the configured
  * {@link BatchingEventHandler} when {@link #flush()} is called. This class must be used with some external
  * timer that will call {@link #flush()} at regular intervals
+ * <p>
+ * If {@link #setQueueCapacity(int)} is set the events are instead queued in a fixed size ring buffer and
+ * the {@link #setOverflowPolicy(EventQueueOverflowPolicy)} decides what happens to events that arrive while
+ * it is full. If {@link #setAdaptiveBatchSize(boolean)} is enabled the number of events flushed per batch
+ * is shrunk when batches take longer than {@link #setTargetFlushTime(long)} and grown when they are fast.
+ * <p>
+ * With {@link EventQueueOverflowPolicy#SPILL} batches that fail to flush are also written to the spill file,
+ * spilled events are only removed from disk once they have been flushed successfully.
  * 
  * @author Eric Dalquist
  * @version $Revision$
  */
 public abstract class QueueingEventHandler<E extends ApplicationEvent> 
-        extends FilteringApplicationListener<E> implements DisposableBean {
+        extends FilteringApplicationListener<E> implements BeanNameAware, InitializingBean, DisposableBean {
+    
+    private static final Charset SPILL_CHARSET = Charset.forName("UTF-8");
     
-    private final Queue<E> eventQueue = new ConcurrentLinkedQueue<E>();
+    private final QueueingEventHandlerStatistics statistics = new QueueingEventHandlerStatistics(this);
     private final Lock flushLock = new ReentrantLock();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private Queue<E> eventQueue = new ConcurrentLinkedQueue<E>();
+    private BlockingQueue<E> boundedEventQueue = null;
+    private int queueCapacity = 0;
+    private EventQueueOverflowPolicy overflowPolicy = EventQueueOverflowPolicy.DROP_OLDEST;
+    private long offerWaitTime = 0;
+    private int sampleRate = 10;
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+    private long maxSpillFileSize = 100 * 1024 * 1024;
     private int batchSize = 25;
+    private boolean adaptiveBatchSize = false;
+    private int minBatchSize = 5;
+    private int maxBatchSize = 500;
+    private long targetFlushTime = 1000;
+    private MBeanExportOperations mBeanExportOperations;
+    private String beanName;
+    
+    //Current number of events per flushed batch, only differs from batchSize if adaptiveBatchSize is enabled
+    private volatile int currentBatchSize = this.batchSize;
     
     //Used to hold events to flush, MUST only be read/written from within the flushLock 
     private List<E> eventBuffer = new ArrayList<E>(this.batchSize);
     
-
+    //Used to write spilled events, MUST only be read/written while synchronized on spillLock
+    private final Object spillLock = new Object();
+    private OutputStream spillOutputStream;
+    //Bytes in the spill and replay files, MUST only be written while synchronized on spillLock
+    private volatile long spillFileSize = 0;
+    
+    
 
     /**
      * The maximum number of events to be flushed to the {@link BatchingEventHandler} per call.
      */
     public void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
+        this.currentBatchSize = batchSize;
         eventBuffer = new ArrayList<E>(this.batchSize);
     }
     
+    /**
+     * Maximum number of events to hold in memory, if less than 1 (the default) the queue is unbounded
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        if (queueCapacity > 0) {
+            this.boundedEventQueue = new ArrayBlockingQueue<E>(queueCapacity);
+            this.eventQueue = this.boundedEventQueue;
+        }
+        else {
+            this.boundedEventQueue = null;
+            this.eventQueue = new ConcurrentLinkedQueue<E>();
+        }
+    }
+
+    /**
+     * What to do with events that arrive while a bounded queue is full, defaults to {@link EventQueueOverflowPolicy#DROP_OLDEST}
+     */
+    public void setOverflowPolicy(EventQueueOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+    
+    /**
+     * Time in ms the thread firing an event will wait for space in a full bounded queue before the overflow
+     * policy is applied, defaults to 0 (no waiting)
+     */
+    public void setOfferWaitTime(long offerWaitTime) {
+        this.offerWaitTime = offerWaitTime;
+    }
+
+    /**
+     * For {@link EventQueueOverflowPolicy#SAMPLE} the 1 in N events to keep once the queue is three quarters
+     * full, defaults to 10
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * For {@link EventQueueOverflowPolicy#SPILL} the directory to write spilled events to, defaults to java.io.tmpdir
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * For {@link EventQueueOverflowPolicy#SPILL} the maximum size of the spill file in bytes, events are
+     * dropped once it is reached. Defaults to 100MB
+     */
+    public void setMaxSpillFileSize(long maxSpillFileSize) {
+        this.maxSpillFileSize = maxSpillFileSize;
+    }
+
+    /**
+     * If the batch size should be adjusted based on how long batches take to flush, defaults to false
+     */
+    public void setAdaptiveBatchSize(boolean adaptiveBatchSize) {
+        this.adaptiveBatchSize = adaptiveBatchSize;
+    }
+
+    /**
+     * Smallest batch size an adaptive batch size will shrink to, defaults to 5
+     */
+    public void setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+    }
+
+    /**
+     * Largest batch size an adaptive batch size will grow to, defaults to 500
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Time in ms a batch should take to flush when using an adaptive batch size, defaults to 1000
+     */
+    public void setTargetFlushTime(long targetFlushTime) {
+        this.targetFlushTime = targetFlushTime;
+    }
+
+    @Autowired(required=false)
+    public void setmBeanExportOperations(MBeanExportOperations mBeanExportOperations) {
+        this.mBeanExportOperations = mBeanExportOperations;
+    }
+
+    @Override
+    public void setBeanName(String name) {
+        this.beanName = name;
+    }
+    
+    /**
+     * @return Queue and flush statistics for this handler
+     */
+    public QueueingEventHandlerStatisticsMBean getStatistics() {
+        return this.statistics;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (this.boundedEventQueue != null && this.overflowPolicy == EventQueueOverflowPolicy.SPILL) {
+            if (!this.isSpillSupported()) {
+                throw new IllegalStateException(this.getClass().getName() + " does not support spilling events to disk, the " + 
+                        EventQueueOverflowPolicy.SPILL + " overflow policy cannot be used");
+            }
+            
+            //Pick up events spilled before a restart
+            long spilledSize = 0;
+            final File spillFile = this.getSpillFile();
+            if (spillFile.exists()) {
+                spilledSize += spillFile.length();
+            }
+            final File replayFile = this.getReplayFile();
+            if (replayFile.exists()) {
+                spilledSize += replayFile.length();
+            }
+            this.spillFileSize = spilledSize;
+        }
+        
+        if (this.mBeanExportOperations != null && this.beanName != null) {
+            final ObjectName name = new ObjectName("uPortal:section=Events,name=" + ObjectName.quote(this.beanName));
+            this.mBeanExportOperations.registerManagedResource(this.statistics, name);
+        }
+    }
+    
     /* (non-Javadoc)
      * @see org.springframework.beans.factory.DisposableBean#destroy()
      */
     @Override
     public final void destroy() throws Exception {
         this.flush();
+        
+        synchronized (this.spillLock) {
+            IOUtils.closeQuietly(this.spillOutputStream);
+            this.spillOutputStream = null;
+        }
     }
     
     /* (non-Javadoc)
@@ -70,7 +258,45 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
      */
     @Override
     protected final void onFilteredApplicationEvent(E event) {
-        this.eventQueue.offer(event);
+        final BlockingQueue<E> boundedEventQueue = this.boundedEventQueue;
+        if (boundedEventQueue == null) {
+            this.eventQueue.offer(event);
+            this.statistics.recordQueued();
+            return;
+        }
+        
+        if (this.overflowPolicy == EventQueueOverflowPolicy.SAMPLE 
+                && boundedEventQueue.size() >= this.queueCapacity * 3 / 4
+                && this.sampleCounter.incrementAndGet() % this.sampleRate != 0) {
+            this.statistics.recordDropped();
+            return;
+        }
+        
+        if (this.offerBounded(boundedEventQueue, event)) {
+            this.statistics.recordQueued();
+            return;
+        }
+        
+        switch (this.overflowPolicy) {
+            case DROP_OLDEST: {
+                do {
+                    if (boundedEventQueue.poll() != null) {
+                        this.statistics.recordDropped();
+                    }
+                } while (!boundedEventQueue.offer(event));
+                this.statistics.recordQueued();
+                break;
+            }
+            case SPILL: {
+                this.spillEvent(event);
+                break;
+            }
+            default: {
+                this.statistics.recordDropped();
+                logger.debug("Event queue is full, dropping event: {}", event);
+                break;
+            }
+        }
     }
     
     /**
@@ -81,6 +307,29 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
      */
     protected abstract void onApplicationEvents(Iterable<E> events);
     
+    /**
+     * @return true if {@link #serializeEvent(ApplicationEvent)} and {@link #deserializeEvent(String)} are implemented,
+     *      required for {@link EventQueueOverflowPolicy#SPILL}. Defaults to false.
+     */
+    protected boolean isSpillSupported() {
+        return false;
+    }
+    
+    /**
+     * Serialize an event so it can be spilled to disk, required for {@link EventQueueOverflowPolicy#SPILL}.
+     * The returned String must not contain line breaks.
+     */
+    protected String serializeEvent(E event) {
+        throw new UnsupportedOperationException(this.getClass().getName() + " does not support spilling events to disk");
+    }
+    
+    /**
+     * Deserialize an event created by {@link #serializeEvent(ApplicationEvent)}
+     */
+    protected E deserializeEvent(String data) {
+        throw new UnsupportedOperationException(this.getClass().getName() + " does not support spilling events to disk");
+    }
+    
     /**
      * Flushes the queued PortalEvents to the configured {@link BatchingEventHandler}. If <code>force</code> is false
      * flushing only happens if there are enough events in the queue and a flush isn't already under way. If 
@@ -90,7 +339,7 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
      * @param force Forces flushing events to the {@link BatchingEventHandler} even if there are fewer than <code>flushCount</code> PortalEvents in the queue.
      */
     public final void flush() {
-        if (eventQueue.isEmpty()) {
+        if (eventQueue.isEmpty() && this.spillFileSize == 0) {
             //No events to flush
             logger.trace("No events to flush, returning.");
             return;
@@ -103,51 +352,336 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
             return;
         }
         try {
+            boolean flushFailed = false;
             while (!this.eventQueue.isEmpty()) {
                 //Clear the buffer for re-use
                 eventBuffer.clear();
                 
                 //Pop events off the queue into the buffer
-                while (!this.eventQueue.isEmpty() && eventBuffer.size() < this.batchSize) {
+                final int batchSize = this.currentBatchSize;
+                while (!this.eventQueue.isEmpty() && eventBuffer.size() < batchSize) {
                     final E event = eventQueue.poll();
-                    eventBuffer.add(event);
+                    if (event != null) {
+                        eventBuffer.add(event);
+                    }
+                }
+
+                if (!this.flushEventBuffer()) {
+                    flushFailed = true;
+                    this.spillFailedEvents();
                 }
+            }
+            
+            //Don't try replaying spilled events if the handler just failed
+            if (!flushFailed && this.spillFileSize > 0) {
+                this.replaySpilledEvents();
+            }
+        }
+        finally {
+            //Clear the buffer to avoid memory leaks
+            eventBuffer.clear();
+            
+            this.flushLock.unlock();
+        }
+    }
+    
+    int getQueueDepth() {
+        return this.eventQueue.size();
+    }
+    
+    int getQueueCapacity() {
+        return this.boundedEventQueue != null ? this.queueCapacity : -1;
+    }
+    
+    EventQueueOverflowPolicy getOverflowPolicy() {
+        return this.boundedEventQueue != null ? this.overflowPolicy : null;
+    }
+    
+    int getCurrentBatchSize() {
+        return this.currentBatchSize;
+    }
+    
+    long getSpillFileSize() {
+        return this.spillFileSize;
+    }
+    
+    /**
+     * Write the events in the buffer out to the batching listener, MUST be called from within the flushLock
+     * 
+     * @return false if the listener threw an exception
+     */
+    private boolean flushEventBuffer() {
+        if (eventBuffer.isEmpty()) {
+            return true;
+        }
+        
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Flushing " + eventBuffer.size() + " events");
+        }
 
-                if (this.logger.isDebugEnabled()) {
-                    this.logger.debug("Flushing " + eventBuffer.size() + " events");
+        //Write events out to batching listener
+        final long start = System.nanoTime();
+        boolean flushed = true;
+        try {
+            this.onApplicationEvents(eventBuffer);
+        }
+        catch (Throwable t) {
+            flushed = false;
+            this.logger.error("An exception was thrown while trying to flush " + eventBuffer.size() + " events", t);
+
+            final StringBuilder failedEvents = new StringBuilder();
+            failedEvents.append("The following events that were being flushed, some may have been persisted correctly");
+
+            for (final E portalEvent : eventBuffer) {
+                failedEvents.append("\n\t");
+                try {
+                    failedEvents.append(portalEvent.toString());
+                }
+                catch (Exception e) {
+                    failedEvents.append("toString failed on a PortalEvent of type '")
+                        .append(portalEvent.getClass()).append("': ").append(e);
                 }
+            }
 
-                //Write events out to batching listener
+            this.logger.error(failedEvents.toString(), t);
+        }
+        
+        final long flushTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        this.statistics.recordFlush(eventBuffer.size(), flushTime);
+        
+        if (this.adaptiveBatchSize) {
+            this.adjustBatchSize(eventBuffer.size(), flushTime);
+        }
+        
+        return flushed;
+    }
+    
+    /**
+     * If spilling is enabled write the events in the buffer that failed to flush to the spill file so they
+     * are retried by a later flush, MUST be called from within the flushLock
+     */
+    private void spillFailedEvents() {
+        if (this.boundedEventQueue == null || this.overflowPolicy != EventQueueOverflowPolicy.SPILL) {
+            return;
+        }
+        
+        for (final E event : eventBuffer) {
+            this.spillEvent(event);
+        }
+    }
+    
+    /**
+     * Halve the batch size if the flush was slower than the target, grow it by a quarter if a full
+     * batch flushed in less than half the target time.
+     */
+    private void adjustBatchSize(int flushedEvents, long flushTime) {
+        final int batchSize = this.currentBatchSize;
+        int newBatchSize = batchSize;
+        if (flushTime > this.targetFlushTime) {
+            newBatchSize = Math.max(this.minBatchSize, batchSize / 2);
+        }
+        else if (flushTime < this.targetFlushTime / 2 && flushedEvents >= batchSize) {
+            newBatchSize = Math.min(this.maxBatchSize, batchSize + Math.max(1, batchSize / 4));
+        }
+        
+        if (newBatchSize != batchSize) {
+            logger.debug("Batch of {} events took {}ms to flush, batch size changed from {} to {}", flushedEvents, flushTime, batchSize, newBatchSize);
+            this.currentBatchSize = newBatchSize;
+        }
+    }
+    
+    private boolean offerBounded(BlockingQueue<E> boundedEventQueue, E event) {
+        if (this.offerWaitTime <= 0) {
+            return boundedEventQueue.offer(event);
+        }
+        
+        try {
+            return boundedEventQueue.offer(event, this.offerWaitTime, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    private File getSpillFile() {
+        return new File(this.spillDirectory, this.getSpillFileName() + ".spill");
+    }
+    
+    private File getReplayFile() {
+        return new File(this.spillDirectory, this.getSpillFileName() + ".replay");
+    }
+    
+    private String getSpillFileName() {
+        return this.beanName != null ? this.beanName : this.getClass().getName();
+    }
+    
+    /**
+     * Append the event to the spill file
+     */
+    private void spillEvent(E event) {
+        final String data;
+        try {
+            data = this.serializeEvent(event);
+        }
+        catch (RuntimeException e) {
+            logger.warn("Failed to serialize event, it will be dropped: " + event, e);
+            this.statistics.recordDropped();
+            return;
+        }
+        
+        synchronized (this.spillLock) {
+            if (this.spillFileSize >= this.maxSpillFileSize) {
+                this.statistics.recordDropped();
+                logger.debug("Event spill file is full, dropping event: {}", event);
+                return;
+            }
+            
+            try {
+                if (this.spillOutputStream == null) {
+                    this.spillDirectory.mkdirs();
+                    this.spillOutputStream = new BufferedOutputStream(new FileOutputStream(this.getSpillFile(), true));
+                }
+                
+                final byte[] bytes = data.getBytes(SPILL_CHARSET);
+                this.spillOutputStream.write(bytes);
+                this.spillOutputStream.write('\n');
+                this.spillOutputStream.flush();
+                this.spillFileSize += bytes.length + 1;
+            }
+            catch (IOException e) {
+                logger.warn("Failed to spill event to " + this.getSpillFile() + ", it will be dropped: " + event, e);
+                this.statistics.recordDropped();
+                return;
+            }
+        }
+        
+        this.statistics.recordSpilled();
+    }
+    
+    /**
+     * Move the spill file aside and flush the events in it. If a batch fails to flush the events that have not
+     * been flushed are kept in the replay file and retried by the next flush. MUST be called from within the flushLock
+     */
+    private void replaySpilledEvents() {
+        final File replayFile = this.getReplayFile();
+        
+        //A leftover replay file from an earlier failure is replayed before rotating the current spill file
+        if (!replayFile.exists()) {
+            synchronized (this.spillLock) {
+                IOUtils.closeQuietly(this.spillOutputStream);
+                this.spillOutputStream = null;
+                
+                final File spillFile = this.getSpillFile();
+                if (!spillFile.exists()) {
+                    this.spillFileSize = 0;
+                    return;
+                }
+                if (!spillFile.renameTo(replayFile)) {
+                    logger.warn("Failed to rename {} to {}, spilled events will not be flushed", spillFile, replayFile);
+                    return;
+                }
+            }
+        }
+        
+        final long replayFileSize = replayFile.length();
+        final List<String> batchLines = new ArrayList<String>(this.currentBatchSize);
+        int replayed = 0;
+        boolean complete = false;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(replayFile), SPILL_CHARSET));
+            
+            eventBuffer.clear();
+            String line;
+            for (line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                
                 try {
-                    this.onApplicationEvents(eventBuffer);
+                    eventBuffer.add(this.deserializeEvent(line));
+                }
+                catch (RuntimeException e) {
+                    logger.warn("Failed to deserialize spilled event, it will be ignored: " + line, e);
+                    continue;
                 }
-                catch (Throwable t) {
-                    this.logger.error("An exception was thrown while trying to flush " + eventBuffer.size() + " events", t);
-
-                    final StringBuilder failedEvents = new StringBuilder();
-                    failedEvents.append("The following events that were being flushed, some may have been persisted correctly");
-
-                    for (final E portalEvent : eventBuffer) {
-                        failedEvents.append("\n\t");
-                        try {
-                            failedEvents.append(portalEvent.toString());
-                        }
-                        catch (Exception e) {
-                            failedEvents.append("toString failed on a PortalEvent of type '")
-                                .append(portalEvent.getClass()).append("': ").append(e);
-                        }
+                batchLines.add(line);
+                
+                if (eventBuffer.size() >= this.currentBatchSize) {
+                    if (!this.flushEventBuffer()) {
+                        break;
                     }
-
-                    this.logger.error(failedEvents.toString(), t);
+                    replayed += eventBuffer.size();
+                    eventBuffer.clear();
+                    batchLines.clear();
                 }
             }
-
+            
+            if (line == null && this.flushEventBuffer()) {
+                replayed += eventBuffer.size();
+                complete = true;
+            }
+            else {
+                //Keep the failed batch and everything not yet read for the next flush
+                this.retainSpilledEvents(replayFile, batchLines, reader);
+            }
+        }
+        catch (IOException e) {
+            logger.warn("Failed to replay spilled events from " + replayFile + ", they will be replayed again on the next flush", e);
         }
         finally {
-            //Clear the buffer to avoid memory leaks
+            IOUtils.closeQuietly(reader);
             eventBuffer.clear();
-            
-            this.flushLock.unlock();
+            this.statistics.recordSpillReplayed(replayed);
+        }
+        
+        long remainingSize = 0;
+        if (complete) {
+            if (!replayFile.delete()) {
+                logger.warn("Failed to delete spilled event file {}, the events it contains may be flushed again", replayFile);
+                remainingSize = replayFileSize;
+            }
+        }
+        else {
+            remainingSize = replayFile.length();
+        }
+        
+        synchronized (this.spillLock) {
+            this.spillFileSize = Math.max(0, this.spillFileSize - replayFileSize + remainingSize);
+        }
+    }
+    
+    /**
+     * Replace the replay file with the specified lines followed by the unread lines from the reader
+     */
+    private void retainSpilledEvents(File replayFile, List<String> lines, BufferedReader reader) throws IOException {
+        final File retainFile = new File(this.spillDirectory, this.getSpillFileName() + ".retain");
+        
+        OutputStream retainOutputStream = null;
+        try {
+            retainOutputStream = new BufferedOutputStream(new FileOutputStream(retainFile));
+            for (final String line : lines) {
+                retainOutputStream.write(line.getBytes(SPILL_CHARSET));
+                retainOutputStream.write('\n');
+            }
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                retainOutputStream.write(line.getBytes(SPILL_CHARSET));
+                retainOutputStream.write('\n');
+            }
+            retainOutputStream.close();
+        }
+        finally {
+            IOUtils.closeQuietly(retainOutputStream);
+        }
+        IOUtils.closeQuietly(reader);
+        
+        //The replay file is only ever replaced, never removed first, so a failure leaves all events in place
+        try {
+            Files.move(retainFile.toPath(), replayFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(retainFile.toPath(), replayFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 }
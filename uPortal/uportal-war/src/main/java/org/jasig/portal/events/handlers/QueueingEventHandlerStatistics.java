@@ -0,0 +1,153 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.handlers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Queue, drop and flush counters for a {@link QueueingEventHandler}
+ */
+final class QueueingEventHandlerStatistics implements QueueingEventHandlerStatisticsMBean {
+    private static final long[] FLUSH_TIME_BUCKETS = { 10, 50, 100, 250, 500, 1000, 5000 };
+    
+    private final QueueingEventHandler<?> handler;
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong spillReplayedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedEventCount = new AtomicLong();
+    private final AtomicLong maxFlushTime = new AtomicLong();
+    private final AtomicLongArray flushTimeHistogram = new AtomicLongArray(FLUSH_TIME_BUCKETS.length + 1);
+    private volatile long lastFlushTime;
+
+    public QueueingEventHandlerStatistics(QueueingEventHandler<?> handler) {
+        this.handler = handler;
+    }
+
+    public void recordQueued() {
+        this.queuedCount.incrementAndGet();
+    }
+    public void recordDropped() {
+        this.droppedCount.incrementAndGet();
+    }
+    public void recordSpilled() {
+        this.spilledCount.incrementAndGet();
+    }
+    public void recordSpillReplayed(int count) {
+        this.spillReplayedCount.addAndGet(count);
+    }
+    
+    public void recordFlush(int eventCount, long flushTime) {
+        this.flushCount.incrementAndGet();
+        this.flushedEventCount.addAndGet(eventCount);
+        this.lastFlushTime = flushTime;
+        
+        long max;
+        do {
+            max = this.maxFlushTime.get();
+        } while (flushTime > max && !this.maxFlushTime.compareAndSet(max, flushTime));
+        
+        int bucket = 0;
+        while (bucket < FLUSH_TIME_BUCKETS.length && flushTime > FLUSH_TIME_BUCKETS[bucket]) {
+            bucket++;
+        }
+        this.flushTimeHistogram.incrementAndGet(bucket);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.handler.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return this.handler.getQueueCapacity();
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return String.valueOf(this.handler.getOverflowPolicy());
+    }
+
+    @Override
+    public long getQueuedCount() {
+        return this.queuedCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return this.spilledCount.get();
+    }
+
+    @Override
+    public long getSpillReplayedCount() {
+        return this.spillReplayedCount.get();
+    }
+
+    @Override
+    public long getSpillFileSize() {
+        return this.handler.getSpillFileSize();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return this.flushCount.get();
+    }
+
+    @Override
+    public long getFlushedEventCount() {
+        return this.flushedEventCount.get();
+    }
+
+    @Override
+    public int getBatchSize() {
+        return this.handler.getCurrentBatchSize();
+    }
+
+    @Override
+    public long getLastFlushTime() {
+        return this.lastFlushTime;
+    }
+
+    @Override
+    public long getMaxFlushTime() {
+        return this.maxFlushTime.get();
+    }
+
+    @Override
+    public long[] getFlushTimeHistogramBuckets() {
+        return FLUSH_TIME_BUCKETS.clone();
+    }
+
+    @Override
+    public long[] getFlushTimeHistogram() {
+        final long[] histogram = new long[this.flushTimeHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = this.flushTimeHistogram.get(i);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.handlers;
+
+/**
+ * JMX stats for {@link QueueingEventHandler}
+ */
+public interface QueueingEventHandlerStatisticsMBean {
+    
+    /**
+     * @return Number of events currently queued in memory
+     */
+    int getQueueDepth();
+    
+    /**
+     * @return Maximum number of events queued in memory, -1 if the queue is unbounded
+     */
+    int getQueueCapacity();
+    
+    /**
+     * @return Overflow policy of a bounded queue
+     */
+    String getOverflowPolicy();
+    
+    /**
+     * @return Number of events added to the in-memory queue
+     */
+    long getQueuedCount();
+    
+    /**
+     * @return Number of events discarded because the queue was full
+     */
+    long getDroppedCount();
+    
+    /**
+     * @return Number of events written to the spill file
+     */
+    long getSpilledCount();
+    
+    /**
+     * @return Number of spilled events read back from disk and flushed
+     */
+    long getSpillReplayedCount();
+    
+    /**
+     * @return Size in bytes of the events currently spilled to disk
+     */
+    long getSpillFileSize();
+    
+    /**
+     * @return Number of batches flushed
+     */
+    long getFlushCount();
+    
+    /**
+     * @return Number of events flushed
+     */
+    long getFlushedEventCount();
+    
+    /**
+     * @return Maximum number of events currently flushed per batch
+     */
+    int getBatchSize();
+    
+    /**
+     * @return Time in ms the most recent batch took to flush
+     */
+    long getLastFlushTime();
+    
+    /**
+     * @return Longest time in ms a batch has taken to flush
+     */
+    long getMaxFlushTime();
+    
+    /**
+     * @return Upper bounds in ms of the buckets in {@link #getFlushTimeHistogram()}
+     */
+    long[] getFlushTimeHistogramBuckets();
+    
+    /**
+     * @return Number of batch flushes per {@link #getFlushTimeHistogramBuckets()} bucket, the extra last entry counts
+     *      flushes that took longer than the largest bucket
+     */
+    long[] getFlushTimeHistogram();
+}
@@ -0,0 +1,32 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.handlers.db;
+
+/**
+ * Thrown by the handler passed to {@link IPortalEventDao#aggregatePortalEvents} when the aggregation run
+ * can not continue. Unlike other handler exceptions it is not treated as a failure of the current event,
+ * it is rethrown so that the transaction aggregating the events is rolled back.
+ */
+public class AggregationAbortedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public AggregationAbortedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
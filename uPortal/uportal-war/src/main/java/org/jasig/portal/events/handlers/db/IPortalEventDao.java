@@ -55,7 +55,8 @@ public interface IPortalEventDao {
      * it is marked as aggregated. To deal with memory and data access issues the results are not
      * returned but passed in order to the provided {@link Function} handler. If aggregation should stop
      * the handler should return false after processing an event. Only events processed up to that point
-     * will be marked as aggregated.
+     * will be marked as aggregated. If the handler throws an {@link AggregationAbortedException} it is
+     * rethrown, any other exception only marks the event being processed as failed.
      * 
      * @param startTime The inclusive start time to get events for
      * @param endTime The exclusive end time to get events for
@@ -77,6 +78,17 @@ public interface IPortalEventDao {
     
     /**
      * Delete events with timestamps from before the specified date (exclusive)
+     * 
+     * @deprecated Deletes every matching event in a single transaction, use {@link #deletePortalEventsBefore(DateTime, int)}
      */
+    @Deprecated
     int deletePortalEventsBefore(DateTime endTime);
+    
+    /**
+     * Delete at most <code>maxEvents</code> of the oldest events with timestamps from before the specified date
+     * (exclusive) in a single transaction
+     * 
+     * @return The number of events deleted, less than <code>maxEvents</code> once there are no more events to delete
+     */
+    int deletePortalEventsBefore(DateTime endTime, int maxEvents);
 }
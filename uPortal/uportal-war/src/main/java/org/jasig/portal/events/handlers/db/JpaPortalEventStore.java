@@ -59,6 +59,8 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
 
     private ObjectMapper mapper;
     private String deleteQuery;
+    private String selectIdsBeforeQuery;
+    private String deleteByIdsQuery;
     private String selectQuery;
     private String selectUnaggregatedQuery;
     private int flushPeriod = 1000;
@@ -66,6 +68,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
     private CriteriaQuery<DateTime> findOldestPersistentPortalEventTimestampQuery;
     private ParameterExpression<DateTime> startTimeParameter;
     private ParameterExpression<DateTime> endTimeParameter;
+    private ParameterExpression<List> idsParameter;
 
     
     @Autowired
@@ -85,6 +88,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
     public void afterPropertiesSet() throws Exception {
         this.startTimeParameter = this.createParameterExpression(DateTime.class, "startTime");
         this.endTimeParameter = this.createParameterExpression(DateTime.class, "endTime");
+        this.idsParameter = this.createParameterExpression(List.class, "ids");
         
         this.selectQuery = 
                 "SELECT e " +
@@ -106,6 +110,17 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                 "DELETE FROM " + PersistentPortalEvent.class.getName() + " e " +
         		"WHERE e." + PersistentPortalEvent_.timestamp.getName() + " < :" + this.endTimeParameter.getName();
         
+        //Oldest first so the select walks the timestamp index
+        this.selectIdsBeforeQuery = 
+                "SELECT e." + PersistentPortalEvent_.id.getName() + " " +
+                "FROM " + PersistentPortalEvent.class.getName() + " e " +
+                "WHERE e." + PersistentPortalEvent_.timestamp.getName() + " < :" + this.endTimeParameter.getName() + " " +
+                "ORDER BY e." + PersistentPortalEvent_.timestamp.getName() + " ASC";
+        
+        this.deleteByIdsQuery = 
+                "DELETE FROM " + PersistentPortalEvent.class.getName() + " e " +
+                "WHERE e." + PersistentPortalEvent_.id.getName() + " IN (:" + this.idsParameter.getName() + ")";
+        
         this.findNewestPersistentPortalEventTimestampQuery = this.createCriteriaQuery(new Function<CriteriaBuilder, CriteriaQuery<DateTime>>() {
             @Override
             public CriteriaQuery<DateTime> apply(CriteriaBuilder cb) {
@@ -232,6 +247,8 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                     session.clear();
                 }
             
+            } catch (AggregationAbortedException e) {
+                throw e;
             } catch (Exception e) {
                 this.logger.warn("Failed to aggregate portal event: " + persistentPortalEvent, e);
                 //mark the event as erred and move on. This will not be picked up by processing again
@@ -267,6 +284,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         }
     }
 
+    @Deprecated
     @Override
     @RawEventsTransactional
     public int deletePortalEventsBefore(DateTime time) {
@@ -274,6 +292,22 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         query.setParameter(this.endTimeParameter.getName(), time);
         return query.executeUpdate();
     }
+
+    @Override
+    @RawEventsTransactional
+    public int deletePortalEventsBefore(DateTime time, int maxEvents) {
+        final TypedQuery<Long> idsQuery = this.getEntityManager().createQuery(this.selectIdsBeforeQuery, Long.class);
+        idsQuery.setParameter(this.endTimeParameter.getName(), time);
+        idsQuery.setMaxResults(maxEvents);
+        final List<Long> ids = idsQuery.getResultList();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        
+        final Query deleteQuery = this.getEntityManager().createQuery(this.deleteByIdsQuery);
+        deleteQuery.setParameter(this.idsParameter.getName(), ids);
+        return deleteQuery.executeUpdate();
+    }
     
     protected PersistentPortalEvent wrapPortalEvent(PortalEvent event) {
         final String portalEventData = this.toString(event);
@@ -18,10 +18,14 @@
  */
 package org.jasig.portal.events.handlers.db;
 
+import java.io.IOException;
+
 import org.jasig.portal.events.PortalEvent;
 import org.jasig.portal.events.handlers.QueueingEventHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * Hands off queued portal events for storage by the IPortalEventDao
  * 
@@ -30,6 +34,12 @@ import org.springframework.beans.factory.annotation.Autowired;
  */
 public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<PortalEvent> {
     private IPortalEventDao portalEventDao;
+    private ObjectMapper mapper;
+    
+    @Autowired
+    public void setMapper(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
     
     /**
      * @param portalEventDao the portalEventDao to set
@@ -43,4 +53,29 @@ public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<Port
     protected void onApplicationEvents(Iterable<PortalEvent> events) {
         this.portalEventDao.storePortalEvents(events);
     }
+
+    @Override
+    protected boolean isSpillSupported() {
+        return true;
+    }
+
+    @Override
+    protected String serializeEvent(PortalEvent event) {
+        try {
+            return mapper.writeValueAsString(event);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to serialize PortalEvent data", e);
+        }
+    }
+
+    @Override
+    protected PortalEvent deserializeEvent(String data) {
+        try {
+            return mapper.readValue(data, PortalEvent.class);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to deserialize PortalEvent data", e);
+        }
+    }
 }
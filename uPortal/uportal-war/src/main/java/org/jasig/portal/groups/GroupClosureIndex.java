@@ -0,0 +1,298 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.groups;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Transitive closure of the group graph used to answer "all groups containing X" and "is X a deep member of Y"
+ * without resolving each level of parent groups through the group service.
+ * <p>
+ * Every group seen by the index is assigned a compact integer id and the ids of all of a group's ancestors are
+ * kept in a {@link BitSet}. The ancestors of a member are then its direct parents plus the union of their ancestor
+ * sets and a deep membership check is a bit test. Ancestor sets are built on first use and cached.
+ * <p>
+ * The ids are assigned per JVM so another node can't tell which of its cached sets are affected by a change. When
+ * the members of a group change the whole cache is cleared, the clear is replicated to the other nodes and the sets
+ * are rebuilt on next use. A generation counter, advanced by local and replicated clears, keeps a build that started
+ * before a clear from caching its possibly stale set.
+ */
+@Service("groupClosureIndex")
+@ManagedResource("uPortal:section=Groups,name=GroupClosureIndex")
+public class GroupClosureIndex implements GroupClosureIndexMXBean {
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, Integer> groupIds = new ConcurrentHashMap<String, Integer>();
+    private final Object groupIdLock = new Object();
+    private volatile String[] groupKeys = new String[256];
+    private int nextGroupId = 0;
+
+    private final AtomicLong ancestorSetBuilds = new AtomicLong();
+    private final AtomicLong ancestorSetBuildTime = new AtomicLong();
+    private final AtomicLong invalidatedAncestorSets = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long lastAncestorSetBuildTime;
+
+    private Ehcache ancestorCache;
+    private boolean enabled = true;
+
+    @Autowired
+    public void setAncestorCache(@Qualifier("org.jasig.portal.groups.GroupClosureIndex.ancestorCache") Ehcache ancestorCache) {
+        this.ancestorCache = ancestorCache;
+        
+        //Replicated clears from other nodes must also discard builds in progress on this node
+        this.ancestorCache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+            @Override
+            public void notifyRemoveAll(Ehcache cache) {
+                generation.incrementAndGet();
+            }
+        });
+    }
+
+    @Value("${org.jasig.portal.groups.GroupClosureIndex.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    public int getIndexedGroups() {
+        return this.groupIds.size();
+    }
+
+    @Override
+    public long getCachedAncestorSets() {
+        return this.ancestorCache.getSize();
+    }
+
+    @Override
+    public long getAncestorSetBuilds() {
+        return this.ancestorSetBuilds.get();
+    }
+
+    @Override
+    public double getAverageAncestorSetBuildTime() {
+        final long builds = this.ancestorSetBuilds.get();
+        return (builds == 0) ? 0 : this.ancestorSetBuildTime.get() / NANOS_PER_MILLI / builds;
+    }
+
+    @Override
+    public double getLastAncestorSetBuildTime() {
+        return this.lastAncestorSetBuildTime / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getInvalidatedAncestorSets() {
+        return this.invalidatedAncestorSets.get();
+    }
+
+    /**
+     * @return The keys of all groups that contain the member, directly or through other groups
+     */
+    public Set<String> getAncestorKeys(IGroupMember member) throws GroupsException {
+        final BitSet ancestors = this.getMemberAncestors(member);
+        final String[] keys = this.groupKeys;
+
+        final Set<String> ancestorKeys = new LinkedHashSet<String>(ancestors.cardinality() * 4 / 3 + 1);
+        for (int id = ancestors.nextSetBit(0); id >= 0; id = ancestors.nextSetBit(id + 1)) {
+            ancestorKeys.add(keys[id]);
+        }
+        return ancestorKeys;
+    }
+
+    /**
+     * @return true if the member is contained by the group, directly or through other groups
+     */
+    public boolean isDeepMemberOf(IGroupMember member, IGroupMember group) throws GroupsException {
+        final BitSet ancestors = this.getMemberAncestors(member);
+
+        //Building the ancestors assigns an id to every ancestor group, no id means it is not an ancestor
+        final Integer groupId = this.groupIds.get(group.getEntityIdentifier().getKey());
+        return groupId != null && ancestors.get(groupId);
+    }
+
+    /**
+     * Drop the cached ancestors of every group on every node, call when the groups that directly contain the group
+     * change. The ancestor sets of the group and of every group below it are stale and the other nodes can't
+     * resolve which of their sets those are so the whole cache is cleared.
+     */
+    public void invalidate(String groupKey) {
+        final int invalidated = this.ancestorCache.getSize();
+        
+        this.generation.incrementAndGet();
+        this.ancestorCache.removeAll();
+
+        this.invalidatedAncestorSets.addAndGet(invalidated);
+        this.logger.debug("Invalidated {} ancestor sets for change to group {}", invalidated, groupKey);
+    }
+
+    /**
+     * Drop the cached ancestors if any of the members is a group, call once the containing groups the members
+     * report have been updated. A lookup made between the store change and that update may have cached the
+     * ancestors the members had before the change.
+     */
+    public void invalidateMembers(Collection<? extends IGroupMember> members) {
+        for (final IGroupMember member : members) {
+            if (member.isGroup()) {
+                //Every ancestor set is dropped, one invalidation covers all of the members
+                this.invalidate(member.getEntityIdentifier().getKey());
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The ids of the member's direct parents and all of their ancestors, must not be modified
+     */
+    protected BitSet getMemberAncestors(IGroupMember member) throws GroupsException {
+        if (member.isGroup()) {
+            return this.getGroupAncestors(member);
+        }
+
+        //Entities are not indexed, their ancestors are the union of their parent's ancestors
+        final BitSet ancestors = new BitSet();
+        for (final Iterator<?> parentItr = member.getContainingGroups(); parentItr.hasNext();) {
+            final IEntityGroup parent = (IEntityGroup) parentItr.next();
+            if (parent != null) {
+                ancestors.set(this.getGroupId(parent.getEntityIdentifier().getKey()));
+                ancestors.or(this.getGroupAncestors(parent));
+            }
+        }
+        return ancestors;
+    }
+
+    /**
+     * @return The cached ancestor set of the group, built and cached if needed, must not be modified
+     */
+    protected BitSet getGroupAncestors(IGroupMember group) throws GroupsException {
+        final String groupKey = group.getEntityIdentifier().getKey();
+        final Element element = this.ancestorCache.get(groupKey);
+        if (element != null) {
+            return (BitSet) element.getObjectValue();
+        }
+
+        final long start = System.nanoTime();
+        final long buildGeneration = this.generation.get();
+
+        /*
+         * Walk up the graph breadth first, parents that already have a cached ancestor set contribute it and are
+         * not walked. Only the requested group's set is cached, sets for intermediate groups would be incomplete
+         * if the graph contains a cycle.
+         */
+        final BitSet ancestors = new BitSet();
+        final Deque<IGroupMember> toVisit = new ArrayDeque<IGroupMember>();
+        toVisit.add(group);
+        while (!toVisit.isEmpty()) {
+            final IGroupMember member = toVisit.poll();
+            for (final Iterator<?> parentItr = member.getContainingGroups(); parentItr.hasNext();) {
+                final IEntityGroup parent = (IEntityGroup) parentItr.next();
+                if (parent == null) {
+                    continue;
+                }
+
+                final String parentKey = parent.getEntityIdentifier().getKey();
+                final int parentId = this.getGroupId(parentKey);
+                if (ancestors.get(parentId)) {
+                    continue;
+                }
+                ancestors.set(parentId);
+
+                final Element parentElement = this.ancestorCache.getQuiet(parentKey);
+                if (parentElement != null) {
+                    ancestors.or((BitSet) parentElement.getObjectValue());
+                }
+                else {
+                    toVisit.add(parent);
+                }
+            }
+        }
+
+        //Don't cache a set built from group data read before an invalidation, the invalidation may also happen
+        //while the set is being put so check again once it is in the cache
+        if (this.generation.get() == buildGeneration) {
+            this.ancestorCache.put(new Element(groupKey, ancestors));
+            if (this.generation.get() != buildGeneration) {
+                this.ancestorCache.remove(groupKey, true);
+            }
+        }
+
+        final long duration = System.nanoTime() - start;
+        this.ancestorSetBuilds.incrementAndGet();
+        this.ancestorSetBuildTime.addAndGet(duration);
+        this.lastAncestorSetBuildTime = duration;
+
+        return ancestors;
+    }
+
+    /**
+     * @return The compact id for the group, assigned the first time the group is seen
+     */
+    protected int getGroupId(String groupKey) {
+        final Integer groupId = this.groupIds.get(groupKey);
+        if (groupId != null) {
+            return groupId;
+        }
+
+        synchronized (this.groupIdLock) {
+            final Integer existingId = this.groupIds.get(groupKey);
+            if (existingId != null) {
+                return existingId;
+            }
+
+            final int newId = this.nextGroupId++;
+            String[] keys = this.groupKeys;
+            if (newId >= keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            keys[newId] = groupKey;
+            this.groupKeys = keys;
+            this.groupIds.put(groupKey, newId);
+            return newId;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.groups;
+
+/**
+ * Size and build statistics for the {@link GroupClosureIndex}
+ */
+public interface GroupClosureIndexMXBean {
+
+    /**
+     * @return If the index is used for ancestor and deep membership queries
+     */
+    boolean isEnabled();
+
+    /**
+     * @return Number of groups that have been assigned an id in the index
+     */
+    int getIndexedGroups();
+
+    /**
+     * @return Number of group ancestor sets currently cached
+     */
+    long getCachedAncestorSets();
+
+    /**
+     * @return Number of group ancestor sets built since startup
+     */
+    long getAncestorSetBuilds();
+
+    /**
+     * @return Average time in milliseconds to build a group's ancestor set
+     */
+    double getAverageAncestorSetBuildTime();
+
+    /**
+     * @return Time in milliseconds the last group ancestor set took to build
+     */
+    double getLastAncestorSetBuildTime();
+
+    /**
+     * @return Number of ancestor sets dropped due to group membership changes
+     */
+    long getInvalidatedAncestorSets();
+}
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.jasig.portal.EntityIdentifier;
 import org.jasig.portal.services.GroupService;
+import org.jasig.portal.spring.locator.GroupClosureIndexLocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -138,7 +139,19 @@ public boolean deepContains(IGroupMember gm) throws GroupsException
  */
 public java.util.Iterator getAllContainingGroups() throws GroupsException
 {
-    return primGetAllContainingGroups(this, new HashSet()).iterator();
+    final GroupClosureIndex closureIndex = getGroupClosureIndex();
+    if ( closureIndex == null )
+        { return primGetAllContainingGroups(this, new HashSet()).iterator(); }
+
+    Set groupKeys = closureIndex.getAncestorKeys(this);
+    Collection groupsColl = new ArrayList(groupKeys.size());
+    for (Iterator itr = groupKeys.iterator(); itr.hasNext(); )
+    {
+        IEntityGroup group = getCompositeGroupService().findGroup((String) itr.next());
+        if ( group != null )
+            { groupsColl.add(group); }
+    }
+    return groupsColl.iterator();
 }
 
 /**
@@ -170,6 +183,15 @@ protected ICompositeGroupService getCompositeGroupService() throws GroupsExcepti
 {
     return GroupService.getCompositeGroupService();
 }
+/**
+ * Returns the group closure index if it is enabled.
+ * @return org.jasig.portal.groups.GroupClosureIndex or null
+ */
+protected GroupClosureIndex getGroupClosureIndex()
+{
+    final GroupClosureIndex closureIndex = GroupClosureIndexLocator.getGroupClosureIndex();
+    return closureIndex.isEnabled() ? closureIndex : null;
+}
 /**
  * Returns an <code>Iterator</code> over this <code>IGroupMember's</code> parent groups.
  * Synchronize the collection of keys with adds and removes.
@@ -299,6 +321,12 @@ public boolean isDeepMemberOf(IGroupMember gm) throws GroupsException {
 
     if ( this.isMemberOf(gm) )
         { return true; }
+    if ( gm.isGroup() )
+    {
+        final GroupClosureIndex closureIndex = getGroupClosureIndex();
+        if ( closureIndex != null )
+            { return closureIndex.isDeepMemberOf(this, gm); }
+    }
     return gm.deepContains( this );
 }
 /**
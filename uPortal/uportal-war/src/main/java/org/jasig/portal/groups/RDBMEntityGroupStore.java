@@ -35,6 +35,7 @@ import org.jasig.portal.EntityTypes;
 import org.jasig.portal.RDBMServices;
 import org.jasig.portal.services.GroupService;
 import org.jasig.portal.spring.locator.CounterStoreLocator;
+import org.jasig.portal.spring.locator.GroupClosureIndexLocator;
 import org.jasig.portal.utils.SqlTransaction;
 
 /**
@@ -283,6 +284,8 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
             { primDelete(group); }
             catch (SQLException sqle)
             { throw new GroupsException("Problem deleting " + group, sqle); }
+
+            GroupClosureIndexLocator.getGroupClosureIndex().invalidate(group.getEntityIdentifier().getKey());
         }
     }
 
@@ -1688,6 +1691,7 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
                 {
                     primUpdateMembers(egi, conn);
                     commit(conn);
+                    invalidateGroupClosures(egi);
                 }
                 catch ( SQLException sqle )
                 {
@@ -1713,6 +1717,28 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
             }
     }
 
+    /**
+     * Drop the cached ancestors of the member groups added to or removed from the group.
+     * Must be called before the group clears its added and removed members.
+     * @param egi org.jasig.portal.groups.EntityGroupImpl
+     */
+    private void invalidateGroupClosures(EntityGroupImpl egi)
+    {
+        final GroupClosureIndex closureIndex = GroupClosureIndexLocator.getGroupClosureIndex();
+        invalidateGroupClosures(closureIndex, egi.getAddedMembers().values());
+        invalidateGroupClosures(closureIndex, egi.getRemovedMembers().values());
+    }
+
+    private void invalidateGroupClosures(GroupClosureIndex closureIndex, Collection members)
+    {
+        for (Iterator itr = members.iterator(); itr.hasNext(); )
+        {
+            IGroupMember gm = (IGroupMember) itr.next();
+            if ( gm.isGroup() )
+                { closureIndex.invalidate(gm.getEntityIdentifier().getKey()); }
+        }
+    }
+
     private static final void close(final Statement statement) {
         if (statement != null) {
             try {
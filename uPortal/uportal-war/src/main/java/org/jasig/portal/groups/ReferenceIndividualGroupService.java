@@ -33,7 +33,13 @@ import org.jasig.portal.concurrency.IEntityLock;
 import org.jasig.portal.concurrency.LockingException;
 import org.jasig.portal.services.EntityCachingService;
 import org.jasig.portal.services.EntityLockService;
+import org.jasig.portal.security.IAuthorizationService;
+import org.jasig.portal.security.provider.AnyUnblockedGrantPermissionPolicy;
 import org.jasig.portal.services.GroupService;
+import org.jasig.portal.spring.locator.ApplicationContextLocator;
+import org.jasig.portal.spring.locator.AuthorizationServiceLocator;
+import org.jasig.portal.spring.locator.GroupClosureIndexLocator;
+import org.jasig.portal.utils.cache.TaggedCacheEntryPurger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -829,12 +835,15 @@ throws GroupsException
     EntityGroupImpl egi = (EntityGroupImpl) group;
     GroupMemberImpl gmi = null;
 
+    List<IGroupMember> changedMembers = new ArrayList<IGroupMember>();
+
     for (Iterator it=egi.getAddedMembers().values().iterator(); it.hasNext();)
     {
         gmi = (GroupMemberImpl) it.next();
         gmi.addGroup(egi);
         if ( cacheInUse() )
            { cacheUpdate(gmi); }
+        changedMembers.add(gmi);
     }
 
     for (Iterator it=egi.getRemovedMembers().values().iterator(); it.hasNext();)
@@ -843,7 +852,39 @@ throws GroupsException
         gmi.removeGroup(egi);
         if ( cacheInUse() )
            { cacheUpdate(gmi); }
+        changedMembers.add(gmi);
+    }
+
+    // The store dropped the cached ancestor sets when it committed the change, a
+    // lookup made before the members were updated above may have cached them again.
+    GroupClosureIndexLocator.getGroupClosureIndex().invalidateMembers(changedMembers);
+    purgePermissionDecisions(changedMembers);
+}
+
+/**
+ * Purges cached permission decisions, such as the principal indexes built by
+ * <code>AnyUnblockedGrantPermissionPolicy</code>, that depend on the containing
+ * groups of the members.
+ * @param members the members whose containing groups changed
+ */
+protected void purgePermissionDecisions(List<IGroupMember> members)
+{
+    if ( members.isEmpty() )
+        { return; }
+
+    try
+    {
+        TaggedCacheEntryPurger purger = ApplicationContextLocator.getApplicationContext()
+                .getBean(TaggedCacheEntryPurger.class);
+        IAuthorizationService authorizationService = AuthorizationServiceLocator.getAuthorizationService();
+        for (IGroupMember member : members)
+        {
+            String principalString = authorizationService.newPrincipal(member).getPrincipalString();
+            purger.purgeCacheEntries(AnyUnblockedGrantPermissionPolicy.createPrincipalCacheEntryTag(principalString));
+        }
     }
+    catch (Exception e)
+        { log.warn("Failed to purge cached permission decisions for updated group members " + members, e); }
 }
 
 /**
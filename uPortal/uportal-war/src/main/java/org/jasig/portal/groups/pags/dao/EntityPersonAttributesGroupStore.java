@@ -18,12 +18,12 @@
  */
 package org.jasig.portal.groups.pags.dao;
 
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import net.sf.ehcache.Cache;
@@ -64,20 +64,30 @@ import org.springframework.context.ApplicationContext;
  * @since 4.1
  */
 public class EntityPersonAttributesGroupStore implements IEntityGroupStore, IEntityStore, IEntitySearcher {
+    /**
+     * Caches derived from the PAGS group definitions, must be cleared when a definition changes
+     */
+    public static final String GROUP_DEF_CACHE_NAME = "org.jasig.portal.groups.pags.dao.EntityPersonAttributesGroupStore";
+    public static final String MEMBERSHIP_CACHE_NAME = "org.jasig.portal.groups.pags.dao.EntityPersonAttributesGroupStore.membership";
+    public static final String MEMBERSHIP_INDEX_CACHE_NAME = "org.jasig.portal.groups.pags.dao.EntityPersonAttributesGroupStore.membershipIndex";
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
     private static final Class<IPerson> IPERSON_CLASS = IPerson.class;
     private static final EntityIdentifier[] EMPTY_SEARCH_RESULTS = new EntityIdentifier[0];
+    private static final String MEMBERSHIP_INDEX_KEY = "membershipIndex";
     private IPersonAttributesGroupDefinitionDao personAttributesGroupDefinitionDao;
     private final Cache groupDefCache;
     private final Cache membershipCache;
+    private final Cache membershipIndexCache;
 
     public EntityPersonAttributesGroupStore() {
         super();
         ApplicationContext applicationContext = ApplicationContextLocator.getApplicationContext();
         this.personAttributesGroupDefinitionDao = applicationContext.getBean("personAttributesGroupDefinitionDao", IPersonAttributesGroupDefinitionDao.class);
         CacheManager cacheManager = applicationContext.getBean("cacheManager", CacheManager.class);
-        this.groupDefCache = cacheManager.getCache("org.jasig.portal.groups.pags.dao.EntityPersonAttributesGroupStore");
-        this.membershipCache = cacheManager.getCache("org.jasig.portal.groups.pags.dao.EntityPersonAttributesGroupStore.membership");
+        this.groupDefCache = cacheManager.getCache(GROUP_DEF_CACHE_NAME);
+        this.membershipCache = cacheManager.getCache(MEMBERSHIP_CACHE_NAME);
+        this.membershipIndexCache = cacheManager.getCache(MEMBERSHIP_INDEX_CACHE_NAME);
     }
 
     public boolean contains(IEntityGroup group, IGroupMember member) {
@@ -89,8 +99,8 @@ public class EntityPersonAttributesGroupStore implements IEntityGroupStore, IEnt
             logger.debug("Checking if group {} contains member {}/{}", group.getName(), member.getKey(), member.getEntityType().getSimpleName());
 
             boolean answer = false;  // default
-            final PagsGroup groupDef = convertEntityToGroupDef(group);
             if (member.isGroup()) {
+               final PagsGroup groupDef = convertEntityToGroupDef(group);
                final String key = ((IEntityGroup) member).getLocalKey();
                answer = groupDef.hasMember(key);
             } else {
@@ -98,13 +108,9 @@ public class EntityPersonAttributesGroupStore implements IEntityGroupStore, IEnt
                    answer = false;
                } else {
                    try {
-                       final IPersonAttributeDao pa = PersonAttributeDaoLocator.getPersonAttributeDao();
-                       final IPersonAttributes personAttributes = pa.getPerson(member.getKey());
-
-                       if (personAttributes != null) {
-                           final RestrictedPerson rp = PersonFactory.createRestrictedPerson();
-                           rp.setAttributes(personAttributes.getAttributes());
-                           answer = testRecursively(groupDef, rp, member);
+                       final IPerson person = getPersonForMember(member);
+                       if (person != null) {
+                           answer = getMembershipIndex().isMember(group.getName(), person);
                        }
                    } catch (Exception ex) {
                        logger.error("Exception acquiring attributes for member " + member + " while checking if group " + group + " contains this member.", ex);
@@ -153,45 +159,6 @@ public class EntityPersonAttributesGroupStore implements IEntityGroupStore, IEnt
         return group;
     }
 
-    private boolean testRecursively(PagsGroup groupDef, IPerson person, IGroupMember member)
-        throws GroupsException {
-            if ( ! groupDef.contains(person) )
-                { return false;}
-            else
-            {
-                IEntityGroup group = find(groupDef.getName());
-                IEntityGroup parentGroup = null;
-                Set<IEntityGroup> allParents = primGetAllContainingGroups(group, new HashSet<IEntityGroup>());
-                boolean testPassed = true;
-                for (Iterator<IEntityGroup> i=allParents.iterator(); i.hasNext() && testPassed;)
-                {
-                    parentGroup = i.next();
-                    PagsGroup parentGroupDef = (PagsGroup) convertEntityToGroupDef(parentGroup);
-                    testPassed = parentGroupDef.test(person);
-                }
-
-                if (!testPassed && logger.isWarnEnabled()) {
-                    logger.warn("PAGS group {} contained person {}, but the person failed to be contained in"
-                            + " ancesters of this group ({}). This may indicate a misconfigured PAGS group store."
-                            +" Please check PAGS Entity Files", group.getKey(), member.getKey(),
-                            parentGroup != null ? parentGroup.getKey() : "no parent");
-                }
-                return testPassed;
-            }
-        }
-    private java.util.Set<IEntityGroup> primGetAllContainingGroups(IEntityGroup group, Set<IEntityGroup> s)
-            throws GroupsException
-            {
-                Iterator<IEntityGroup> i = findContainingGroups(group);
-                while ( i.hasNext() )
-                {
-                    IEntityGroup parentGroup = i.next();
-                    s.add(parentGroup);
-                    primGetAllContainingGroups(parentGroup, s);
-                }
-                return s;
-            }
-
     public Iterator<IEntityGroup> findContainingGroups(IGroupMember member)
     throws GroupsException
     {
@@ -209,16 +176,71 @@ public class EntityPersonAttributesGroupStore implements IEntityGroupStore, IEnt
 
     private Iterator<IEntityGroup> findContainingGroupsForEntity(IEntity member)
     throws GroupsException {
-        Set<IPersonAttributesGroupDefinition> pagsGroups = personAttributesGroupDefinitionDao.getPersonAttributesGroupDefinitions();
-        List<IEntityGroup> results = new ArrayList<IEntityGroup>();
-        for (IPersonAttributesGroupDefinition pagsGroup : pagsGroups) {
-            IEntityGroup group = convertPagsGroupToEntity(pagsGroup);
-            if ( contains(group, member))
-                { results.add(group); }
+        if (member.getEntityType() != IPERSON_CLASS) {
+            return Collections.<IEntityGroup>emptyList().iterator();
+        }
+
+        final ContainingGroupsCacheKey cacheKey = new ContainingGroupsCacheKey(member.getEntityIdentifier());
+        Element element = membershipCache.get(cacheKey);
+        if (element == null) {
+            Map<String, String> containingGroups = Collections.emptyMap();
+            try {
+                final IPerson person = getPersonForMember(member);
+                if (person != null) {
+                    containingGroups = getMembershipIndex().getContainingGroups(person);
+                }
+            } catch (Exception ex) {
+                logger.error("Exception acquiring attributes for member " + member + " while finding its containing groups.", ex);
+                return Collections.<IEntityGroup>emptyList().iterator();
+            }
+
+            element = new Element(cacheKey, containingGroups);
+            membershipCache.put(element);
+        }
+
+        @SuppressWarnings("unchecked")
+        final Map<String, String> containingGroups = (Map<String, String>) element.getObjectValue();
+        final List<IEntityGroup> results = new ArrayList<IEntityGroup>(containingGroups.size());
+        for (final Map.Entry<String, String> containingGroup : containingGroups.entrySet()) {
+            final IEntityGroup entityGroup = new EntityTestingGroupImpl(containingGroup.getKey(), IPERSON_CLASS);
+            entityGroup.setName(containingGroup.getKey());
+            entityGroup.setDescription(containingGroup.getValue());
+            results.add(entityGroup);
         }
         return results.iterator();
     }
 
+    /**
+     * Load the attributes for a person member, null if the person directory has no attributes for the member
+     */
+    private IPerson getPersonForMember(IGroupMember member) {
+        final IPersonAttributeDao pa = PersonAttributeDaoLocator.getPersonAttributeDao();
+        final IPersonAttributes personAttributes = pa.getPerson(member.getKey());
+        if (personAttributes == null) {
+            return null;
+        }
+
+        final RestrictedPerson rp = PersonFactory.createRestrictedPerson();
+        rp.setAttributes(personAttributes.getAttributes());
+        return rp;
+    }
+
+    /**
+     * Get the compiled index of all PAGS group definitions, compiling it if it is not cached
+     */
+    private PagsMembershipIndex getMembershipIndex() {
+        Element element = this.membershipIndexCache.get(MEMBERSHIP_INDEX_KEY);
+        if (element == null) {
+            final Set<IPersonAttributesGroupDefinition> pagsGroups = personAttributesGroupDefinitionDao.getPersonAttributesGroupDefinitions();
+            final PagsMembershipIndex membershipIndex = PagsMembershipIndex.compile(pagsGroups);
+            logger.debug("Compiled PAGS membership index of {} groups and {} testers", membershipIndex.getGroupCount(), membershipIndex.getTesterCount());
+
+            element = new Element(MEMBERSHIP_INDEX_KEY, membershipIndex);
+            this.membershipIndexCache.put(element);
+        }
+        return (PagsMembershipIndex) element.getObjectValue();
+    }
+
     public Iterator<IEntityGroup> findEntitiesForGroup(IEntityGroup group) throws GroupsException {
         return Collections.EMPTY_LIST.iterator();
     }
@@ -362,16 +384,8 @@ public class EntityPersonAttributesGroupStore implements IEntityGroupStore, IEnt
     }
 
     private IPersonTester initializeTester(IPersonAttributesGroupTestDefinition test) {
-        try {
-            Class<?> testerClass = Class.forName(test.getTesterClassName());
-            Constructor<?> c = testerClass.getConstructor(IPersonAttributesGroupTestDefinition.class);
-            Object o = c.newInstance(test);
-            return (IPersonTester) o;
-        } catch (Exception e) {
-            logger.error("Error in initializing tester class: {}", test.getTesterClassName(), e);
-            return null;
-        }
-   }
+        return PagsMembershipIndex.createTester(test);
+    }
 
     private Set<IEntityGroup> getContainingGroups(String name, Set<IEntityGroup> groups) throws GroupsException {
         logger.debug("Looking up containing groups for {}", name);
@@ -449,4 +463,29 @@ public class EntityPersonAttributesGroupStore implements IEntityGroupStore, IEnt
         }
     }
 
+
+    private static final class ContainingGroupsCacheKey {
+        private final EntityIdentifier memberId;
+        public ContainingGroupsCacheKey(final EntityIdentifier memberId) {
+            this.memberId = memberId;
+        }
+        @Override
+        public int hashCode() {
+            return 31 + ((memberId == null) ? 0 : memberId.hashCode());
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            ContainingGroupsCacheKey other = (ContainingGroupsCacheKey) obj;
+            if (memberId == null) {
+                return other.memberId == null;
+            }
+            return memberId.equals(other.memberId);
+        }
+    }
 }
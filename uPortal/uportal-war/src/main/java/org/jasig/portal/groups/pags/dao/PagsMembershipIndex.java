@@ -0,0 +1,302 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.groups.pags.dao;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jasig.portal.groups.pags.IPersonTester;
+import org.jasig.portal.security.IPerson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiled form of all PAGS group definitions used to determine every group a person is a member of in
+ * a single pass.
+ * <p>
+ * Testers are shared across groups: every distinct tester class, attribute and test value combination is
+ * instantiated once and evaluated at most once per person no matter how many groups use it. Group results
+ * are also memoized so the ancestor checks of one group reuse the results computed for other groups.
+ * <p>
+ * A person is a member of a group if any of the group's test groups passes, and every ancestor of the group
+ * either has no test groups or has a passing test group. Groups with a tester that cannot be created and
+ * groups that are their own ancestor never contain anyone.
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ */
+final class PagsMembershipIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PagsMembershipIndex.class);
+
+    private static final byte UNKNOWN = 0;
+    private static final byte PASSED = 1;
+    private static final byte FAILED = 2;
+
+    private final List<CompiledGroup> groups;
+    private final Map<String, CompiledGroup> groupsByName;
+    private final IPersonTester[] testers;
+
+    private PagsMembershipIndex(List<CompiledGroup> groups, Map<String, CompiledGroup> groupsByName, IPersonTester[] testers) {
+        this.groups = groups;
+        this.groupsByName = groupsByName;
+        this.testers = testers;
+    }
+
+    /**
+     * Compile the group definitions into an index
+     */
+    public static PagsMembershipIndex compile(Set<IPersonAttributesGroupDefinition> definitions) {
+        final Map<String, Integer> testerIndexes = new HashMap<String, Integer>();
+        final List<IPersonTester> testers = new ArrayList<IPersonTester>();
+
+        //Compile the test groups of each group and build the child to parents mapping
+        final Map<String, CompiledGroup> groupsByName = new LinkedHashMap<String, CompiledGroup>();
+        final Map<String, Set<String>> parentNames = new HashMap<String, Set<String>>();
+        for (final IPersonAttributesGroupDefinition definition : definitions) {
+            final String name = definition.getName();
+            if (groupsByName.containsKey(name)) {
+                LOGGER.error("More than one PAGS group with name {} found.", name);
+                continue;
+            }
+
+            boolean valid = true;
+            final List<int[]> testGroups = new ArrayList<int[]>();
+            for (final IPersonAttributesGroupTestGroupDefinition testGroup : definition.getTestGroups()) {
+                final Set<IPersonAttributesGroupTestDefinition> tests = testGroup.getTests();
+                final int[] testGroupTesters = new int[tests.size()];
+                int i = 0;
+                for (final IPersonAttributesGroupTestDefinition test : tests) {
+                    final String testerKey = test.getTesterClassName() + '\u0000' + test.getAttributeName() + '\u0000' + test.getTestValue();
+                    Integer testerIndex = testerIndexes.get(testerKey);
+                    if (testerIndex == null) {
+                        final IPersonTester tester = createTester(test);
+                        if (tester == null) {
+                            /*
+                             * Tests in PAGS are "or-ed" together, a group with a missing test
+                             * would have a wider membership so it is kept out of the mix.
+                             */
+                            valid = false;
+                            break;
+                        }
+                        testerIndex = testers.size();
+                        testers.add(tester);
+                        testerIndexes.put(testerKey, testerIndex);
+                    }
+                    testGroupTesters[i++] = testerIndex;
+                }
+                testGroups.add(testGroupTesters);
+            }
+
+            groupsByName.put(name, new CompiledGroup(name, definition.getDescription(), valid, testGroups.toArray(new int[testGroups.size()][])));
+
+            for (final IPersonAttributesGroupDefinition member : definition.getMembers()) {
+                Set<String> parents = parentNames.get(member.getName());
+                if (parents == null) {
+                    parents = new HashSet<String>();
+                    parentNames.put(member.getName(), parents);
+                }
+                parents.add(name);
+            }
+        }
+
+        //Resolve the transitive ancestors of each group
+        for (final CompiledGroup group : groupsByName.values()) {
+            final Set<String> ancestorNames = new HashSet<String>();
+            if (!collectAncestors(group.name, group.name, parentNames, ancestorNames)) {
+                LOGGER.error("Recursive grouping detected for PAGS group {}, it will not contain any members", group.name);
+                group.valid = false;
+            }
+
+            final List<CompiledGroup> ancestors = new ArrayList<CompiledGroup>(ancestorNames.size());
+            for (final String ancestorName : ancestorNames) {
+                final CompiledGroup ancestor = groupsByName.get(ancestorName);
+                if (ancestor != null) {
+                    ancestors.add(ancestor);
+                }
+            }
+            group.ancestors = ancestors.toArray(new CompiledGroup[ancestors.size()]);
+        }
+
+        LOGGER.debug("Compiled {} PAGS groups using {} distinct testers", groupsByName.size(), testers.size());
+
+        return new PagsMembershipIndex(
+                Collections.unmodifiableList(new ArrayList<CompiledGroup>(groupsByName.values())),
+                Collections.unmodifiableMap(groupsByName),
+                testers.toArray(new IPersonTester[testers.size()]));
+    }
+
+    /**
+     * @return false if the group is its own ancestor
+     */
+    private static boolean collectAncestors(String groupName, String name, Map<String, Set<String>> parentNames, Set<String> ancestors) {
+        final Set<String> parents = parentNames.get(name);
+        if (parents == null) {
+            return true;
+        }
+
+        for (final String parent : parents) {
+            if (parent.equals(groupName)) {
+                return false;
+            }
+            if (ancestors.add(parent) && !collectAncestors(groupName, parent, parentNames, ancestors)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create the tester for a test definition, null if it cannot be created
+     */
+    static IPersonTester createTester(IPersonAttributesGroupTestDefinition test) {
+        try {
+            Class<?> testerClass = Class.forName(test.getTesterClassName());
+            Constructor<?> c = testerClass.getConstructor(IPersonAttributesGroupTestDefinition.class);
+            Object o = c.newInstance(test);
+            return (IPersonTester) o;
+        } catch (Exception e) {
+            LOGGER.error("Error in initializing tester class: {}", test.getTesterClassName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return Number of groups in the index
+     */
+    public int getGroupCount() {
+        return this.groups.size();
+    }
+
+    /**
+     * @return Number of distinct testers shared by the groups in the index
+     */
+    public int getTesterCount() {
+        return this.testers.length;
+    }
+
+    /**
+     * @return The names and descriptions of all groups that contain the person
+     */
+    public Map<String, String> getContainingGroups(IPerson person) {
+        final Evaluation evaluation = new Evaluation(person);
+
+        final Map<String, String> containingGroups = new LinkedHashMap<String, String>();
+        for (final CompiledGroup group : this.groups) {
+            if (evaluation.isMember(group)) {
+                containingGroups.put(group.name, group.description);
+            }
+        }
+        return containingGroups;
+    }
+
+    /**
+     * @return true if the named group contains the person, false if it does not or the group is not in the index
+     */
+    public boolean isMember(String groupName, IPerson person) {
+        final CompiledGroup group = this.groupsByName.get(groupName);
+        if (group == null) {
+            return false;
+        }
+        return new Evaluation(person).isMember(group);
+    }
+
+    /**
+     * Memoized tester and group results for one person
+     */
+    private final class Evaluation {
+        private final IPerson person;
+        private final byte[] testerResults = new byte[testers.length];
+        private final Map<CompiledGroup, Boolean> groupResults = new HashMap<CompiledGroup, Boolean>();
+
+        public Evaluation(IPerson person) {
+            this.person = person;
+        }
+
+        public boolean isMember(CompiledGroup group) {
+            if (!group.valid || group.testGroups.length == 0 || !this.test(group)) {
+                return false;
+            }
+
+            for (final CompiledGroup ancestor : group.ancestors) {
+                if (!ancestor.valid || (ancestor.testGroups.length > 0 && !this.test(ancestor))) {
+                    LOGGER.debug("PAGS group {} contained person {}, but the person failed to be contained in ancestor {}", group.name, this.person, ancestor.name);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if any of the group's test groups pass
+         */
+        private boolean test(CompiledGroup group) {
+            Boolean result = this.groupResults.get(group);
+            if (result == null) {
+                result = false;
+                for (final int[] testGroup : group.testGroups) {
+                    if (this.testAll(testGroup)) {
+                        result = true;
+                        break;
+                    }
+                }
+                this.groupResults.put(group, result);
+            }
+            return result;
+        }
+
+        /**
+         * @return true if all of the testers pass
+         */
+        private boolean testAll(int[] testGroup) {
+            for (final int testerIndex : testGroup) {
+                byte result = this.testerResults[testerIndex];
+                if (result == UNKNOWN) {
+                    result = testers[testerIndex].test(this.person) ? PASSED : FAILED;
+                    this.testerResults[testerIndex] = result;
+                }
+                if (result == FAILED) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class CompiledGroup {
+        private final String name;
+        private final String description;
+        private final int[][] testGroups;
+        //Only modified during compile
+        private boolean valid;
+        private CompiledGroup[] ancestors;
+
+        public CompiledGroup(String name, String description, boolean valid, int[][] testGroups) {
+            this.name = name;
+            this.description = description;
+            this.valid = valid;
+            this.testGroups = testGroups;
+        }
+    }
+}
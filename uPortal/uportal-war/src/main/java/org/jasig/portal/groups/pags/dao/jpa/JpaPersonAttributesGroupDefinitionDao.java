@@ -32,11 +32,17 @@ import javax.persistence.criteria.Root;
 
 import com.google.common.base.Function;
 
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
 import org.apache.commons.lang.Validate;
+import org.jasig.portal.groups.pags.dao.EntityPersonAttributesGroupStore;
 import org.jasig.portal.groups.pags.dao.IPersonAttributesGroupDefinition;
 import org.jasig.portal.groups.pags.dao.IPersonAttributesGroupDefinitionDao;
 import org.jasig.portal.jpa.BasePortalJpaDao;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * @author Shawn Connolly, sconnolly@unicon.net
@@ -48,6 +54,12 @@ public class JpaPersonAttributesGroupDefinitionDao extends BasePortalJpaDao impl
     private CriteriaQuery<PersonAttributesGroupDefinitionImpl> groupDefinitionByNameQuery;
     private CriteriaQuery<PersonAttributesGroupDefinitionImpl> parentGroupDefinitionsQuery;
     private ParameterExpression<String> nameParameter;
+    private CacheManager cacheManager;
+
+    @Autowired
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
 
     @Override
     public void afterPropertiesSet() throws Exception {
@@ -99,6 +111,7 @@ public class JpaPersonAttributesGroupDefinitionDao extends BasePortalJpaDao impl
         }
 
         this.getEntityManager().persist(persistentDefinition);
+        this.invalidateGroupStoreCaches();
         return persistentDefinition;
     }
 
@@ -115,6 +128,7 @@ public class JpaPersonAttributesGroupDefinitionDao extends BasePortalJpaDao impl
             persistentDefinition = entityManager.merge(definition);
         }
         entityManager.remove(persistentDefinition);
+        this.invalidateGroupStoreCaches();
     }
 
     @PortalTransactionalReadOnly
@@ -152,7 +166,43 @@ public class JpaPersonAttributesGroupDefinitionDao extends BasePortalJpaDao impl
         final IPersonAttributesGroupDefinition personAttributesGroupDefinition = new PersonAttributesGroupDefinitionImpl(name, description);
 
         this.getEntityManager().persist(personAttributesGroupDefinition);
+        this.invalidateGroupStoreCaches();
         return personAttributesGroupDefinition;
     }
 
+    /**
+     * Clear the group definitions, memberships and compiled membership index cached by
+     * {@link EntityPersonAttributesGroupStore}. The caches are cleared immediately and again once the
+     * transaction commits so that a concurrent request cannot re-cache the definitions as they were
+     * before the change.
+     */
+    protected void invalidateGroupStoreCaches() {
+        this.clearGroupStoreCaches();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    clearGroupStoreCaches();
+                }
+            });
+        }
+    }
+
+    private void clearGroupStoreCaches() {
+        if (this.cacheManager == null) {
+            return;
+        }
+
+        for (final String cacheName : new String[] {
+                EntityPersonAttributesGroupStore.MEMBERSHIP_INDEX_CACHE_NAME,
+                EntityPersonAttributesGroupStore.GROUP_DEF_CACHE_NAME,
+                EntityPersonAttributesGroupStore.MEMBERSHIP_CACHE_NAME }) {
+
+            final Ehcache cache = this.cacheManager.getEhcache(cacheName);
+            if (cache != null) {
+                cache.removeAll();
+            }
+        }
+    }
 }
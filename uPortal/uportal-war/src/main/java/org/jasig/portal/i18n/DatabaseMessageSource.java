@@ -19,12 +19,23 @@
 package org.jasig.portal.i18n;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 
 import org.jasig.portal.i18n.dao.IMessageDao;
+import org.jasig.portal.i18n.dao.MessageChangedEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.MessageSource;
 import org.springframework.context.support.AbstractMessageSource;
+import org.springframework.jmx.export.annotation.ManagedResource;
 
 /**
  * <p>
@@ -43,27 +54,50 @@ import org.springframework.context.support.AbstractMessageSource;
  * will be set as parent to this message source, then this message source will become the primary
  * one.
  * </p>
+ * <p>
+ * Lookups are served from a {@link MessageCatalog} per locale, loaded with all of the messages for the
+ * locale and the locales it falls back to. The catalogs for a language are replaced when one of its
+ * messages is changed through the {@link IMessageDao}.
+ * </p>
  * 
  * @author Arvids Grabovskis
  * @version $Revision$
  */
-public class DatabaseMessageSource extends AbstractMessageSource implements MessageSource {
+@ManagedResource("uPortal:section=Framework,name=DatabaseMessageSource")
+public class DatabaseMessageSource extends AbstractMessageSource implements MessageSource, ApplicationListener<MessageChangedEvent>, DatabaseMessageSourceMXBean {
+    
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong totalLookupTime = new AtomicLong();
+    private final AtomicLong maxLookupTime = new AtomicLong();
+    private final AtomicLong catalogLoads = new AtomicLong();
     
     private IMessageDao messageDao;
+    private Ehcache messageCatalogCache;
     
     @Autowired
     public void setMessageDao(IMessageDao messageDao) {
         this.messageDao = messageDao;
     }
     
+    @Autowired
+    @Qualifier("org.jasig.portal.i18n.DatabaseMessageSource.messageCatalogCache")
+    public void setMessageCatalogCache(Ehcache messageCatalogCache) {
+        this.messageCatalogCache = messageCatalogCache;
+    }
+    
     @Override
     protected MessageFormat resolveCode(String code, Locale locale) {
         if (locale == null) {
             return null;
         }
         
-        Message message = messageDao.getMessage(code, locale);
-        return message != null ? new MessageFormat(message.getValue(), locale) : null;
+        final long start = System.nanoTime();
+        try {
+            return this.getMessageCatalog(locale).getMessageFormat(code);
+        }
+        finally {
+            this.recordLookup(System.nanoTime() - start);
+        }
     }
     
     @Override
@@ -72,7 +106,82 @@ public class DatabaseMessageSource extends AbstractMessageSource implements Mess
             return null;
         }
         
-        Message message = messageDao.getMessage(code, locale);
-        return message != null ? message.getValue() : null;
+        final long start = System.nanoTime();
+        try {
+            return this.getMessageCatalog(locale).getMessage(code);
+        }
+        finally {
+            this.recordLookup(System.nanoTime() - start);
+        }
+    }
+    
+    @Override
+    public void onApplicationEvent(MessageChangedEvent event) {
+        //Catalogs for other locales of the same language may include the changed message as a fallback
+        final String language = event.getMessage().getLocale().getLanguage();
+        
+        @SuppressWarnings("unchecked")
+        final List<Object> keys = this.messageCatalogCache.getKeys();
+        for (final Object key : keys) {
+            if (key instanceof Locale && language.equals(((Locale) key).getLanguage())) {
+                this.messageCatalogCache.remove(key);
+            }
+        }
+    }
+    
+    @Override
+    public long getLookups() {
+        return this.lookups.get();
+    }
+
+    @Override
+    public double getAverageLookupTime() {
+        final long lookups = this.lookups.get();
+        if (lookups == 0) {
+            return 0;
+        }
+        return this.totalLookupTime.get() / (double) lookups;
+    }
+
+    @Override
+    public long getMaxLookupTime() {
+        return this.maxLookupTime.get();
+    }
+
+    @Override
+    public long getCatalogLoads() {
+        return this.catalogLoads.get();
+    }
+
+    /**
+     * @return The catalog for the locale, loading it from the database if it is not cached
+     */
+    protected MessageCatalog getMessageCatalog(Locale locale) {
+        final Element element = this.messageCatalogCache.get(locale);
+        if (element != null) {
+            return (MessageCatalog) element.getObjectValue();
+        }
+        
+        final List<Set<Message>> messagesByLocale = new ArrayList<Set<Message>>();
+        for (final Locale fallbackLocale : MessageCatalog.getFallbackLocales(locale)) {
+            messagesByLocale.add(this.messageDao.getMessagesByLocale(fallbackLocale));
+        }
+        
+        final MessageCatalog messageCatalog = new MessageCatalog(locale, messagesByLocale);
+        this.catalogLoads.incrementAndGet();
+        logger.debug("Loaded " + messageCatalog);
+        
+        this.messageCatalogCache.put(new Element(locale, messageCatalog));
+        return messageCatalog;
+    }
+    
+    private void recordLookup(long duration) {
+        this.lookups.incrementAndGet();
+        this.totalLookupTime.addAndGet(duration);
+        
+        long max = this.maxLookupTime.get();
+        while (duration > max && !this.maxLookupTime.compareAndSet(max, duration)) {
+            max = this.maxLookupTime.get();
+        }
     }
 }
@@ -0,0 +1,45 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.i18n;
+
+/**
+ * Statistics on message lookups served by the {@link DatabaseMessageSource}
+ */
+public interface DatabaseMessageSourceMXBean {
+
+    /**
+     * @return Number of message lookups since startup
+     */
+    long getLookups();
+
+    /**
+     * @return Average time in nanoseconds a lookup took, including loading the catalog when it was not cached
+     */
+    double getAverageLookupTime();
+
+    /**
+     * @return Longest time in nanoseconds a single lookup took
+     */
+    long getMaxLookupTime();
+
+    /**
+     * @return Number of times a locale's message catalog has been loaded from the database since startup
+     */
+    long getCatalogLoads();
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.i18n;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable snapshot of all database {@link Message}s that apply to a {@link Locale}. Messages for the
+ * less specific locales in the fallback chain, see {@link #getFallbackLocales(Locale)}, are merged in
+ * when the catalog is built and every message is compiled into a {@link MessageFormat} up front.
+ * <br/>
+ * The returned {@link MessageFormat}s are shared, callers must synchronize on them while formatting as
+ * {@link org.springframework.context.support.AbstractMessageSource} does.
+ */
+public final class MessageCatalog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageCatalog.class);
+    
+    private final Locale locale;
+    private final ImmutableMap<String, String> messages;
+    private final ImmutableMap<String, MessageFormat> messageFormats;
+
+    /**
+     * @param locale The locale the catalog is for
+     * @param messagesByLocale Messages for each locale in the fallback chain, from most to least specific
+     */
+    public MessageCatalog(Locale locale, List<? extends Collection<Message>> messagesByLocale) {
+        this.locale = locale;
+        
+        //Apply the least specific messages first so more specific ones replace them
+        final Map<String, String> mergedMessages = new HashMap<String, String>();
+        for (int i = messagesByLocale.size() - 1; i >= 0; i--) {
+            for (final Message message : messagesByLocale.get(i)) {
+                mergedMessages.put(message.getCode(), message.getValue());
+            }
+        }
+        
+        final ImmutableMap.Builder<String, MessageFormat> messageFormatsBuilder = ImmutableMap.builder();
+        for (final Map.Entry<String, String> messageEntry : mergedMessages.entrySet()) {
+            final String code = messageEntry.getKey();
+            final String value = messageEntry.getValue();
+            if (value == null) {
+                continue;
+            }
+            
+            try {
+                messageFormatsBuilder.put(code, new MessageFormat(value, locale));
+            }
+            catch (IllegalArgumentException e) {
+                LOGGER.warn("Message '" + code + "' for locale " + locale + " is not a valid MessageFormat pattern and will only be available without arguments: " + value, e);
+            }
+        }
+        
+        final ImmutableMap.Builder<String, String> messagesBuilder = ImmutableMap.builder();
+        for (final Map.Entry<String, String> messageEntry : mergedMessages.entrySet()) {
+            if (messageEntry.getValue() != null) {
+                messagesBuilder.put(messageEntry);
+            }
+        }
+        
+        this.messages = messagesBuilder.build();
+        this.messageFormats = messageFormatsBuilder.build();
+    }
+    
+    /**
+     * @return The locale followed by each less specific locale it falls back to, for example
+     *  <code>en_US_POSIX</code>, <code>en_US</code>, <code>en</code>
+     */
+    public static List<Locale> getFallbackLocales(Locale locale) {
+        final List<Locale> locales = new ArrayList<Locale>(3);
+        locales.add(locale);
+        
+        final String language = locale.getLanguage();
+        final String country = locale.getCountry();
+        if (locale.getVariant().length() > 0 && country.length() > 0) {
+            locales.add(new Locale(language, country));
+        }
+        if (country.length() > 0 || locale.getVariant().length() > 0) {
+            locales.add(new Locale(language));
+        }
+        
+        return locales;
+    }
+
+    /**
+     * @return The locale the catalog is for
+     */
+    public Locale getLocale() {
+        return this.locale;
+    }
+    
+    /**
+     * @return The raw message value for the code, null if there is no message
+     */
+    public String getMessage(String code) {
+        return this.messages.get(code);
+    }
+    
+    /**
+     * @return The compiled message for the code, null if there is no message
+     */
+    public MessageFormat getMessageFormat(String code) {
+        return this.messageFormats.get(code);
+    }
+    
+    /**
+     * @return Number of messages in the catalog
+     */
+    public int size() {
+        return this.messages.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MessageCatalog [locale=" + this.locale + ", messages=" + this.messages.size() + "]";
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.i18n.dao;
+
+import org.jasig.portal.i18n.Message;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by the {@link IMessageDao} when a message is created, updated or deleted so that in-memory
+ * message catalogs can be refreshed.
+ */
+public class MessageChangedEvent extends ApplicationEvent {
+    private static final long serialVersionUID = 1L;
+    
+    private final Message message;
+
+    public MessageChangedEvent(Object source, Message message) {
+        super(source);
+        this.message = message;
+    }
+
+    /**
+     * @return The changed message
+     */
+    public Message getMessage() {
+        return this.message;
+    }
+}
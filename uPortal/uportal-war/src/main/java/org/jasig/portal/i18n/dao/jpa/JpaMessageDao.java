@@ -33,14 +33,19 @@ import javax.persistence.criteria.Root;
 import org.apache.commons.lang.Validate;
 import org.jasig.portal.i18n.Message;
 import org.jasig.portal.i18n.dao.IMessageDao;
+import org.jasig.portal.i18n.dao.MessageChangedEvent;
 import org.jasig.portal.jpa.BasePortalJpaDao;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Function;
 
 @Repository
-public class JpaMessageDao extends BasePortalJpaDao implements IMessageDao {
+public class JpaMessageDao extends BasePortalJpaDao implements IMessageDao, ApplicationEventPublisherAware {
     private CriteriaQuery<MessageImpl> findMessageByCodeAndLocaleQuery;
     private CriteriaQuery<MessageImpl> findMessageByCodeQuery;
     private CriteriaQuery<MessageImpl> findMessageByLocaleQuery;
@@ -49,6 +54,13 @@ public class JpaMessageDao extends BasePortalJpaDao implements IMessageDao {
     private ParameterExpression<String> codeParameter;
     private ParameterExpression<Locale> localeParameter;
     
+    private ApplicationEventPublisher applicationEventPublisher;
+    
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+    
     @Override
     public void afterPropertiesSet() throws Exception {
         this.codeParameter = this.createParameterExpression(String.class, "code");
@@ -117,6 +129,7 @@ public class JpaMessageDao extends BasePortalJpaDao implements IMessageDao {
         final Message msg = new MessageImpl(code, locale, value);
         
         this.getEntityManager().persist(msg);
+        this.publishChangedEvent(msg);
         
         return msg;
     }
@@ -127,6 +140,7 @@ public class JpaMessageDao extends BasePortalJpaDao implements IMessageDao {
         Validate.notNull(message, "message can not be null");
         
         this.getEntityManager().persist(message);
+        this.publishChangedEvent(message);
         
         return message;
     }
@@ -144,6 +158,30 @@ public class JpaMessageDao extends BasePortalJpaDao implements IMessageDao {
             msg = entityManager.merge(message);
         }
         entityManager.remove(msg);
+        this.publishChangedEvent(msg);
+    }
+    
+    /**
+     * Publish a {@link MessageChangedEvent} for the message. When called within a transaction the event is
+     * published once the transaction commits, listeners evicting cached messages would otherwise let a
+     * concurrent lookup re-cache the message as it was before the change.
+     */
+    protected void publishChangedEvent(Message message) {
+        if (this.applicationEventPublisher == null) {
+            return;
+        }
+        
+        final MessageChangedEvent event = new MessageChangedEvent(this, message);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    applicationEventPublisher.publishEvent(event);
+                }
+            });
+        } else {
+            this.applicationEventPublisher.publishEvent(event);
+        }
     }
     
     @Override
@@ -23,12 +23,12 @@ import org.jasig.portal.IUserIdentityStore;
 import org.jasig.portal.IUserProfile;
 import org.jasig.portal.UserProfile;
 import org.jasig.portal.io.xml.crn.AbstractDom4jExporter;
+import org.jasig.portal.layout.CompactLayoutTree;
 import org.jasig.portal.layout.IUserLayoutStore;
 import org.jasig.portal.security.provider.BrokenSecurityContext;
 import org.jasig.portal.security.provider.PersonImpl;
 import org.jasig.portal.utils.Tuple;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.w3c.dom.Document;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -39,7 +39,7 @@ import com.google.common.cache.CacheBuilder;
  */
 public class LayoutExporter extends AbstractDom4jExporter  {
     private final Cache<Tuple<String, String>, UserProfile> layoutCache = CacheBuilder.newBuilder().maximumSize(1000).<Tuple<String, String>, UserProfile>build();
-    private final Cache<Tuple<String, String>, Document> profileCache = CacheBuilder.newBuilder().maximumSize(1000).<Tuple<String, String>, Document>build();
+    private final Cache<Tuple<String, String>, CompactLayoutTree> profileCache = CacheBuilder.newBuilder().maximumSize(1000).<Tuple<String, String>, CompactLayoutTree>build();
     
     private IUserLayoutStore userLayoutStore;
     private IUserIdentityStore userIdentityStore;
@@ -21,10 +21,10 @@ package org.jasig.portal.io.xml.layout;
 import org.dom4j.Element;
 import org.jasig.portal.UserProfile;
 import org.jasig.portal.io.xml.crn.AbstractDom4jImporter;
+import org.jasig.portal.layout.CompactLayoutTree;
 import org.jasig.portal.layout.IUserLayoutStore;
 import org.jasig.portal.utils.Tuple;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.w3c.dom.Document;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -37,7 +37,7 @@ import com.google.common.cache.CacheBuilder;
  */
 public class LayoutImporter extends AbstractDom4jImporter {
     private final Cache<Tuple<String, String>, UserProfile> layoutCache = CacheBuilder.newBuilder().maximumSize(1000).<Tuple<String, String>, UserProfile>build();
-    private final Cache<Tuple<String, String>, Document> profileCache = CacheBuilder.newBuilder().maximumSize(1000).<Tuple<String, String>, Document>build();
+    private final Cache<Tuple<String, String>, CompactLayoutTree> profileCache = CacheBuilder.newBuilder().maximumSize(1000).<Tuple<String, String>, CompactLayoutTree>build();
     private IUserLayoutStore userLayoutStore;
     
     @Autowired
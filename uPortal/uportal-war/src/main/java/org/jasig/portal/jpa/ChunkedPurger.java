@@ -0,0 +1,225 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.jpa;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Function;
+
+/**
+ * Deletes large numbers of rows as a series of bounded chunks instead of a single DELETE statement. Each chunk is
+ * deleted by a call to a DAO method that runs in its own short transaction, so inserts into the table are not locked
+ * out and the database's undo log stays small. The purger pauses between chunks to throttle the load placed on the
+ * database and stops once the configured maximum purge time is reached.
+ * <p>
+ * Chunks are selected by the same predicate on every call and committed as they complete, so a purge that is stopped
+ * early, interrupted or fails part way through resumes where it left off the next time it runs.
+ */
+@Service("chunkedPurger")
+@ManagedResource("uPortal:section=Framework,name=ChunkedPurger")
+public class ChunkedPurger implements ChunkedPurgerMXBean {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, AtomicLong> runningPurges = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Long> lastPurgeCounts = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> lastPurgeTimes = new ConcurrentHashMap<String, Long>();
+
+    private volatile int chunkSize = 1000;
+    private volatile long chunkDelay = 100;
+    private volatile long maxPurgeTime = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Maximum number of rows deleted per chunk, defaults to 1000. Some databases limit IN clauses to 1000 entries
+     * so larger values are not recommended.
+     */
+    @Value("${org.jasig.portal.jpa.ChunkedPurger.chunkSize:1000}")
+    @Override
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    @Override
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Time in milliseconds to pause between chunks, defaults to 100
+     */
+    @Value("${org.jasig.portal.jpa.ChunkedPurger.chunkDelay:100}")
+    @Override
+    public void setChunkDelay(long chunkDelay) {
+        this.chunkDelay = chunkDelay;
+    }
+
+    @Override
+    public long getChunkDelay() {
+        return this.chunkDelay;
+    }
+
+    /**
+     * Time in milliseconds after which a purge stops and reports itself incomplete, defaults to 10 minutes
+     */
+    @Value("${org.jasig.portal.jpa.ChunkedPurger.maxPurgeTime:600000}")
+    @Override
+    public void setMaxPurgeTime(long maxPurgeTime) {
+        this.maxPurgeTime = maxPurgeTime;
+    }
+
+    @Override
+    public long getMaxPurgeTime() {
+        return this.maxPurgeTime;
+    }
+
+    @Override
+    public Map<String, Long> getRunningPurges() {
+        final Map<String, Long> runningPurges = new TreeMap<String, Long>();
+        for (final Map.Entry<String, AtomicLong> runningPurgeEntry : this.runningPurges.entrySet()) {
+            runningPurges.put(runningPurgeEntry.getKey(), runningPurgeEntry.getValue().get());
+        }
+        return runningPurges;
+    }
+
+    @Override
+    public Map<String, Long> getLastPurgeCounts() {
+        return Collections.unmodifiableMap(this.lastPurgeCounts);
+    }
+
+    @Override
+    public Map<String, Long> getLastPurgeTimes() {
+        return Collections.unmodifiableMap(this.lastPurgeTimes);
+    }
+
+    /**
+     * Purge rows by calling the chunk function until it deletes fewer rows than requested, the maximum purge time
+     * is reached or the thread is interrupted.
+     *
+     * @param purgeName Name of the purge used for logging and statistics
+     * @param purgeChunk Called with the maximum number of rows to delete, must delete at most that many rows in a
+     *      single transaction and return the number deleted
+     * @return The result of the purge
+     */
+    public PurgeResult purge(String purgeName, Function<Integer, Integer> purgeChunk) {
+        final AtomicLong deleted = new AtomicLong();
+        if (this.runningPurges.putIfAbsent(purgeName, deleted) != null) {
+            throw new IllegalStateException("Purge " + purgeName + " is already running");
+        }
+
+        final long start = System.nanoTime();
+        final long maxPurgeNanos = TimeUnit.MILLISECONDS.toNanos(this.maxPurgeTime);
+        boolean complete = false;
+        int chunks = 0;
+        try {
+            while (true) {
+                final int chunkSize = this.chunkSize;
+                final int chunkDeleted = purgeChunk.apply(chunkSize);
+                deleted.addAndGet(chunkDeleted);
+                chunks++;
+
+                if (chunkDeleted < chunkSize) {
+                    complete = true;
+                    break;
+                }
+
+                if (System.nanoTime() - start >= maxPurgeNanos) {
+                    logger.info("{} stopped after {} rows in {} chunks, maximum purge time of {}ms reached. The purge will resume on its next run.",
+                            new Object[] { purgeName, deleted.get(), chunks, this.maxPurgeTime });
+                    break;
+                }
+
+                logger.debug("{} deleted {} rows in {} chunks", new Object[] { purgeName, deleted.get(), chunks });
+
+                final long chunkDelay = this.chunkDelay;
+                if (chunkDelay > 0) {
+                    try {
+                        Thread.sleep(chunkDelay);
+                    }
+                    catch (InterruptedException e) {
+                        logger.warn("{} interrupted after {} rows in {} chunks. The purge will resume on its next run.",
+                                new Object[] { purgeName, deleted.get(), chunks });
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        finally {
+            this.runningPurges.remove(purgeName);
+
+            final long purgeTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            this.lastPurgeCounts.put(purgeName, deleted.get());
+            this.lastPurgeTimes.put(purgeName, purgeTime);
+        }
+
+        return new PurgeResult((int) deleted.get(), chunks, complete);
+    }
+
+    /**
+     * Result of a call to {@link ChunkedPurger#purge(String, Function)}
+     */
+    public static final class PurgeResult {
+        private final int deleted;
+        private final int chunks;
+        private final boolean complete;
+
+        public PurgeResult(int deleted, int chunks, boolean complete) {
+            this.deleted = deleted;
+            this.chunks = chunks;
+            this.complete = complete;
+        }
+
+        /**
+         * @return Number of rows deleted
+         */
+        public int getDeleted() {
+            return this.deleted;
+        }
+
+        /**
+         * @return Number of chunks deleted
+         */
+        public int getChunks() {
+            return this.chunks;
+        }
+
+        /**
+         * @return true if all eligible rows were deleted, false if the purge stopped early and should be run again
+         */
+        public boolean isComplete() {
+            return this.complete;
+        }
+
+        @Override
+        public String toString() {
+            return "PurgeResult [deleted=" + this.deleted + ", chunks=" + this.chunks + ", complete=" + this.complete + "]";
+        }
+    }
+}
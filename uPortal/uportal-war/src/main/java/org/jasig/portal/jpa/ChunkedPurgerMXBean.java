@@ -0,0 +1,72 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.jpa;
+
+import java.util.Map;
+
+/**
+ * Configuration and progress of the purges run by {@link ChunkedPurger}
+ */
+public interface ChunkedPurgerMXBean {
+
+    /**
+     * @param chunkSize Maximum number of rows deleted per chunk
+     */
+    void setChunkSize(int chunkSize);
+
+    /**
+     * @return Maximum number of rows deleted per chunk
+     */
+    int getChunkSize();
+
+    /**
+     * @param chunkDelay Time in milliseconds to pause between chunks
+     */
+    void setChunkDelay(long chunkDelay);
+
+    /**
+     * @return Time in milliseconds to pause between chunks
+     */
+    long getChunkDelay();
+
+    /**
+     * @param maxPurgeTime Time in milliseconds after which a purge stops and reports itself incomplete
+     */
+    void setMaxPurgeTime(long maxPurgeTime);
+
+    /**
+     * @return Time in milliseconds after which a purge stops and reports itself incomplete
+     */
+    long getMaxPurgeTime();
+
+    /**
+     * @return Rows deleted so far by each running purge
+     */
+    Map<String, Long> getRunningPurges();
+
+    /**
+     * @return Rows deleted by the most recent run of each purge
+     */
+    Map<String, Long> getLastPurgeCounts();
+
+    /**
+     * @return Time in milliseconds the most recent run of each purge took
+     */
+    Map<String, Long> getLastPurgeTimes();
+}
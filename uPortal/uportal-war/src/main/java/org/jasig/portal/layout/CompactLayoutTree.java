@@ -0,0 +1,473 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
+
+import org.jasig.portal.utils.DocumentFactory;
+import org.jasig.portal.xml.stream.XMLEventBufferReader;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Compact, immutable snapshot of a user layout {@link Document}.
+ * <p>
+ * Every node is interned when the tree is built so identical subtrees are shared between trees, the
+ * content of a fragment that is pushed to many users is only held in memory once no matter how many
+ * users' layouts include it. The tree can be streamed directly via {@link #getEventReader()} without
+ * walking a DOM, the event list is built the first time it is needed and shared by all later readers.
+ * When a layout needs to be edited a new mutable {@link Document} is created via {@link #toDocument()},
+ * leaving the snapshot untouched.
+ * <p>
+ * Element and attribute names created without namespace support are resolved against the namespace
+ * declarations in scope, a declaration is added for any prefix that is used but not declared.
+ * Processing instructions and entity references are not retained.
+ */
+public final class CompactLayoutTree {
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+    private static final Interner<LayoutNode> NODE_INTERNER = Interners.newWeakInterner();
+    private static final String[] EMPTY_STRINGS = new String[0];
+    private static final LayoutNode[] EMPTY_NODES = new LayoutNode[0];
+
+    private final ElementNode root;
+    private final int nodeCount;
+    private volatile List<XMLEvent> events;
+
+    private CompactLayoutTree(ElementNode root, int nodeCount) {
+        this.root = root;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Create a snapshot of the document. The document is not modified and not referenced by the snapshot.
+     */
+    public static CompactLayoutTree fromDocument(Document document) {
+        final Element documentElement = document.getDocumentElement();
+        if (documentElement == null) {
+            throw new IllegalArgumentException("Layout document has no document element");
+        }
+
+        final int[] nodeCount = new int[1];
+        final ElementNode root = buildElement(documentElement, Collections.<String, String>emptyMap(), nodeCount);
+        return new CompactLayoutTree(root, nodeCount[0]);
+    }
+
+    /**
+     * @return The number of nodes in the layout
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * @return A new, independent, mutable copy of the layout. ID attributes of the original document are marked as IDs in the copy.
+     */
+    public Document toDocument() {
+        final Document document = DocumentFactory.getThreadDocument();
+        document.appendChild(this.root.toDom(document));
+        return document;
+    }
+
+    /**
+     * @return A new reader over the layout events, readers are independent of each other
+     */
+    public XMLEventReader getEventReader() {
+        return new XMLEventBufferReader(this.getEvents().listIterator());
+    }
+
+    private List<XMLEvent> getEvents() {
+        List<XMLEvent> events = this.events;
+        if (events == null) {
+            final List<XMLEvent> newEvents = new ArrayList<XMLEvent>(this.nodeCount * 2 + 2);
+            //XMLEventFactory instances are not guaranteed to be thread safe
+            synchronized (EVENT_FACTORY) {
+                newEvents.add(EVENT_FACTORY.createStartDocument());
+                this.root.appendEvents(newEvents);
+                newEvents.add(EVENT_FACTORY.createEndDocument());
+            }
+            events = Collections.unmodifiableList(newEvents);
+            this.events = events;
+        }
+        return events;
+    }
+
+    private static ElementNode buildElement(Element element, Map<String, String> inScopeNamespaces, int[] nodeCount) {
+        nodeCount[0]++;
+
+        //Collect namespace declarations first so the element and attribute names can be resolved
+        Map<String, String> namespaces = inScopeNamespaces;
+        final List<String> declarations = new ArrayList<String>(2);
+        final NamedNodeMap domAttributes = element.getAttributes();
+        final int attributeCount = domAttributes.getLength();
+        for (int i = 0; i < attributeCount; i++) {
+            final Attr attr = (Attr) domAttributes.item(i);
+            final String declaredPrefix = getDeclaredPrefix(attr);
+            if (declaredPrefix != null) {
+                namespaces = declare(namespaces, inScopeNamespaces, declarations, declaredPrefix, attr.getValue());
+            }
+        }
+
+        final String[] elementName = resolveName(element, namespaces, true);
+        namespaces = declareIfMissing(namespaces, inScopeNamespaces, declarations, elementName);
+
+        final List<String> attributes = new ArrayList<String>(attributeCount * 4);
+        int idAttribute = -1;
+        for (int i = 0; i < attributeCount; i++) {
+            final Attr attr = (Attr) domAttributes.item(i);
+            if (getDeclaredPrefix(attr) != null) {
+                continue;
+            }
+
+            final String[] attributeName = resolveName(attr, namespaces, false);
+            namespaces = declareIfMissing(namespaces, inScopeNamespaces, declarations, attributeName);
+            if (attr.isId()) {
+                idAttribute = attributes.size() / 4;
+            }
+            attributes.add(attributeName[0]);
+            attributes.add(attributeName[1]);
+            attributes.add(attributeName[2]);
+            attributes.add(attr.getValue());
+        }
+
+        final List<LayoutNode> children = new ArrayList<LayoutNode>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE: {
+                    children.add(buildElement((Element) child, namespaces, nodeCount));
+                    break;
+                }
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                case Node.COMMENT_NODE: {
+                    nodeCount[0]++;
+                    children.add(NODE_INTERNER.intern(new TextNode(child.getNodeType(), child.getNodeValue())));
+                    break;
+                }
+            }
+        }
+
+        final ElementNode elementNode = new ElementNode(
+                elementName[0], elementName[1], elementName[2],
+                toArray(declarations), toArray(attributes), idAttribute,
+                children.isEmpty() ? EMPTY_NODES : children.toArray(new LayoutNode[children.size()]));
+        return (ElementNode) NODE_INTERNER.intern(elementNode);
+    }
+
+    /**
+     * @return The prefix declared by the attribute, "" for the default namespace, null if the attribute is not a namespace declaration
+     */
+    private static String getDeclaredPrefix(Attr attr) {
+        final String name = attr.getNodeName();
+        if (XMLConstants.XMLNS_ATTRIBUTE.equals(name)) {
+            return XMLConstants.DEFAULT_NS_PREFIX;
+        }
+        if (name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+            return name.substring(XMLConstants.XMLNS_ATTRIBUTE.length() + 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return namespace URI, prefix and local name of the node, empty strings for no namespace and no prefix
+     */
+    private static String[] resolveName(Node node, Map<String, String> namespaces, boolean useDefaultNamespace) {
+        String localName = node.getLocalName();
+        String prefix = node.getPrefix();
+        String namespaceURI = node.getNamespaceURI();
+
+        if (localName == null) {
+            //Created without namespace support, split the qualified name
+            final String nodeName = node.getNodeName();
+            final int separator = nodeName.indexOf(':');
+            if (separator > 0) {
+                prefix = nodeName.substring(0, separator);
+                localName = nodeName.substring(separator + 1);
+            }
+            else {
+                prefix = null;
+                localName = nodeName;
+            }
+        }
+
+        if (namespaceURI == null) {
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                namespaceURI = XMLConstants.XML_NS_URI;
+            }
+            else if (prefix != null) {
+                namespaceURI = namespaces.get(prefix);
+                if (namespaceURI == null) {
+                    //Undeclared prefix, keep the qualified name as the local name
+                    localName = prefix + ":" + localName;
+                    prefix = null;
+                }
+            }
+            else if (useDefaultNamespace) {
+                namespaceURI = namespaces.get(XMLConstants.DEFAULT_NS_PREFIX);
+            }
+        }
+
+        return new String[] {
+                namespaceURI == null ? XMLConstants.NULL_NS_URI : namespaceURI,
+                prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix,
+                localName };
+    }
+
+    private static Map<String, String> declareIfMissing(Map<String, String> namespaces, Map<String, String> inScopeNamespaces,
+            List<String> declarations, String[] name) {
+        final String namespaceURI = name[0];
+        final String prefix = name[1];
+        if (prefix.length() == 0 || namespaceURI.length() == 0 || XMLConstants.XML_NS_PREFIX.equals(prefix)
+                || namespaceURI.equals(namespaces.get(prefix))) {
+            return namespaces;
+        }
+        return declare(namespaces, inScopeNamespaces, declarations, prefix, namespaceURI);
+    }
+
+    private static Map<String, String> declare(Map<String, String> namespaces, Map<String, String> inScopeNamespaces,
+            List<String> declarations, String prefix, String namespaceURI) {
+        if (namespaces == inScopeNamespaces) {
+            namespaces = new HashMap<String, String>(inScopeNamespaces);
+        }
+        namespaces.put(prefix, namespaceURI);
+        declarations.add(prefix);
+        declarations.add(namespaceURI);
+        return namespaces;
+    }
+
+    private static String[] toArray(List<String> values) {
+        return values.isEmpty() ? EMPTY_STRINGS : values.toArray(new String[values.size()]);
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    private static abstract class LayoutNode {
+        abstract void appendEvents(List<XMLEvent> events);
+
+        abstract Node toDom(Document document);
+    }
+
+    private static final class ElementNode extends LayoutNode {
+        private final String namespaceURI;
+        private final String prefix;
+        private final String localName;
+        // prefix, namespace URI pairs
+        private final String[] namespaces;
+        // namespace URI, prefix, local name, value tuples
+        private final String[] attributes;
+        private final int idAttribute;
+        private final LayoutNode[] children;
+        private final int hash;
+
+        public ElementNode(String namespaceURI, String prefix, String localName, String[] namespaces, String[] attributes,
+                int idAttribute, LayoutNode[] children) {
+            this.namespaceURI = namespaceURI;
+            this.prefix = prefix;
+            this.localName = localName;
+            this.namespaces = namespaces;
+            this.attributes = attributes;
+            this.idAttribute = idAttribute;
+            this.children = children;
+
+            int hash = namespaceURI.hashCode();
+            hash = 31 * hash + prefix.hashCode();
+            hash = 31 * hash + localName.hashCode();
+            hash = 31 * hash + Arrays.hashCode(namespaces);
+            hash = 31 * hash + Arrays.hashCode(attributes);
+            hash = 31 * hash + idAttribute;
+            hash = 31 * hash + Arrays.hashCode(children);
+            this.hash = hash;
+        }
+
+        @Override
+        void appendEvents(List<XMLEvent> events) {
+            final List<Namespace> namespaceEvents;
+            if (this.namespaces.length == 0) {
+                namespaceEvents = Collections.emptyList();
+            }
+            else {
+                namespaceEvents = new ArrayList<Namespace>(this.namespaces.length / 2);
+                for (int i = 0; i < this.namespaces.length; i += 2) {
+                    if (this.namespaces[i].length() == 0) {
+                        namespaceEvents.add(EVENT_FACTORY.createNamespace(this.namespaces[i + 1]));
+                    }
+                    else {
+                        namespaceEvents.add(EVENT_FACTORY.createNamespace(this.namespaces[i], this.namespaces[i + 1]));
+                    }
+                }
+            }
+
+            final List<Attribute> attributeEvents = new ArrayList<Attribute>(this.attributes.length / 4);
+            for (int i = 0; i < this.attributes.length; i += 4) {
+                attributeEvents.add(EVENT_FACTORY.createAttribute(this.attributes[i + 1], this.attributes[i], this.attributes[i + 2], this.attributes[i + 3]));
+            }
+
+            events.add(EVENT_FACTORY.createStartElement(this.prefix, this.namespaceURI, this.localName, attributeEvents.iterator(), namespaceEvents.iterator()));
+            for (final LayoutNode child : this.children) {
+                child.appendEvents(events);
+            }
+            events.add(EVENT_FACTORY.createEndElement(this.prefix, this.namespaceURI, this.localName, namespaceEvents.iterator()));
+        }
+
+        @Override
+        Node toDom(Document document) {
+            final Element element;
+            if (this.namespaceURI.length() == 0) {
+                element = document.createElement(qualifiedName(this.prefix, this.localName));
+            }
+            else {
+                element = document.createElementNS(this.namespaceURI, qualifiedName(this.prefix, this.localName));
+            }
+
+            for (int i = 0; i < this.namespaces.length; i += 2) {
+                final String declaredPrefix = this.namespaces[i];
+                final String declarationName = declaredPrefix.length() == 0 ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + declaredPrefix;
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, declarationName, this.namespaces[i + 1]);
+            }
+
+            for (int i = 0; i < this.attributes.length; i += 4) {
+                final String attributeNamespaceURI = this.attributes[i];
+                final String qualifiedName = qualifiedName(this.attributes[i + 1], this.attributes[i + 2]);
+                final boolean isId = i / 4 == this.idAttribute;
+                if (attributeNamespaceURI.length() == 0) {
+                    element.setAttribute(qualifiedName, this.attributes[i + 3]);
+                    if (isId) {
+                        element.setIdAttribute(qualifiedName, true);
+                    }
+                }
+                else {
+                    element.setAttributeNS(attributeNamespaceURI, qualifiedName, this.attributes[i + 3]);
+                    if (isId) {
+                        element.setIdAttributeNS(attributeNamespaceURI, this.attributes[i + 2], true);
+                    }
+                }
+            }
+
+            for (final LayoutNode child : this.children) {
+                element.appendChild(child.toDom(document));
+            }
+
+            return element;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ElementNode)) {
+                return false;
+            }
+            final ElementNode other = (ElementNode) obj;
+            //Children are interned so equal children are usually the same instance
+            return this.hash == other.hash
+                    && this.idAttribute == other.idAttribute
+                    && this.localName.equals(other.localName)
+                    && this.prefix.equals(other.prefix)
+                    && this.namespaceURI.equals(other.namespaceURI)
+                    && Arrays.equals(this.attributes, other.attributes)
+                    && Arrays.equals(this.namespaces, other.namespaces)
+                    && Arrays.equals(this.children, other.children);
+        }
+    }
+
+    private static final class TextNode extends LayoutNode {
+        private final short type;
+        private final String data;
+
+        public TextNode(short type, String data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        @Override
+        void appendEvents(List<XMLEvent> events) {
+            switch (this.type) {
+                case Node.CDATA_SECTION_NODE: {
+                    events.add(EVENT_FACTORY.createCData(this.data));
+                    break;
+                }
+                case Node.COMMENT_NODE: {
+                    events.add(EVENT_FACTORY.createComment(this.data));
+                    break;
+                }
+                default: {
+                    events.add(EVENT_FACTORY.createCharacters(this.data));
+                    break;
+                }
+            }
+        }
+
+        @Override
+        Node toDom(Document document) {
+            switch (this.type) {
+                case Node.CDATA_SECTION_NODE: {
+                    return document.createCDATASection(this.data);
+                }
+                case Node.COMMENT_NODE: {
+                    return document.createComment(this.data);
+                }
+                default: {
+                    return document.createTextNode(this.data);
+                }
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.type + this.data.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TextNode)) {
+                return false;
+            }
+            final TextNode other = (TextNode) obj;
+            return this.type == other.type && this.data.equals(other.data);
+        }
+    }
+}
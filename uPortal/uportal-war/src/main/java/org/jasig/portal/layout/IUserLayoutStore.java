@@ -40,7 +40,11 @@ import com.google.common.cache.Cache;
 
 public interface IUserLayoutStore {
     
-    public void setLayoutImportExportCache(Cache<Tuple<String, String>, Document> layoutCache);
+    /**
+     * Set a cache of user layouts to use for the current thread during a bulk import or export, null to clear the cache.
+     * Layouts are cached as immutable snapshots and a new {@link Document} is created for each use.
+     */
+    public void setLayoutImportExportCache(Cache<Tuple<String, String>, CompactLayoutTree> layoutCache);
 
     /**
      * Retrieve a user layout document.
@@ -0,0 +1,91 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.dlm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Build time and ILF template counters for {@link RDBMDistributedLayoutStore}
+ */
+final class CompositeLayoutStatistics implements CompositeLayoutStatisticsMBean {
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final AtomicLong compositeLayoutCount = new AtomicLong();
+    private final AtomicLong compositeLayoutTime = new AtomicLong();
+    private final AtomicLong ilfTemplateHits = new AtomicLong();
+    private final AtomicLong ilfTemplateMisses = new AtomicLong();
+    private volatile long lastCompositeLayoutTime;
+
+    /**
+     * Record the time taken to build a composite layout
+     * 
+     * @param nanos Build time in nanoseconds
+     */
+    public void recordCompositeLayout(long nanos) {
+        this.compositeLayoutCount.incrementAndGet();
+        this.compositeLayoutTime.addAndGet(nanos);
+        this.lastCompositeLayoutTime = nanos;
+    }
+
+    /**
+     * Record an ILF template lookup
+     */
+    public void recordIlfTemplateLookup(boolean hit) {
+        if (hit) {
+            this.ilfTemplateHits.incrementAndGet();
+        }
+        else {
+            this.ilfTemplateMisses.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getCompositeLayoutCount() {
+        return this.compositeLayoutCount.get();
+    }
+
+    @Override
+    public double getLastCompositeLayoutTime() {
+        return this.lastCompositeLayoutTime / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getAverageCompositeLayoutTime() {
+        final long count = this.compositeLayoutCount.get();
+        return (count == 0) ? 0 : this.compositeLayoutTime.get() / NANOS_PER_MILLI / count;
+    }
+
+    @Override
+    public long getIlfTemplateHits() {
+        return this.ilfTemplateHits.get();
+    }
+
+    @Override
+    public long getIlfTemplateMisses() {
+        return this.ilfTemplateMisses.get();
+    }
+
+    @Override
+    public double getIlfTemplateHitRatio() {
+        final long hits = this.ilfTemplateHits.get();
+        final long lookups = hits + this.ilfTemplateMisses.get();
+        return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+}
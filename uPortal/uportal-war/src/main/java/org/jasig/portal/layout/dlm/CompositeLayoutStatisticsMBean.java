@@ -0,0 +1,55 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.dlm;
+
+/**
+ * JMX stats for composite layouts built by {@link RDBMDistributedLayoutStore}
+ */
+public interface CompositeLayoutStatisticsMBean {
+    
+    /**
+     * @return Number of composite layouts built
+     */
+    long getCompositeLayoutCount();
+    
+    /**
+     * @return Time in milliseconds the last composite layout took to build
+     */
+    double getLastCompositeLayoutTime();
+    
+    /**
+     * @return Average time in milliseconds to build a composite layout
+     */
+    double getAverageCompositeLayoutTime();
+    
+    /**
+     * @return Number of ILFs created from a cached ILF template
+     */
+    long getIlfTemplateHits();
+    
+    /**
+     * @return Number of ILF templates that had to be built
+     */
+    long getIlfTemplateMisses();
+    
+    /**
+     * @return Ratio of ILF template hits to ILF template lookups
+     */
+    double getIlfTemplateHitRatio();
+}
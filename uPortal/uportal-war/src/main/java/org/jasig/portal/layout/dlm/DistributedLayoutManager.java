@@ -45,6 +45,7 @@ import org.jasig.portal.IUserIdentityStore;
 import org.jasig.portal.IUserProfile;
 import org.jasig.portal.PortalException;
 import org.jasig.portal.events.IPortalLayoutEventFactory;
+import org.jasig.portal.layout.CompactLayoutTree;
 import org.jasig.portal.layout.IFolderLocalNameResolver;
 import org.jasig.portal.layout.IUserLayout;
 import org.jasig.portal.layout.IUserLayoutManager;
@@ -70,6 +71,7 @@ import org.jasig.portal.xml.XmlUtilities;
 import org.jasig.portal.xml.xpath.XPathOperations;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -108,6 +110,8 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
 
     private boolean channelsAdded = false;
     private boolean isFragmentOwner = false;
+    private boolean useLayoutSnapshot = true;
+    private volatile LayoutSnapshot layoutSnapshot;
 
     public DistributedLayoutManager(IPerson owner, IUserProfile profile) throws PortalException {
 
@@ -148,6 +152,15 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
         this.xmlUtilities = xmlUtilities;
     }
 
+    /**
+     * If true the layout is streamed to the rendering pipeline from an immutable {@link CompactLayoutTree} snapshot
+     * that is rebuilt only when the layout changes. If false a new reader over the layout DOM is used for each request.
+     */
+    @Value("${org.jasig.portal.layout.dlm.DistributedLayoutManager.useLayoutSnapshot:true}")
+    public void setUseLayoutSnapshot(boolean useLayoutSnapshot) {
+        this.useLayoutSnapshot = useLayoutSnapshot;
+    }
+
     @Autowired
     public void setLayoutCachingService(ILayoutCachingService layoutCachingService) {
         this.layoutCachingService = layoutCachingService;
@@ -275,11 +288,26 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
     
     @Override
     public XMLEventReader getUserLayoutReader() {
+        //Read the key before the layout so a snapshot is never labeled with a newer key than its content
+        final String currentCacheKey = this.cacheKey;
         Document ul = this.getUserLayoutDOM();
         if (ul == null) {
             throw new PortalException("User layout has not been initialized for " + owner.getAttribute(IPerson.USERNAME));
         }
         
+        if (this.useLayoutSnapshot) {
+            /*
+             * Every change to the layout DOM changes the cache key, the snapshot for the current key is
+             * shared by all requests until the layout changes again.
+             */
+            LayoutSnapshot snapshot = this.layoutSnapshot;
+            if (snapshot == null || !snapshot.cacheKey.equals(currentCacheKey)) {
+                snapshot = new LayoutSnapshot(currentCacheKey, CompactLayoutTree.fromDocument(ul));
+                this.layoutSnapshot = snapshot;
+            }
+            return snapshot.layout.getEventReader();
+        }
+        
         final XMLInputFactory xmlInputFactory = this.xmlUtilities.getXmlInputFactory();
         
         final DOMSource layoutSoure = new DOMSource(ul);
@@ -1594,4 +1622,17 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
     
         return label;
     }
+
+    /**
+     * Immutable snapshot of the layout along with the cache key it was created for
+     */
+    private static final class LayoutSnapshot {
+        private final String cacheKey;
+        private final CompactLayoutTree layout;
+
+        public LayoutSnapshot(String cacheKey, CompactLayoutTree layout) {
+            this.cacheKey = cacheKey;
+            this.layout = layout;
+        }
+    }
 }
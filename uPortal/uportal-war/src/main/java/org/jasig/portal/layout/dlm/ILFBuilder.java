@@ -39,8 +39,10 @@ import org.jasig.portal.security.IAuthorizationPrincipal;
 import org.jasig.portal.security.IPerson;
 import org.jasig.portal.services.AuthorizationService;
 import org.jasig.portal.utils.DocumentFactory;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 /** Performs merging of layout fragments into a single document containing
@@ -93,6 +95,84 @@ public class ILFBuilder
         return result;
     }
 
+    /**
+     * Merges the fragments into a document with empty layout and root
+     * elements that can be shared by all users that have the same
+     * applicable fragments and that cannot render the same fragment
+     * channels. Use {@link #constructILF(Document, Document)} to create a
+     * user's ILF from the template, the template itself must not be
+     * modified once built.
+     * 
+     * @param sequence The applicable fragment layouts in precedence order
+     * @param deniedChannelIds The chanIDs of fragment channels to leave out
+     */
+    public static Document constructILFTemplate( List<Document> sequence,
+                                                 final Set<String> deniedChannelIds )
+    {
+        Document result = DocumentFactory.getThreadDocument();
+        Element ilfLayout = result.createElement( "layout" );
+        result.appendChild( ilfLayout );
+        Element ilfRoot = result.createElement( Constants.ELM_FOLDER );
+        ilfLayout.appendChild( ilfRoot );
+
+        final ChannelFilter filter = new ChannelFilter() {
+            @Override
+            public boolean canRender(String channelPublishId) {
+                return !deniedChannelIds.contains(channelPublishId);
+            }
+        };
+        for (final Document document : sequence) {
+            Element fragmentRoot = (Element) document.getDocumentElement().getFirstChild();
+            mergeChildren( fragmentRoot, ilfRoot, filter, new HashSet() );
+        }
+        return result;
+    }
+
+    /**
+     * Creates a user's ILF from a template built by
+     * {@link #constructILFTemplate(List, Set)}. The template is copied and
+     * the PLF's layout and root elements are applied to the copy, the
+     * template is not modified.
+     */
+    public static Document constructILF( Document PLF, Document template )
+    {
+        // Document.cloneNode carries the ID attributes of the template over
+        // to the copy so the fragment nodes can still be found by ID
+        Document result = (Document) template.cloneNode( true );
+        Element plfLayout = PLF.getDocumentElement();
+        Element ilfLayout = copyElement( plfLayout, result.getDocumentElement() );
+        Element plfRoot = (Element) plfLayout.getFirstChild();
+        Element ilfRoot = copyElement( plfRoot, (Element) ilfLayout.getFirstChild() );
+
+        if (ilfRoot.getAttribute(Constants.ATT_ID) != null)
+            ilfRoot.setIdAttribute(Constants.ATT_ID, true);
+
+        return result;
+    }
+
+    /**
+     * Gives the template element the name and attributes of the PLF element
+     * 
+     * @return The element to use in place of the template element
+     */
+    private static Element copyElement( Element source, Element dest )
+    {
+        Document destDoc = dest.getOwnerDocument();
+        if (!source.getNodeName().equals(dest.getNodeName())) {
+            dest = (Element) destDoc.renameNode( dest, source.getNamespaceURI(), source.getNodeName() );
+        }
+
+        NamedNodeMap attributes = source.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) destDoc.importNode( attributes.item(i), true );
+            if (attr.getLocalName() == null)
+                dest.setAttributeNode( attr );
+            else
+                dest.setAttributeNodeNS( attr );
+        }
+        return dest;
+    }
+
     /**
      * Passes the layout root of each of these documents to mergeChildren
      * causing all children of newLayout to be merged into compositeLayout
@@ -108,20 +188,20 @@ public class ILFBuilder
         Element fragmentRoot = (Element) fragmentLayout.getFirstChild();
         Element compositeLayout = composite.getDocumentElement();
         Element compositeRoot = (Element) compositeLayout.getFirstChild();
-        mergeChildren( fragmentRoot, compositeRoot, ap, new HashSet() );
+        mergeChildren( fragmentRoot, compositeRoot, new PrincipalChannelFilter( ap ), new HashSet() );
     }    
 
 
     /**
      * @param source parent of children
      * @param dest receiver of children
-     * @param ap User's authorization principal for determining if they can view a channel
+     * @param filter Determines if the user can view a channel
      * @param visitedNodes A Set of nodes from the source tree that have been visited to get to this node, used to ensure a loop doesn't exist in the source tree.
      * @throws AuthorizationException
      */
     private static void mergeChildren( Element source,
                                        Element dest, 
-                                       IAuthorizationPrincipal ap,
+                                       ChannelFilter filter,
                                        Set visitedNodes ) 
     throws AuthorizationException
     {
@@ -146,14 +226,14 @@ public class ILFBuilder
                 Element child = (Element) item;
                 Element newChild = null;
     
-                if( null != child && mergeAllowed( child, ap ))
+                if( null != child && mergeAllowed( child, filter ))
                 {
                     newChild = (Element) destDoc.importNode( child, false );
                     dest.appendChild( newChild );
                     String id = newChild.getAttribute(Constants.ATT_ID);
                     if (id != null && ! id.equals(""))
                         newChild.setIdAttribute(Constants.ATT_ID, true);
-                    mergeChildren( child, newChild, ap, visitedNodes );
+                    mergeChildren( child, newChild, filter, visitedNodes );
                 }
             }
             
@@ -169,20 +249,40 @@ public class ILFBuilder
      * end user. If not then they are discarded from the merge.
      * 
      * @param child
-     * @param person
+     * @param filter
      * @return
      * @throws AuthorizationException
      * @throws NumberFormatException
      */
     private static boolean mergeAllowed( Element child, 
-            IAuthorizationPrincipal ap ) 
+            ChannelFilter filter ) 
     throws AuthorizationException
     {
         if (! child.getTagName().equals("channel"))
             return true;
         
         String channelPublishId = child.getAttribute("chanID");
-        return ap.canRender(channelPublishId);
+        return filter.canRender(channelPublishId);
+    }
+
+    /**
+     * Decides which fragment channels are merged into the ILF
+     */
+    private interface ChannelFilter {
+        boolean canRender(String channelPublishId) throws AuthorizationException;
+    }
+
+    private static final class PrincipalChannelFilter implements ChannelFilter {
+        private final IAuthorizationPrincipal ap;
+
+        public PrincipalChannelFilter(IAuthorizationPrincipal ap) {
+            this.ap = ap;
+        }
+
+        @Override
+        public boolean canRender(String channelPublishId) throws AuthorizationException {
+            return this.ap.canRender(channelPublishId);
+        }
     }
 
     private static void printNodeToDebug(Node n, String name) throws TransformerFactoryConfigurationError {
@@ -0,0 +1,97 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.dlm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Index of the descendant elements of a layout node by the value of one of
+ * their attributes. Replaces evaluating <code>.//*[@attribute='value']</code>
+ * style XPath expressions once per value, the index is built with a single
+ * walk of the subtree and each lookup is a map get.
+ * <p>
+ * The index is a snapshot, it must not be used after the subtree is modified.
+ */
+final class LayoutNodeIndex {
+    private final Map<String, List<Element>> elements = new HashMap<String, List<Element>>();
+
+    /**
+     * @param root Element whose descendants are indexed, the root itself is not indexed
+     * @param localName Only index elements with this local name, null to index all elements
+     * @param attribute Name of the attribute to index the elements by, elements without the attribute are not indexed
+     */
+    LayoutNodeIndex(Element root, String localName, String attribute) {
+        this.index(root, localName, attribute);
+    }
+
+    private void index(Element parent, String localName, String attribute) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!(child instanceof Element)) {
+                continue;
+            }
+
+            final Element element = (Element) child;
+            if (localName == null || localName.equals(getLocalName(element))) {
+                final Attr attr = element.getAttributeNode(attribute);
+                if (attr != null) {
+                    List<Element> matches = this.elements.get(attr.getValue());
+                    if (matches == null) {
+                        matches = new ArrayList<Element>(1);
+                        this.elements.put(attr.getValue(), matches);
+                    }
+                    matches.add(element);
+                }
+            }
+
+            this.index(element, localName, attribute);
+        }
+    }
+
+    /**
+     * @return The indexed elements with the attribute value in document order, an empty list if there are none
+     */
+    List<Element> get(String value) {
+        final List<Element> matches = this.elements.get(value);
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        return matches;
+    }
+
+    /**
+     * Same as the XPath local-name() function, also works for elements created without namespace support
+     */
+    private static String getLocalName(Element element) {
+        final String localName = element.getLocalName();
+        if (localName != null) {
+            return localName;
+        }
+
+        final String nodeName = element.getNodeName();
+        return nodeName.substring(nodeName.indexOf(':') + 1);
+    }
+}
@@ -23,7 +23,7 @@ import org.apache.commons.logging.LogFactory;
 import org.jasig.portal.PortalException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.w3c.dom.Node;
 
 /**
  * Performs merging of PLF into ILF for DLM.
@@ -266,11 +266,10 @@ public class PLFIntegrator {
 
         if ( copyChildren )
         {
-            NodeList children = plfChild.getChildNodes();
-            for (int i=0; i<children.getLength(); i++)
+            for (Node child = plfChild.getFirstChild(); child != null; child = child.getNextSibling())
             {
-                if ( children.item( i ) instanceof Element )
-                    appendChild( (Element) children.item( i ),
+                if ( child instanceof Element )
+                    appendChild( (Element) child,
                                  copy, true );
             }
         }
@@ -26,12 +26,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jasig.portal.PortalException;
@@ -42,7 +36,6 @@ import org.jasig.portal.xml.XmlUtilitiesImpl;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /** 
  * Applies and updates position specifiers for child nodes in the
@@ -420,6 +413,12 @@ public class PositionManager {
                                     Element positionSet )
     {
 
+        // placeholders in the position set by name and nodes in the
+        // compViewParent by ID, neither is modified while checking so each
+        // is indexed once the first time a reparented node is found
+        LayoutNodeIndex placeholders = null;
+        LayoutNodeIndex compViewNodes = null;
+
         int i = 0;
         while ( i<order.size() )
         {
@@ -427,7 +426,11 @@ public class PositionManager {
             if ( ! ni.node.getParentNode().equals( compViewParent ) )
             {
                 ni.differentParent = true;
-                if (isNotReparentable(ni, compViewParent, positionSet)) {
+                if (placeholders == null) {
+                    placeholders = new LayoutNodeIndex(positionSet, "position", Constants.ATT_NAME);
+                    compViewNodes = new LayoutNodeIndex(compViewParent, null, Constants.ATT_ID);
+                }
+                if (isNotReparentable(ni, placeholders, compViewNodes, positionSet)) {
                     LOG.info("Resetting the following NodeInfo because it is not reparentable:  " + ni);
 
                     // this node should not be reparented. If it was placed
@@ -450,89 +453,80 @@ public class PositionManager {
      * siblings <strong>relative to its destination location</strong> have
      * moveAllowed="false".
      */
-    private static boolean isNotReparentable(NodeInfo ni, Element compViewParent, Element positionSet) {
+    private static boolean isNotReparentable(NodeInfo ni, LayoutNodeIndex placeholders,
+            LayoutNodeIndex compViewNodes, Element positionSet) {
 
         // This one is easy -- can't re-parent a node with dlm:moveAllowed=false
         if (ni.node.getAttribute(Constants.ATT_MOVE_ALLOWED).equals("false")) {
             return true;
         }
 
-        try {
+        /*
+         *  Find our own placeholder element in the positionSet
+         */
+        final List<Element> findPlaceholderList = placeholders.get(ni.id);
+        switch (findPlaceholderList.size()) {
+            case 0:
+                LOG.warn("No position found with name=\"" + ni.id + "\" in positionSet=" + XmlUtilitiesImpl.toString(positionSet));
+                return true;
+            case 1:
+                // This is healthy
+                break;
+            default:
+                LOG.warn("More than one position found with name=\"" + ni.id + "\" in positionSet=" + XmlUtilitiesImpl.toString(positionSet));
+                return true;
+        }
+        final Element placeholder = findPlaceholderList.get(0);  // At last
+
+        for (Element nextPlaceholder = (Element) placeholder.getNextSibling();  // Start with the next dlm:position element after placeholder
+                nextPlaceholder != null;                                       // As long as we have a placeholder to look at
+                nextPlaceholder = (Element) nextPlaceholder.getNextSibling()) {    // Advance to the next placeholder
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Considering whether node ''" + ni.id
+                        + "' is Reparentable;  subsequent sibling is:  "
+                        + nextPlaceholder.getAttribute("name"));
+            }
+
             /*
-             *  Annoying to do in Java, but we need to find our own placeholder
-             *  element in the positionSet
+             * Next task:  we have to find the non-placeholder representation of
+             * the nextSiblingPlaceholder within the compViewParent
              */
-            final XPathFactory xpathFactory = XPathFactory.newInstance();
-            final XPath xpath = xpathFactory.newXPath();
-            final String findPlaceholderXpath = ".//*[local-name()='position' and @name='" + ni.id + "']";
-            final XPathExpression findPlaceholder = xpath.compile(findPlaceholderXpath);
-            final NodeList findPlaceholderList = (NodeList) findPlaceholder.evaluate(positionSet, XPathConstants.NODESET);
-            switch (findPlaceholderList.getLength()) {
+            final String nextPlaceholderName = nextPlaceholder.getAttribute("name");
+            final List<Element> unmaskPlaceholderList = compViewNodes.get(nextPlaceholderName);
+            switch (unmaskPlaceholderList.size()) {
                 case 0:
-                    LOG.warn("Node not found for XPathExpression=\"" + findPlaceholderXpath + "\" in positionSet=" + XmlUtilitiesImpl.toString(positionSet));
-                    return true;
+                    // Not a problem;  the nextSiblingPlaceholder also refers
+                    // to a node that has been moved to this context (afaik)
+                    continue;
                 case 1:
-                    // This is healthy
+                    final Element nextSibling = unmaskPlaceholderList.get(0);
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Considering whether node ''" + ni.id + "' is Reparentable;  subsequent sibling '"
+                                + nextSibling.getAttribute("ID") + "' has dlm:moveAllowed="
+                                + !nextSibling.getAttribute(Constants.ATT_MOVE_ALLOWED).equals("false"));
+                    }
+
+                    // Need to perform some checks...
+                    if (nextSibling.getAttribute(Constants.ATT_MOVE_ALLOWED).equals("false")) {
+
+                        /*
+                         *  The following check is a bit strange;  it seems to verify
+                         *  that the current NodeInfo and the nextSibling come from the
+                         *  same fragment.  If they don't, the re-parenting is allowable.
+                         *  I believe this check could only be unsatisfied in the case
+                         *  of tabs.
+                         */
+                        Precedence p = Precedence.newInstance(nextSibling.getAttribute(Constants.ATT_FRAGMENT));
+                        if (ni.precedence.isEqualTo(p)) {
+                            return true;
+                        }
+                    }
                     break;
                 default:
-                    LOG.warn("More than one node found for XPathExpression=\"" + findPlaceholderXpath + "\" in positionSet=" + XmlUtilitiesImpl.toString(positionSet));
+                    LOG.warn("More than one node found with ID=\"" + nextPlaceholderName + "\" in compViewParent");
                     return true;
             }
-            final Element placeholder = (Element) findPlaceholderList.item(0);  // At last
-
-            for (Element nextPlaceholder = (Element) placeholder.getNextSibling();  // Start with the next dlm:position element after placeholder
-                    nextPlaceholder != null;                                       // As long as we have a placeholder to look at
-                    nextPlaceholder = (Element) nextPlaceholder.getNextSibling()) {    // Advance to the next placeholder
-
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Considering whether node ''" + ni.id
-                            + "' is Reparentable;  subsequent sibling is:  "
-                            + nextPlaceholder.getAttribute("name"));
-                }
-
-                /*
-                 * Next task:  we have to find the non-placeholder representation of
-                 * the nextSiblingPlaceholder within the compViewParent
-                 */
-                final String unmaskPlaceholderXpath = ".//*[@ID='" + nextPlaceholder.getAttribute("name") + "']";
-                final XPathExpression unmaskPlaceholder = xpath.compile(unmaskPlaceholderXpath);
-                final NodeList unmaskPlaceholderList = (NodeList) unmaskPlaceholder.evaluate(compViewParent, XPathConstants.NODESET);
-                switch (unmaskPlaceholderList.getLength()) {
-                    case 0:
-                        // Not a problem;  the nextSiblingPlaceholder also refers
-                        // to a node that has been moved to this context (afaik)
-                        continue;
-                    case 1:
-                        final Element nextSibling = (Element) unmaskPlaceholderList.item(0);
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Considering whether node ''" + ni.id + "' is Reparentable;  subsequent sibling '"
-                                    + nextSibling.getAttribute("ID") + "' has dlm:moveAllowed="
-                                    + !nextSibling.getAttribute(Constants.ATT_MOVE_ALLOWED).equals("false"));
-                        }
-
-                        // Need to perform some checks...
-                        if (nextSibling.getAttribute(Constants.ATT_MOVE_ALLOWED).equals("false")) {
-
-                            /*
-                             *  The following check is a bit strange;  it seems to verify
-                             *  that the current NodeInfo and the nextSibling come from the
-                             *  same fragment.  If they don't, the re-parenting is allowable.
-                             *  I believe this check could only be unsatisfied in the case
-                             *  of tabs.
-                             */
-                            Precedence p = Precedence.newInstance(nextSibling.getAttribute(Constants.ATT_FRAGMENT));
-                            if (ni.precedence.isEqualTo(p)) {
-                                return true;
-                            }
-                        }
-                        break;
-                    default:
-                        LOG.warn("More than one node found for XPathExpression=\"" + unmaskPlaceholderXpath + "\" in compViewParent");
-                        return true;
-                }
-            }
-        } catch (XPathExpressionException xpe) {
-            throw new RuntimeException("Failed to evaluate XPATH", xpe);
         }
 
         return false;  // Re-parenting is "not disallowed" (double-negative less readable)
@@ -19,8 +19,6 @@
 package org.jasig.portal.layout.dlm;
 
 import java.io.StringWriter;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -35,8 +33,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 
+import javax.management.ObjectName;
+
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
@@ -59,12 +60,14 @@ import org.jasig.portal.PortalException;
 import org.jasig.portal.RDBMServices;
 import org.jasig.portal.i18n.LocaleManager;
 import org.jasig.portal.io.xml.IPortalDataHandlerService;
+import org.jasig.portal.layout.CompactLayoutTree;
 import org.jasig.portal.layout.LayoutStructure;
 import org.jasig.portal.layout.StructureParameter;
 import org.jasig.portal.layout.StylesheetUserPreferencesImpl;
 import org.jasig.portal.layout.dao.IStylesheetUserPreferencesDao;
 import org.jasig.portal.layout.om.IStylesheetDescriptor;
 import org.jasig.portal.layout.om.IStylesheetUserPreferences;
+import org.jasig.portal.layout.simple.LayoutRowSet;
 import org.jasig.portal.layout.simple.RDBMUserLayoutStore;
 import org.jasig.portal.portlet.dao.IPortletEntityDao;
 import org.jasig.portal.portlet.dao.jpa.PortletPreferenceImpl;
@@ -78,9 +81,11 @@ import org.jasig.portal.portlet.om.IPortletType;
 import org.jasig.portal.portlet.om.PortletLifecycleState;
 import org.jasig.portal.portlet.registry.IPortletEntityRegistry;
 import org.jasig.portal.properties.PropertiesManager;
+import org.jasig.portal.security.IAuthorizationPrincipal;
 import org.jasig.portal.security.IPerson;
 import org.jasig.portal.security.provider.BrokenSecurityContext;
 import org.jasig.portal.security.provider.PersonImpl;
+import org.jasig.portal.services.AuthorizationService;
 import org.jasig.portal.utils.DocumentFactory;
 import org.jasig.portal.utils.MapPopulator;
 import org.jasig.portal.utils.Tuple;
@@ -125,6 +130,9 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
     private FragmentActivator fragmentActivator;
 
     private Ehcache fragmentNodeInfoCache;
+    private Ehcache ilfTemplateCache;
+    private boolean useIlfTemplates = true;
+    private final CompositeLayoutStatistics compositeLayoutStatistics = new CompositeLayoutStatistics();
 
     private boolean errorOnMissingPortlet = true;
     private boolean errorOnMissingUser = true;
@@ -199,6 +207,40 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         this.fragmentNodeInfoCache = fragmentNodeInfoCache;
     }
 
+    @Autowired
+    public void setIlfTemplateCache(
+            @Qualifier("org.jasig.portal.layout.dlm.RDBMDistributedLayoutStore.ilfTemplateCache")
+            Ehcache ilfTemplateCache) {
+        this.ilfTemplateCache = ilfTemplateCache;
+    }
+
+    /**
+     * If true (the default) the merged fragment portion of the ILF is cached and shared by all users with the
+     * same applicable fragments that cannot render the same fragment channels. If false the ILF is merged from
+     * the fragment layouts for every composite layout.
+     */
+    @Value("${org.jasig.portal.layout.dlm.RDBMDistributedLayoutStore.useIlfTemplates:true}")
+    public void setUseIlfTemplates(boolean useIlfTemplates) {
+        this.useIlfTemplates = useIlfTemplates;
+    }
+
+    /**
+     * @return Build time and ILF template counters for composite layouts
+     */
+    public CompositeLayoutStatisticsMBean getCompositeLayoutStatistics() {
+        return this.compositeLayoutStatistics;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+
+        if (this.getmBeanExportOperations() != null) {
+            this.getmBeanExportOperations().registerManagedResource(this.compositeLayoutStatistics,
+                    new ObjectName("uPortal:section=Layout,name=CompositeLayoutStatistics"));
+        }
+    }
+
     @Value("${org.jasig.portal.io.layout.errorOnMissingPortlet:true}")
     public void setErrorOnMissingPortlet(boolean errorOnMissingPortlet) {
         this.errorOnMissingPortlet = errorOnMissingPortlet;
@@ -1081,9 +1123,9 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
 
     }
 
-    private final ThreadLocal<Cache<Tuple<String, String>, Document>> layoutCacheHolder = new ThreadLocal<Cache<Tuple<String, String>, Document>>();
+    private final ThreadLocal<Cache<Tuple<String, String>, CompactLayoutTree>> layoutCacheHolder = new ThreadLocal<Cache<Tuple<String, String>, CompactLayoutTree>>();
 
-    public void setLayoutImportExportCache(Cache<Tuple<String, String>, Document> layoutCache) {
+    public void setLayoutImportExportCache(Cache<Tuple<String, String>, CompactLayoutTree> layoutCache) {
         if (layoutCache == null) {
             layoutCacheHolder.remove();
         }
@@ -1092,7 +1134,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         }
     }
 
-    public Cache<Tuple<String, String>, Document> getLayoutImportExportCache() {
+    public Cache<Tuple<String, String>, CompactLayoutTree> getLayoutImportExportCache() {
         return layoutCacheHolder.get();
     }
 
@@ -1111,12 +1153,12 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         Document layoutDoc;
         Tuple<String, String> key = null;
 
-        final Cache<Tuple<String, String>, Document> layoutCache = getLayoutImportExportCache();
+        final Cache<Tuple<String, String>, CompactLayoutTree> layoutCache = getLayoutImportExportCache();
         if (layoutCache != null) {
             key = new Tuple<String, String>(person.getUserName(), profile.getProfileFname());
-            layoutDoc = layoutCache.getIfPresent(key);
-            if (layoutDoc != null) {
-                return (Document) layoutDoc.cloneNode(true);
+            final CompactLayoutTree cachedLayout = layoutCache.getIfPresent(key);
+            if (cachedLayout != null) {
+                return cachedLayout.toDocument();
             }
         }
 
@@ -1125,7 +1167,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         layout.setAttribute(Constants.NS_DECL, Constants.NS_URI);
 
         if (layoutCache != null && key != null) {
-            layoutCache.put(key, (Document) layoutDoc.cloneNode(true));
+            layoutCache.put(key, CompactLayoutTree.fromDocument(layoutDoc));
         }
 
         return layoutDoc;
@@ -1311,8 +1353,9 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
     private DistributedUserLayout getCompositeLayout(IPerson person, IUserProfile profile)
 
     {
+        final long start = System.nanoTime();
         final Set<String> fragmentNames = new LinkedHashSet<String>();
-        final List<Document> applicables = new LinkedList<Document>();
+        final List<UserView> applicables = new LinkedList<UserView>();
         final Locale locale = profile.getLocaleManager().getLocales()[0];
 
         final List<FragmentDefinition> definitions = this.configurationLoader.getFragments();
@@ -1328,7 +1371,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
                 if (fragmentDefinition.isApplicable(person)) {
                     final UserView userView = activator.getUserView(fragmentDefinition, locale);
                     if (userView != null) {
-                        applicables.add(userView.layout);
+                        applicables.add(userView);
                     }
                     fragmentNames.add(fragmentDefinition.getName());
                 }
@@ -1344,7 +1387,17 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
             logger.debug("PLF for {} immediately after loading\n{}", person.getAttribute(IPerson.USERNAME), XmlUtilitiesImpl.toString(PLF));
         }
 
-        final Document ILF = ILFBuilder.constructILF(PLF, applicables, person);
+        final Document ILF;
+        if (this.useIlfTemplates) {
+            ILF = this.constructILF(PLF, applicables, locale, person);
+        }
+        else {
+            final List<Document> layouts = new ArrayList<Document>(applicables.size());
+            for (final UserView userView : applicables) {
+                layouts.add(userView.layout);
+            }
+            ILF = ILFBuilder.constructILF(PLF, layouts, person);
+        }
         person.setAttribute(Constants.PLF, PLF);
         final IntegrationResult result = new IntegrationResult();
         PLFIntegrator.mergePLFintoILF(PLF, ILF, result);
@@ -1368,10 +1421,109 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         final IStylesheetUserPreferences distributedThemeStylesheetUserPreferences = this
                 .loadDistributedStylesheetUserPreferences(person, profile, themeStylesheetId, fragmentNames);
 
+        this.compositeLayoutStatistics.recordCompositeLayout(System.nanoTime() - start);
+
         return new DistributedUserLayout(ILF, fragmentNames, distributedStructureStylesheetUserPreferences,
                 distributedThemeStylesheetUserPreferences);
     }
 
+    /**
+     * Creates the ILF from a cached template of the merged fragments. The ILF only depends on the user through
+     * the fragment channels they are not allowed to render, so templates are keyed by the revisions of the
+     * applicable fragment views, the locale and the denied channels. A fragment view rebuilt by the
+     * {@link FragmentActivator} gets a new revision so templates built from the old view are no longer used
+     * and age out of the cache.
+     */
+    private Document constructILF(Document PLF, List<UserView> applicables, Locale locale, IPerson person) {
+        final EntityIdentifier ei = person.getEntityIdentifier();
+        final IAuthorizationPrincipal ap = AuthorizationService.instance().newPrincipal(ei.getKey(), ei.getType());
+
+        final long[] revisions = new long[applicables.size()];
+        final List<Document> layouts = new ArrayList<Document>(applicables.size());
+        final Set<String> deniedChannelIds = new TreeSet<String>();
+        int index = 0;
+        for (final UserView userView : applicables) {
+            revisions[index++] = userView.getRevision();
+            layouts.add(userView.layout);
+            for (final String channelId : userView.getChannelIds()) {
+                if (!ap.canRender(channelId)) {
+                    deniedChannelIds.add(channelId);
+                }
+            }
+        }
+
+        final IlfTemplateKey key = new IlfTemplateKey(revisions, locale, deniedChannelIds);
+        final net.sf.ehcache.Element element = this.ilfTemplateCache.get(key);
+        final Document template;
+        if (element != null) {
+            template = (Document) element.getObjectValue();
+            this.compositeLayoutStatistics.recordIlfTemplateLookup(true);
+        }
+        else {
+            template = ILFBuilder.constructILFTemplate(layouts, deniedChannelIds);
+            this.ilfTemplateCache.put(new net.sf.ehcache.Element(key, template));
+            this.compositeLayoutStatistics.recordIlfTemplateLookup(false);
+        }
+
+        return ILFBuilder.constructILF(PLF, template);
+    }
+
+    /**
+     * Key for a cached ILF template
+     */
+    private static final class IlfTemplateKey {
+        private final long[] revisions;
+        private final Locale locale;
+        private final Set<String> deniedChannelIds;
+        private final int hash;
+
+        public IlfTemplateKey(long[] revisions, Locale locale, Set<String> deniedChannelIds) {
+            this.revisions = revisions;
+            this.locale = locale;
+            this.deniedChannelIds = deniedChannelIds;
+
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + Arrays.hashCode(revisions);
+            result = prime * result + ((locale == null) ? 0 : locale.hashCode());
+            result = prime * result + deniedChannelIds.hashCode();
+            this.hash = result;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            final IlfTemplateKey other = (IlfTemplateKey) obj;
+            if (this.hash != other.hash)
+                return false;
+            if (!Arrays.equals(this.revisions, other.revisions))
+                return false;
+            if (this.locale == null) {
+                if (other.locale != null)
+                    return false;
+            }
+            else if (!this.locale.equals(other.locale))
+                return false;
+            return this.deniedChannelIds.equals(other.deniedChannelIds);
+        }
+
+        @Override
+        public String toString() {
+            return "IlfTemplateKey [revisions=" + Arrays.toString(this.revisions) + ", locale=" + this.locale
+                    + ", deniedChannelIds=" + this.deniedChannelIds + "]";
+        }
+    }
+
     /**
        This method overrides the same method in the super class to persist
        only layout information stored in the user's person layout fragment
@@ -1653,14 +1805,13 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
     }
 
     @Override
-    protected int saveStructure(Node node, PreparedStatement structStmt, PreparedStatement parmStmt)
-            throws SQLException {
+    protected int saveStructure(Node node, LayoutRowSet rows) {
         if (node == null) { // No more
             return 0;
         }
         if (node.getNodeName().equals("parameter")) {
             //parameter, skip it and go on to the next node
-            return this.saveStructure(node.getNextSibling(), structStmt, parmStmt);
+            return this.saveStructure(node.getNextSibling(), rows);
         }
         if (!(node instanceof Element)) {
             return 0;
@@ -1702,38 +1853,32 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         }
 
         if (node.hasChildNodes()) {
-            childStructId = this.saveStructure(node.getFirstChild(), structStmt, parmStmt);
+            childStructId = this.saveStructure(node.getFirstChild(), rows);
         }
-        nextStructId = this.saveStructure(node.getNextSibling(), structStmt, parmStmt);
-        structStmt.clearParameters();
-        structStmt.setInt(1, saveStructId);
-        structStmt.setInt(2, nextStructId);
-        structStmt.setInt(3, childStructId);
+        nextStructId = this.saveStructure(node.getNextSibling(), rows);
 
         final String externalId = structure.getAttribute("external_id");
+        final Integer eID;
         if (externalId != null && externalId.trim().length() > 0) {
-            final Integer eID = new Integer(externalId);
-            structStmt.setInt(4, eID.intValue());
-        }
-        else {
-            structStmt.setNull(4, java.sql.Types.NUMERIC);
-
-        }
-        if (isChannel) {
-            structStmt.setInt(5, chanId);
-            structStmt.setNull(6, java.sql.Types.VARCHAR);
+            eID = new Integer(externalId);
         }
         else {
-            structStmt.setNull(5, java.sql.Types.NUMERIC);
-            structStmt.setString(6, structure.getAttribute("name"));
+            eID = null;
         }
         final String structType = structure.getAttribute("type");
-        structStmt.setString(7, structType);
-        structStmt.setString(8, RDBMServices.dbFlag(xmlBool(structure.getAttribute("hidden"))));
-        structStmt.setString(9, RDBMServices.dbFlag(xmlBool(structure.getAttribute("immutable"))));
-        structStmt.setString(10, RDBMServices.dbFlag(xmlBool(structure.getAttribute("unremovable"))));
-        logger.debug(structStmt.toString());
-        structStmt.executeUpdate();
+        final LayoutRowSet.StructureRow structureRow = new LayoutRowSet.StructureRow(
+                saveStructId,
+                nextStructId,
+                childStructId,
+                eID,
+                isChannel ? chanId : null,
+                isChannel ? null : structure.getAttribute("name"),
+                structType,
+                RDBMServices.dbFlag(xmlBool(structure.getAttribute("hidden"))),
+                RDBMServices.dbFlag(xmlBool(structure.getAttribute("immutable"))),
+                RDBMServices.dbFlag(xmlBool(structure.getAttribute("unremovable"))));
+        logger.debug("{}", structureRow);
+        rows.addStructure(structureRow);
 
         // code to persist extension attributes for dlm
         final NamedNodeMap attribs = node.getAttributes();
@@ -1744,12 +1889,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
             if (name.startsWith(Constants.NS) && !name.equals(Constants.ATT_PLF_ID)
                     && !name.equals(Constants.ATT_FRAGMENT) && !name.equals(Constants.ATT_PRECEDENCE)) {
                 // a cp extension attribute. Push into param table.
-                parmStmt.clearParameters();
-                parmStmt.setInt(1, saveStructId);
-                parmStmt.setString(2, name);
-                parmStmt.setString(3, attrib.getNodeValue());
-                logger.debug(parmStmt.toString());
-                parmStmt.executeUpdate();
+                rows.addParameter(saveStructId, name, attrib.getNodeValue());
             }
         }
         final NodeList parameters = node.getChildNodes();
@@ -1770,12 +1910,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
                         // override only for adhoc or if diff from chan def
                         final IPortletDefinitionParameter cp = portletDef.getParameter(parmName);
                         if (cp == null || !cp.getValue().equals(parmValue)) {
-                            parmStmt.clearParameters();
-                            parmStmt.setInt(1, saveStructId);
-                            parmStmt.setString(2, parmName);
-                            parmStmt.setString(3, parmValue);
-                            logger.debug(parmStmt.toString());
-                            parmStmt.executeUpdate();
+                            rows.addParameter(saveStructId, parmName, parmValue);
                         }
                     }
                 }
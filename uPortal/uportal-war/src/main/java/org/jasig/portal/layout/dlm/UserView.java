@@ -18,8 +18,15 @@
  */
 package org.jasig.portal.layout.dlm;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.jasig.portal.IUserProfile;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 
 /**
@@ -27,7 +34,11 @@ import org.w3c.dom.Document;
  */
 class UserView
 {
+    private static final AtomicLong REVISION_SEQUENCE = new AtomicLong();
+
     private final int userId;
+    private final long revision = REVISION_SEQUENCE.incrementAndGet();
+    private volatile Set<String> channelIds;
     Document layout = null;
     int layoutId = 0;
     int profileId = 1;
@@ -50,5 +61,42 @@ class UserView
     public int getUserId() {
         return this.userId;
     }
+
+    /**
+     * @return Unique number for this view, a view rebuilt by the {@link FragmentActivator} gets a new revision
+     */
+    public long getRevision() {
+        return this.revision;
+    }
+
+    /**
+     * @return The chanIDs of the channels in the fragment layout, in document order
+     */
+    public Set<String> getChannelIds() {
+        Set<String> ids = this.channelIds;
+        if (ids == null) {
+            ids = new LinkedHashSet<String>();
+            if (this.layout != null) {
+                addChannelIds(this.layout.getDocumentElement(), ids);
+            }
+            ids = Collections.unmodifiableSet(ids);
+            this.channelIds = ids;
+        }
+        return ids;
+    }
+
+    private static void addChannelIds(Element element, Set<String> ids) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                final Element childElement = (Element) child;
+                if (Constants.ELM_CHANNEL.equals(childElement.getTagName())) {
+                    ids.add(childElement.getAttribute(Constants.ATT_CHANNEL_ID));
+                }
+                else {
+                    addChannelIds(childElement, ids);
+                }
+            }
+        }
+    }
     
 }
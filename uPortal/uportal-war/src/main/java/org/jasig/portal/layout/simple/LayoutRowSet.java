@@ -0,0 +1,324 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.simple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+/**
+ * The UP_LAYOUT_STRUCT and UP_LAYOUT_PARAM rows for a single user layout. Used both to collect the rows
+ * generated from a layout document and to hold the rows currently stored in the database so that the
+ * two can be compared via {@link #computeDelta(LayoutRowSet)}.
+ */
+public final class LayoutRowSet {
+    private final Map<Integer, StructureRow> structures = new LinkedHashMap<Integer, StructureRow>();
+    private final Map<ParameterKey, ParameterRow> parameters = new LinkedHashMap<ParameterKey, ParameterRow>();
+
+    public void addStructure(StructureRow structure) {
+        this.structures.put(structure.getStructId(), structure);
+    }
+
+    public void addParameter(int structId, String name, String value) {
+        final ParameterRow parameter = new ParameterRow(structId, name, value);
+        this.parameters.put(parameter.getKey(), parameter);
+    }
+
+    public Collection<StructureRow> getStructures() {
+        return Collections.unmodifiableCollection(this.structures.values());
+    }
+
+    public Collection<ParameterRow> getParameters() {
+        return Collections.unmodifiableCollection(this.parameters.values());
+    }
+
+    public int size() {
+        return this.structures.size() + this.parameters.size();
+    }
+
+    /**
+     * Compute the inserts, updates and deletes needed to turn the existing rows into the rows in this set
+     *
+     * @param existing The rows currently stored for the layout
+     */
+    public Delta computeDelta(LayoutRowSet existing) {
+        final Delta delta = new Delta();
+
+        for (final StructureRow structure : this.structures.values()) {
+            final StructureRow existingStructure = existing.structures.get(structure.getStructId());
+            if (existingStructure == null) {
+                delta.structureInserts.add(structure);
+            }
+            else if (!structure.equals(existingStructure)) {
+                delta.structureUpdates.add(structure);
+            }
+        }
+        for (final StructureRow existingStructure : existing.structures.values()) {
+            if (!this.structures.containsKey(existingStructure.getStructId())) {
+                delta.structureDeletes.add(existingStructure);
+            }
+        }
+
+        for (final ParameterRow parameter : this.parameters.values()) {
+            final ParameterRow existingParameter = existing.parameters.get(parameter.getKey());
+            if (existingParameter == null) {
+                delta.parameterInserts.add(parameter);
+            }
+            else if (!parameter.equals(existingParameter)) {
+                delta.parameterUpdates.add(parameter);
+            }
+        }
+        for (final ParameterRow existingParameter : existing.parameters.values()) {
+            if (!this.parameters.containsKey(existingParameter.getKey())) {
+                delta.parameterDeletes.add(existingParameter);
+            }
+        }
+
+        return delta;
+    }
+
+    /**
+     * Changes needed to bring a stored layout in line with a new {@link LayoutRowSet}
+     */
+    public static final class Delta {
+        private final List<StructureRow> structureInserts = new ArrayList<StructureRow>();
+        private final List<StructureRow> structureUpdates = new ArrayList<StructureRow>();
+        private final List<StructureRow> structureDeletes = new ArrayList<StructureRow>();
+        private final List<ParameterRow> parameterInserts = new ArrayList<ParameterRow>();
+        private final List<ParameterRow> parameterUpdates = new ArrayList<ParameterRow>();
+        private final List<ParameterRow> parameterDeletes = new ArrayList<ParameterRow>();
+
+        private Delta() {
+        }
+
+        public List<StructureRow> getStructureInserts() {
+            return this.structureInserts;
+        }
+        public List<StructureRow> getStructureUpdates() {
+            return this.structureUpdates;
+        }
+        public List<StructureRow> getStructureDeletes() {
+            return this.structureDeletes;
+        }
+        public List<ParameterRow> getParameterInserts() {
+            return this.parameterInserts;
+        }
+        public List<ParameterRow> getParameterUpdates() {
+            return this.parameterUpdates;
+        }
+        public List<ParameterRow> getParameterDeletes() {
+            return this.parameterDeletes;
+        }
+
+        public boolean isEmpty() {
+            return this.structureInserts.isEmpty() && this.structureUpdates.isEmpty() && this.structureDeletes.isEmpty()
+                    && this.parameterInserts.isEmpty() && this.parameterUpdates.isEmpty() && this.parameterDeletes.isEmpty();
+        }
+    }
+
+    /**
+     * A single UP_LAYOUT_STRUCT row. Empty strings and nulls are considered equal when comparing rows since
+     * some databases store empty strings as null.
+     */
+    public static final class StructureRow {
+        private final int structId;
+        private final int nextStructId;
+        private final int childStructId;
+        private final Integer externalId;
+        private final Integer chanId;
+        private final String name;
+        private final String type;
+        private final String hidden;
+        private final String immutable;
+        private final String unremovable;
+
+        public StructureRow(int structId, int nextStructId, int childStructId, Integer externalId, Integer chanId,
+                String name, String type, String hidden, String immutable, String unremovable) {
+            this.structId = structId;
+            this.nextStructId = nextStructId;
+            this.childStructId = childStructId;
+            this.externalId = externalId;
+            this.chanId = chanId;
+            this.name = name;
+            this.type = type;
+            this.hidden = hidden;
+            this.immutable = immutable;
+            this.unremovable = unremovable;
+        }
+
+        public int getStructId() {
+            return this.structId;
+        }
+        public int getNextStructId() {
+            return this.nextStructId;
+        }
+        public int getChildStructId() {
+            return this.childStructId;
+        }
+        public Integer getExternalId() {
+            return this.externalId;
+        }
+        public Integer getChanId() {
+            return this.chanId;
+        }
+        public String getName() {
+            return this.name;
+        }
+        public String getType() {
+            return this.type;
+        }
+        public String getHidden() {
+            return this.hidden;
+        }
+        public String getImmutable() {
+            return this.immutable;
+        }
+        public String getUnremovable() {
+            return this.unremovable;
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder()
+                .append(this.structId)
+                .append(this.nextStructId)
+                .append(this.childStructId)
+                .append(this.externalId)
+                .append(this.chanId)
+                .append(StringUtils.trimToNull(this.name))
+                .append(StringUtils.trimToNull(this.type))
+                .append(StringUtils.trimToNull(this.hidden))
+                .append(StringUtils.trimToNull(this.immutable))
+                .append(StringUtils.trimToNull(this.unremovable))
+                .toHashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof StructureRow)) {
+                return false;
+            }
+            final StructureRow rhs = (StructureRow) obj;
+            return new EqualsBuilder()
+                .append(this.structId, rhs.structId)
+                .append(this.nextStructId, rhs.nextStructId)
+                .append(this.childStructId, rhs.childStructId)
+                .append(this.externalId, rhs.externalId)
+                .append(this.chanId, rhs.chanId)
+                .append(StringUtils.trimToNull(this.name), StringUtils.trimToNull(rhs.name))
+                .append(StringUtils.trimToNull(this.type), StringUtils.trimToNull(rhs.type))
+                .append(StringUtils.trimToNull(this.hidden), StringUtils.trimToNull(rhs.hidden))
+                .append(StringUtils.trimToNull(this.immutable), StringUtils.trimToNull(rhs.immutable))
+                .append(StringUtils.trimToNull(this.unremovable), StringUtils.trimToNull(rhs.unremovable))
+                .isEquals();
+        }
+
+        @Override
+        public String toString() {
+            return "StructureRow [structId=" + this.structId + ", nextStructId=" + this.nextStructId
+                    + ", childStructId=" + this.childStructId + ", chanId=" + this.chanId + ", name=" + this.name
+                    + ", type=" + this.type + "]";
+        }
+    }
+
+    /**
+     * A single UP_LAYOUT_PARAM row
+     */
+    public static final class ParameterRow {
+        private final ParameterKey key;
+        private final String value;
+
+        ParameterRow(int structId, String name, String value) {
+            this.key = new ParameterKey(structId, name);
+            this.value = value;
+        }
+
+        ParameterKey getKey() {
+            return this.key;
+        }
+        public int getStructId() {
+            return this.key.structId;
+        }
+        public String getName() {
+            return this.key.name;
+        }
+        public String getValue() {
+            return this.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder().append(this.key).append(this.value).toHashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof ParameterRow)) {
+                return false;
+            }
+            final ParameterRow rhs = (ParameterRow) obj;
+            return new EqualsBuilder().append(this.key, rhs.key).append(this.value, rhs.value).isEquals();
+        }
+
+        @Override
+        public String toString() {
+            return "ParameterRow [structId=" + this.key.structId + ", name=" + this.key.name + ", value=" + this.value + "]";
+        }
+    }
+
+    private static final class ParameterKey {
+        private final int structId;
+        private final String name;
+
+        public ParameterKey(int structId, String name) {
+            this.structId = structId;
+            this.name = name;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.structId + ((this.name == null) ? 0 : this.name.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof ParameterKey)) {
+                return false;
+            }
+            final ParameterKey rhs = (ParameterKey) obj;
+            return this.structId == rhs.structId && StringUtils.equals(this.name, rhs.name);
+        }
+    }
+}
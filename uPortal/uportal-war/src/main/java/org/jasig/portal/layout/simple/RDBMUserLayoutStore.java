@@ -35,6 +35,7 @@ import java.util.Set;
 import java.util.Vector;
 
 import javax.annotation.Resource;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
 import org.jasig.portal.EntityIdentifier;
@@ -62,10 +63,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.MBeanExportOperations;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
@@ -108,6 +111,9 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
     protected IDatabaseMetadata databaseMetadata;
     protected IPortletDefinitionRegistry portletDefinitionRegistry;
     protected IStylesheetDescriptorDao stylesheetDescriptorDao;
+    private MBeanExportOperations mBeanExportOperations;
+    private final UserLayoutStoreStatistics statistics = new UserLayoutStoreStatistics();
+    private boolean incrementalSave = false;
 
     // I18n property
     protected static final boolean localeAware = LocaleManager.isLocaleAware();
@@ -146,8 +152,42 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
         this.portletDefinitionRegistry = portletDefinitionRegistry;
     }
 
+    @Autowired(required=false)
+    public void setmBeanExportOperations(MBeanExportOperations mBeanExportOperations) {
+        this.mBeanExportOperations = mBeanExportOperations;
+    }
+
+    /**
+     * @return Used to export store statistics to JMX, null if JMX export is not available
+     */
+    protected MBeanExportOperations getmBeanExportOperations() {
+        return this.mBeanExportOperations;
+    }
+
+    /**
+     * If true layout saves compare the new layout against the rows currently stored for the layout and only
+     * insert, update or delete the rows that differ. If false (the default) all of the layout rows are deleted
+     * and re-inserted on every save.
+     */
+    @Value("${org.jasig.portal.layout.simple.RDBMUserLayoutStore.incrementalSave:false}")
+    public void setIncrementalSave(boolean incrementalSave) {
+        this.incrementalSave = incrementalSave;
+    }
+
+    /**
+     * @return Counters for the rows written by layout saves
+     */
+    public UserLayoutStoreStatisticsMBean getStatistics() {
+        return this.statistics;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (this.mBeanExportOperations != null) {
+            this.mBeanExportOperations.registerManagedResource(this.statistics, 
+                    new ObjectName("uPortal:section=Layout,name=UserLayoutStoreStatistics"));
+        }
+
         if (this.databaseMetadata.supportsOuterJoins()) {
             final IJoinQueryString joinQuery = this.databaseMetadata.getJoinQuery();
 
@@ -1159,7 +1199,13 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
 
     protected abstract Element getStructure(Document doc, LayoutStructure ls);
 
-    protected abstract int saveStructure (Node node, PreparedStatement structStmt, PreparedStatement parmStmt) throws SQLException;
+    /**
+     * Add the UP_LAYOUT_STRUCT and UP_LAYOUT_PARAM rows for the node, its children and its following siblings
+     * to the row set.
+     * 
+     * @return The struct id of the node, 0 if no row was added for it
+     */
+    protected abstract int saveStructure (Node node, LayoutRowSet rows);
 
     public void setUserBrowserMapping (final IPerson person, final String userAgentArg, final int profileId) {
         final int userId = person.getID();
@@ -1248,48 +1294,19 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
                             firstLayout = true;
                         }
 
-                        String sql = "DELETE FROM UP_LAYOUT_PARAM WHERE USER_ID=? AND LAYOUT_ID=?";
-                        PreparedStatement pstmt = con.prepareStatement(sql);
-                        try {
-                            pstmt.clearParameters();
-                            pstmt.setInt(1, userId);
-                            pstmt.setInt(2, layoutId);
-                                logger.debug(sql);
-                            pstmt.executeUpdate();
-                        } finally {
-                            pstmt.close();
-                        }
+                        final LayoutRowSet rows = new LayoutRowSet();
+                        final int firstStructId = saveStructure(layoutXML.getFirstChild().getFirstChild(), rows);
 
-                        sql = "DELETE FROM UP_LAYOUT_STRUCT WHERE USER_ID=? AND LAYOUT_ID=?";
-                        pstmt = con.prepareStatement(sql);
-                        try {
-                            pstmt.clearParameters();
-                            pstmt.setInt(1, userId);
-                            pstmt.setInt(2, layoutId);
-                            logger.debug(sql);
-                            pstmt.executeUpdate();
-                        } finally {
-                            pstmt.close();
+                        if (incrementalSave) {
+                            saveLayoutRowsIncremental(con, userId, layoutId, rows);
                         }
-
-                        PreparedStatement structStmt = con.prepareStatement("INSERT INTO UP_LAYOUT_STRUCT "
-                                + "(USER_ID, LAYOUT_ID, STRUCT_ID, NEXT_STRUCT_ID, CHLD_STRUCT_ID,EXTERNAL_ID,CHAN_ID,NAME,TYPE,HIDDEN,IMMUTABLE,UNREMOVABLE) "
-                                + "VALUES (" + userId + "," + layoutId + ",?,?,?,?,?,?,?,?,?,?)");
-
-                        PreparedStatement parmStmt = con.prepareStatement("INSERT INTO UP_LAYOUT_PARAM "
-                                + "(USER_ID, LAYOUT_ID, STRUCT_ID, STRUCT_PARM_NM, STRUCT_PARM_VAL) " + "VALUES (" + userId + "," + layoutId + ",?,?,?)");
-
-                        int firstStructId;
-                        try {
-                            firstStructId = saveStructure(layoutXML.getFirstChild().getFirstChild(), structStmt, parmStmt);
-                        } finally {
-                            structStmt.close();
-                            parmStmt.close();
+                        else {
+                            saveLayoutRows(con, userId, layoutId, rows);
                         }
 
                         //Check to see if the user has a matching layout
-                        sql = "SELECT * FROM UP_USER_LAYOUT WHERE USER_ID=? AND LAYOUT_ID=?";
-                        pstmt = con.prepareStatement(sql);
+                        String sql = "SELECT * FROM UP_USER_LAYOUT WHERE USER_ID=? AND LAYOUT_ID=?";
+                        PreparedStatement pstmt = con.prepareStatement(sql);
                         try {
                             pstmt.clearParameters();
                             pstmt.setInt(1, userId);
@@ -1453,6 +1470,315 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
         }
     }
 
+    /**
+     * Replace all of the stored rows for the layout with the rows in the row set
+     */
+    private void saveLayoutRows(Connection con, int userId, int layoutId, LayoutRowSet rows) throws SQLException {
+        final int parameterDeletes;
+        String sql = "DELETE FROM UP_LAYOUT_PARAM WHERE USER_ID=? AND LAYOUT_ID=?";
+        PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            pstmt.clearParameters();
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, layoutId);
+            logger.debug(sql);
+            parameterDeletes = pstmt.executeUpdate();
+        } finally {
+            pstmt.close();
+        }
+
+        final int structureDeletes;
+        sql = "DELETE FROM UP_LAYOUT_STRUCT WHERE USER_ID=? AND LAYOUT_ID=?";
+        pstmt = con.prepareStatement(sql);
+        try {
+            pstmt.clearParameters();
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, layoutId);
+            logger.debug(sql);
+            structureDeletes = pstmt.executeUpdate();
+        } finally {
+            pstmt.close();
+        }
+
+        insertStructures(con, userId, layoutId, rows.getStructures());
+        insertParameters(con, userId, layoutId, rows.getParameters());
+
+        final int written = this.statistics.recordSave(false, 
+                rows.getStructures().size(), 0, structureDeletes, 
+                rows.getParameters().size(), 0, parameterDeletes);
+        logger.debug("Saved layout {} for user {} by replacing all rows, {} rows written", layoutId, userId, written);
+    }
+
+    /**
+     * Compare the row set against the stored rows for the layout and write only the rows that differ
+     */
+    private void saveLayoutRowsIncremental(Connection con, int userId, int layoutId, LayoutRowSet rows) throws SQLException {
+        final LayoutRowSet existingRows = loadLayoutRows(con, userId, layoutId);
+        final LayoutRowSet.Delta delta = rows.computeDelta(existingRows);
+
+        if (!delta.isEmpty()) {
+            //Deletes first so removed parameters never reference a removed structure row
+            deleteParameters(con, userId, layoutId, delta.getParameterDeletes());
+            deleteStructures(con, userId, layoutId, delta.getStructureDeletes());
+            updateStructures(con, userId, layoutId, delta.getStructureUpdates());
+            insertStructures(con, userId, layoutId, delta.getStructureInserts());
+            updateParameters(con, userId, layoutId, delta.getParameterUpdates());
+            insertParameters(con, userId, layoutId, delta.getParameterInserts());
+        }
+
+        final int written = this.statistics.recordSave(true, 
+                delta.getStructureInserts().size(), delta.getStructureUpdates().size(), delta.getStructureDeletes().size(), 
+                delta.getParameterInserts().size(), delta.getParameterUpdates().size(), delta.getParameterDeletes().size());
+        logger.debug("Saved layout {} for user {} incrementally, {} of {} rows written", layoutId, userId, written, rows.size());
+    }
+
+    /**
+     * Load the currently stored rows for the layout
+     */
+    private LayoutRowSet loadLayoutRows(Connection con, int userId, int layoutId) throws SQLException {
+        final LayoutRowSet rows = new LayoutRowSet();
+
+        String sql = "SELECT STRUCT_ID, NEXT_STRUCT_ID, CHLD_STRUCT_ID, EXTERNAL_ID, CHAN_ID, NAME, TYPE, HIDDEN, IMMUTABLE, UNREMOVABLE "
+                + "FROM UP_LAYOUT_STRUCT WHERE USER_ID=? AND LAYOUT_ID=?";
+        PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, layoutId);
+            logger.debug(sql);
+            final ResultSet rs = pstmt.executeQuery();
+            try {
+                while (rs.next()) {
+                    final int chanId = rs.getInt(5);
+                    final Integer chanIdValue = rs.wasNull() ? null : chanId;
+                    rows.addStructure(new LayoutRowSet.StructureRow(
+                            rs.getInt(1), 
+                            rs.getInt(2), 
+                            rs.getInt(3), 
+                            parseExternalId(rs.getString(4)),
+                            chanIdValue, 
+                            rs.getString(6), 
+                            rs.getString(7), 
+                            rs.getString(8), 
+                            rs.getString(9), 
+                            rs.getString(10)));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            pstmt.close();
+        }
+
+        sql = "SELECT STRUCT_ID, STRUCT_PARM_NM, STRUCT_PARM_VAL FROM UP_LAYOUT_PARAM WHERE USER_ID=? AND LAYOUT_ID=?";
+        pstmt = con.prepareStatement(sql);
+        try {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, layoutId);
+            logger.debug(sql);
+            final ResultSet rs = pstmt.executeQuery();
+            try {
+                while (rs.next()) {
+                    rows.addParameter(rs.getInt(1), rs.getString(2), rs.getString(3));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            pstmt.close();
+        }
+
+        return rows;
+    }
+
+    private Integer parseExternalId(String externalId) {
+        if (externalId == null || externalId.trim().length() == 0) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(externalId.trim());
+        }
+        catch (NumberFormatException e) {
+            //Will never match a parsed layout value so the row gets rewritten
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    private void insertStructures(Connection con, int userId, int layoutId, Collection<LayoutRowSet.StructureRow> structures) throws SQLException {
+        if (structures.isEmpty()) {
+            return;
+        }
+
+        final String sql = "INSERT INTO UP_LAYOUT_STRUCT "
+                + "(USER_ID, LAYOUT_ID, STRUCT_ID, NEXT_STRUCT_ID, CHLD_STRUCT_ID,EXTERNAL_ID,CHAN_ID,NAME,TYPE,HIDDEN,IMMUTABLE,UNREMOVABLE) "
+                + "VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
+        final PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            for (final LayoutRowSet.StructureRow structure : structures) {
+                pstmt.clearParameters();
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, layoutId);
+                pstmt.setInt(3, structure.getStructId());
+                setStructureValues(pstmt, 4, structure);
+                pstmt.addBatch();
+            }
+            logger.debug("{} [{} rows]", sql, structures.size());
+            pstmt.executeBatch();
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    private void updateStructures(Connection con, int userId, int layoutId, Collection<LayoutRowSet.StructureRow> structures) throws SQLException {
+        if (structures.isEmpty()) {
+            return;
+        }
+
+        final String sql = "UPDATE UP_LAYOUT_STRUCT SET NEXT_STRUCT_ID=?, CHLD_STRUCT_ID=?, EXTERNAL_ID=?, CHAN_ID=?, NAME=?, TYPE=?, "
+                + "HIDDEN=?, IMMUTABLE=?, UNREMOVABLE=? WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=?";
+        final PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            for (final LayoutRowSet.StructureRow structure : structures) {
+                pstmt.clearParameters();
+                final int index = setStructureValues(pstmt, 1, structure);
+                pstmt.setInt(index, userId);
+                pstmt.setInt(index + 1, layoutId);
+                pstmt.setInt(index + 2, structure.getStructId());
+                pstmt.addBatch();
+            }
+            logger.debug("{} [{} rows]", sql, structures.size());
+            pstmt.executeBatch();
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    private void deleteStructures(Connection con, int userId, int layoutId, Collection<LayoutRowSet.StructureRow> structures) throws SQLException {
+        if (structures.isEmpty()) {
+            return;
+        }
+
+        final String sql = "DELETE FROM UP_LAYOUT_STRUCT WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=?";
+        final PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            for (final LayoutRowSet.StructureRow structure : structures) {
+                pstmt.clearParameters();
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, layoutId);
+                pstmt.setInt(3, structure.getStructId());
+                pstmt.addBatch();
+            }
+            logger.debug("{} [{} rows]", sql, structures.size());
+            pstmt.executeBatch();
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    /**
+     * Set the NEXT_STRUCT_ID through UNREMOVABLE columns starting at the specified index
+     * 
+     * @return The index after the last column set
+     */
+    private int setStructureValues(PreparedStatement pstmt, int index, LayoutRowSet.StructureRow structure) throws SQLException {
+        pstmt.setInt(index++, structure.getNextStructId());
+        pstmt.setInt(index++, structure.getChildStructId());
+        if (structure.getExternalId() != null) {
+            pstmt.setInt(index++, structure.getExternalId());
+        }
+        else {
+            pstmt.setNull(index++, java.sql.Types.NUMERIC);
+        }
+        if (structure.getChanId() != null) {
+            pstmt.setInt(index++, structure.getChanId());
+        }
+        else {
+            pstmt.setNull(index++, java.sql.Types.NUMERIC);
+        }
+        if (structure.getName() != null) {
+            pstmt.setString(index++, structure.getName());
+        }
+        else {
+            pstmt.setNull(index++, java.sql.Types.VARCHAR);
+        }
+        pstmt.setString(index++, structure.getType());
+        pstmt.setString(index++, structure.getHidden());
+        pstmt.setString(index++, structure.getImmutable());
+        pstmt.setString(index++, structure.getUnremovable());
+        return index;
+    }
+
+    private void insertParameters(Connection con, int userId, int layoutId, Collection<LayoutRowSet.ParameterRow> parameters) throws SQLException {
+        if (parameters.isEmpty()) {
+            return;
+        }
+
+        final String sql = "INSERT INTO UP_LAYOUT_PARAM "
+                + "(USER_ID, LAYOUT_ID, STRUCT_ID, STRUCT_PARM_NM, STRUCT_PARM_VAL) VALUES (?,?,?,?,?)";
+        final PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            for (final LayoutRowSet.ParameterRow parameter : parameters) {
+                pstmt.clearParameters();
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, layoutId);
+                pstmt.setInt(3, parameter.getStructId());
+                pstmt.setString(4, parameter.getName());
+                pstmt.setString(5, parameter.getValue());
+                pstmt.addBatch();
+            }
+            logger.debug("{} [{} rows]", sql, parameters.size());
+            pstmt.executeBatch();
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    private void updateParameters(Connection con, int userId, int layoutId, Collection<LayoutRowSet.ParameterRow> parameters) throws SQLException {
+        if (parameters.isEmpty()) {
+            return;
+        }
+
+        final String sql = "UPDATE UP_LAYOUT_PARAM SET STRUCT_PARM_VAL=? WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=? AND STRUCT_PARM_NM=?";
+        final PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            for (final LayoutRowSet.ParameterRow parameter : parameters) {
+                pstmt.clearParameters();
+                pstmt.setString(1, parameter.getValue());
+                pstmt.setInt(2, userId);
+                pstmt.setInt(3, layoutId);
+                pstmt.setInt(4, parameter.getStructId());
+                pstmt.setString(5, parameter.getName());
+                pstmt.addBatch();
+            }
+            logger.debug("{} [{} rows]", sql, parameters.size());
+            pstmt.executeBatch();
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    private void deleteParameters(Connection con, int userId, int layoutId, Collection<LayoutRowSet.ParameterRow> parameters) throws SQLException {
+        if (parameters.isEmpty()) {
+            return;
+        }
+
+        final String sql = "DELETE FROM UP_LAYOUT_PARAM WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=? AND STRUCT_PARM_NM=?";
+        final PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            for (final LayoutRowSet.ParameterRow parameter : parameters) {
+                pstmt.clearParameters();
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, layoutId);
+                pstmt.setInt(3, parameter.getStructId());
+                pstmt.setString(4, parameter.getName());
+                pstmt.addBatch();
+            }
+            logger.debug("{} [{} rows]", sql, parameters.size());
+            pstmt.executeBatch();
+        } finally {
+            pstmt.close();
+        }
+    }
+
     public void updateUserProfile (final IPerson person, final IUserProfile profile) {
         final int userId = person.getID();
         this.transactionOperations.execute(new TransactionCallback<Object>() {
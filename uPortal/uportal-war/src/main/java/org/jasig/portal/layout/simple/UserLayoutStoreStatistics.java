@@ -0,0 +1,115 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.simple;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rows written counters for {@link RDBMUserLayoutStore}
+ */
+final class UserLayoutStoreStatistics implements UserLayoutStoreStatisticsMBean {
+    private final AtomicLong saveCount = new AtomicLong();
+    private final AtomicLong incrementalSaveCount = new AtomicLong();
+    private final AtomicLong structureRowsInserted = new AtomicLong();
+    private final AtomicLong structureRowsUpdated = new AtomicLong();
+    private final AtomicLong structureRowsDeleted = new AtomicLong();
+    private final AtomicLong parameterRowsInserted = new AtomicLong();
+    private final AtomicLong parameterRowsUpdated = new AtomicLong();
+    private final AtomicLong parameterRowsDeleted = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private volatile int lastSaveRowsWritten;
+
+    /**
+     * Record the rows written by a single layout save
+     * 
+     * @return The total number of rows written by the save
+     */
+    public int recordSave(boolean incremental, 
+            int structureInserts, int structureUpdates, int structureDeletes,
+            int parameterInserts, int parameterUpdates, int parameterDeletes) {
+        
+        this.saveCount.incrementAndGet();
+        if (incremental) {
+            this.incrementalSaveCount.incrementAndGet();
+        }
+        this.structureRowsInserted.addAndGet(structureInserts);
+        this.structureRowsUpdated.addAndGet(structureUpdates);
+        this.structureRowsDeleted.addAndGet(structureDeletes);
+        this.parameterRowsInserted.addAndGet(parameterInserts);
+        this.parameterRowsUpdated.addAndGet(parameterUpdates);
+        this.parameterRowsDeleted.addAndGet(parameterDeletes);
+        
+        final int written = structureInserts + structureUpdates + structureDeletes 
+                + parameterInserts + parameterUpdates + parameterDeletes;
+        this.rowsWritten.addAndGet(written);
+        this.lastSaveRowsWritten = written;
+        return written;
+    }
+
+    @Override
+    public long getSaveCount() {
+        return this.saveCount.get();
+    }
+
+    @Override
+    public long getIncrementalSaveCount() {
+        return this.incrementalSaveCount.get();
+    }
+
+    @Override
+    public long getStructureRowsInserted() {
+        return this.structureRowsInserted.get();
+    }
+
+    @Override
+    public long getStructureRowsUpdated() {
+        return this.structureRowsUpdated.get();
+    }
+
+    @Override
+    public long getStructureRowsDeleted() {
+        return this.structureRowsDeleted.get();
+    }
+
+    @Override
+    public long getParameterRowsInserted() {
+        return this.parameterRowsInserted.get();
+    }
+
+    @Override
+    public long getParameterRowsUpdated() {
+        return this.parameterRowsUpdated.get();
+    }
+
+    @Override
+    public long getParameterRowsDeleted() {
+        return this.parameterRowsDeleted.get();
+    }
+
+    @Override
+    public int getLastSaveRowsWritten() {
+        return this.lastSaveRowsWritten;
+    }
+
+    @Override
+    public double getAverageRowsWrittenPerSave() {
+        final long saves = this.saveCount.get();
+        return (saves == 0) ? 0 : (double) this.rowsWritten.get() / saves;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.simple;
+
+/**
+ * JMX stats for layout saves done by {@link RDBMUserLayoutStore}
+ */
+public interface UserLayoutStoreStatisticsMBean {
+    
+    /**
+     * @return Number of layouts saved
+     */
+    long getSaveCount();
+    
+    /**
+     * @return Number of layouts saved by writing only the rows that changed
+     */
+    long getIncrementalSaveCount();
+    
+    /**
+     * @return Number of UP_LAYOUT_STRUCT rows inserted
+     */
+    long getStructureRowsInserted();
+    
+    /**
+     * @return Number of UP_LAYOUT_STRUCT rows updated
+     */
+    long getStructureRowsUpdated();
+    
+    /**
+     * @return Number of UP_LAYOUT_STRUCT rows deleted
+     */
+    long getStructureRowsDeleted();
+    
+    /**
+     * @return Number of UP_LAYOUT_PARAM rows inserted
+     */
+    long getParameterRowsInserted();
+    
+    /**
+     * @return Number of UP_LAYOUT_PARAM rows updated
+     */
+    long getParameterRowsUpdated();
+    
+    /**
+     * @return Number of UP_LAYOUT_PARAM rows deleted
+     */
+    long getParameterRowsDeleted();
+    
+    /**
+     * @return Number of rows written by the most recent save
+     */
+    int getLastSaveRowsWritten();
+    
+    /**
+     * @return Average number of rows written per save
+     */
+    double getAverageRowsWrittenPerSave();
+}
@@ -25,11 +25,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.concurrent.TimeUnit;
 
 import javax.portlet.CacheControl;
 
 import org.jasig.portal.portlet.rendering.PortletOutputHandler;
+import org.jasig.portal.portlet.rendering.PortletResourceOutputHandler;
 
 /**
  * Java bean to represent the data cached for a portlet request via 
@@ -53,6 +55,10 @@ public class CachedPortletData<T extends Serializable> implements CachedPortletR
     private final long timeStored;
     private long expirationTime;
     
+    //Writer output pre-encoded in the charset of the response it was last replayed to
+    private transient volatile EncodedWriterOutput encodedWriterOutput;
+    private transient PortletOutputReplayStatistics replayStatistics;
+    
     
     /**
      * @param expirationTime Time in seconds the content is valid for (from now)
@@ -76,12 +82,27 @@ public class CachedPortletData<T extends Serializable> implements CachedPortletR
         this.updateExpirationTime(expirationTime);
     }
     
+    /**
+     * Enables storing the writer output encoded in the response charset so that replays to a
+     * {@link PortletResourceOutputHandler} can write the bytes directly to the output stream.
+     * 
+     * @param replayStatistics Statistics to record encoded replays in
+     */
+    void enableEncodedReplay(PortletOutputReplayStatistics replayStatistics) {
+        this.replayStatistics = replayStatistics;
+    }
+    
     public void replay(PortletOutputHandler portletOutputHandler) throws IOException {
         if (contentType != null) {
             portletOutputHandler.setContentType(contentType);
         }
         
-        if (this.cachedWriterOutput != null) {
+        if (this.cachedWriterOutput != null && this.replayStatistics != null 
+                && portletOutputHandler instanceof PortletResourceOutputHandler
+                && ((PortletResourceOutputHandler)portletOutputHandler).getCharacterEncoding() != null) {
+            this.replayEncoded((PortletResourceOutputHandler)portletOutputHandler);
+        }
+        else if (this.cachedWriterOutput != null) {
             final PrintWriter printWriter = portletOutputHandler.getPrintWriter();
             printWriter.write(this.cachedWriterOutput);
         }
@@ -91,6 +112,27 @@ public class CachedPortletData<T extends Serializable> implements CachedPortletR
         }
     }
 
+    /**
+     * Write the writer output to the handler's output stream, encoding it in the response charset
+     * only if it has not already been encoded in that charset.
+     */
+    private void replayEncoded(PortletResourceOutputHandler portletOutputHandler) throws IOException {
+        final long start = System.nanoTime();
+        
+        final String characterEncoding = portletOutputHandler.getCharacterEncoding();
+        EncodedWriterOutput encoded = this.encodedWriterOutput;
+        final boolean reused = encoded != null && encoded.isEncodedIn(characterEncoding);
+        if (!reused) {
+            encoded = new EncodedWriterOutput(characterEncoding, this.cachedWriterOutput);
+            this.encodedWriterOutput = encoded;
+        }
+        
+        final OutputStream outputStream = portletOutputHandler.getOutputStream();
+        outputStream.write(encoded.getBytes());
+        
+        this.replayStatistics.recordReplay(reused ? encoded.getBytes().length : 0, System.nanoTime() - start);
+    }
+
     /**
      * The time since the epoch in milliseconds that this content expires. -1 if it never expires
      */
@@ -137,4 +179,25 @@ public class CachedPortletData<T extends Serializable> implements CachedPortletR
     public boolean isPublicScope() {
         return publicScope;
     }
+    
+    /**
+     * Writer output encoded with a specific charset
+     */
+    private static final class EncodedWriterOutput {
+        private final String characterEncoding;
+        private final byte[] bytes;
+        
+        public EncodedWriterOutput(String characterEncoding, String writerOutput) {
+            this.characterEncoding = characterEncoding;
+            this.bytes = writerOutput.getBytes(Charset.forName(characterEncoding));
+        }
+        
+        public boolean isEncodedIn(String characterEncoding) {
+            return this.characterEncoding.equalsIgnoreCase(characterEncoding);
+        }
+        
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
 }
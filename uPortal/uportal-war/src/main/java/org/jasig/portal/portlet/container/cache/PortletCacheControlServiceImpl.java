@@ -48,6 +48,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.support.RequestContextUtils;
 
@@ -60,7 +61,8 @@ import org.springframework.web.servlet.support.RequestContextUtils;
  * @version $Id$
  */
 @Service
-public class PortletCacheControlServiceImpl implements IPortletCacheControlService {
+@ManagedResource("uPortal:section=Cache,name=PortletCacheControlService")
+public class PortletCacheControlServiceImpl implements IPortletCacheControlService, PortletCacheControlServiceMXBean {
     private static final String IF_NONE_MATCH = "If-None-Match";
     private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
     
@@ -84,6 +86,9 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
     // default to 100 KB
     private int cacheSizeThreshold = 102400;
     
+    private boolean storeEncodedResourceOutput = false;
+    private final PortletOutputReplayStatistics encodedReplayStatistics = new PortletOutputReplayStatistics();
+    
     @Autowired
     public void setTaggedCacheEntryPurger(TaggedCacheEntryPurger taggedCacheEntryPurger) {
         this.taggedCacheEntryPurger = taggedCacheEntryPurger;
@@ -138,6 +143,40 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
 	public int getCacheSizeThreshold() {
 		return cacheSizeThreshold;
 	}
+	
+	/**
+	 * @param storeEncodedResourceOutput If true cached resource writer output is replayed as bytes pre-encoded in the response charset
+	 */
+	@Value("${org.jasig.portal.portlet.container.cache.PortletCacheControlServiceImpl.storeEncodedResourceOutput:false}")
+	public void setStoreEncodedResourceOutput(boolean storeEncodedResourceOutput) {
+	    this.storeEncodedResourceOutput = storeEncodedResourceOutput;
+	}
+	
+	@Override
+	public boolean isStoreEncodedResourceOutput() {
+	    return this.storeEncodedResourceOutput;
+	}
+	
+	@Override
+	public long getEncodedReplayCount() {
+	    return this.encodedReplayStatistics.getReplayCount();
+	}
+	
+	@Override
+	public long getEncodedReplayBytesSaved() {
+	    return this.encodedReplayStatistics.getBytesSaved();
+	}
+	
+	@Override
+	public long getEncodedReplayTotalTime() {
+	    return this.encodedReplayStatistics.getTotalReplayTime();
+	}
+	
+	@Override
+	public double getEncodedReplayAverageTime() {
+	    return this.encodedReplayStatistics.getAverageReplayTime();
+	}
+	
 	@Autowired
 	public void setPortletWindowRegistry(
 			IPortletWindowRegistry portletWindowRegistry) {
@@ -416,6 +455,10 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
             CacheState<CachedPortletResourceData<Long>, Long> cacheState,
             CachedPortletResourceData<Long> cachedPortletResourceData) {
 	    
+	    if (this.storeEncodedResourceOutput) {
+	        cachedPortletResourceData.getCachedPortletData().enableEncodedReplay(this.encodedReplayStatistics);
+	    }
+	    
         cachePortletOutput(portletWindowId,
                 httpRequest,
                 cacheState,
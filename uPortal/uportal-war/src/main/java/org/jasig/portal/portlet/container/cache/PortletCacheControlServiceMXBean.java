@@ -0,0 +1,50 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.container.cache;
+
+/**
+ * JMX stats for {@link PortletCacheControlServiceImpl}
+ */
+public interface PortletCacheControlServiceMXBean {
+    
+    /**
+     * @return If cached resource output is replayed as bytes pre-encoded in the response charset
+     */
+    boolean isStoreEncodedResourceOutput();
+    
+    /**
+     * @return Number of cached resource responses replayed as pre-encoded bytes
+     */
+    long getEncodedReplayCount();
+    
+    /**
+     * @return Number of bytes written from pre-encoded output without being re-encoded
+     */
+    long getEncodedReplayBytesSaved();
+    
+    /**
+     * @return Total nanoseconds spent replaying pre-encoded output
+     */
+    long getEncodedReplayTotalTime();
+    
+    /**
+     * @return Average nanoseconds spent replaying pre-encoded output
+     */
+    double getEncodedReplayAverageTime();
+}
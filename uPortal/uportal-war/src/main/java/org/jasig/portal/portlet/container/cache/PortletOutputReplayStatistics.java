@@ -0,0 +1,57 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.container.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks replays of cached portlet output that were written as pre-encoded bytes
+ */
+class PortletOutputReplayStatistics {
+    private final AtomicLong replayCount = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong totalReplayTime = new AtomicLong();
+    
+    /**
+     * @param bytesSaved Number of bytes written without having to be re-encoded
+     * @param replayTime Time in nanoseconds spent replaying the output
+     */
+    public void recordReplay(long bytesSaved, long replayTime) {
+        this.replayCount.incrementAndGet();
+        this.bytesSaved.addAndGet(bytesSaved);
+        this.totalReplayTime.addAndGet(replayTime);
+    }
+
+    public long getReplayCount() {
+        return this.replayCount.get();
+    }
+
+    public long getBytesSaved() {
+        return this.bytesSaved.get();
+    }
+
+    public long getTotalReplayTime() {
+        return this.totalReplayTime.get();
+    }
+    
+    public double getAverageReplayTime() {
+        final long count = this.replayCount.get();
+        return (count == 0) ? 0.0 : (double) this.totalReplayTime.get() / count;
+    }
+}
@@ -55,4 +55,9 @@ public interface IPortletCookieService {
      * Purges expired cookies
      */
     public boolean purgeExpiredCookies();
+    
+    /**
+     * Writes queued portal cookie expiration updates to the database, intended to be called periodically
+     */
+    public void flushPortalCookieExpirations();
 }
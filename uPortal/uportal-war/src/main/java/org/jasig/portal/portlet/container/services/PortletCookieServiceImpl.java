@@ -18,13 +18,20 @@
  */
 package org.jasig.portal.portlet.container.services;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.Cookie;
@@ -38,6 +45,8 @@ import org.jasig.portal.concurrency.locking.IClusterLockService;
 import org.jasig.portal.concurrency.locking.IClusterLockService.LockStatus;
 import org.jasig.portal.concurrency.locking.IClusterLockService.TryLockFunctionResult;
 import org.jasig.portal.concurrency.locking.LockOptions;
+import org.jasig.portal.jpa.ChunkedPurger;
+import org.jasig.portal.jpa.ChunkedPurger.PurgeResult;
 import org.jasig.portal.portlet.dao.IPortletCookieDao;
 import org.jasig.portal.portlet.om.IPortalCookie;
 import org.jasig.portal.portlet.om.IPortletCookie;
@@ -45,13 +54,17 @@ import org.jasig.portal.portlet.om.IPortletWindowId;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.orm.hibernate3.HibernateOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.ServletContextAware;
 import org.springframework.web.util.WebUtils;
 
+import com.google.common.base.Function;
+
 /**
  * {@link Service} bean to encapsulate business logic regarding portlet cookie persistence.
  * 
@@ -59,7 +72,8 @@ import org.springframework.web.util.WebUtils;
  * @version $Revision$
  */
 @Service("portletCookieService")
-public class PortletCookieServiceImpl implements IPortletCookieService, ServletContextAware {
+@ManagedResource("uPortal:section=Framework,name=PortletCookieService")
+public class PortletCookieServiceImpl implements IPortletCookieService, PortletCookieServiceMXBean, ServletContextAware, DisposableBean {
     
 	/**
 	 * Name of the {@link HttpSession} attribute used for storing a concurrent map of portlet cookies that do not need to be persisted.
@@ -77,6 +91,7 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
 	
 	private IPortletCookieDao portletCookieDao;
 	private IClusterLockService clusterLockService;
+	private ChunkedPurger chunkedPurger;
     
     protected static final int DEFAULT_MAX_AGE = (int)TimeUnit.DAYS.toSeconds(365);
     private String cookieName = DEFAULT_PORTAL_COOKIE_NAME;
@@ -87,6 +102,19 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
     private int maxAgeUpdateInterval = (int)TimeUnit.MINUTES.toMillis(5);
     private boolean portalCookieAlwaysSecure = false;
     private long purgeExpiredCookiesPeriod = 0;
+    private boolean expirationWriteBehind = true;
+    private int expirationFlushBatchSize = 1000;
+    
+    //Values of portal cookies with a pending expiration update, a set so repeated updates for a cookie coalesce
+    private final Set<String> pendingExpirationUpdates = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Lock expirationFlushLock = new ReentrantLock();
+    private final AtomicLong requestedExpirationUpdates = new AtomicLong();
+    private final AtomicLong coalescedExpirationUpdates = new AtomicLong();
+    private final AtomicLong expirationFlushCount = new AtomicLong();
+    private final AtomicLong flushedExpirationUpdates = new AtomicLong();
+    private final AtomicLong failedExpirationFlushes = new AtomicLong();
+    private volatile int lastExpirationFlushBatchSize = 0;
+    private volatile int maxExpirationFlushBatchSize = 0;
     
     @Autowired
     public void setPortletCookieDao(IPortletCookieDao portletCookieDao) {
@@ -98,11 +126,32 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         this.clusterLockService = clusterLockService;
     }
 
+    @Autowired
+    public void setChunkedPurger(ChunkedPurger chunkedPurger) {
+        this.chunkedPurger = chunkedPurger;
+    }
+
     @Value("${org.jasig.portal.portlet.container.services.PortletCookieServiceImpl.purgeExpiredCookiesPeriod}")
     public void setPurgeExpiredCookiesPeriod(long purgeExpiredCookiesPeriod) {
         this.purgeExpiredCookiesPeriod = purgeExpiredCookiesPeriod;
     }
 
+    /**
+     * @param expirationWriteBehind If true portal cookie expiration updates are queued in memory and written to the
+     * database in batches by {@link #flushPortalCookieExpirations()} instead of during the request. Defaults to true.
+     */
+    @Value("${org.jasig.portal.portlet.container.services.PortletCookieServiceImpl.expirationWriteBehind:true}")
+    public void setExpirationWriteBehind(boolean expirationWriteBehind) {
+        this.expirationWriteBehind = expirationWriteBehind;
+    }
+
+    /**
+     * @param expirationFlushBatchSize Maximum number of portal cookie expiration updates written per transaction. Defaults to 1000.
+     */
+    public void setExpirationFlushBatchSize(int expirationFlushBatchSize) {
+        this.expirationFlushBatchSize = expirationFlushBatchSize;
+    }
+
 	@Override
 	public void setServletContext(ServletContext servletContext) {
 		this.path = servletContext.getContextPath() + "/";
@@ -168,16 +217,25 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         //Update the expiration date of the portal cookie stored in the DB if the update interval has passed
         final DateTime expires = portalCookie.getExpires();
         if (DateTime.now().minusMillis(this.maxAgeUpdateInterval).isAfter(expires.minusSeconds(this.maxAge))) {
-            try {
-                this.portletCookieDao.updatePortalCookieExpiration(portalCookie, cookie.getMaxAge());
-            } catch (HibernateOptimisticLockingFailureException e) {
-                // Especially with ngPortal UI multiple requests for individual portlet content may come at
-                // the same time.  Sometimes another thread updated the portal cookie between our dao fetch and
-                // dao update.  If this happens, simply ignore the update since another thread has already
-                // made the update.
-                logger.debug("Attempted to update expired portal cookie but another thread beat me to it."
-                    + " Ignoring update since the other thread handled it.");
-                return;
+            if (this.expirationWriteBehind) {
+                //Written by the next flush, requests for the same cookie before then are coalesced
+                this.requestedExpirationUpdates.incrementAndGet();
+                if (!this.pendingExpirationUpdates.add(portalCookie.getValue())) {
+                    this.coalescedExpirationUpdates.incrementAndGet();
+                }
+            }
+            else {
+                try {
+                    this.portletCookieDao.updatePortalCookieExpiration(portalCookie, cookie.getMaxAge());
+                } catch (HibernateOptimisticLockingFailureException e) {
+                    // Especially with ngPortal UI multiple requests for individual portlet content may come at
+                    // the same time.  Sometimes another thread updated the portal cookie between our dao fetch and
+                    // dao update.  If this happens, simply ignore the update since another thread has already
+                    // made the update.
+                    logger.debug("Attempted to update expired portal cookie but another thread beat me to it."
+                        + " Ignoring update since the other thread handled it.");
+                    return;
+                }
             }
             
             // Update expiration dates of portlet cookies stored in session
@@ -276,6 +334,101 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         
     }
     
+    @Override
+    public void flushPortalCookieExpirations() {
+        if (this.pendingExpirationUpdates.isEmpty()) {
+            return;
+        }
+        
+        //Only one thread should be flushing at a time, if a flush is already under way it will pick up new updates
+        if (!this.expirationFlushLock.tryLock()) {
+            return;
+        }
+        try {
+            final List<String> batch = new ArrayList<String>();
+            while (!this.pendingExpirationUpdates.isEmpty()) {
+                batch.clear();
+                for (final Iterator<String> pendingItr = this.pendingExpirationUpdates.iterator(); pendingItr.hasNext() && batch.size() < this.expirationFlushBatchSize; ) {
+                    batch.add(pendingItr.next());
+                    pendingItr.remove();
+                }
+                
+                try {
+                    final int updated = this.portletCookieDao.updatePortalCookieExpirations(batch, this.maxAge);
+                    logger.debug("Flushed {} portal cookie expiration updates, {} portal cookies updated", batch.size(), updated);
+                }
+                catch (RuntimeException e) {
+                    //Put the batch back so it is retried by the next flush
+                    this.pendingExpirationUpdates.addAll(batch);
+                    this.failedExpirationFlushes.incrementAndGet();
+                    logger.warn("Failed to flush " + batch.size() + " portal cookie expiration updates, they will be retried on the next flush", e);
+                    return;
+                }
+                
+                final int batchSize = batch.size();
+                this.expirationFlushCount.incrementAndGet();
+                this.flushedExpirationUpdates.addAndGet(batchSize);
+                this.lastExpirationFlushBatchSize = batchSize;
+                if (batchSize > this.maxExpirationFlushBatchSize) {
+                    this.maxExpirationFlushBatchSize = batchSize;
+                }
+            }
+        }
+        finally {
+            this.expirationFlushLock.unlock();
+        }
+    }
+    
+    @Override
+    public void destroy() throws Exception {
+        this.flushPortalCookieExpirations();
+    }
+    
+    @Override
+    public boolean isExpirationWriteBehind() {
+        return this.expirationWriteBehind;
+    }
+
+    @Override
+    public int getPendingExpirationUpdates() {
+        return this.pendingExpirationUpdates.size();
+    }
+
+    @Override
+    public long getRequestedExpirationUpdates() {
+        return this.requestedExpirationUpdates.get();
+    }
+
+    @Override
+    public long getCoalescedExpirationUpdates() {
+        return this.coalescedExpirationUpdates.get();
+    }
+
+    @Override
+    public long getExpirationFlushCount() {
+        return this.expirationFlushCount.get();
+    }
+
+    @Override
+    public long getFlushedExpirationUpdates() {
+        return this.flushedExpirationUpdates.get();
+    }
+
+    @Override
+    public int getLastExpirationFlushBatchSize() {
+        return this.lastExpirationFlushBatchSize;
+    }
+
+    @Override
+    public int getMaxExpirationFlushBatchSize() {
+        return this.maxExpirationFlushBatchSize;
+    }
+
+    @Override
+    public long getFailedExpirationFlushes() {
+        return this.failedExpirationFlushes.get();
+    }
+
     @Override
     public boolean purgeExpiredCookies() {
         try {
@@ -286,7 +439,14 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
                     new FunctionWithoutResult<ClusterMutex>() {
                         @Override
                         protected void applyWithoutResult(ClusterMutex input) {
-                            portletCookieDao.purgeExpiredCookies(maxAge);
+                            //Purge in chunks, each chunk is committed in its own transaction
+                            final PurgeResult purgeResult = chunkedPurger.purge("PortletCookieService.expiredCookies", new Function<Integer, Integer>() {
+                                @Override
+                                public Integer apply(Integer maxCookies) {
+                                    return portletCookieDao.purgeExpiredCookies(maxAge, maxCookies);
+                                }
+                            });
+                            logger.debug("Purged {} expired cookies", purgeResult);
                         }
                     });
             return result.getLockStatus() ==  LockStatus.EXECUTED;
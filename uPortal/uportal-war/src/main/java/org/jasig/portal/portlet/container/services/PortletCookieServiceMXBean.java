@@ -0,0 +1,70 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.container.services;
+
+/**
+ * Statistics for the write-behind portal cookie expiration updates of {@link PortletCookieServiceImpl}
+ */
+public interface PortletCookieServiceMXBean {
+
+    /**
+     * @return If portal cookie expiration updates are queued and flushed in batches
+     */
+    boolean isExpirationWriteBehind();
+
+    /**
+     * @return Number of portal cookies with an expiration update waiting to be flushed
+     */
+    int getPendingExpirationUpdates();
+
+    /**
+     * @return Number of expiration updates requested, including those coalesced with an already pending update
+     */
+    long getRequestedExpirationUpdates();
+
+    /**
+     * @return Number of expiration updates coalesced with an already pending update for the same portal cookie
+     */
+    long getCoalescedExpirationUpdates();
+
+    /**
+     * @return Number of expiration update batches flushed to the database
+     */
+    long getExpirationFlushCount();
+
+    /**
+     * @return Number of portal cookies flushed to the database
+     */
+    long getFlushedExpirationUpdates();
+
+    /**
+     * @return Number of portal cookies in the most recent flushed batch
+     */
+    int getLastExpirationFlushBatchSize();
+
+    /**
+     * @return Largest number of portal cookies in a flushed batch
+     */
+    int getMaxExpirationFlushBatchSize();
+
+    /**
+     * @return Number of expiration update batches that failed and were re-queued
+     */
+    long getFailedExpirationFlushes();
+}
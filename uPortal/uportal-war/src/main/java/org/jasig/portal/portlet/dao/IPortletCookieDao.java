@@ -18,6 +18,8 @@
  */
 package org.jasig.portal.portlet.dao;
 
+import java.util.Collection;
+
 import javax.servlet.http.Cookie;
 
 import org.jasig.portal.portlet.om.IPortalCookie;
@@ -44,6 +46,17 @@ public interface IPortletCookieDao {
 	 */
 	public IPortalCookie updatePortalCookieExpiration(IPortalCookie portalCookie, int maxAge);
 	
+	/**
+	 * Extend the expiration of the portal cookies with the specified values in bulk. Expirations are never
+	 * shortened and the cookies' entity versions are not changed, a concurrent write of the same portal cookie
+	 * may store the expiration it read before the extension.
+	 * 
+	 * @param portalCookieValues The {@link IPortalCookie#getValue()}s of the cookies to update
+	 * @param maxAge The cookies maximum age in seconds
+	 * @return The number of portal cookies updated
+	 */
+	public int updatePortalCookieExpirations(Collection<String> portalCookieValues, int maxAge);
+	
 	/**
 	 * 
 	 * @param value
@@ -66,6 +79,19 @@ public interface IPortletCookieDao {
      * from persistence that have expired.
      * 
      * @param maxAge The max number of seconds the portal cookie should live for.
+     * @deprecated Deletes every expired cookie in a single transaction, use {@link #purgeExpiredCookies(int, int)}
      */
+    @Deprecated
     public void purgeExpiredCookies(int maxAge);
+    
+    /**
+     * Delete at most <code>maxCookies</code> expired {@link IPortletCookie}s and {@link IPortalCookie}s in a single
+     * transaction. Portlet cookies are deleted before portal cookies, intended to be called repeatedly until
+     * fewer than <code>maxCookies</code> are deleted.
+     * 
+     * @param maxAge The max number of seconds the portal cookie should live for.
+     * @param maxCookies The maximum number of cookies to delete
+     * @return The number of cookies deleted
+     */
+    public int purgeExpiredCookies(int maxAge, int maxCookies);
 }
@@ -0,0 +1,54 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.dao;
+
+import org.jasig.portal.portlet.om.IPortletDefinition;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by the {@link IPortletDefinitionDao} when a portlet definition is created, updated or deleted
+ * so that in-memory views of the portlet definitions can be refreshed. Only published on the server the change
+ * was made on.
+ */
+public class PortletDefinitionChangedEvent extends ApplicationEvent {
+    private static final long serialVersionUID = 1L;
+    
+    private final IPortletDefinition portletDefinition;
+    private final boolean deleted;
+
+    public PortletDefinitionChangedEvent(Object source, IPortletDefinition portletDefinition, boolean deleted) {
+        super(source);
+        this.portletDefinition = portletDefinition;
+        this.deleted = deleted;
+    }
+
+    /**
+     * @return The changed portlet definition
+     */
+    public IPortletDefinition getPortletDefinition() {
+        return this.portletDefinition;
+    }
+
+    /**
+     * @return true if the portlet definition was deleted
+     */
+    public boolean isDeleted() {
+        return this.deleted;
+    }
+}
@@ -19,6 +19,11 @@
 package org.jasig.portal.portlet.dao.jpa;
 
 import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -34,16 +39,25 @@ import javax.persistence.criteria.Root;
 import javax.servlet.http.Cookie;
 
 import org.apache.commons.codec.binary.Base64;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.type.Type;
 import org.jasig.portal.jpa.BasePortalJpaDao;
 import org.jasig.portal.jpa.OpenEntityManager;
 import org.jasig.portal.portlet.dao.IPortletCookieDao;
 import org.jasig.portal.portlet.om.IPortalCookie;
 import org.jasig.portal.portlet.om.IPortletCookie;
 import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
 
 /**
  * JPA implementation of {@link IPortletCookieDao}.
@@ -59,15 +73,47 @@ public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortle
 	private String deletePortalCookieQueryString;
 	private String deleteEmptyPortalCookieQueryString;
 	private String deletePortletCookieQueryString;
+	private String selectUpdatablePortalCookieIdsQueryString;
+	private String selectExpiredPortletCookieIdsQueryString;
+	private String selectExpiredByParentPortletCookieIdsQueryString;
+	private String selectExpiredEmptyPortalCookieIdsQueryString;
+	private String deletePortletCookiesByIdsQueryString;
+	private String deletePortalCookiesByIdsQueryString;
 	private CriteriaQuery<PortletCookieImpl> findExpiredByParentPortletCookiesQuery;
     private ParameterExpression<DateTime> nowParameter;
+    private ParameterExpression<DateTime> expiresParameter;
+    private ParameterExpression<Collection> valuesParameter;
+    private ParameterExpression<List> idsParameter;
     
     protected static final int DEFAULT_EMPTY_MAX_AGE = (int)TimeUnit.DAYS.toSeconds(1);
     private int emptyCookieMaxAge = DEFAULT_EMPTY_MAX_AGE;
+    
+    //Maximum number of cookie values in the IN clause of a single expiration id select
+    private static final int UPDATE_EXPIRATIONS_BATCH_SIZE = 500;
+    
+    /*
+     * Plain JDBC update, a JPQL bulk update would clear the whole PortalCookieImpl cache regions on every node.
+     * The entity version is not incremented so a concurrent portlet cookie write is not failed with an optimistic
+     * lock error, that write may store the expiration it read and undo the extension until the next request for
+     * the cookie queues it again.
+     */
+    private static final String UPDATE_PORTAL_COOKIE_EXPIRATION_SQL = 
+            "UPDATE UP_PORTAL_COOKIES SET EXPIRES = ? WHERE PORTAL_COOKIE_ID = ? AND EXPIRES < ?";
+    
+    private JdbcOperations portalJdbcOperations;
+    
+    @Autowired
+    @Qualifier(PERSISTENCE_UNIT_NAME)
+    public void setPortalJdbcOperations(JdbcOperations portalJdbcOperations) {
+        this.portalJdbcOperations = portalJdbcOperations;
+    }
 
     @Override
     public void afterPropertiesSet() throws Exception {
         this.nowParameter = this.createParameterExpression(DateTime.class, "now");
+        this.expiresParameter = this.createParameterExpression(DateTime.class, "expires");
+        this.valuesParameter = this.createParameterExpression(Collection.class, "values");
+        this.idsParameter = this.createParameterExpression(List.class, "ids");
         
         this.deletePortalCookieQueryString = 
                 "DELETE FROM " + PortalCookieImpl.class.getName() + " e " +
@@ -82,6 +128,39 @@ public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortle
                 "DELETE FROM " + PortletCookieImpl.class.getName() + " e " +
                 "WHERE e." + PortletCookieImpl_.expires.getName() + " <= :" + this.nowParameter.getName();
         
+        this.selectUpdatablePortalCookieIdsQueryString = 
+                "SELECT e." + PortalCookieImpl_.internalPortalCookieId.getName() + " " +
+                "FROM " + PortalCookieImpl.class.getName() + " e " +
+                "WHERE e." + PortalCookieImpl_.value.getName() + " IN (:" + this.valuesParameter.getName() + ") AND " + 
+                        "e." + PortalCookieImpl_.expires.getName() + " < :" + this.expiresParameter.getName();
+        
+        //Id selects for chunked purging, ordered by expiration where the expires index can be used
+        this.selectExpiredPortletCookieIdsQueryString = 
+                "SELECT e." + PortletCookieImpl_.internalPortletCookieId.getName() + " " +
+                "FROM " + PortletCookieImpl.class.getName() + " e " +
+                "WHERE e." + PortletCookieImpl_.expires.getName() + " <= :" + this.nowParameter.getName() + " " +
+                "ORDER BY e." + PortletCookieImpl_.expires.getName() + " ASC";
+        
+        this.selectExpiredByParentPortletCookieIdsQueryString = 
+                "SELECT e." + PortletCookieImpl_.internalPortletCookieId.getName() + " " +
+                "FROM " + PortletCookieImpl.class.getName() + " e " +
+                "WHERE e." + PortletCookieImpl_.portalCookie.getName() + "." + PortalCookieImpl_.expires.getName() + " <= :" + this.nowParameter.getName();
+        
+        this.selectExpiredEmptyPortalCookieIdsQueryString = 
+                "SELECT e." + PortalCookieImpl_.internalPortalCookieId.getName() + " " +
+                "FROM " + PortalCookieImpl.class.getName() + " e " +
+                "WHERE e." + PortalCookieImpl_.expires.getName() + " <= :" + this.nowParameter.getName() + " AND " + 
+                        "e." + PortalCookieImpl_.portletCookies.getName() + " IS EMPTY " +
+                "ORDER BY e." + PortalCookieImpl_.expires.getName() + " ASC";
+        
+        this.deletePortletCookiesByIdsQueryString = 
+                "DELETE FROM " + PortletCookieImpl.class.getName() + " e " +
+                "WHERE e." + PortletCookieImpl_.internalPortletCookieId.getName() + " IN (:" + this.idsParameter.getName() + ")";
+        
+        this.deletePortalCookiesByIdsQueryString = 
+                "DELETE FROM " + PortalCookieImpl.class.getName() + " e " +
+                "WHERE e." + PortalCookieImpl_.internalPortalCookieId.getName() + " IN (:" + this.idsParameter.getName() + ")";
+        
         this.findExpiredByParentPortletCookiesQuery = this.createCriteriaQuery(new Function<CriteriaBuilder, CriteriaQuery<PortletCookieImpl>>() {
             @Override
             public CriteriaQuery<PortletCookieImpl> apply(CriteriaBuilder cb) {
@@ -145,6 +224,89 @@ public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortle
         return portalCookie;
     }
     
+    @Override
+    @PortalTransactional
+    public int updatePortalCookieExpirations(Collection<String> portalCookieValues, int maxAge) {
+        if (portalCookieValues.isEmpty()) {
+            return 0;
+        }
+        
+        final DateTime expiration = DateTime.now().plusSeconds(maxAge);
+        
+        final EntityManager entityManager = this.getEntityManager();
+        final Session session = entityManager.unwrap(Session.class);
+        
+        //Bind the expiration the same way Hibernate does when writing the entity
+        final Type expiresType = session.getSessionFactory().getClassMetadata(PortalCookieImpl.class).getPropertyType(PortalCookieImpl_.expires.getName());
+        final SessionImplementor sessionImplementor = (SessionImplementor) session;
+        
+        final List<Long> updatedIds = new ArrayList<Long>();
+        for (final List<String> values : Iterables.partition(portalCookieValues, UPDATE_EXPIRATIONS_BATCH_SIZE)) {
+            final TypedQuery<Long> selectIdsQuery = entityManager.createQuery(this.selectUpdatablePortalCookieIdsQueryString, Long.class);
+            selectIdsQuery.setParameter(this.valuesParameter.getName(), values);
+            selectIdsQuery.setParameter(this.expiresParameter.getName(), expiration);
+            final List<Long> ids = selectIdsQuery.getResultList();
+            if (ids.isEmpty()) {
+                continue;
+            }
+            
+            final int[] updateCounts = this.portalJdbcOperations.batchUpdate(UPDATE_PORTAL_COOKIE_EXPIRATION_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    expiresType.nullSafeSet(ps, expiration, 1, sessionImplementor);
+                    ps.setLong(2, ids.get(i));
+                    expiresType.nullSafeSet(ps, expiration, 3, sessionImplementor);
+                }
+                
+                @Override
+                public int getBatchSize() {
+                    return ids.size();
+                }
+            });
+            
+            for (int i = 0; i < updateCounts.length; i++) {
+                //Some drivers don't report the row count of batched statements
+                if (updateCounts[i] > 0 || updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+                    updatedIds.add(ids.get(i));
+                }
+            }
+        }
+        
+        this.evictPortalCookies(updatedIds);
+        
+        logger.debug("extended expiration of {} of {} portal cookies to {}", new Object[] { updatedIds.size(), portalCookieValues.size(), expiration });
+        return updatedIds.size();
+    }
+    
+    /**
+     * Evict the updated portal cookies from the second level cache once the transaction commits, the natural id
+     * and portlet cookie regions are not affected by an expiration change
+     */
+    protected void evictPortalCookies(final List<Long> portalCookieIds) {
+        if (portalCookieIds.isEmpty()) {
+            return;
+        }
+        
+        final org.hibernate.Cache cache = this.getEntityManager().unwrap(Session.class).getSessionFactory().getCache();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evictPortalCookieEntities(cache, portalCookieIds);
+                }
+            });
+        } else {
+            evictPortalCookieEntities(cache, portalCookieIds);
+        }
+    }
+    
+    private static void evictPortalCookieEntities(org.hibernate.Cache cache, List<Long> portalCookieIds) {
+        for (final Long portalCookieId : portalCookieIds) {
+            cache.evictEntity(PortalCookieImpl.class, portalCookieId);
+        }
+    }
+    
+	@Deprecated
 	@Override
 	@PortalTransactional
 	public void purgeExpiredCookies(int maxAge) {
@@ -183,6 +345,50 @@ public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortle
 		logger.debug("finished purging {} empty portal cookies with expiration before {}", deletedEmptyPortalCookies, emptyExpiration);
 	}
 
+    @Override
+    @PortalTransactional
+    public int purgeExpiredCookies(int maxAge, int maxCookies) {
+        final DateTime now = DateTime.now();
+        
+        //Portlet cookies first, including those of expired portal cookies, so portal cookies are empty when deleted
+        int deleted = this.deleteByIds(this.deletePortletCookiesByIdsQueryString, this.selectExpiredPortletCookieIdsQueryString, now, maxCookies);
+        if (deleted < maxCookies) {
+            deleted += this.deleteByIds(this.deletePortletCookiesByIdsQueryString, this.selectExpiredByParentPortletCookieIdsQueryString, now, maxCookies - deleted);
+        }
+        
+        if (deleted < maxCookies) {
+            //Add the maxAge to now and then subtract the emptyCookieMaxAge
+            //For example (now + 1 year) - 1 day == the empty-cookie expiration date, expired cookies are empty by now
+            DateTime emptyExpiration = now.plusSeconds(maxAge).minusSeconds(emptyCookieMaxAge);
+            if (emptyExpiration.isBefore(now)) {
+                emptyExpiration = now;
+            }
+            deleted += this.deleteByIds(this.deletePortalCookiesByIdsQueryString, this.selectExpiredEmptyPortalCookieIdsQueryString, emptyExpiration, maxCookies - deleted);
+        }
+        
+        logger.debug("purged {} expired portal and portlet cookies", deleted);
+        return deleted;
+    }
+    
+    /**
+     * Select at most maxResults ids with the select query and delete them with the delete query
+     */
+    private int deleteByIds(String deleteQueryString, String selectIdsQueryString, DateTime now, int maxResults) {
+        final EntityManager entityManager = this.getEntityManager();
+        
+        final TypedQuery<Long> selectIdsQuery = entityManager.createQuery(selectIdsQueryString, Long.class);
+        selectIdsQuery.setParameter(this.nowParameter.getName(), now);
+        selectIdsQuery.setMaxResults(maxResults);
+        final List<Long> ids = selectIdsQuery.getResultList();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        
+        final Query deleteQuery = entityManager.createQuery(deleteQueryString);
+        deleteQuery.setParameter(this.idsParameter.getName(), ids);
+        return deleteQuery.executeUpdate();
+    }
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.portal.portlet.dao.IPortletCookieDao#updatePortletCookie(org.jasig.portal.portlet.om.IPortalCookie, javax.servlet.http.Cookie)
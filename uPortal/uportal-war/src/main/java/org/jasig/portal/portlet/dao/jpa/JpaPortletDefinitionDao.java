@@ -35,12 +35,17 @@ import org.hibernate.dialect.PostgreSQL81Dialect;
 import org.jasig.portal.jpa.BasePortalJpaDao;
 import org.jasig.portal.jpa.OpenEntityManager;
 import org.jasig.portal.portlet.dao.IPortletDefinitionDao;
+import org.jasig.portal.portlet.dao.PortletDefinitionChangedEvent;
 import org.jasig.portal.portlet.om.IPortletDefinition;
 import org.jasig.portal.portlet.om.IPortletDefinitionId;
 import org.jasig.portal.portlet.om.IPortletType;
 import org.jasig.portal.spring.tx.DialectAwareTransactional;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Function;
 
@@ -51,13 +56,19 @@ import com.google.common.base.Function;
  * @version $Revision$
  */
 @Repository
-public class JpaPortletDefinitionDao extends BasePortalJpaDao implements IPortletDefinitionDao {
+public class JpaPortletDefinitionDao extends BasePortalJpaDao implements IPortletDefinitionDao, ApplicationEventPublisherAware {
     private CriteriaQuery<PortletDefinitionImpl> findAllPortletDefinitions;
     private CriteriaQuery<PortletDefinitionImpl> findDefinitionByNameQuery;
     private CriteriaQuery<PortletDefinitionImpl> findDefinitionByNameOrTitleQuery;
     private CriteriaQuery<PortletDefinitionImpl> searchDefinitionByNameOrTitleQuery;
     private ParameterExpression<String> nameParameter;
     private ParameterExpression<String> titleParameter;
+    private ApplicationEventPublisher applicationEventPublisher;
+    
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
     
     @Override
     public void afterPropertiesSet() throws Exception {
@@ -228,6 +239,7 @@ public class JpaPortletDefinitionDao extends BasePortalJpaDao implements IPortle
         }
         
         entityManager.remove(persistentPortletDefinition);
+        this.publishChangedEvent(persistentPortletDefinition, true);
 	}
 
 	@Override
@@ -252,6 +264,7 @@ public class JpaPortletDefinitionDao extends BasePortalJpaDao implements IPortle
         final PortletDefinitionImpl portletDefinition = new PortletDefinitionImpl(portletType, fname, name, title, applicationId, portletName, isFramework);
         
         this.getEntityManager().persist(portletDefinition);
+        this.publishChangedEvent(portletDefinition, false);
         
         return portletDefinition;
     }
@@ -263,8 +276,28 @@ public class JpaPortletDefinitionDao extends BasePortalJpaDao implements IPortle
         Validate.notNull(portletDefinition, "portletDefinition can not be null");
         
         this.getEntityManager().persist(portletDefinition);
+        this.publishChangedEvent(portletDefinition, false);
         return portletDefinition;
     }
+    
+    protected void publishChangedEvent(IPortletDefinition portletDefinition, boolean deleted) {
+        if (this.applicationEventPublisher == null) {
+            return;
+        }
+        
+        //Listeners read the portlet definitions back so the event is published once the change is committed
+        final PortletDefinitionChangedEvent event = new PortletDefinitionChangedEvent(this, portletDefinition, deleted);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    applicationEventPublisher.publishEvent(event);
+                }
+            });
+        } else {
+            this.applicationEventPublisher.publishEvent(event);
+        }
+    }
 
     protected long getNativePortletDefinitionId(IPortletDefinitionId portletDefinitionId) {
         return Long.parseLong(portletDefinitionId.getStringId());
@@ -0,0 +1,104 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.marketplace;
+
+import java.util.Collection;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Canonical description of everything that decides which marketplace entries a user can browse and
+ * add: the complete set of groups the user is a member of and whether the user is a guest. Users with
+ * equal fingerprints see exactly the same marketplace so the computed entries can be shared between them.
+ * <p>
+ * Permissions granted directly to a user rather than to one of their groups cannot be shared, a
+ * fingerprint for such a user includes the user's principal key so it only ever matches that user.
+ */
+public final class GroupMembershipFingerprint {
+    private final ImmutableSortedSet<String> groupKeys;
+    private final boolean guest;
+    private final String principalKey;
+    private final int hash;
+
+    /**
+     * @param groupKeys Keys of every group the user is a direct or indirect member of
+     * @param guest If the user is a guest
+     * @param principalKey Key of the user's principal if they have directly granted permissions, null otherwise
+     */
+    public GroupMembershipFingerprint(Collection<String> groupKeys, boolean guest, String principalKey) {
+        this.groupKeys = ImmutableSortedSet.copyOf(groupKeys);
+        this.guest = guest;
+        this.principalKey = principalKey;
+
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + this.groupKeys.hashCode();
+        result = prime * result + (this.guest ? 1231 : 1237);
+        result = prime * result + ((this.principalKey == null) ? 0 : this.principalKey.hashCode());
+        this.hash = result;
+    }
+
+    public ImmutableSortedSet<String> getGroupKeys() {
+        return this.groupKeys;
+    }
+
+    public boolean isGuest() {
+        return this.guest;
+    }
+
+    /**
+     * @return Key of the only principal this fingerprint applies to, null if it is shared by all members of the groups
+     */
+    public String getPrincipalKey() {
+        return this.principalKey;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        final GroupMembershipFingerprint other = (GroupMembershipFingerprint) obj;
+        if (this.hash != other.hash)
+            return false;
+        if (this.guest != other.guest)
+            return false;
+        if (this.principalKey == null) {
+            if (other.principalKey != null)
+                return false;
+        }
+        else if (!this.principalKey.equals(other.principalKey))
+            return false;
+        return this.groupKeys.equals(other.groupKeys);
+    }
+
+    @Override
+    public String toString() {
+        return "GroupMembershipFingerprint [groupKeys=" + this.groupKeys + ", guest=" + this.guest
+                + ", principalKey=" + this.principalKey + "]";
+    }
+}
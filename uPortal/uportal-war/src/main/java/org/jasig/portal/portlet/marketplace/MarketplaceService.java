@@ -19,13 +19,22 @@
 
 package org.jasig.portal.portlet.marketplace;
 
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 
 import org.apache.commons.lang3.Validate;
 import org.jasig.portal.concurrency.caching.RequestCache;
 import org.jasig.portal.events.LoginEvent;
+import org.jasig.portal.groups.IEntityGroup;
+import org.jasig.portal.groups.IGroupMember;
 import org.jasig.portal.portlet.om.IPortletDefinition;
 import org.jasig.portal.portlet.om.PortletCategory;
 import org.jasig.portal.portlet.registry.IPortletCategoryRegistry;
@@ -38,24 +47,35 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service layer implementation for Marketplace.
+ * <p>
+ * The portlets a user may browse and add depend only on the groups they belong to, whether they are
+ * a guest and any permissions granted to them directly. They are computed once per
+ * {@link GroupMembershipFingerprint} and the resulting immutable map is shared by every user with
+ * that fingerprint. The {@link MarketplaceEntry} objects returned to a user are created from it for
+ * that user and are never shared.
  * @since uPortal 4.1
  */
 @Service
-public class MarketplaceService implements IMarketplaceService, ApplicationListener<LoginEvent> {
+@ManagedResource("uPortal:section=Framework,name=MarketplaceService")
+public class MarketplaceService implements IMarketplaceService, ApplicationListener<LoginEvent>, MarketplaceServiceMXBean {
 
     public static String FEATURED_CATEGORY_NAME="Featured";
     protected final Logger logger = LoggerFactory.getLogger(getClass());
@@ -80,12 +100,25 @@ public class MarketplaceService implements IMarketplaceService, ApplicationListe
     private Cache marketplacePortletDefinitionCache;
 
     /**
-     * Cache of Username -> Future<Set<MarketplaceEntry>
+     * Cache of Username -> GroupMembershipFingerprint
      */
     @Autowired
     @Qualifier(value = "org.jasig.portal.portlet.marketplace.MarketplaceService.marketplaceUserPortletDefinitionCache")
     private Cache marketplaceUserPortletDefinitionCache;
 
+    /**
+     * Cache of FingerprintEntriesKey -> Future<ImmutableMap<MarketplacePortletDefinition, Boolean>>, the
+     * browseable portlets mapped to whether they may be added
+     */
+    @Autowired
+    @Qualifier(value = "org.jasig.portal.portlet.marketplace.MarketplaceService.marketplaceGroupPortletDefinitionCache")
+    private Cache marketplaceGroupPortletDefinitionCache;
+
+    private final Interner<GroupMembershipFingerprint> fingerprintInterner = Interners.newWeakInterner();
+    private final AtomicLong entryRequests = new AtomicLong();
+    private final AtomicLong entryHits = new AtomicLong();
+    private final AtomicLong entryComputations = new AtomicLong();
+
     /**
      * Caches objects related to the ability to limit the portlets displayed
      * in a single publication of the Marketplace.
@@ -125,10 +158,8 @@ public class MarketplaceService implements IMarketplaceService, ApplicationListe
      * This method is primarily intended for seeding data.  Most impls should call
      * browseableMarketplaceEntriesFor() instead.
      *
-     * Note:  Set is immutable since it is potentially shared between threads.  If
-     * the set needs mutability, be sure to consider the thread safety implications.
-     * No protections have been provided against modifying the MarketplaceEntry itself,
-     * so be careful when modifying the entities contained in the list.
+     * Note:  The entries are created for this user, only the underlying portlet definitions
+     * are shared with other users with the same {@link GroupMembershipFingerprint}.
      *
      * @param user The non-null user
      * @param categories Restricts the output to entries within the specified categories if non-empty
@@ -141,6 +172,79 @@ public class MarketplaceService implements IMarketplaceService, ApplicationListe
     public Future<ImmutableSet<MarketplaceEntry>> loadMarketplaceEntriesFor(final IPerson user, final Set<PortletCategory> categories) {
 
         final IAuthorizationPrincipal principal = AuthorizationPrincipalHelper.principalFromUser(user);
+        final GroupMembershipFingerprint fingerprint = this.getFingerprint(user, principal);
+        this.marketplaceUserPortletDefinitionCache.put(new Element(user.getUserName(), fingerprint));
+
+        return this.createEntries(this.getOrComputeEntries(fingerprint, user, principal, categories), user);
+    }
+
+    /**
+     * Creates the user's own entries from the shared browseable portlets once they are available
+     */
+    protected Future<ImmutableSet<MarketplaceEntry>> createEntries(
+            final Future<ImmutableMap<MarketplacePortletDefinition, Boolean>> browseablePortlets, final IPerson user) {
+
+        return Futures.lazyTransform(browseablePortlets,
+                new Function<ImmutableMap<MarketplacePortletDefinition, Boolean>, ImmutableSet<MarketplaceEntry>>() {
+            @Override
+            public ImmutableSet<MarketplaceEntry> apply(ImmutableMap<MarketplacePortletDefinition, Boolean> input) {
+                final ImmutableSet.Builder<MarketplaceEntry> entries = ImmutableSet.builder();
+                for (final Map.Entry<MarketplacePortletDefinition, Boolean> browseablePortlet : input.entrySet()) {
+                    final MarketplaceEntry entry = new MarketplaceEntry(browseablePortlet.getKey(), user);
+                    entry.setCanAdd(browseablePortlet.getValue());
+                    entries.add(entry);
+                }
+                return entries.build();
+            }
+        });
+    }
+
+    /**
+     * Returns the browseable portlets shared by all users with the fingerprint, computing them if no
+     * other user with the fingerprint has done so yet. Concurrent callers with the same fingerprint
+     * wait on the first caller's computation instead of repeating it.
+     */
+    protected Future<ImmutableMap<MarketplacePortletDefinition, Boolean>> getOrComputeEntries(final GroupMembershipFingerprint fingerprint,
+            final IPerson user, final IAuthorizationPrincipal principal, final Set<PortletCategory> categories) {
+
+        this.entryRequests.incrementAndGet();
+
+        final FingerprintEntriesKey key = new FingerprintEntriesKey(fingerprint, categories);
+        final Element cacheElement = this.marketplaceGroupPortletDefinitionCache.get(key);
+        if (cacheElement != null) {
+            this.entryHits.incrementAndGet();
+            return (Future<ImmutableMap<MarketplacePortletDefinition, Boolean>>) cacheElement.getObjectValue();
+        }
+
+        final SettableFuture<ImmutableMap<MarketplacePortletDefinition, Boolean>> result = SettableFuture.create();
+        final Element existingElement = this.marketplaceGroupPortletDefinitionCache.putIfAbsent(new Element(key, result));
+        if (existingElement != null) {
+            this.entryHits.incrementAndGet();
+            return (Future<ImmutableMap<MarketplacePortletDefinition, Boolean>>) existingElement.getObjectValue();
+        }
+
+        this.entryComputations.incrementAndGet();
+        try {
+            result.set(this.computeMarketplaceEntries(user, principal, categories));
+        }
+        catch (Throwable t) {
+            //Don't leave the failure cached for every other user with this fingerprint
+            this.marketplaceGroupPortletDefinitionCache.remove(key);
+            result.setException(t);
+            //Callers waiting on the future get the failure, errors are still rethrown to this caller
+            Throwables.propagateIfInstanceOf(t, Error.class);
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the portlets the principal may browse mapped to whether the user may add them. The returned map
+     * is shared with every user with the same fingerprint so it must only depend on group memberships and
+     * directly granted permissions, it must never contain anything specific to the user.
+     */
+    protected ImmutableMap<MarketplacePortletDefinition, Boolean> computeMarketplaceEntries(final IPerson user,
+            final IAuthorizationPrincipal principal, final Set<PortletCategory> categories) {
 
         List<IPortletDefinition> allDisplayablePortletDefinitions =
                 this.portletDefinitionRegistry.getAllPortletDefinitions();
@@ -179,41 +283,55 @@ public class MarketplaceService implements IMarketplaceService, ApplicationListe
             allDisplayablePortletDefinitions = (List<IPortletDefinition>) portletDefinitionsElement.getObjectValue();
         }
 
-        final Set<MarketplaceEntry> visiblePortletDefinitions = new HashSet<>();
+        final Map<MarketplacePortletDefinition, Boolean> visiblePortletDefinitions = new LinkedHashMap<>();
 
         for (final IPortletDefinition portletDefinition : allDisplayablePortletDefinitions) {
 
             if (mayBrowsePortlet(principal, portletDefinition)) {
                 final MarketplacePortletDefinition marketplacePortletDefinition = getOrCreateMarketplacePortletDefinition(portletDefinition);
-                final MarketplaceEntry entry =
-                    new MarketplaceEntry(marketplacePortletDefinition, user);
 
                 // flag whether this use can add the portlet...
                 boolean canAdd = mayAddPortlet(user, portletDefinition);
-                entry.setCanAdd(canAdd);
-
-                visiblePortletDefinitions.add(entry);
+                visiblePortletDefinitions.put(marketplacePortletDefinition, canAdd);
             }
         }
 
-        logger.trace("These portlet definitions {} are browseable by {}.", visiblePortletDefinitions, user);
+        logger.trace("These portlet definitions {} are browseable by {}.", visiblePortletDefinitions.keySet(), user);
 
-        Future<ImmutableSet<MarketplaceEntry>> result = new AsyncResult<>(ImmutableSet.copyOf(visiblePortletDefinitions));
-        Element cacheElement = new Element(user.getUserName(), result);
-        marketplaceUserPortletDefinitionCache.put(cacheElement);
+        return ImmutableMap.copyOf(visiblePortletDefinitions);
+    }
 
-        return result;
+    /**
+     * Builds the canonical fingerprint of the user's group memberships. Equal fingerprints are
+     * interned so the thousands of users that share one hold a single instance.
+     */
+    protected GroupMembershipFingerprint getFingerprint(final IPerson user, final IAuthorizationPrincipal principal) {
+        final IGroupMember groupMember = this.authorizationService.getGroupMember(principal);
+        final List<String> groupKeys = new ArrayList<>();
+        for (final Iterator<?> groupItr = groupMember.getAllContainingGroups(); groupItr.hasNext();) {
+            final IEntityGroup group = (IEntityGroup) groupItr.next();
+            groupKeys.add(group.getKey());
+        }
+
+        //Subscribe permissions granted to the user themself make their entries unique to them
+        final IPermission[] directPermissions =
+                this.authorizationService.getPermissionsForPrincipal(principal, IPermission.PORTAL_SUBSCRIBE, null, null);
+        final String principalKey = directPermissions.length > 0 ? principal.getKey() : null;
+
+        return this.fingerprintInterner.intern(new GroupMembershipFingerprint(groupKeys, user.isGuest(), principalKey));
     }
 
     @Override
     public ImmutableSet<MarketplaceEntry> browseableMarketplaceEntriesFor(final IPerson user, final Set<PortletCategory> categories) {
-        Element cacheElement = marketplaceUserPortletDefinitionCache.get(user.getUserName());
-        Future<ImmutableSet<MarketplaceEntry>> future = null;
+        final Element cacheElement = marketplaceUserPortletDefinitionCache.get(user.getUserName());
+        final Future<ImmutableSet<MarketplaceEntry>> future;
         if (cacheElement == null) {
-            // not in cache, load it and cache the results...
+            // fingerprint not in cache, load it and the entries for it...
             future = loadMarketplaceEntriesFor(user, categories);
         } else {
-            future = (Future<ImmutableSet<MarketplaceEntry>>) cacheElement.getObjectValue();
+            final GroupMembershipFingerprint fingerprint = (GroupMembershipFingerprint) cacheElement.getObjectValue();
+            final IAuthorizationPrincipal principal = AuthorizationPrincipalHelper.principalFromUser(user);
+            future = this.createEntries(this.getOrComputeEntries(fingerprint, user, principal, categories), user);
         }
 
         try {
@@ -310,6 +428,41 @@ public class MarketplaceService implements IMarketplaceService, ApplicationListe
         return null;
     }
 
+    @Override
+    public long getEntryRequests() {
+        return this.entryRequests.get();
+    }
+
+    @Override
+    public long getEntryHits() {
+        return this.entryHits.get();
+    }
+
+    @Override
+    public double getEntryHitRatio() {
+        final long requests = this.entryRequests.get();
+        return requests == 0 ? 0 : (double) this.entryHits.get() / requests;
+    }
+
+    @Override
+    public long getEntryComputations() {
+        return this.entryComputations.get();
+    }
+
+    @Override
+    public int getCachedFingerprints() {
+        final Set<GroupMembershipFingerprint> fingerprints = new HashSet<>();
+        for (final Object key : this.marketplaceGroupPortletDefinitionCache.getKeys()) {
+            fingerprints.add(((FingerprintEntriesKey) key).fingerprint);
+        }
+        return fingerprints.size();
+    }
+
+    @Override
+    public int getCachedUsers() {
+        return this.marketplaceUserPortletDefinitionCache.getSize();
+    }
+
     // Private stateless static utility methods below here
 
     /**
@@ -380,4 +533,40 @@ public class MarketplaceService implements IMarketplaceService, ApplicationListe
         this.portletCategoryRegistry = portletCategoryRegistry;
     }
 
+    /**
+     * Key for the entries computed for a fingerprint restricted to a set of categories
+     */
+    private static final class FingerprintEntriesKey {
+        private final GroupMembershipFingerprint fingerprint;
+        private final ImmutableSet<PortletCategory> categories;
+        private final int hash;
+
+        public FingerprintEntriesKey(GroupMembershipFingerprint fingerprint, Set<PortletCategory> categories) {
+            this.fingerprint = fingerprint;
+            this.categories = ImmutableSet.copyOf(categories);
+            this.hash = 31 * fingerprint.hashCode() + this.categories.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof FingerprintEntriesKey))
+                return false;
+            final FingerprintEntriesKey other = (FingerprintEntriesKey) obj;
+            return this.hash == other.hash
+                    && this.fingerprint.equals(other.fingerprint)
+                    && this.categories.equals(other.categories);
+        }
+
+        @Override
+        public String toString() {
+            return "FingerprintEntriesKey [fingerprint=" + this.fingerprint + ", categories=" + this.categories + "]";
+        }
+    }
 }
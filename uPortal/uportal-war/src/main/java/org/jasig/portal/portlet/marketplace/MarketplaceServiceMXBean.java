@@ -0,0 +1,55 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.marketplace;
+
+/**
+ * Statistics on sharing of computed marketplace entries between users with the same group memberships
+ */
+public interface MarketplaceServiceMXBean {
+
+    /**
+     * @return Number of times a user's marketplace entries have been requested since startup
+     */
+    long getEntryRequests();
+
+    /**
+     * @return Number of those requests answered by entries already computed for the same fingerprint
+     */
+    long getEntryHits();
+
+    /**
+     * @return Ratio of hits to requests, 0 if there have been no requests
+     */
+    double getEntryHitRatio();
+
+    /**
+     * @return Number of times marketplace entries have been computed since startup
+     */
+    long getEntryComputations();
+
+    /**
+     * @return Number of distinct group membership fingerprints with entries currently cached
+     */
+    int getCachedFingerprints();
+
+    /**
+     * @return Number of users with a currently cached fingerprint
+     */
+    int getCachedUsers();
+}
@@ -19,6 +19,7 @@
 package org.jasig.portal.portlet.rendering;
 
 import java.io.Writer;
+import java.util.Collection;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -79,6 +80,18 @@ public interface IPortletExecutionManager {
      * @param response
      */
     public void startPortletRender(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * Initiates the header and body rendering workers for all of the portlets that will be displayed
+     * on the page, before the rendering pipeline reaches them. Portlets that are already rendering are
+     * skipped, the rest are started slowest first based on their recent render times.
+     * Returns immediately.
+     * 
+     * @param portletWindowIds The portlets that will be displayed
+     * @param request
+     * @param response
+     */
+    public void prefetchPortletRenders(Collection<IPortletWindowId> portletWindowIds, HttpServletRequest request, HttpServletResponse response);
     
     /**
      * 
@@ -108,6 +121,12 @@ public interface IPortletExecutionManager {
      */
     public boolean isPortletRenderRequested(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response);
 
+    /**
+     * @return true if the specified portlet has finished rendering it's output for the BODY during this request,
+     *      false if it has not been started or is still executing.
+     */
+    public boolean isPortletRenderComplete(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response);
+
     /**
      * @see #getPortletHeadOutput(IPortletWindowId, HttpServletRequest, HttpServletResponse)
      * @param subscribeId
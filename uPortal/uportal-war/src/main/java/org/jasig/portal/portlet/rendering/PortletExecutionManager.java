@@ -19,8 +19,13 @@
 package org.jasig.portal.portlet.rendering;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -31,6 +36,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.portlet.Event;
 import javax.servlet.http.HttpServletRequest;
@@ -52,6 +58,7 @@ import org.jasig.portal.portlet.om.IPortletWindowId;
 import org.jasig.portal.portlet.om.PortletLifecycleState;
 import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
 import org.jasig.portal.portlet.rendering.worker.IPortletExecutionContext;
+import org.jasig.portal.portlet.rendering.worker.IPortletExecutionContext.ExecutionType;
 import org.jasig.portal.portlet.rendering.worker.IPortletExecutionInterceptor;
 import org.jasig.portal.portlet.rendering.worker.IPortletExecutionWorker;
 import org.jasig.portal.portlet.rendering.worker.IPortletFailureExecutionWorker;
@@ -91,6 +98,12 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
     private static final long DEBUG_TIMEOUT = TimeUnit.HOURS.toMillis(1);
     private static final String PORTLET_HEADER_RENDERING_MAP = PortletExecutionManager.class.getName() + ".PORTLET_HEADER_RENDERING_MAP";
     private static final String PORTLET_RENDERING_MAP = PortletExecutionManager.class.getName() + ".PORTLET_RENDERING_MAP";
+    private static final String PREFETCHED_PORTLETS_SET = PortletExecutionManager.class.getName() + ".PREFETCHED_PORTLETS_SET";
+    
+    /**
+     * Weight given to each new render time in the per-portlet moving average, as a power of 2 divisor
+     */
+    private static final int RENDER_TIME_AVERAGE_SHIFT = 3;
 
     protected static final String SESSION_ATTRIBUTE__PORTLET_FAILURE_CAUSE_MAP = PortletExecutionManager.class.getName() + ".PORTLET_FAILURE_CAUSE_MAP";
 
@@ -112,6 +125,9 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         }
     });
 
+    // fname -> moving average of recent render times, -1 until the first render completes
+    private final ConcurrentMap<String, AtomicLong> averageRenderTimes = new ConcurrentHashMap<String, AtomicLong>();
+    
     private boolean ignoreTimeouts = false;
     private int extendedTimeoutExecutions = 5;
     private long extendedTimeoutMultiplier = 20;
@@ -181,6 +197,20 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         return counts;
     }
 
+    @Override
+    public Map<String, Long> getPortletAverageRenderTimes() {
+        final Map<String, Long> renderTimes = new TreeMap<String, Long>();
+        
+        for (final Map.Entry<String, AtomicLong> entry : this.averageRenderTimes.entrySet()) {
+            final long renderTime = entry.getValue().get();
+            if (renderTime >= 0) {
+                renderTimes.put(entry.getKey(), renderTime);
+            }
+        }
+        
+        return renderTimes;
+    }
+
     @Autowired
     public void setPortletWorkerFactory(IPortletWorkerFactory portletWorkerFactory) {
         this.portletWorkerFactory = portletWorkerFactory;
@@ -223,13 +253,19 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         if (!portletRenderExecutionWorker.isRetrieved()) {
             final IPortletWindowId portletWindowId = portletRenderExecutionWorker.getPortletWindowId();
             final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
-            this.logger.warn("Portlet worker started but never retrieved for {}, worker {}."
-                    + " If random portlet fnames it may be users switching tabs before page is done rendering"
-                    + " (would see separate log message with java.net.SocketException on socket write)."
-                    + " If repeatedly occurring with one portlet fname your theme layout xsl may not be including"
-                    + " a portlet present in your layout xml files (see"
-                    + " http://jasig.275507.n4.nabble.com/Portlet-worker-started-but-never-retrieved-td4580698.html)",
-                    portletWindow, portletRenderExecutionWorker);
+            if (this.getPrefetchedPortletSet(request).contains(portletWindowId)) {
+                //Prefetching is speculative, the theme is free to not include a prefetched portlet
+                this.logger.debug("Prefetched portlet worker never retrieved for {}, worker {}", portletWindow, portletRenderExecutionWorker);
+            }
+            else {
+                this.logger.warn("Portlet worker started but never retrieved for {}, worker {}."
+                        + " If random portlet fnames it may be users switching tabs before page is done rendering"
+                        + " (would see separate log message with java.net.SocketException on socket write)."
+                        + " If repeatedly occurring with one portlet fname your theme layout xsl may not be including"
+                        + " a portlet present in your layout xml files (see"
+                        + " http://jasig.275507.n4.nabble.com/Portlet-worker-started-but-never-retrieved-td4580698.html)",
+                        portletWindow, portletRenderExecutionWorker);
+            }
             
             try {
                 portletRenderExecutionWorker.get(0);
@@ -309,6 +345,44 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         
         final AtomicInteger counter = this.executionCount.get(portletDescriptorKey);
         counter.incrementAndGet();
+        
+        if (e == null && context.getExecutionType() == ExecutionType.RENDER) {
+            this.recordRenderTime(context.getPortletFname(), context.getDuration());
+        }
+    }
+    
+    /**
+     * Update the moving average render time for the portlet
+     */
+    protected void recordRenderTime(String fname, long duration) {
+        AtomicLong averageRenderTime = this.averageRenderTimes.get(fname);
+        if (averageRenderTime == null) {
+            averageRenderTime = new AtomicLong(-1);
+            final AtomicLong existing = this.averageRenderTimes.putIfAbsent(fname, averageRenderTime);
+            if (existing != null) {
+                averageRenderTime = existing;
+            }
+        }
+        
+        long current;
+        long updated;
+        do {
+            current = averageRenderTime.get();
+            updated = current < 0 ? duration : current + ((duration - current) >> RENDER_TIME_AVERAGE_SHIFT);
+        } while (!averageRenderTime.compareAndSet(current, updated));
+    }
+    
+    /**
+     * @return The recent average render time for the portlet, {@link Long#MAX_VALUE} if it has never been rendered
+     */
+    protected long getAverageRenderTime(String fname) {
+        final AtomicLong averageRenderTime = this.averageRenderTimes.get(fname);
+        if (averageRenderTime == null) {
+            return Long.MAX_VALUE;
+        }
+        
+        final long renderTime = averageRenderTime.get();
+        return renderTime < 0 ? Long.MAX_VALUE : renderTime;
     }
 
     /* (non-Javadoc)
@@ -534,6 +608,58 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         this.startPortletRenderInternal(portletWindowId, request, response);
     }
     
+    /* (non-Javadoc)
+     * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#prefetchPortletRenders(java.util.Collection, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public void prefetchPortletRenders(Collection<IPortletWindowId> portletWindowIds, HttpServletRequest request, HttpServletResponse response) {
+        final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap = this.getPortletRenderingMap(request);
+        
+        //Collect the portlets that are not rendering yet along with their recent render time
+        final List<IPortletWindowId> toStart = new ArrayList<IPortletWindowId>(portletWindowIds.size());
+        final Map<IPortletWindowId, Long> renderTimes = new LinkedHashMap<IPortletWindowId, Long>();
+        for (final IPortletWindowId portletWindowId : portletWindowIds) {
+            if (portletRenderingMap.containsKey(portletWindowId) || renderTimes.containsKey(portletWindowId)) {
+                continue;
+            }
+            
+            final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
+            if (portletWindow == null) {
+                continue;
+            }
+            
+            final IPortletDefinition portletDefinition = portletWindow.getPortletEntity().getPortletDefinition();
+            renderTimes.put(portletWindowId, this.getAverageRenderTime(portletDefinition.getFName()));
+            toStart.add(portletWindowId);
+        }
+        
+        //Slowest first so that the page waits on as few late starts as possible
+        Collections.sort(toStart, new Comparator<IPortletWindowId>() {
+            @Override
+            public int compare(IPortletWindowId o1, IPortletWindowId o2) {
+                final long t1 = renderTimes.get(o1);
+                final long t2 = renderTimes.get(o2);
+                return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+            }
+        });
+        
+        final Set<IPortletWindowId> prefetchedPortlets = this.getPrefetchedPortletSet(request);
+        for (final IPortletWindowId portletWindowId : toStart) {
+            try {
+                if (!this.isPortletRenderHeaderRequested(portletWindowId, request, response)) {
+                    this.startPortletHeaderRender(portletWindowId, request, response);
+                }
+                this.startPortletRenderInternal(portletWindowId, request, response);
+                prefetchedPortlets.add(portletWindowId);
+                this.logger.debug("Prefetched portlet rendering for: {}", portletWindowId);
+            }
+            catch (RuntimeException e) {
+                //The pipeline will start the portlet again when it reaches it
+                this.logger.warn("Failed to prefetch rendering for portlet window {}", portletWindowId, e);
+            }
+        }
+    }
+    
     
 
     /* (non-Javadoc)
@@ -627,6 +753,17 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         return tracker != null;
     }
     
+    /* (non-Javadoc)
+     * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#isPortletRenderComplete(org.jasig.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public boolean isPortletRenderComplete(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response) {
+        final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap = this.getPortletRenderingMap(request);
+        final IPortletRenderExecutionWorker tracker = portletRenderingMap.get(portletWindowId);
+        
+        return tracker != null && tracker.isComplete();
+    }
+    
     /* (non-Javadoc)
 	 * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#getPortletHeadOutput(org.jasig.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
 	 */
@@ -1015,6 +1152,22 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         }
     }
     
+    /**
+     * Returns a request attribute scoped Set of portlets whose rendering was started by
+     * {@link #prefetchPortletRenders(Collection, HttpServletRequest, HttpServletResponse)}
+     */
+    @SuppressWarnings("unchecked")
+    protected Set<IPortletWindowId> getPrefetchedPortletSet(HttpServletRequest request) {
+        synchronized (PortalWebUtils.getRequestAttributeMutex(request)) {
+            Set<IPortletWindowId> prefetchedPortlets = (Set<IPortletWindowId>)request.getAttribute(PREFETCHED_PORTLETS_SET);
+            if (prefetchedPortlets == null) {
+                prefetchedPortlets = Collections.newSetFromMap(new ConcurrentHashMap<IPortletWindowId, Boolean>());
+                request.setAttribute(PREFETCHED_PORTLETS_SET, prefetchedPortlets);
+            }
+            return prefetchedPortlets;
+        }
+    }
+    
     /**
      * Null safe means for retrieving the {@link Map} from the specified session
      * keyed by {@link #SESSION_ATTRIBUTE__PORTLET_FAILURE_CAUSE_MAP}.
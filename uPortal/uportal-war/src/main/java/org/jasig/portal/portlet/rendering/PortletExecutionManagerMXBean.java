@@ -67,5 +67,10 @@ public interface PortletExecutionManagerMXBean {
      * @return Number of times each portlet has been executed
      */
     Map<String, Integer> getPortletExecutionCounts();
+
+    /**
+     * @return Recent average render time in milliseconds of each portlet by fname, used to order prefetched renders
+     */
+    Map<String, Long> getPortletAverageRenderTimes();
     
 }
\ No newline at end of file
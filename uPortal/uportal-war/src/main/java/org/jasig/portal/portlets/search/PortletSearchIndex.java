@@ -0,0 +1,334 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlets.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.jasig.portal.portlet.om.IPortletDefinitionId;
+
+/**
+ * Immutable in-memory inverted index over portlet definition text fields. Every substring of up to
+ * {@link #GRAM_LENGTH} characters of each lower cased field is indexed, a query is answered by intersecting the
+ * postings of its grams and then verifying the candidates with {@link String#contains(CharSequence)}, so matching
+ * is the same case-insensitive substring match a linear scan would do while only the candidates are checked.
+ * <p>
+ * Matches are ranked by the weight of the matched fields, doubled when the query starts a word in the field. Use
+ * {@link Builder} to create an index.
+ */
+public final class PortletSearchIndex {
+    /**
+     * Length of the grams indexed for each field
+     */
+    public static final int GRAM_LENGTH = 3;
+    
+    /**
+     * Indexed portlet fields and their ranking weights
+     */
+    public enum Field {
+        TITLE(10),
+        NAME(6),
+        FNAME(6),
+        KEYWORD(5),
+        CATEGORY(4),
+        DESCRIPTION(2),
+        CAPTION(1),
+        RELEASE_NOTE(1);
+        
+        private final int weight;
+        
+        private Field(int weight) {
+            this.weight = weight;
+        }
+        
+        public int getWeight() {
+            return this.weight;
+        }
+    }
+    
+    private static final int[] NO_DOCUMENTS = new int[0];
+    
+    private final IPortletDefinitionId[] documentIds;
+    private final int[] documentTitleRanks;
+    private final Field[][] documentFields;
+    private final String[][] documentValues;
+    private final Map<String, int[]> postings;
+    
+    private PortletSearchIndex(Builder builder) {
+        final int documentCount = builder.documentIds.size();
+        this.documentIds = builder.documentIds.toArray(new IPortletDefinitionId[documentCount]);
+        this.documentFields = builder.documentFields.toArray(new Field[documentCount][]);
+        this.documentValues = builder.documentValues.toArray(new String[documentCount][]);
+        
+        //Position of each document when sorted by title, used to break ties in the ranking
+        final Integer[] byTitle = new Integer[documentCount];
+        for (int i = 0; i < documentCount; i++) {
+            byTitle[i] = i;
+        }
+        final List<String> titles = builder.documentTitles;
+        Arrays.sort(byTitle, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return titles.get(o1).compareTo(titles.get(o2));
+            }
+        });
+        this.documentTitleRanks = new int[documentCount];
+        for (int rank = 0; rank < documentCount; rank++) {
+            this.documentTitleRanks[byTitle[rank]] = rank;
+        }
+        
+        this.postings = new HashMap<String, int[]>(builder.postings.size() * 4 / 3 + 1);
+        for (final Map.Entry<String, List<Integer>> postingEntry : builder.postings.entrySet()) {
+            final List<Integer> documents = postingEntry.getValue();
+            final int[] documentArray = new int[documents.size()];
+            for (int i = 0; i < documentArray.length; i++) {
+                documentArray[i] = documents.get(i);
+            }
+            this.postings.put(postingEntry.getKey(), documentArray);
+        }
+    }
+    
+    /**
+     * @return Number of indexed portlets
+     */
+    public int size() {
+        return this.documentIds.length;
+    }
+    
+    /**
+     * @return Number of distinct grams in the index
+     */
+    public int getGramCount() {
+        return this.postings.size();
+    }
+
+    /**
+     * Find all portlets with one of the specified fields containing the query, ignoring case
+     * 
+     * @param query The text to search for
+     * @param fields The fields to search
+     * @return IDs of the matching portlets, most relevant first
+     */
+    public List<IPortletDefinitionId> search(String query, Set<Field> fields) {
+        final String lcQuery = query.toLowerCase(Locale.ROOT);
+        final int[] candidates = this.getCandidates(lcQuery);
+        
+        //Sort key is the inverted score followed by the title rank, the document is recovered from the title rank
+        final long[] matches = new long[candidates.length];
+        final int[] documentsByTitleRank = new int[this.documentIds.length];
+        int matchCount = 0;
+        for (final int document : candidates) {
+            final int score = this.score(document, lcQuery, fields);
+            if (score > 0) {
+                final int titleRank = this.documentTitleRanks[document];
+                documentsByTitleRank[titleRank] = document;
+                matches[matchCount++] = ((long) (Integer.MAX_VALUE - score) << 32) | titleRank;
+            }
+        }
+        Arrays.sort(matches, 0, matchCount);
+        
+        final List<IPortletDefinitionId> results = new ArrayList<IPortletDefinitionId>(matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            final int titleRank = (int) matches[i];
+            results.add(this.documentIds[documentsByTitleRank[titleRank]]);
+        }
+        return results;
+    }
+    
+    /**
+     * @return Sorted documents that contain every gram of the query
+     */
+    private int[] getCandidates(String lcQuery) {
+        if (lcQuery.length() == 0) {
+            final int[] all = new int[this.documentIds.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        
+        if (lcQuery.length() <= GRAM_LENGTH) {
+            final int[] documents = this.postings.get(lcQuery);
+            return documents != null ? documents : NO_DOCUMENTS;
+        }
+        
+        //Collect the postings of every gram, intersecting from the shortest list
+        final int gramCount = lcQuery.length() - GRAM_LENGTH + 1;
+        final int[][] gramPostings = new int[gramCount][];
+        for (int i = 0; i < gramCount; i++) {
+            final int[] documents = this.postings.get(lcQuery.substring(i, i + GRAM_LENGTH));
+            if (documents == null) {
+                return NO_DOCUMENTS;
+            }
+            gramPostings[i] = documents;
+        }
+        Arrays.sort(gramPostings, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                return o1.length - o2.length;
+            }
+        });
+        
+        int[] candidates = gramPostings[0];
+        for (int i = 1; i < gramCount && candidates.length > 0; i++) {
+            candidates = intersect(candidates, gramPostings[i]);
+        }
+        return candidates;
+    }
+    
+    private int score(int document, String lcQuery, Set<Field> fields) {
+        final Field[] valueFields = this.documentFields[document];
+        final String[] values = this.documentValues[document];
+        
+        int score = 0;
+        Field scoredField = null;
+        for (int i = 0; i < values.length; i++) {
+            final Field field = valueFields[i];
+            //Each field is only scored once, values of a field are contiguous
+            if (field == scoredField || !fields.contains(field)) {
+                continue;
+            }
+            
+            final String value = values[i];
+            final int index = value.indexOf(lcQuery);
+            if (index >= 0) {
+                final boolean wordStart = index == 0 || !Character.isLetterOrDigit(value.charAt(index - 1));
+                score += wordStart ? field.getWeight() * 2 : field.getWeight();
+                scoredField = field;
+            }
+        }
+        return score;
+    }
+    
+    private static int[] intersect(int[] a, int[] b) {
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] == b[j]) {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+            else if (a[i] < b[j]) {
+                i++;
+            }
+            else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    /**
+     * Collects portlet fields and builds an immutable {@link PortletSearchIndex}, not thread safe.
+     */
+    public static final class Builder {
+        private final List<IPortletDefinitionId> documentIds = new ArrayList<IPortletDefinitionId>();
+        private final List<String> documentTitles = new ArrayList<String>();
+        private final List<Field[]> documentFields = new ArrayList<Field[]>();
+        private final List<String[]> documentValues = new ArrayList<String[]>();
+        private final Map<String, List<Integer>> postings = new HashMap<String, List<Integer>>();
+        private Map<Field, List<String>> currentFields;
+        private Set<String> currentGrams;
+        
+        /**
+         * Start indexing a portlet, all following {@link #addField(Field, String)} calls apply to this portlet
+         */
+        public Builder addPortlet(IPortletDefinitionId portletDefinitionId, String title) {
+            this.finishPortlet();
+            
+            this.documentIds.add(portletDefinitionId);
+            this.documentTitles.add(title != null ? title.toLowerCase(Locale.ROOT) : "");
+            this.currentFields = new EnumMap<Field, List<String>>(Field.class);
+            this.currentGrams = new HashSet<String>();
+            return this;
+        }
+        
+        /**
+         * Add a value to a field of the current portlet, null values are ignored
+         */
+        public Builder addField(Field field, String value) {
+            if (this.currentFields == null) {
+                throw new IllegalStateException("addPortlet must be called before addField");
+            }
+            if (value == null) {
+                return this;
+            }
+            
+            final String lcValue = value.toLowerCase(Locale.ROOT);
+            List<String> values = this.currentFields.get(field);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                this.currentFields.put(field, values);
+            }
+            values.add(lcValue);
+            
+            for (int start = 0; start < lcValue.length(); start++) {
+                final int maxEnd = Math.min(lcValue.length(), start + GRAM_LENGTH);
+                for (int end = start + 1; end <= maxEnd; end++) {
+                    this.currentGrams.add(lcValue.substring(start, end));
+                }
+            }
+            return this;
+        }
+        
+        public PortletSearchIndex build() {
+            this.finishPortlet();
+            return new PortletSearchIndex(this);
+        }
+        
+        private void finishPortlet() {
+            if (this.currentFields == null) {
+                return;
+            }
+            
+            //Flatten the fields with the values of each field contiguous
+            final List<Field> fields = new ArrayList<Field>();
+            final List<String> values = new ArrayList<String>();
+            for (final Map.Entry<Field, List<String>> fieldEntry : this.currentFields.entrySet()) {
+                for (final String value : fieldEntry.getValue()) {
+                    fields.add(fieldEntry.getKey());
+                    values.add(value);
+                }
+            }
+            this.documentFields.add(fields.toArray(new Field[fields.size()]));
+            this.documentValues.add(values.toArray(new String[values.size()]));
+            
+            final Integer document = this.documentIds.size() - 1;
+            for (final String gram : this.currentGrams) {
+                List<Integer> documents = this.postings.get(gram);
+                if (documents == null) {
+                    documents = new ArrayList<Integer>();
+                    this.postings.put(gram, documents);
+                }
+                documents.add(document);
+            }
+            this.currentFields = null;
+            this.currentGrams = null;
+        }
+    }
+}
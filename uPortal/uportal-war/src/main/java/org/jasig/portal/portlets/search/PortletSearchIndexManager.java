@@ -0,0 +1,190 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlets.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jasig.portal.portlet.marketplace.IMarketplaceService;
+import org.jasig.portal.portlet.marketplace.MarketplacePortletDefinition;
+import org.jasig.portal.portlet.marketplace.PortletReleaseNotes;
+import org.jasig.portal.portlet.marketplace.ScreenShot;
+import org.jasig.portal.portlet.dao.PortletDefinitionChangedEvent;
+import org.jasig.portal.portlet.om.IPortletDefinition;
+import org.jasig.portal.portlet.om.IPortletDefinitionId;
+import org.jasig.portal.portlet.om.PortletCategory;
+import org.jasig.portal.portlet.registry.IPortletCategoryRegistry;
+import org.jasig.portal.portlet.registry.IPortletDefinitionRegistry;
+import org.jasig.portal.portlets.search.PortletSearchIndex.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Maintains the {@link PortletSearchIndex} used by the portlet search services. The index is rebuilt on the next
+ * search after a {@link PortletDefinitionChangedEvent} and at most refreshInterval after the last build so changes
+ * made on other servers are picked up. While a rebuild runs searches continue to use the previous index.
+ */
+@Service
+public class PortletSearchIndexManager implements ApplicationListener<PortletDefinitionChangedEvent> {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+    
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile PortletSearchIndex searchIndex;
+    private volatile long lastBuildTime;
+    private volatile boolean stale = true;
+    private long refreshInterval = 60000;
+    
+    private IPortletDefinitionRegistry portletDefinitionRegistry;
+    private IPortletCategoryRegistry portletCategoryRegistry;
+    private IMarketplaceService marketplaceService;
+
+    @Autowired
+    public void setPortletDefinitionRegistry(IPortletDefinitionRegistry portletDefinitionRegistry) {
+        this.portletDefinitionRegistry = portletDefinitionRegistry;
+    }
+
+    @Autowired
+    public void setPortletCategoryRegistry(IPortletCategoryRegistry portletCategoryRegistry) {
+        this.portletCategoryRegistry = portletCategoryRegistry;
+    }
+
+    @Autowired
+    public void setMarketplaceService(IMarketplaceService marketplaceService) {
+        this.marketplaceService = marketplaceService;
+    }
+
+    /**
+     * @param refreshInterval Maximum age in milliseconds of the index before it is rebuilt, defaults to 60000
+     */
+    @Value("${org.jasig.portal.portlets.search.PortletSearchIndexManager.refreshInterval:60000}")
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public void onApplicationEvent(PortletDefinitionChangedEvent event) {
+        this.stale = true;
+    }
+
+    /**
+     * Find the portlets with one of the fields containing the query, ignoring case
+     * 
+     * @return Matching portlets, most relevant first. Authorization is NOT checked
+     */
+    public List<IPortletDefinition> search(String query, Set<Field> fields) {
+        final PortletSearchIndex searchIndex = this.getSearchIndex();
+        final List<IPortletDefinitionId> portletDefinitionIds = searchIndex.search(query, fields);
+        
+        final List<IPortletDefinition> portletDefinitions = new ArrayList<IPortletDefinition>(portletDefinitionIds.size());
+        for (final IPortletDefinitionId portletDefinitionId : portletDefinitionIds) {
+            final IPortletDefinition portletDefinition = this.portletDefinitionRegistry.getPortletDefinition(portletDefinitionId);
+            //Deleted since the index was built
+            if (portletDefinition != null) {
+                portletDefinitions.add(portletDefinition);
+            }
+        }
+        return portletDefinitions;
+    }
+
+    /**
+     * @return The current index, rebuilding it if needed
+     */
+    protected PortletSearchIndex getSearchIndex() {
+        final PortletSearchIndex currentIndex = this.searchIndex;
+        if (currentIndex != null && !this.stale && System.currentTimeMillis() - this.lastBuildTime < this.refreshInterval) {
+            return currentIndex;
+        }
+        
+        if (currentIndex == null) {
+            //No index yet, everyone waits on the first build
+            this.rebuildLock.lock();
+        }
+        else if (!this.rebuildLock.tryLock()) {
+            //Another thread is rebuilding, use the existing index
+            return currentIndex;
+        }
+        
+        try {
+            //Rebuilt while waiting for the lock
+            if (this.searchIndex != currentIndex && this.searchIndex != null) {
+                return this.searchIndex;
+            }
+            
+            this.stale = false;
+            final long start = System.currentTimeMillis();
+            final PortletSearchIndex newIndex = this.buildSearchIndex();
+            this.searchIndex = newIndex;
+            this.lastBuildTime = System.currentTimeMillis();
+            
+            this.logger.debug("Built portlet search index of {} portlets and {} grams in {}ms", 
+                    newIndex.size(), newIndex.getGramCount(), this.lastBuildTime - start);
+            return newIndex;
+        }
+        finally {
+            this.rebuildLock.unlock();
+        }
+    }
+
+    protected PortletSearchIndex buildSearchIndex() {
+        final PortletSearchIndex.Builder builder = new PortletSearchIndex.Builder();
+        
+        for (final IPortletDefinition portletDefinition : this.portletDefinitionRegistry.getAllPortletDefinitions()) {
+            final MarketplacePortletDefinition marketplacePortletDefinition = 
+                    new MarketplacePortletDefinition(portletDefinition, this.marketplaceService, this.portletCategoryRegistry);
+            
+            builder.addPortlet(portletDefinition.getPortletDefinitionId(), portletDefinition.getTitle())
+                .addField(Field.TITLE, portletDefinition.getTitle())
+                .addField(Field.NAME, portletDefinition.getName())
+                .addField(Field.FNAME, portletDefinition.getFName())
+                .addField(Field.DESCRIPTION, portletDefinition.getDescription());
+            
+            final List<String> keywords = marketplacePortletDefinition.getKeywords();
+            if (keywords != null) {
+                for (final String keyword : keywords) {
+                    builder.addField(Field.KEYWORD, keyword);
+                }
+            }
+            
+            for (final PortletCategory category : marketplacePortletDefinition.getParentCategories()) {
+                builder.addField(Field.CATEGORY, category.getName());
+            }
+            
+            for (final ScreenShot screenShot : marketplacePortletDefinition.getScreenShots()) {
+                for (final String caption : screenShot.getCaptions()) {
+                    builder.addField(Field.CAPTION, caption);
+                }
+            }
+            
+            final PortletReleaseNotes releaseNotes = marketplacePortletDefinition.getPortletReleaseNotes();
+            if (releaseNotes != null && releaseNotes.getReleaseNotes() != null) {
+                for (final String note : releaseNotes.getReleaseNotes()) {
+                    builder.addField(Field.RELEASE_NOTE, note);
+                }
+            }
+        }
+        
+        return builder.build();
+    }
+}
@@ -18,7 +18,9 @@
  */
 package org.jasig.portal.portlets.search.portletregistry;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.portlet.PortletRequest;
 import javax.servlet.http.HttpServletRequest;
@@ -27,13 +29,15 @@ import org.jasig.portal.portlet.PortletUtils;
 import org.jasig.portal.portlet.om.IPortletDefinition;
 import org.jasig.portal.portlet.om.IPortletWindow;
 import org.jasig.portal.portlet.om.IPortletWindowId;
-import org.jasig.portal.portlet.registry.IPortletDefinitionRegistry;
 import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
 import org.jasig.portal.portlets.groupselector.EntityEnum;
 import org.jasig.portal.portlets.search.IPortalSearchService;
+import org.jasig.portal.portlets.search.PortletSearchIndex.Field;
+import org.jasig.portal.portlets.search.PortletSearchIndexManager;
 import org.jasig.portal.search.SearchRequest;
 import org.jasig.portal.search.SearchResult;
 import org.jasig.portal.search.SearchResults;
+import org.jasig.portal.security.IAuthorizationPrincipal;
 import org.jasig.portal.security.IAuthorizationService;
 import org.jasig.portal.url.IPortalRequestUtils;
 import org.jasig.portal.url.IPortalUrlBuilder;
@@ -43,9 +47,15 @@ import org.jasig.portal.url.UrlType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
+/**
+ * Searches the title, name, fname, description, keywords and categories of the portlets the user can browse
+ * using the {@link PortletSearchIndexManager}
+ */
 public class PortletRegistrySearchService implements IPortalSearchService {
+    private static final Set<Field> SEARCH_FIELDS = EnumSet.of(
+            Field.TITLE, Field.NAME, Field.FNAME, Field.DESCRIPTION, Field.KEYWORD, Field.CATEGORY);
 
-    private IPortletDefinitionRegistry portletDefinitionRegistry;
+    private PortletSearchIndexManager portletSearchIndexManager;
     private IPortalUrlProvider portalUrlProvider;
     private IPortletWindowRegistry portletWindowRegistry;
     private IPortalRequestUtils portalRequestUtils;
@@ -55,8 +65,8 @@ public class PortletRegistrySearchService implements IPortalSearchService {
     private String searchResultType = "Portlet List";
 
     @Autowired
-    public void setPortletDefinitionRegistry(IPortletDefinitionRegistry portletDefinitionRegistry) {
-        this.portletDefinitionRegistry = portletDefinitionRegistry;
+    public void setPortletSearchIndexManager(PortletSearchIndexManager portletSearchIndexManager) {
+        this.portletSearchIndexManager = portletSearchIndexManager;
     }
 
     @Autowired
@@ -84,59 +94,33 @@ public class PortletRegistrySearchService implements IPortalSearchService {
             SearchRequest query) {
         
         final String queryString = query.getSearchTerms().toLowerCase();
-        final List<IPortletDefinition> portlets = portletDefinitionRegistry.getAllPortletDefinitions();
+        //Ranked matches, authorization is applied to the ranked list
+        final List<IPortletDefinition> portlets = this.portletSearchIndexManager.search(queryString, SEARCH_FIELDS);
         
         final HttpServletRequest httpServletRequest = this.portalRequestUtils.getPortletHttpRequest(request);
+        final IAuthorizationPrincipal principal = authorizationService.newPrincipal(request.getRemoteUser(), EntityEnum.PERSON.getClazz());
         
         final SearchResults results =  new SearchResults();
         for (IPortletDefinition portlet : portlets) {
-            if (matches(queryString, portlet)) {
-                final SearchResult result = new SearchResult();
-                result.setTitle(portlet.getTitle());
-                result.setSummary(portlet.getDescription());
-                result.getType().add(searchResultType);
-
-                final IPortletWindow portletWindow = this.portletWindowRegistry.getOrCreateDefaultPortletWindowByFname(httpServletRequest, portlet.getFName());
-                // portletWindow is null if user does not have access to portlet.
-                // If user does not have browse permission, exclude the portlet.
-                if (portletWindow != null && authorizationService.canPrincipalBrowse(
-                        authorizationService.newPrincipal(request.getRemoteUser(), EntityEnum.PERSON.getClazz()),
-                        portlet)) {
-                    final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
-                    final IPortalUrlBuilder portalUrlBuilder = this.portalUrlProvider.getPortalUrlBuilderByPortletFName(httpServletRequest, portlet.getFName(), UrlType.RENDER);
-                    final IPortletUrlBuilder portletUrlBuilder = portalUrlBuilder.getPortletUrlBuilder(portletWindowId);
-                    portletUrlBuilder.setWindowState(PortletUtils.getWindowState("maximized"));
-                    result.setExternalUrl(portalUrlBuilder.getUrlString());
-                    results.getSearchResult().add(result);
-                }
-
+            final SearchResult result = new SearchResult();
+            result.setTitle(portlet.getTitle());
+            result.setSummary(portlet.getDescription());
+            result.getType().add(searchResultType);
+
+            final IPortletWindow portletWindow = this.portletWindowRegistry.getOrCreateDefaultPortletWindowByFname(httpServletRequest, portlet.getFName());
+            // portletWindow is null if user does not have access to portlet.
+            // If user does not have browse permission, exclude the portlet.
+            if (portletWindow != null && authorizationService.canPrincipalBrowse(principal, portlet)) {
+                final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
+                final IPortalUrlBuilder portalUrlBuilder = this.portalUrlProvider.getPortalUrlBuilderByPortletFName(httpServletRequest, portlet.getFName(), UrlType.RENDER);
+                final IPortletUrlBuilder portletUrlBuilder = portalUrlBuilder.getPortletUrlBuilder(portletWindowId);
+                portletUrlBuilder.setWindowState(PortletUtils.getWindowState("maximized"));
+                result.setExternalUrl(portalUrlBuilder.getUrlString());
+                results.getSearchResult().add(result);
             }
         }
 
         return results;
     }
 
-    /**
-     * Performs a case-insensitive comparison of the user's query against 
-     * several important fields from the {@link IPortletDefinition}.
-     * 
-     * @param query The user's search terms, which seem to be forced lower-case
-     * @param portlet
-     * @return
-     */
-    protected boolean matches(final String query, final IPortletDefinition portlet) {
-        /*
-         * The query parameter is coming in lower case always (even when upper
-         * or mixed case is entered by the user).  We really want a case-
-         * insensitive comparison here anyway;  for safety, we will make certain
-         * it is insensitive.
-         */
-        final String lcQuery = query.toLowerCase();
-        final boolean titleMatch = portlet.getTitle().toLowerCase().contains(lcQuery);
-        final boolean nameMatch = portlet.getName().toLowerCase().contains(lcQuery);
-        final boolean descMatch = portlet.getDescription() != null && portlet.getDescription().toLowerCase().contains(lcQuery);
-        final boolean fnameMatch = portlet.getFName().toLowerCase().contains(lcQuery);
-        return titleMatch || nameMatch || descMatch || fnameMatch;
-    }
-
 }
@@ -18,6 +18,7 @@
  */
 package org.jasig.portal.portlets.statistics;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -41,6 +42,7 @@ import com.google.visualization.datasource.datatable.TableCell;
 import com.google.visualization.datasource.datatable.TableRow;
 import com.google.visualization.datasource.datatable.value.DateTimeValue;
 import com.google.visualization.datasource.datatable.value.DateValue;
+import com.google.visualization.datasource.datatable.value.NumberValue;
 import com.google.visualization.datasource.datatable.value.TimeOfDayValue;
 import com.google.visualization.datasource.datatable.value.Value;
 import com.google.visualization.datasource.datatable.value.ValueType;
@@ -52,6 +54,7 @@ import org.jasig.portal.events.aggr.BaseAggregationDao;
 import org.jasig.portal.events.aggr.BaseAggregationDateTimeComparator;
 import org.jasig.portal.events.aggr.BaseAggregationKey;
 import org.jasig.portal.events.aggr.BaseGroupedAggregationDiscriminator;
+import org.jasig.portal.events.aggr.TimedAggregationPercentiles;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupLookupDao;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMapping;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMappingNameComparator;
@@ -394,6 +397,46 @@ public abstract class BaseStatisticsReportController<
         return showFullHeaderDescriptions;
     }
 
+    /**
+     * Percentiles reported by {@link #addPercentileColumns(List)} and {@link #addPercentileValues(List, TimedAggregationPercentiles)}
+     */
+    private static final double[] REPORTED_PERCENTILES = { 50, 90, 99 };
+    private static final double NANOS_PER_MILLI = 1000000;
+
+    /**
+     * Adds a p50, p90 and p99 execution time column for each of the column descriptions, for use by reports on
+     * timed aggregations. The values must be added by {@link #addPercentileValues(List, TimedAggregationPercentiles)}
+     */
+    protected final List<ColumnDescription> addPercentileColumns(List<ColumnDescription> columnDescriptions) {
+        final List<ColumnDescription> result = new ArrayList<ColumnDescription>(columnDescriptions.size() * (REPORTED_PERCENTILES.length + 1));
+        for (final ColumnDescription columnDescription : columnDescriptions) {
+            result.add(columnDescription);
+            for (final double percentile : REPORTED_PERCENTILES) {
+                final String suffix = "p" + (int) percentile;
+                result.add(new ColumnDescription(columnDescription.getId() + "-" + suffix, ValueType.NUMBER,
+                        columnDescription.getLabel() + " - " + suffix + " (ms)"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the p50, p90 and p99 execution times in milliseconds after the values, matching the columns added
+     * by {@link #addPercentileColumns(List)}. Missing aggregations or aggregations with no recorded times
+     * produce null values.
+     */
+    protected final List<Value> addPercentileValues(List<Value> values, TimedAggregationPercentiles aggr) {
+        final List<Value> result = new ArrayList<Value>(values.size() * (REPORTED_PERCENTILES.length + 1));
+        for (final Value value : values) {
+            result.add(value);
+            for (final double percentile : REPORTED_PERCENTILES) {
+                final double nanos = aggr != null ? aggr.getPercentile(percentile) : Double.NaN;
+                result.add(Double.isNaN(nanos) ? NumberValue.getNullValue() : new NumberValue(nanos / NANOS_PER_MILLI));
+            }
+        }
+        return result;
+    }
+
     /**
      * Build the aggregation {@link DataTable}
      */
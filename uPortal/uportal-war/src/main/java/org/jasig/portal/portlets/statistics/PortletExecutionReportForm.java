@@ -26,6 +26,7 @@ public class PortletExecutionReportForm extends BaseReportForm {
 
     private Set<String> portlets = new HashSet<String>();
     private Set<String> executionTypeNames = new HashSet<String>();
+    private boolean percentiles = false;
 
     public final Set<String> getPortlets() {
         return portlets;
@@ -43,4 +44,14 @@ public class PortletExecutionReportForm extends BaseReportForm {
         this.executionTypeNames = executionTypeNames;
     }
 
+    /**
+     * @return true if the p50, p90 and p99 execution times should be reported along with the counts
+     */
+    public boolean isPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(boolean percentiles) {
+        this.percentiles = percentiles;
+    }
 }
@@ -280,13 +280,22 @@ public class PortletExecutionStatisticsController
                 new TitleAndCount(groupName, groupSize)
         };
 
-        return titleAndColumnDescriptionStrategy.getColumnDescriptions(items, showFullColumnHeaderDescriptions(form), form);
+        final List<ColumnDescription> columnDescriptions =
+                titleAndColumnDescriptionStrategy.getColumnDescriptions(items, showFullColumnHeaderDescriptions(form), form);
+        if (form.isPercentiles()) {
+            return addPercentileColumns(columnDescriptions);
+        }
+        return columnDescriptions;
     }
 
     @Override
     protected List<Value> createRowValues(PortletExecutionAggregation aggr, PortletExecutionReportForm form) {
         int count = aggr != null ? aggr.getExecutionCount() : 0;
-        return Collections.<Value>singletonList(new NumberValue(count));
+        final List<Value> values = Collections.<Value>singletonList(new NumberValue(count));
+        if (form.isPercentiles()) {
+            return addPercentileValues(values, aggr);
+        }
+        return values;
     }
 
 }
@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces writes, flushing the response once the configured number of characters has been buffered, once
+ * the configured delay since the last flush has passed and/or right before the rendering thread blocks waiting
+ * on a portlet. Setting the buffer threshold to 0 and disabling the flush delay results in the response only
+ * being flushed before blocking and when rendering is complete.
+ */
+public class CoalescingFlushStrategy implements IResponseFlushStrategy {
+    private long bufferThreshold = 8192;
+    private long maxFlushDelay = 0;
+    private boolean flushBeforeBlocking = true;
+    
+    /**
+     * @param bufferThreshold Number of buffered characters that triggers a flush, 0 or less to disable, defaults to 8192
+     */
+    public void setBufferThreshold(long bufferThreshold) {
+        this.bufferThreshold = bufferThreshold;
+    }
+
+    /**
+     * @param maxFlushDelay Milliseconds since the last flush after which the next write triggers a flush, 0 or less to disable, defaults to 0
+     */
+    public void setMaxFlushDelay(long maxFlushDelay) {
+        this.maxFlushDelay = TimeUnit.MILLISECONDS.toNanos(maxFlushDelay);
+    }
+
+    /**
+     * @param flushBeforeBlocking If buffered content is flushed before waiting on an unfinished portlet, defaults to true
+     */
+    public void setFlushBeforeBlocking(boolean flushBeforeBlocking) {
+        this.flushBeforeBlocking = flushBeforeBlocking;
+    }
+
+    @Override
+    public boolean isFlushRequired(long bufferedCharacters, long lastFlushTime) {
+        if (this.bufferThreshold > 0 && bufferedCharacters >= this.bufferThreshold) {
+            return true;
+        }
+        
+        return this.maxFlushDelay > 0 && System.nanoTime() - lastFlushTime >= this.maxFlushDelay;
+    }
+
+    @Override
+    public boolean isFlushBeforeBlocking() {
+        return this.flushBeforeBlocking;
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingFlushStrategy [bufferThreshold=" + this.bufferThreshold + 
+                ", maxFlushDelay=" + TimeUnit.NANOSECONDS.toMillis(this.maxFlushDelay) + 
+                "ms, flushBeforeBlocking=" + this.flushBeforeBlocking + "]";
+    }
+}
@@ -19,7 +19,7 @@
 package org.jasig.portal.rendering;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -36,14 +36,18 @@ import org.jasig.portal.url.IUrlSyntaxProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedResource;
 
 /**
- * Top level class that initiates rendering via a {@link CharacterPipelineComponent}
+ * Top level class that initiates rendering via a {@link CharacterPipelineComponent}. Rendered content is
+ * written through a {@link ResponseFlusher}, the configured {@link IResponseFlushStrategy} controls how
+ * often the response is flushed to the client.
  * 
  * @author Eric Dalquist
  * @version $Revision$
  */
-public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
+@ManagedResource("uPortal:section=Framework,name=DynamicRenderingPipeline")
+public class DynamicRenderingPipeline implements IPortalRenderingPipeline, DynamicRenderingPipelineMXBean {
     public static final String CHARACTER_SET = "UTF-8";
     public static final String DEFAULT_MEDIA_TYPE = "text/html";
     
@@ -52,6 +56,11 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
     private CharacterPipelineComponent pipeline;
     private IPortletExecutionEventFactory portalEventFactory;
     private IUrlSyntaxProvider urlSyntaxProvider;
+    private IResponseFlushStrategy flushStrategy = new ImmediateFlushStrategy();
+    
+    private final AtomicLong renderCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedCharacters = new AtomicLong();
     
 
     @Autowired
@@ -72,6 +81,13 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         this.pipeline = pipeline;
     }
 
+    /**
+     * Strategy that determines when the response is flushed, defaults to {@link ImmediateFlushStrategy}
+     */
+    public void setFlushStrategy(IResponseFlushStrategy flushStrategy) {
+        this.flushStrategy = flushStrategy;
+    }
+
     @Override
     public void renderState(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
         //Disable page caching
@@ -88,19 +104,29 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         final String contentType = mediaType + "; charset=" + CHARACTER_SET;
         res.setContentType(contentType);
         
-        final PrintWriter writer = res.getWriter();
-        
-        for (final CharacterEvent event : pipelineEventReader) {
-            if (CharacterEventTypes.CHARACTER != event.getEventType()) {
-                throw new RenderingPipelineConfigurationException("Only " + CharacterEventTypes.CHARACTER + " events are supported in the top level renderer. " + event.getEventType() + " is not supported.");
+        final ResponseFlusher responseFlusher = new ResponseFlusher(req, res, this.flushStrategy);
+        try {
+            for (final CharacterEvent event : pipelineEventReader) {
+                if (CharacterEventTypes.CHARACTER != event.getEventType()) {
+                    throw new RenderingPipelineConfigurationException("Only " + CharacterEventTypes.CHARACTER + " events are supported in the top level renderer. " + event.getEventType() + " is not supported.");
+                }
+                
+                final String data = ((CharacterDataEvent)event).getData();
+                responseFlusher.write(data);
             }
             
-            final String data = ((CharacterDataEvent)event).getData();
-            writer.print(data);
-            writer.flush();
-            res.flushBuffer();
+            responseFlusher.flush();
+        }
+        finally {
+            responseFlusher.close();
         }
         
+        this.renderCount.incrementAndGet();
+        this.flushCount.addAndGet(responseFlusher.getFlushCount());
+        this.flushedCharacters.addAndGet(responseFlusher.getFlushedCharacters());
+        this.logger.debug("Rendered {} characters in {} flushes, {} characters per flush", 
+                responseFlusher.getFlushedCharacters(), responseFlusher.getFlushCount(), responseFlusher.getCharactersPerFlush());
+        
         final long executionTime = System.nanoTime() - startTime;
         final IPortalRequestInfo portalRequestInfo = this.urlSyntaxProvider.getPortalRequestInfo(req);
         this.portalEventFactory.publishPortalRenderEvent(req, this, req.getPathInfo(), executionTime, portalRequestInfo);
@@ -119,6 +145,44 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         return DEFAULT_MEDIA_TYPE;
     }
 
+    @Override
+    public String getFlushStrategyDescription() {
+        return String.valueOf(this.flushStrategy);
+    }
+
+    @Override
+    public long getRenderCount() {
+        return this.renderCount.get();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return this.flushCount.get();
+    }
+
+    @Override
+    public long getFlushedCharacters() {
+        return this.flushedCharacters.get();
+    }
+
+    @Override
+    public double getAverageFlushesPerRender() {
+        final long renders = this.renderCount.get();
+        if (renders == 0) {
+            return 0;
+        }
+        return (double) this.flushCount.get() / renders;
+    }
+
+    @Override
+    public long getAverageCharactersPerFlush() {
+        final long flushes = this.flushCount.get();
+        if (flushes == 0) {
+            return 0;
+        }
+        return this.flushedCharacters.get() / flushes;
+    }
+
     @Override
     public String toString() {
         return "DynamicRenderingPipeline using url syntax provider [" + this.urlSyntaxProvider +
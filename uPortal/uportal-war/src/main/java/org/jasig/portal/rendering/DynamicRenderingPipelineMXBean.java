@@ -0,0 +1,55 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+/**
+ * Response flushing statistics for the {@link DynamicRenderingPipeline}
+ */
+public interface DynamicRenderingPipelineMXBean {
+    
+    /**
+     * @return Description of the configured flush strategy
+     */
+    String getFlushStrategyDescription();
+    
+    /**
+     * @return Number of renders completed since startup
+     */
+    long getRenderCount();
+    
+    /**
+     * @return Number of response flushes since startup
+     */
+    long getFlushCount();
+    
+    /**
+     * @return Number of characters written to responses since startup
+     */
+    long getFlushedCharacters();
+    
+    /**
+     * @return Average number of flushes per render
+     */
+    double getAverageFlushesPerRender();
+    
+    /**
+     * @return Average number of characters written per flush
+     */
+    long getAverageCharactersPerFlush();
+}
@@ -0,0 +1,40 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+/**
+ * Decides when the {@link DynamicRenderingPipeline} flushes rendered content to the client. Flushing after
+ * every event gets content to the browser as early as possible but results in many small writes to the
+ * socket, implementations trade off between the two.
+ */
+public interface IResponseFlushStrategy {
+    /**
+     * Called after content has been written to the response
+     * 
+     * @param bufferedCharacters Number of characters written since the last flush
+     * @param lastFlushTime {@link System#nanoTime()} of the last flush, or of the start of rendering if there has been no flush
+     * @return true if the response should be flushed now
+     */
+    boolean isFlushRequired(long bufferedCharacters, long lastFlushTime);
+    
+    /**
+     * @return true if buffered content should be flushed before the rendering thread blocks waiting on a portlet that has not finished rendering
+     */
+    boolean isFlushBeforeBlocking();
+}
@@ -18,6 +18,7 @@
  */
 package org.jasig.portal.rendering;
 
+import java.io.IOException;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -38,7 +39,9 @@ import org.jasig.portal.utils.cache.CacheKey;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
- * Inserts the results of portlet's rendering into the character stream
+ * Inserts the results of portlet's rendering into the character stream. Before waiting on a portlet
+ * that has not finished rendering the content written so far is flushed to the client via
+ * {@link ResponseFlusher#flushBeforeBlocking(HttpServletRequest)}.
  * 
  * @author Eric Dalquist
  * @version $Revision$
@@ -101,6 +104,7 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                 case PORTLET_CONTENT: {
                     final PortletContentPlaceholderEvent contentPlaceholderEvent = (PortletContentPlaceholderEvent)event;
                     final IPortletWindowId portletWindowId = contentPlaceholderEvent.getPortletWindowId();
+                    this.flushBeforeBlocking(portletWindowId);
                     
                     final String output = portletExecutionManager.getPortletOutput(portletWindowId, this.request, this.response);
                     
@@ -109,6 +113,7 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                 case PORTLET_TITLE: {
                     final PortletTitlePlaceholderEvent titlePlaceholderEvent = (PortletTitlePlaceholderEvent)event;
                     final IPortletWindowId portletWindowId = titlePlaceholderEvent.getPortletWindowId();
+                    this.flushBeforeBlocking(portletWindowId);
                     
                     final String title = portletExecutionManager.getPortletTitle(portletWindowId, this.request, this.response);
                     
@@ -117,6 +122,7 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                 case PORTLET_NEW_ITEM_COUNT: {
                     final PortletNewItemCountPlaceholderEvent newItemCountPlaceholderEvent = (PortletNewItemCountPlaceholderEvent)event;
                     final IPortletWindowId portletWindowId = newItemCountPlaceholderEvent.getPortletWindowId();
+                    this.flushBeforeBlocking(portletWindowId);
                     
                     final int newItemCount = portletExecutionManager.getPortletNewItemCount(portletWindowId, this.request, this.response);
                     
@@ -136,5 +142,22 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                 }
             }
         }
+        
+        /**
+         * Flush content written so far if the portlet is still rendering and the following get call will block
+         */
+        private void flushBeforeBlocking(IPortletWindowId portletWindowId) {
+            if (portletExecutionManager.isPortletRenderComplete(portletWindowId, this.request, this.response)) {
+                return;
+            }
+            
+            try {
+                ResponseFlusher.flushBeforeBlocking(this.request);
+            }
+            catch (IOException e) {
+                //The same failure will be seen by the renderer on the next write
+                logger.debug("Failed to flush response before waiting on " + portletWindowId, e);
+            }
+        }
     }
 }
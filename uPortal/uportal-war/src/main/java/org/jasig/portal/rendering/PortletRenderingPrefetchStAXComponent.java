@@ -0,0 +1,224 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.XMLEvent;
+
+import org.jasig.portal.layout.IStylesheetUserPreferencesService;
+import org.jasig.portal.layout.IStylesheetUserPreferencesService.PreferencesScope;
+import org.jasig.portal.layout.IUserLayoutManager;
+import org.jasig.portal.layout.node.IUserLayoutFolderDescription;
+import org.jasig.portal.layout.node.IUserLayoutNodeDescription;
+import org.jasig.portal.layout.node.IUserLayoutNodeDescription.LayoutNodeType;
+import org.jasig.portal.portlet.om.IPortletWindow;
+import org.jasig.portal.portlet.om.IPortletWindowId;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
+import org.jasig.portal.url.IPortalRequestInfo;
+import org.jasig.portal.url.IUrlNodeSyntaxHelperRegistry;
+import org.jasig.portal.url.IUrlSyntaxProvider;
+import org.jasig.portal.url.UrlState;
+import org.jasig.portal.user.IUserInstanceManager;
+import org.jasig.portal.utils.cache.CacheKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Starts rendering every portlet visible on the page as soon as the layout and focused tab are known, before
+ * the structure transform is read. The portlets in the regions and in the focused tab are handed to
+ * {@link IPortletExecutionManager#prefetchPortletRenders(java.util.Collection, HttpServletRequest, HttpServletResponse)}
+ * so they all execute in parallel instead of being started one at a time as the
+ * {@link PortletRenderingInitiationStAXComponent} reaches them in the event stream.
+ * <p>
+ * Only {@link UrlState#NORMAL} requests are prefetched, other states render a single portlet which is already
+ * started early by the portal controller.
+ * <p>
+ * The set of visible portlets is a copy of the NORMAL mode rules in layout/structure/columns/columns.xsl,
+ * see {@link #getFocusedTabId(HttpServletRequest, IUserLayoutManager)} and {@link #isRegion(IUserLayoutFolderDescription)}.
+ * Changes to which portlets that stylesheet displays must be made here as well. Structures that display
+ * more portlets, such as mobile-column.xsl, still work as portlets missed here are started by the
+ * initiation component when they are reached.
+ */
+public class PortletRenderingPrefetchStAXComponent extends StAXPipelineComponentWrapper {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private String focusedTabParameter = "focusedTabID";
+    private boolean enabled = false;
+
+    private IPortletExecutionManager portletExecutionManager;
+    private IPortletWindowRegistry portletWindowRegistry;
+    private IUserInstanceManager userInstanceManager;
+    private IUrlSyntaxProvider urlSyntaxProvider;
+    private IUrlNodeSyntaxHelperRegistry urlNodeSyntaxHelperRegistry;
+    private IStylesheetUserPreferencesService stylesheetUserPreferencesService;
+
+    @Value("${org.jasig.portal.rendering.PortletRenderingPrefetchStAXComponent.enabled:false}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setFocusedTabParameter(String focusedTabParameter) {
+        this.focusedTabParameter = focusedTabParameter;
+    }
+
+    @Autowired
+    public void setPortletExecutionManager(IPortletExecutionManager portletExecutionManager) {
+        this.portletExecutionManager = portletExecutionManager;
+    }
+
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    @Autowired
+    public void setUserInstanceManager(IUserInstanceManager userInstanceManager) {
+        this.userInstanceManager = userInstanceManager;
+    }
+
+    @Autowired
+    public void setUrlSyntaxProvider(IUrlSyntaxProvider urlSyntaxProvider) {
+        this.urlSyntaxProvider = urlSyntaxProvider;
+    }
+
+    @Autowired
+    public void setUrlNodeSyntaxHelperRegistry(IUrlNodeSyntaxHelperRegistry urlNodeSyntaxHelperRegistry) {
+        this.urlNodeSyntaxHelperRegistry = urlNodeSyntaxHelperRegistry;
+    }
+
+    @Autowired
+    public void setStylesheetUserPreferencesService(IStylesheetUserPreferencesService stylesheetUserPreferencesService) {
+        this.stylesheetUserPreferencesService = stylesheetUserPreferencesService;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.rendering.PipelineComponent#getCacheKey(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+        //Starting portlet rendering does not change the stream
+        return this.wrappedComponent.getCacheKey(request, response);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.rendering.PipelineComponent#getEventReader(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public PipelineEventReader<XMLEventReader, XMLEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
+        if (this.enabled) {
+            final IPortalRequestInfo portalRequestInfo = this.urlSyntaxProvider.getPortalRequestInfo(request);
+            if (portalRequestInfo.getUrlState() == UrlState.NORMAL) {
+                try {
+                    this.prefetchVisiblePortlets(request, response);
+                }
+                catch (RuntimeException e) {
+                    //Prefetching is only an optimization, the initiation component will start anything missed here
+                    this.logger.warn("Failed to prefetch portlet renders, portlets will be started as they are encountered", e);
+                }
+            }
+        }
+
+        return this.wrappedComponent.getEventReader(request, response);
+    }
+
+    protected void prefetchVisiblePortlets(HttpServletRequest request, HttpServletResponse response) {
+        final IUserLayoutManager userLayoutManager = this.userInstanceManager.getUserInstance(request).getPreferencesManager().getUserLayoutManager();
+        final String focusedTabId = this.getFocusedTabId(request, userLayoutManager);
+
+        //Same visibility rules as columns.xsl: every portlet in a region and every portlet in the focused tab
+        final Set<String> portletNodeIds = new LinkedHashSet<String>();
+        for (final Enumeration<String> childIds = userLayoutManager.getChildIds(userLayoutManager.getRootFolderId()); childIds.hasMoreElements();) {
+            final String childId = childIds.nextElement();
+            final IUserLayoutNodeDescription node = userLayoutManager.getNode(childId);
+            if (node.getType() != LayoutNodeType.FOLDER) {
+                continue;
+            }
+
+            if (childId.equals(focusedTabId) || isRegion((IUserLayoutFolderDescription) node)) {
+                this.collectPortletNodeIds(userLayoutManager, childId, portletNodeIds);
+            }
+        }
+
+        final Set<IPortletWindowId> portletWindowIds = new LinkedHashSet<IPortletWindowId>(portletNodeIds.size());
+        for (final String portletNodeId : portletNodeIds) {
+            final IPortletWindow portletWindow = this.portletWindowRegistry.getOrCreateDefaultPortletWindowByLayoutNodeId(request, portletNodeId);
+            if (portletWindow != null) {
+                portletWindowIds.add(portletWindow.getPortletWindowId());
+            }
+        }
+
+        this.logger.debug("Prefetching {} portlets for focused tab {}", portletWindowIds.size(), focusedTabId);
+        this.portletExecutionManager.prefetchPortletRenders(portletWindowIds, request, response);
+    }
+
+    /**
+     * @return The ID of the focused tab, falling back to the default tab if the focused tab is not a visible tab.
+     *      Must match the focusedFolderId, activeTabIdx and activeTabID variables in columns.xsl
+     */
+    protected String getFocusedTabId(HttpServletRequest request, IUserLayoutManager userLayoutManager) {
+        final String focusedTabId = this.stylesheetUserPreferencesService.getStylesheetParameter(request, PreferencesScope.STRUCTURE, this.focusedTabParameter);
+        if (focusedTabId != null) {
+            final IUserLayoutNodeDescription node = userLayoutManager.getNode(focusedTabId);
+            if (node != null && node.getType() == LayoutNodeType.FOLDER) {
+                //A focused favorite collection replaces the tab, a regular tab must not be hidden
+                final String folderType = ((IUserLayoutFolderDescription) node).getFolderType();
+                if (IUserLayoutFolderDescription.FAVORITE_COLLECTION_TYPE.equals(folderType)
+                        || (IUserLayoutFolderDescription.REGULAR_TYPE.equals(folderType) && !node.isHidden())) {
+                    return focusedTabId;
+                }
+            }
+        }
+
+        return this.urlNodeSyntaxHelperRegistry.getCurrentUrlNodeSyntaxHelper(request).getDefaultLayoutNodeId(request);
+    }
+
+    /**
+     * Top level folders that are not tabs, sidebars or favorites are regions that are rendered on every page.
+     * Must match the region channel-header selection of the NORMAL mode root folder template in columns.xsl
+     */
+    protected boolean isRegion(IUserLayoutFolderDescription folder) {
+        final String folderType = folder.getFolderType();
+        return !IUserLayoutFolderDescription.REGULAR_TYPE.equals(folderType)
+                && !IUserLayoutFolderDescription.SIDEBAR_TYPE.equals(folderType)
+                && !IUserLayoutFolderDescription.FAVORITES_TYPE.equals(folderType)
+                && !IUserLayoutFolderDescription.FAVORITE_COLLECTION_TYPE.equals(folderType);
+    }
+
+    private void collectPortletNodeIds(IUserLayoutManager userLayoutManager, String folderId, Set<String> portletNodeIds) {
+        for (final Enumeration<String> childIds = userLayoutManager.getChildIds(folderId); childIds.hasMoreElements();) {
+            final String childId = childIds.nextElement();
+            final IUserLayoutNodeDescription node = userLayoutManager.getNode(childId);
+            if (node.getType() == LayoutNodeType.PORTLET) {
+                portletNodeIds.add(childId);
+            }
+            else if (node.getType() == LayoutNodeType.FOLDER) {
+                this.collectPortletNodeIds(userLayoutManager, childId, portletNodeIds);
+            }
+        }
+    }
+}
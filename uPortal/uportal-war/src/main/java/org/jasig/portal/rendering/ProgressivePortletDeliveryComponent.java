@@ -0,0 +1,359 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.CharacterEventReaderDelegate;
+import org.jasig.portal.character.stream.events.CharacterDataEvent;
+import org.jasig.portal.character.stream.events.CharacterDataEventImpl;
+import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.PortletContentPlaceholderEvent;
+import org.jasig.portal.character.stream.events.PortletNewItemCountPlaceholderEvent;
+import org.jasig.portal.character.stream.events.PortletTitlePlaceholderEvent;
+import org.jasig.portal.portlet.om.IPortletDefinition;
+import org.jasig.portal.portlet.om.IPortletWindow;
+import org.jasig.portal.portlet.om.IPortletWindowId;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
+import org.jasig.portal.url.IUrlSyntaxProvider;
+import org.jasig.portal.url.UrlState;
+import org.jasig.portal.utils.cache.CacheKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Delivers slow portlets out of order so the rest of the page does not wait on them. When a
+ * {@link PortletContentPlaceholderEvent} is reached for a portlet that has not finished rendering an empty
+ * placeholder element is written instead and the page continues to stream. Right before the closing body
+ * tag, or at the end of the stream if there is none, each deferred portlet's markup is written as it completes
+ * in a hidden element followed by a small script that moves it into the placeholder.
+ * <p>
+ * Title and new item count placeholders for portlets that have not finished rendering use the title from the
+ * portlet definition and 0 instead of waiting on the portlet. Markup of a deferred portlet is parsed at the end
+ * of the page, scripts in it run before it is moved into the placeholder.
+ * <p>
+ * Must wrap the {@link PortletRenderingInitiationCharacterComponent} and be wrapped by the
+ * {@link PortletRenderingIncorporationComponent} which incorporates the portlets that are not deferred.
+ * Only applies to {@link UrlState#NORMAL} requests.
+ */
+public class ProgressivePortletDeliveryComponent extends CharacterPipelineComponentWrapper {
+    private static final String BODY_END = "</body>";
+    private static final String PLACEHOLDER_ID_PREFIX = "up-deferred-portlet-";
+    
+    private IPortletExecutionManager portletExecutionManager;
+    private IPortletWindowRegistry portletWindowRegistry;
+    private IUrlSyntaxProvider urlSyntaxProvider;
+    private boolean enabled = false;
+    private long pollInterval = 25;
+    private long maxPollTime = 10000;
+
+    @Autowired
+    public void setPortletExecutionManager(IPortletExecutionManager portletExecutionManager) {
+        this.portletExecutionManager = portletExecutionManager;
+    }
+
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    @Autowired
+    public void setUrlSyntaxProvider(IUrlSyntaxProvider urlSyntaxProvider) {
+        this.urlSyntaxProvider = urlSyntaxProvider;
+    }
+
+    @Value("${org.jasig.portal.rendering.ProgressivePortletDeliveryComponent.enabled:false}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param pollInterval Milliseconds to wait between checks for completed deferred portlets, defaults to 25
+     */
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * @param maxPollTime Milliseconds, from the start of deferred delivery, to deliver deferred portlets as they
+     *      complete. The remaining deferred portlets are then waited on in page order, which applies each portlet's
+     *      own timeout. Defaults to 10000
+     */
+    @Value("${org.jasig.portal.rendering.ProgressivePortletDeliveryComponent.maxPollTime:10000}")
+    public void setMaxPollTime(long maxPollTime) {
+        this.maxPollTime = maxPollTime;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.rendering.PipelineComponent#getCacheKey(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+        return this.wrappedComponent.getCacheKey(request, response);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.rendering.PipelineComponent#getEventReader(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public PipelineEventReader<CharacterEventReader, CharacterEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader = this.wrappedComponent.getEventReader(request, response);
+        if (!this.enabled || this.urlSyntaxProvider.getPortalRequestInfo(request).getUrlState() != UrlState.NORMAL) {
+            return pipelineEventReader;
+        }
+        
+        final CharacterEventReader eventReader = pipelineEventReader.getEventReader();
+        final ProgressiveDeliveryEventReader progressiveDeliveryEventReader = new ProgressiveDeliveryEventReader(eventReader, request, response);
+        
+        final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
+        return new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(progressiveDeliveryEventReader, outputProperties);
+    }
+    
+    private class ProgressiveDeliveryEventReader extends CharacterEventReaderDelegate {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final Deque<CharacterEvent> pendingEvents = new LinkedList<CharacterEvent>();
+        private final Map<String, IPortletWindowId> deferredPortlets = new LinkedHashMap<String, IPortletWindowId>();
+        private int placeholderCount = 0;
+        private boolean bodyClosed = false;
+        private boolean deliveringDeferred = false;
+        private long pollDeadline;
+        private CharacterEvent resumeEvent;
+        
+        public ProgressiveDeliveryEventReader(CharacterEventReader delegate, HttpServletRequest request, HttpServletResponse response) {
+            super(delegate);
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.pendingEvents.isEmpty() || this.fill();
+        }
+
+        @Override
+        public CharacterEvent next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.pendingEvents.removeFirst();
+        }
+
+        @Override
+        public CharacterEvent peek() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.pendingEvents.getFirst();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Fill the pending events from the delegate or the deferred portlets
+         * 
+         * @return false if there are no more events
+         */
+        private boolean fill() {
+            while (this.pendingEvents.isEmpty()) {
+                if (this.deliveringDeferred) {
+                    if (!this.deferredPortlets.isEmpty()) {
+                        this.pendingEvents.add(this.nextCompletedPortlet());
+                    }
+                    else {
+                        this.deliveringDeferred = false;
+                        if (this.resumeEvent != null) {
+                            this.pendingEvents.add(this.resumeEvent);
+                            this.resumeEvent = null;
+                        }
+                    }
+                }
+                else if (super.hasNext()) {
+                    this.filterEvent(super.next());
+                }
+                else if (!this.deferredPortlets.isEmpty()) {
+                    //No closing body tag, deliver at the end of the stream
+                    this.bodyClosed = true;
+                    this.startDeferredDelivery();
+                }
+                else {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
+        
+        private void filterEvent(CharacterEvent event) {
+            switch (event.getEventType()) {
+                case CHARACTER: {
+                    final String data = ((CharacterDataEvent) event).getData();
+                    final int bodyEnd = this.bodyClosed ? -1 : data.indexOf(BODY_END);
+                    if (bodyEnd < 0) {
+                        break;
+                    }
+                    
+                    this.bodyClosed = true;
+                    if (this.deferredPortlets.isEmpty()) {
+                        break;
+                    }
+                    
+                    //Deliver the deferred portlets right before the closing body tag
+                    if (bodyEnd > 0) {
+                        this.pendingEvents.add(CharacterDataEventImpl.create(data.substring(0, bodyEnd)));
+                    }
+                    this.resumeEvent = CharacterDataEventImpl.create(data.substring(bodyEnd));
+                    this.startDeferredDelivery();
+                    return;
+                }
+                case PORTLET_CONTENT: {
+                    final IPortletWindowId portletWindowId = ((PortletContentPlaceholderEvent) event).getPortletWindowId();
+                    if (this.isDeferrable(portletWindowId)) {
+                        final String placeholderId = PLACEHOLDER_ID_PREFIX + (++this.placeholderCount);
+                        this.deferredPortlets.put(placeholderId, portletWindowId);
+                        
+                        logger.debug("Deferring delivery of {} to {}", portletWindowId, placeholderId);
+                        this.pendingEvents.add(CharacterDataEventImpl.create("<div id=\"" + placeholderId + "\" class=\"up-portlet-deferred\"></div>"));
+                        return;
+                    }
+                    break;
+                }
+                case PORTLET_TITLE: {
+                    final IPortletWindowId portletWindowId = ((PortletTitlePlaceholderEvent) event).getPortletWindowId();
+                    if (this.isDeferrable(portletWindowId)) {
+                        this.pendingEvents.add(CharacterDataEventImpl.create(this.getDefinitionTitle(portletWindowId)));
+                        return;
+                    }
+                    break;
+                }
+                case PORTLET_NEW_ITEM_COUNT: {
+                    final IPortletWindowId portletWindowId = ((PortletNewItemCountPlaceholderEvent) event).getPortletWindowId();
+                    if (this.isDeferrable(portletWindowId)) {
+                        this.pendingEvents.add(CharacterDataEventImpl.create("0"));
+                        return;
+                    }
+                    break;
+                }
+                default: {
+                    break;
+                }
+            }
+            
+            this.pendingEvents.add(event);
+        }
+        
+        /**
+         * @return true if the portlet is still rendering and there is still a body to deliver it in
+         */
+        private boolean isDeferrable(IPortletWindowId portletWindowId) {
+            return !this.bodyClosed && !portletExecutionManager.isPortletRenderComplete(portletWindowId, this.request, this.response);
+        }
+        
+        private String getDefinitionTitle(IPortletWindowId portletWindowId) {
+            final IPortletWindow portletWindow = portletWindowRegistry.getPortletWindow(this.request, portletWindowId);
+            final IPortletDefinition portletDefinition = portletWindow.getPortletEntity().getPortletDefinition();
+            return portletDefinition.getTitle(this.response.getLocale().toString());
+        }
+        
+        /**
+         * The max poll time is shared by all deferred portlets, portlets that never report complete would otherwise
+         * each add the max poll time to the response
+         */
+        private void startDeferredDelivery() {
+            this.deliveringDeferred = true;
+            this.pollDeadline = System.currentTimeMillis() + maxPollTime;
+        }
+        
+        /**
+         * Waits for the first deferred portlet to complete and returns its markup with the injection script. If no
+         * deferred portlet completes before the poll deadline the first deferred portlet in page order is used.
+         */
+        private CharacterEvent nextCompletedPortlet() {
+            while (true) {
+                for (final Iterator<Map.Entry<String, IPortletWindowId>> deferredItr = this.deferredPortlets.entrySet().iterator(); deferredItr.hasNext();) {
+                    final Map.Entry<String, IPortletWindowId> deferredEntry = deferredItr.next();
+                    if (portletExecutionManager.isPortletRenderComplete(deferredEntry.getValue(), this.request, this.response)) {
+                        deferredItr.remove();
+                        return this.createDeferredContent(deferredEntry.getKey(), deferredEntry.getValue());
+                    }
+                }
+                
+                if (System.currentTimeMillis() >= this.pollDeadline) {
+                    break;
+                }
+                
+                this.flushBeforeBlocking();
+                try {
+                    Thread.sleep(pollInterval);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            
+            final Iterator<Map.Entry<String, IPortletWindowId>> deferredItr = this.deferredPortlets.entrySet().iterator();
+            final Map.Entry<String, IPortletWindowId> deferredEntry = deferredItr.next();
+            deferredItr.remove();
+            return this.createDeferredContent(deferredEntry.getKey(), deferredEntry.getValue());
+        }
+        
+        private CharacterEvent createDeferredContent(String placeholderId, IPortletWindowId portletWindowId) {
+            final String output = portletExecutionManager.getPortletOutput(portletWindowId, this.request, this.response);
+            
+            final String contentId = placeholderId + "-content";
+            final StringBuilder content = new StringBuilder(output.length() + 400);
+            content.append("<div id=\"").append(contentId).append("\" style=\"display:none\">");
+            content.append(output);
+            content.append("</div><script type=\"text/javascript\">(function(){");
+            content.append("var c=document.getElementById('").append(contentId).append("'),");
+            content.append("p=document.getElementById('").append(placeholderId).append("');");
+            content.append("if(c&&p){while(c.firstChild){p.parentNode.insertBefore(c.firstChild,p);}");
+            content.append("p.parentNode.removeChild(p);c.parentNode.removeChild(c);}");
+            content.append("})();</script>");
+            
+            logger.debug("Delivered deferred {} to {}", portletWindowId, placeholderId);
+            return CharacterDataEventImpl.create(content.toString());
+        }
+        
+        private void flushBeforeBlocking() {
+            try {
+                ResponseFlusher.flushBeforeBlocking(this.request);
+            }
+            catch (IOException e) {
+                //The same failure will be seen by the renderer on the next write
+                logger.debug("Failed to flush response before waiting on deferred portlets", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writes rendered content to the response for a single render, flushing as directed by a
+ * {@link IResponseFlushStrategy} and tracking the number of flushes and the characters written per flush.
+ * <p>
+ * The flusher for the current render is bound to the request so pipeline components that are about to
+ * block can call {@link #flushBeforeBlocking(HttpServletRequest)}. Not thread safe, it must only be used
+ * by the thread rendering the request.
+ */
+public class ResponseFlusher {
+    private static final String REQUEST_ATTRIBUTE = ResponseFlusher.class.getName();
+    
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final PrintWriter writer;
+    private final IResponseFlushStrategy flushStrategy;
+    
+    private long lastFlushTime = System.nanoTime();
+    private long bufferedCharacters = 0;
+    private long totalCharacters = 0;
+    private int flushCount = 0;
+
+    /**
+     * Create a flusher and bind it to the request, {@link #close()} MUST be called when rendering is complete
+     */
+    public ResponseFlusher(HttpServletRequest request, HttpServletResponse response, IResponseFlushStrategy flushStrategy) throws IOException {
+        this.request = request;
+        this.response = response;
+        this.writer = response.getWriter();
+        this.flushStrategy = flushStrategy;
+        
+        this.request.setAttribute(REQUEST_ATTRIBUTE, this);
+    }
+    
+    /**
+     * Flush the response bound to the request if there is one and its strategy flushes before blocking.
+     * Components call this right before waiting on content that is not yet available.
+     */
+    public static void flushBeforeBlocking(HttpServletRequest request) throws IOException {
+        final ResponseFlusher responseFlusher = (ResponseFlusher) request.getAttribute(REQUEST_ATTRIBUTE);
+        if (responseFlusher != null && responseFlusher.flushStrategy.isFlushBeforeBlocking()) {
+            responseFlusher.flush();
+        }
+    }
+    
+    /**
+     * Write the data and flush if the strategy requires it
+     */
+    public void write(String data) throws IOException {
+        this.writer.print(data);
+        this.bufferedCharacters += data.length();
+        
+        if (this.flushStrategy.isFlushRequired(this.bufferedCharacters, this.lastFlushTime)) {
+            this.flush();
+        }
+    }
+    
+    /**
+     * Flush any buffered content to the client, does nothing if nothing has been written since the last flush
+     */
+    public void flush() throws IOException {
+        if (this.bufferedCharacters == 0) {
+            return;
+        }
+        
+        this.writer.flush();
+        this.response.flushBuffer();
+        
+        this.totalCharacters += this.bufferedCharacters;
+        this.bufferedCharacters = 0;
+        this.flushCount++;
+        this.lastFlushTime = System.nanoTime();
+    }
+    
+    /**
+     * Unbind from the request, does not flush
+     */
+    public void close() {
+        this.request.removeAttribute(REQUEST_ATTRIBUTE);
+    }
+    
+    /**
+     * @return Number of times the response has been flushed
+     */
+    public int getFlushCount() {
+        return this.flushCount;
+    }
+    
+    /**
+     * @return Number of characters that have been flushed
+     */
+    public long getFlushedCharacters() {
+        return this.totalCharacters;
+    }
+    
+    /**
+     * @return Average number of characters written per flush
+     */
+    public long getCharactersPerFlush() {
+        if (this.flushCount == 0) {
+            return 0;
+        }
+        return this.totalCharacters / this.flushCount;
+    }
+}
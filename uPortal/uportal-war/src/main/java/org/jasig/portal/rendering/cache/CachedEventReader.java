@@ -19,26 +19,40 @@
 package org.jasig.portal.rendering.cache;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Holder class for an event cache and output properties
+ * Holder class for an event cache and output properties. The events are stored in a
+ * compact array rather than a linked structure to reduce per-event heap overhead and
+ * improve locality when the cached events are replayed.
  */
 class CachedEventReader<E> implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     
-    private final List<E> eventCache;
+    private final Object[] eventCache;
     private final Map<String, String> outputProperties;
 
     public CachedEventReader(List<E> eventCache, Map<String, String> outputProperties) {
-        this.eventCache = Collections.unmodifiableList(eventCache);
+        this.eventCache = eventCache.toArray();
         this.outputProperties = Collections.unmodifiableMap(outputProperties);
     }
 
+    /**
+     * @return Immutable, array backed view of the cached events
+     */
+    @SuppressWarnings("unchecked")
     public List<E> getEventCache() {
-        return this.eventCache;
+        return Collections.unmodifiableList((List<E>)(List<?>)Arrays.asList(this.eventCache));
+    }
+    
+    /**
+     * @return The number of cached events
+     */
+    public int size() {
+        return this.eventCache.length;
     }
 
     public Map<String, String> getOutputProperties() {
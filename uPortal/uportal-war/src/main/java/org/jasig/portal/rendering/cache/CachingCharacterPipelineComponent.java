@@ -18,11 +18,15 @@
  */
 package org.jasig.portal.rendering.cache;
 
+import java.util.List;
 import java.util.ListIterator;
 
 import org.jasig.portal.character.stream.CharacterEventBufferReader;
 import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.events.CharacterDataEvent;
+import org.jasig.portal.character.stream.events.CharacterDataEventImpl;
 import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.CharacterEventTypes;
 import org.jasig.portal.rendering.CharacterPipelineComponent;
 
 /**
@@ -33,6 +37,20 @@ import org.jasig.portal.rendering.CharacterPipelineComponent;
  */
 public class CachingCharacterPipelineComponent extends CachingPipelineComponent<CharacterEventReader, CharacterEvent> implements CharacterPipelineComponent {
     
+    @Override
+    protected boolean isCoalescable(CharacterEvent event) {
+        return event.getEventType() == CharacterEventTypes.CHARACTER;
+    }
+
+    @Override
+    protected CharacterEvent coalesce(List<CharacterEvent> events) {
+        final StringBuilder data = new StringBuilder();
+        for (final CharacterEvent event : events) {
+            data.append(((CharacterDataEvent)event).getData());
+        }
+        return CharacterDataEventImpl.create(data.toString());
+    }
+    
     @Override
     protected CharacterEventReader createEventReader(ListIterator<CharacterEvent> eventCache) {
         return new CharacterEventBufferReader(eventCache);
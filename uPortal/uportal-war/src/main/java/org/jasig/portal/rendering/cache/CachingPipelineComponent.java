@@ -18,12 +18,17 @@
  */
 package org.jasig.portal.rendering.cache;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -33,40 +38,95 @@ import net.sf.ehcache.Element;
 import org.jasig.portal.rendering.PipelineComponentWrapper;
 import org.jasig.portal.rendering.PipelineEventReader;
 import org.jasig.portal.rendering.PipelineEventReaderImpl;
+import org.jasig.portal.utils.ConcurrentMapUtils;
 import org.jasig.portal.utils.cache.CacheKey;
 import org.jasig.resourceserver.aggr.om.Included;
 import org.jasig.resourceserver.utils.aggr.ResourcesElementsProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.MBeanExportOperations;
 
 /**
  * Component that caches events from a wrapped component
+ * <p>
+ * If {@link #setSingleFlight(boolean)} is enabled only one thread at a time rebuilds the events for
+ * a given {@link CacheKey}, concurrent requests for the same key wait up to {@link #setMaxWaitTime(long)}
+ * for that rebuild to complete before falling back to calling the wrapped component themselves. If a
+ * {@link #setStaleCache(Ehcache)} is configured, waiting requests are served the previously built
+ * events for the key from it instead of waiting.
  * 
  * @author Eric Dalquist
  * @version $Revision$
  */
-public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWrapper<R, E> implements BeanNameAware {
+public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWrapper<R, E> implements BeanNameAware, InitializingBean {
     protected final Logger logger = LoggerFactory.getLogger(getClass());
     
+    private final ConcurrentMap<CacheKey, CountDownLatch> inFlight = new ConcurrentHashMap<CacheKey, CountDownLatch>();
+    private final CachingPipelineComponentStatistics statistics = new CachingPipelineComponentStatistics(this.inFlight);
+    
     private ResourcesElementsProvider resourcesElementsProvider;
+    private MBeanExportOperations mBeanExportOperations;
     private Ehcache cache;
+    private Ehcache staleCache;
+    private boolean singleFlight = false;
+    private long maxWaitTime = TimeUnit.SECONDS.toMillis(10);
     private String beanName;
     
     @Autowired
     public void setResourcesElementsProvider(ResourcesElementsProvider resourcesElementsProvider) {
         this.resourcesElementsProvider = resourcesElementsProvider;
     }
+    
+    @Autowired(required=false)
+    public void setmBeanExportOperations(MBeanExportOperations mBeanExportOperations) {
+        this.mBeanExportOperations = mBeanExportOperations;
+    }
 
     public final void setCache(Ehcache cache) {
         this.cache = cache;
     }
     
+    /**
+     * Optional cache that holds the last built events for each key, should be configured with a
+     * longer expiration than {@link #setCache(Ehcache)}. Only used if single flight is enabled.
+     */
+    public final void setStaleCache(Ehcache staleCache) {
+        this.staleCache = staleCache;
+    }
+
+    /**
+     * If true only one thread rebuilds the events for a given key at a time, defaults to false
+     */
+    public final void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * Maximum time in milliseconds to wait on another thread rebuilding the same key, defaults to 10 seconds
+     */
+    public final void setMaxWaitTime(long maxWaitTime) {
+        this.maxWaitTime = maxWaitTime;
+    }
+    
     @Override
     public void setBeanName(String name) {
         this.beanName = name;
     }
+    
+    public final CachingPipelineComponentStatisticsMBean getStatistics() {
+        return this.statistics;
+    }
+    
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (this.mBeanExportOperations != null && this.beanName != null) {
+            final ObjectName name = new ObjectName("uPortal:section=Cache,PipelineCache=PipelineCache,name=" + ObjectName.quote(this.beanName));
+            this.mBeanExportOperations.registerManagedResource(this.statistics, name);
+        }
+    }
 
     @Override
     public final CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
@@ -76,7 +136,6 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
     /* (non-Javadoc)
      * @see org.jasig.portal.rendering.PipelineComponent#getEventReader(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
-    @SuppressWarnings("unchecked")
     @Override
     public final PipelineEventReader<R, E> getEventReader(HttpServletRequest request, HttpServletResponse response) {
         if (Included.PLAIN == this.resourcesElementsProvider.getDefaultIncludedType()) {
@@ -86,37 +145,151 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
         
         //Get the key for this request from the target component and see if there is a cache entry
         final CacheKey cacheKey = this.wrappedComponent.getCacheKey(request, response);
-        Element element = this.cache.get(cacheKey);
-        CachedEventReader<E> cachedEventReader = null;
-        if (element != null) {
-            cachedEventReader = (CachedEventReader<E>)element.getObjectValue();
-        }
+        CachedEventReader<E> cachedEventReader = this.getCachedEventReader(this.cache, cacheKey);
 
         //If there was a cached reader return it immediately
-        if (cachedEventReader == null) {
-            //No cached data for key, call target component to get events and an updated cache key
-            logger.debug("{} - No cached events found for key {}, calling parent", this.beanName, cacheKey);
-            final PipelineEventReader<R, E> pipelineEventReader = this.wrappedComponent.getEventReader(request, response);
+        if (cachedEventReader != null) {
+            logger.debug("{} - Found cached events for key {}", this.beanName, cacheKey);
+            this.statistics.recordHit();
+        }
+        else if (this.singleFlight) {
+            cachedEventReader = this.getOrRebuildCachedEventReader(request, response, cacheKey);
+        }
+        else {
+            cachedEventReader = this.rebuildCachedEventReader(request, response, cacheKey);
+        }
 
-            //Copy the events from the reader into a buffer to be cached
-            final List<E> eventCache = new LinkedList<E>();
-            for (final E event : pipelineEventReader) {
-                //TODO add de-duplication logic here
-                eventCache.add(event);
+        return this.createPipelineEventReader(cachedEventReader);
+    }
+    
+    /**
+     * Coordinates with other threads so only one rebuilds the events for the key
+     */
+    private CachedEventReader<E> getOrRebuildCachedEventReader(HttpServletRequest request, HttpServletResponse response, CacheKey cacheKey) {
+        final CountDownLatch newLatch = new CountDownLatch(1);
+        final CountDownLatch latch = ConcurrentMapUtils.putIfAbsent(this.inFlight, cacheKey, newLatch);
+        
+        if (latch == newLatch) {
+            //This thread owns the rebuild for the key
+            try {
+                //Another thread may have finished a rebuild between the cache miss and claiming the key
+                final CachedEventReader<E> cachedEventReader = this.getCachedEventReader(this.cache, cacheKey);
+                if (cachedEventReader != null) {
+                    logger.debug("{} - Found cached events for key {} after claiming rebuild", this.beanName, cacheKey);
+                    this.statistics.recordHit();
+                    return cachedEventReader;
+                }
+                
+                return this.rebuildCachedEventReader(request, response, cacheKey);
+            }
+            finally {
+                this.inFlight.remove(cacheKey, newLatch);
+                newLatch.countDown();
             }
+        }
+        
+        //Another thread is rebuilding the key, serve the previous entry if one exists
+        if (this.staleCache != null) {
+            final CachedEventReader<E> staleEventReader = this.getCachedEventReader(this.staleCache, cacheKey);
+            if (staleEventReader != null) {
+                logger.debug("{} - Serving stale events for key {} while another thread rebuilds them", this.beanName, cacheKey);
+                this.statistics.recordStaleHit();
+                return staleEventReader;
+            }
+        }
+        
+        logger.debug("{} - Waiting up to {}ms for another thread to rebuild events for key {}", this.beanName, this.maxWaitTime, cacheKey);
+        try {
+            if (latch.await(this.maxWaitTime, TimeUnit.MILLISECONDS)) {
+                final CachedEventReader<E> cachedEventReader = this.getCachedEventReader(this.cache, cacheKey);
+                if (cachedEventReader != null) {
+                    logger.debug("{} - Using events for key {} rebuilt by another thread", this.beanName, cacheKey);
+                    this.statistics.recordCoalesced();
+                    return cachedEventReader;
+                }
+                
+                logger.debug("{} - Rebuild by another thread did not cache events for key {}, calling parent", this.beanName, cacheKey);
+            }
+            else {
+                logger.warn("{} - Timed out after {}ms waiting for another thread to rebuild events for key {}, calling parent", this.beanName, this.maxWaitTime, cacheKey);
+                this.statistics.recordWaitTimeout();
+            }
+        }
+        catch (InterruptedException e) {
+            logger.warn("{} - Interrupted waiting for another thread to rebuild events for key {}, calling parent", this.beanName, cacheKey);
+            Thread.currentThread().interrupt();
+        }
+        
+        return this.rebuildCachedEventReader(request, response, cacheKey);
+    }
+    
+    /**
+     * Calls the wrapped component and caches the resulting events
+     */
+    private CachedEventReader<E> rebuildCachedEventReader(HttpServletRequest request, HttpServletResponse response, CacheKey cacheKey) {
+        //No cached data for key, call target component to get events and an updated cache key
+        logger.debug("{} - No cached events found for key {}, calling parent", this.beanName, cacheKey);
+        this.statistics.recordMiss();
+        final PipelineEventReader<R, E> pipelineEventReader = this.wrappedComponent.getEventReader(request, response);
 
-            final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
-            cachedEventReader = new CachedEventReader<E>(eventCache, new LinkedHashMap<String, String>(outputProperties));
+        //Copy the events from the reader into a buffer to be cached, coalescing adjacent character events
+        final List<E> eventCache = new ArrayList<E>();
+        final List<E> coalesceBuffer = new ArrayList<E>();
+        for (final E event : pipelineEventReader) {
+            if (this.isCoalescable(event)) {
+                coalesceBuffer.add(event);
+                continue;
+            }
+            
+            this.flushCoalesceBuffer(coalesceBuffer, eventCache);
+            eventCache.add(event);
+        }
+        this.flushCoalesceBuffer(coalesceBuffer, eventCache);
 
-            //Cache the buffer
-            element = new Element(cacheKey, cachedEventReader);
-            this.cache.put(element);
-            logger.debug("{} - Cached {} events for key {}", this.beanName, eventCache.size(), cacheKey);
+        final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
+        final CachedEventReader<E> cachedEventReader = new CachedEventReader<E>(eventCache, new LinkedHashMap<String, String>(outputProperties));
+
+        //Cache the buffer
+        this.cache.put(new Element(cacheKey, cachedEventReader));
+        if (this.singleFlight && this.staleCache != null) {
+            this.staleCache.put(new Element(cacheKey, cachedEventReader));
         }
-        else {
-            logger.debug("{} - Found cached events for key {}", this.beanName, cacheKey);
+        logger.debug("{} - Cached {} events for key {}", this.beanName, cachedEventReader.size(), cacheKey);
+        
+        return cachedEventReader;
+    }
+    
+    /**
+     * Adds the buffered coalescable events to the event cache as a single event and clears the buffer
+     */
+    private void flushCoalesceBuffer(List<E> coalesceBuffer, List<E> eventCache) {
+        switch (coalesceBuffer.size()) {
+            case 0: {
+                return;
+            }
+            case 1: {
+                eventCache.add(coalesceBuffer.get(0));
+                break;
+            }
+            default: {
+                eventCache.add(this.coalesce(coalesceBuffer));
+                break;
+            }
         }
-
+        coalesceBuffer.clear();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private CachedEventReader<E> getCachedEventReader(Ehcache cache, CacheKey cacheKey) {
+        final Element element = cache.get(cacheKey);
+        if (element == null) {
+            return null;
+        }
+        
+        return (CachedEventReader<E>)element.getObjectValue();
+    }
+    
+    private PipelineEventReader<R, E> createPipelineEventReader(CachedEventReader<E> cachedEventReader) {
         final List<E> eventCache = cachedEventReader.getEventCache();
         final Map<String, String> outputProperties = cachedEventReader.getOutputProperties();
         
@@ -124,6 +297,17 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
         return new PipelineEventReaderImpl<R, E>(eventReader, outputProperties);
     }
     
+    /**
+     * @return true if the event may be merged with adjacent coalescable events before caching
+     */
+    protected abstract boolean isCoalescable(E event);
+    
+    /**
+     * @param events Two or more adjacent events for which {@link #isCoalescable(Object)} returned true
+     * @return A single event equivalent to the list of events
+     */
+    protected abstract E coalesce(List<E> events);
+    
     //Ugly!!! Needed because XMLEventReader implements Iterator but does not parameterize it
     protected abstract R createEventReader(ListIterator<E> eventCache);
 }
@@ -0,0 +1,91 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering.cache;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit/miss/coalesced counters for a {@link CachingPipelineComponent}
+ */
+final class CachingPipelineComponentStatistics implements CachingPipelineComponentStatisticsMBean {
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong waitTimeoutCount = new AtomicLong();
+    private final ConcurrentMap<?, ?> inFlight;
+
+    public CachingPipelineComponentStatistics(ConcurrentMap<?, ?> inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public void recordHit() {
+        this.hitCount.incrementAndGet();
+    }
+    public void recordMiss() {
+        this.missCount.incrementAndGet();
+    }
+    public void recordCoalesced() {
+        this.coalescedCount.incrementAndGet();
+    }
+    public void recordStaleHit() {
+        this.staleHitCount.incrementAndGet();
+    }
+    public void recordWaitTimeout() {
+        this.waitTimeoutCount.incrementAndGet();
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return this.coalescedCount.get();
+    }
+
+    @Override
+    public long getStaleHitCount() {
+        return this.staleHitCount.get();
+    }
+
+    @Override
+    public long getWaitTimeoutCount() {
+        return this.waitTimeoutCount.get();
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return this.inFlight.size();
+    }
+
+    @Override
+    public double getHitRate() {
+        final long served = this.hitCount.get() + this.coalescedCount.get() + this.staleHitCount.get();
+        final long requestCount = served + this.missCount.get();
+        return (requestCount == 0) ? 1.0 : (double) served / requestCount;
+    }
+}
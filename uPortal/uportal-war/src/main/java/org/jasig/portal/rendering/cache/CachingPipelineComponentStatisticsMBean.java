@@ -0,0 +1,60 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering.cache;
+
+/**
+ * JMX stats for {@link CachingPipelineComponent}
+ */
+public interface CachingPipelineComponentStatisticsMBean {
+    
+    /**
+     * @return Number of requests that found a fresh entry in the cache
+     */
+    long getHitCount();
+    
+    /**
+     * @return Number of requests that rebuilt the events by calling the wrapped component
+     */
+    long getMissCount();
+    
+    /**
+     * @return Number of requests that waited on another thread's rebuild of the same key and used its result
+     */
+    long getCoalescedCount();
+    
+    /**
+     * @return Number of requests served a stale entry while another thread rebuilt the same key
+     */
+    long getStaleHitCount();
+    
+    /**
+     * @return Number of requests that gave up waiting on another thread's rebuild and rebuilt the events themselves
+     */
+    long getWaitTimeoutCount();
+    
+    /**
+     * @return Number of keys currently being rebuilt
+     */
+    int getInFlightCount();
+
+    /**
+     * @return Ratio of requests that did not call the wrapped component, {@code 1.0} if there have been no requests
+     */
+    double getHitRate();
+}
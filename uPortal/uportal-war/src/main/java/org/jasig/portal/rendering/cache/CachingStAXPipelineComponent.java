@@ -18,9 +18,13 @@
  */
 package org.jasig.portal.rendering.cache;
 
+import java.util.List;
 import java.util.ListIterator;
 
+import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.XMLEvent;
 
 import org.jasig.portal.rendering.StAXPipelineComponent;
@@ -33,6 +37,29 @@ import org.jasig.portal.xml.stream.XMLEventBufferReader;
  * @version $Revision$
  */
 public class CachingStAXPipelineComponent extends CachingPipelineComponent<XMLEventReader, XMLEvent> implements StAXPipelineComponent {
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+    /**
+     * Only plain character data is coalesced, CDATA and ignorable whitespace are left as-is
+     */
+    @Override
+    protected boolean isCoalescable(XMLEvent event) {
+        if (event.getEventType() != XMLStreamConstants.CHARACTERS) {
+            return false;
+        }
+        
+        final Characters characters = event.asCharacters();
+        return !characters.isCData() && !characters.isIgnorableWhiteSpace();
+    }
+
+    @Override
+    protected XMLEvent coalesce(List<XMLEvent> events) {
+        final StringBuilder data = new StringBuilder();
+        for (final XMLEvent event : events) {
+            data.append(event.asCharacters().getData());
+        }
+        return EVENT_FACTORY.createCharacters(data.toString());
+    }
 
     @Override
     protected XMLEventReader createEventReader(ListIterator<XMLEvent> eventCache) {
@@ -19,8 +19,10 @@
 package org.jasig.portal.security.provider;
 
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Set;
 
 import net.sf.ehcache.Cache;
@@ -38,10 +40,13 @@ import org.jasig.portal.security.IAuthorizationPrincipal;
 import org.jasig.portal.security.IAuthorizationService;
 import org.jasig.portal.security.IPermission;
 import org.jasig.portal.security.IPermissionPolicy;
+import org.jasig.portal.utils.cache.CacheEntryTag;
+import org.jasig.portal.utils.cache.SimpleCacheEntryTag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -70,10 +75,28 @@ import org.springframework.stereotype.Service;
  *  Principal -- Small group (DENY) -- Bigger group -- Huge group
  *  Principal -- Some other group -- Bigger other group (GRANT) -- Huge group
  *  Results in GRANT because there is an unblocked path to a GRANT.
+ *
+ *  When the principal index is enabled the group hierarchy above a principal is
+ *  walked once and every effective GRANT is recorded in a {@link PrincipalPermissionIndex},
+ *  later checks for that principal are answered from the index. Indexes are tagged
+ *  with every principal in the hierarchy and purged via {@link #createPrincipalCacheEntryTag(String)}
+ *  when the permissions or group memberships of any of those principals change.
  */
 @Service("anyUnblockedGrantPermissionPolicy")
 public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
 
+    /**
+     * Tag type used for cache entries that depend on the permissions or memberships of a principal
+     */
+    public static final String PRINCIPAL_TAG_TYPE = "permissionPrincipal";
+
+    /**
+     * @param principalString The principal string, as returned by {@link IAuthorizationPrincipal#getPrincipalString()}
+     */
+    public static CacheEntryTag createPrincipalCacheEntryTag(String principalString) {
+        return new SimpleCacheEntryTag<String>(PRINCIPAL_TAG_TYPE, principalString);
+    }
+
     protected final Logger log = LoggerFactory.getLogger(getClass());
 
     @Autowired
@@ -86,6 +109,22 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
     @Qualifier(value="org.jasig.portal.security.provider.AnyUnblockedGrantPermissionPolicy.HAS_UNBLOCKED_GRANT")
     private Cache hasUnblockedGrantCache;
 
+    @Autowired
+    @Qualifier(value="org.jasig.portal.security.provider.AnyUnblockedGrantPermissionPolicy.PRINCIPAL_INDEX")
+    private Cache principalIndexCache;
+
+    private boolean usePrincipalIndex = false;
+
+    /**
+     * If true all checks for a principal are answered from a {@link PrincipalPermissionIndex} built
+     * by a single walk of the principal's group hierarchy instead of walking the hierarchy for every
+     * owner, activity and target. Defaults to false.
+     */
+    @Value("${org.jasig.portal.security.provider.AnyUnblockedGrantPermissionPolicy.usePrincipalIndex:false}")
+    public void setUsePrincipalIndex(boolean usePrincipalIndex) {
+        this.usePrincipalIndex = usePrincipalIndex;
+    }
+
     public boolean doesPrincipalHavePermission(
             IAuthorizationService service,
             IAuthorizationPrincipal principal,
@@ -154,9 +193,15 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
         // Search ourselves and all ancestors for an unblocked GRANT.
         boolean rslt;
         try {
-            // Track groups we've already explored to avoid infinite loop
-            final Set<IGroupMember> seenGroups = new HashSet<IGroupMember>(100);
-            rslt = hasUnblockedPathToGrantWithCache(service, principal, owner, activity, target, seenGroups);
+            if (this.usePrincipalIndex) {
+                final PrincipalPermissionIndex principalIndex = getPrincipalIndex(service, principal);
+                rslt = principalIndex.hasUnblockedGrant(owner.getFname(), activity.getFname(), target.getKey());
+            }
+            else {
+                // Track groups we've already explored to avoid infinite loop
+                final Set<IGroupMember> seenGroups = new HashSet<IGroupMember>(100);
+                rslt = hasUnblockedPathToGrantWithCache(service, principal, owner, activity, target, seenGroups);
+            }
         } catch (Exception e) {
             log.error("Error searching for unblocked path to grant for principal [" + principal + "]", e);
             // fail closed
@@ -186,7 +231,8 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
      * authorization decision.  Permissions checking can be expensive;  a
      * well-primed cache can make the task perform better.  This method will
      * create the cache entry whether it exists already or not, forcibly
-     * resetting the TTL.
+     * resetting the TTL.  When the principal index is enabled this loads the
+     * principal's index if it is not already cached.
      *
      * @since uPortal 4.3
      */
@@ -194,6 +240,15 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
             IAuthorizationPrincipal principal, IPermissionOwner owner,
             IPermissionActivity activity, IPermissionTarget target) {
 
+        if (this.usePrincipalIndex) {
+            try {
+                getPrincipalIndex(service, principal);
+            } catch (GroupsException e) {
+                log.error("Error building permission index for principal [" + principal + "]", e);
+            }
+            return;
+        }
+
         final Set<IGroupMember> seenGroups = new HashSet<>();
         final CacheTuple cacheTuple = new CacheTuple(
                 principal.getPrincipalString(),
@@ -226,6 +281,76 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
 
     }
 
+    /**
+     * Get the cached {@link PrincipalPermissionIndex} for the principal, building it if it is not
+     * cached or a permission has become effective or expired since it was built.
+     */
+    private PrincipalPermissionIndex getPrincipalIndex(IAuthorizationService service,
+            IAuthorizationPrincipal principal) throws GroupsException {
+
+        final String principalString = principal.getPrincipalString();
+        final Element element = principalIndexCache.get(principalString);
+        if (element != null) {
+            final PrincipalPermissionIndex principalIndex = (PrincipalPermissionIndex) element.getObjectValue();
+            if (!principalIndex.isExpired(System.currentTimeMillis())) {
+                return principalIndex;
+            }
+        }
+
+        final PrincipalPermissionIndex principalIndex = buildPrincipalIndex(service, principal);
+        principalIndexCache.put(new Element(principalString, principalIndex));
+        return principalIndex;
+    }
+
+    /**
+     * Walks the principal and all of its ancestor groups once, collecting every permission
+     * attached to each of them.
+     */
+    private PrincipalPermissionIndex buildPrincipalIndex(IAuthorizationService service,
+            IAuthorizationPrincipal principal) throws GroupsException {
+
+        final PrincipalPermissionIndex.Builder builder = PrincipalPermissionIndex.builder(principal.getPrincipalString());
+
+        final Deque<IAuthorizationPrincipal> principals = new LinkedList<IAuthorizationPrincipal>();
+        principals.add(principal);
+        while (!principals.isEmpty()) {
+            final IAuthorizationPrincipal current = principals.removeFirst();
+            final String currentString = current.getPrincipalString();
+
+            final IPermission[] permissions = service.getPermissionsForPrincipal(current, null, null, null);
+            if (!builder.addPrincipal(currentString, permissions)) {
+                // Already explored via another path
+                continue;
+            }
+
+            final IGroupMember currentAsGroupMember = service.getGroupMember(current);
+            @SuppressWarnings("unchecked")
+            final Iterator<IGroupMember> immediatelyContainingGroups = currentAsGroupMember.getContainingGroups();
+            while (immediatelyContainingGroups.hasNext()) {
+                final IGroupMember parentGroup = immediatelyContainingGroups.next();
+                if (parentGroup == null) {
+                    continue;
+                }
+                try {
+                    final IAuthorizationPrincipal parentPrincipal = service.newPrincipal(parentGroup);
+                    builder.addParent(currentString, parentPrincipal.getPrincipalString());
+                    principals.add(parentPrincipal);
+                } catch (Exception e) {
+                    // A broken portion of the group structure must not stop us
+                    // from exploring other paths
+                    log.error("Error evaluating permissions of parent group [" + parentGroup + "]", e);
+                }
+            }
+        }
+
+        final PrincipalPermissionIndex principalIndex = builder.build(new Date());
+        if (log.isDebugEnabled()) {
+            log.debug("Built permission index for principal '{}' with {} GRANTs",
+                    principal.getPrincipalString(), principalIndex.getGrantCount());
+        }
+        return principalIndex;
+    }
+
     /**
      * This method performs the actual, low-level checking of a single activity
      * and target.  Is IS responsible for performing the same check for
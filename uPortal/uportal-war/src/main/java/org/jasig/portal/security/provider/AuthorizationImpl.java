@@ -66,6 +66,7 @@ import org.jasig.portal.utils.Tuple;
 import org.jasig.portal.utils.cache.CacheFactory;
 import org.jasig.portal.utils.cache.CacheKey;
 import org.jasig.portal.utils.cache.CacheKey.CacheKeyBuilder;
+import org.jasig.portal.utils.cache.TaggedCacheEntryPurger;
 import org.jasig.portal.utils.cache.UsernameTaggedCacheEntryPurger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -117,6 +118,9 @@ public class AuthorizationImpl implements IAuthorizationService {
 
     private Set<String> nonEntityPermissionTargetProviders = new HashSet<>();
 
+    /** Purges cached permission decisions that depend on a changed principal. */
+    private TaggedCacheEntryPurger taggedCacheEntryPurger;
+
     @Autowired
     private IPermissionOwnerDao permissionOwnerDao;
 
@@ -167,6 +171,11 @@ public class AuthorizationImpl implements IAuthorizationService {
         this.nonEntityPermissionTargetProviders = nonEntityPermissionTargetProviders;
     }
 
+    @Autowired(required=false)
+    public void setTaggedCacheEntryPurger(TaggedCacheEntryPurger taggedCacheEntryPurger) {
+        this.taggedCacheEntryPurger = taggedCacheEntryPurger;
+    }
+
     /**
  * Adds <code>IPermissions</code> to the back end store.
  * @param permissions IPermission[]
@@ -180,6 +189,7 @@ throws AuthorizationException
         getPermissionStore().add(permissions);
         if ( this.cachePermissions )
             { removeFromPermissionsCache(permissions); }
+        purgePermissionDecisions(permissions);
     }
 }
 
@@ -1098,6 +1108,28 @@ throws AuthorizationException
     removeFromPermissionsCache(principals);
 }
 
+/**
+ * Purges cached permission decisions, such as the principal indexes built by
+ * {@link AnyUnblockedGrantPermissionPolicy}, that depend on the principals of
+ * the changed <code>IPermissions</code>.
+ * @param permissions IPermission[]
+ */
+private void purgePermissionDecisions(IPermission[] permissions)
+{
+    if ( this.taggedCacheEntryPurger == null )
+        { return; }
+
+    final Set<String> principalStrings = new HashSet<>();
+    for ( IPermission permission : permissions )
+        { principalStrings.add(permission.getPrincipal()); }
+
+    for ( String principalString : principalStrings )
+    {
+        this.taggedCacheEntryPurger.purgeCacheEntries(
+                AnyUnblockedGrantPermissionPolicy.createPrincipalCacheEntryTag(principalString));
+    }
+}
+
 /**
  * Removes <code>IPermissions</code> from the back end store.
  * @param permissions IPermission[]
@@ -1111,6 +1143,7 @@ throws AuthorizationException
         getPermissionStore().delete(permissions);
         if ( this.cachePermissions )
             { removeFromPermissionsCache(permissions); }
+        purgePermissionDecisions(permissions);
     }
 }
 
@@ -1127,6 +1160,7 @@ throws AuthorizationException
         getPermissionStore().update(permissions);
         if ( this.cachePermissions )
             { removeFromPermissionsCache(permissions); }
+        purgePermissionDecisions(permissions);
     }
 }
 }
@@ -0,0 +1,233 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.security.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jasig.portal.security.IPermission;
+import org.jasig.portal.utils.cache.CacheEntryTag;
+import org.jasig.portal.utils.cache.TaggedCacheEntry;
+
+/**
+ * The effective GRANTs for a single principal across all of its ancestor groups, as evaluated
+ * by {@link AnyUnblockedGrantPermissionPolicy}. Built from a single traversal of the group
+ * hierarchy so that later checks for the principal are a set lookup instead of a recursive walk.
+ * <p>
+ * The index is tagged with the principal string of the principal and of every ancestor group so
+ * that it can be purged when any of their permissions or memberships change. It also expires at
+ * the first effective or expiration date of a permission that was in the future when it was built.
+ */
+final class PrincipalPermissionIndex implements TaggedCacheEntry {
+    private final Set<String> grants;
+    private final Set<CacheEntryTag> tags;
+    private final long validUntil;
+
+    private PrincipalPermissionIndex(Set<String> grants, Set<CacheEntryTag> tags, long validUntil) {
+        this.grants = grants;
+        this.tags = tags;
+        this.validUntil = validUntil;
+    }
+
+    public static Builder builder(String principalString) {
+        return new Builder(principalString);
+    }
+
+    /**
+     * @return true if there is an unblocked path from the principal to a GRANT for the owner, activity and target
+     */
+    public boolean hasUnblockedGrant(String owner, String activity, String target) {
+        return this.grants.contains(createKey(owner, activity, target));
+    }
+
+    /**
+     * @return true if a permission has become effective or expired since the index was built
+     */
+    public boolean isExpired(long now) {
+        return now >= this.validUntil;
+    }
+
+    /**
+     * @return The number of owner, activity and target combinations the principal is granted
+     */
+    public int getGrantCount() {
+        return this.grants.size();
+    }
+
+    @Override
+    public Set<CacheEntryTag> getTags() {
+        return this.tags;
+    }
+
+    private static String createKey(String owner, String activity, String target) {
+        return owner + '\u0000' + activity + '\u0000' + target;
+    }
+
+    /**
+     * Collects the permissions and parent groups of each principal found while walking up the
+     * group hierarchy from the indexed principal.
+     */
+    public static final class Builder {
+        private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+        private final Node root;
+
+        private Builder(String principalString) {
+            this.root = this.getNode(principalString);
+        }
+
+        /**
+         * @return true if the principal was not already part of the index
+         */
+        public boolean addPrincipal(String principalString, IPermission[] permissions) {
+            final Node node = this.getNode(principalString);
+            if (node.permissions != null) {
+                return false;
+            }
+
+            node.permissions = permissions;
+            return true;
+        }
+
+        /**
+         * Record that the child principal is a member of the parent group principal
+         */
+        public void addParent(String childPrincipalString, String parentPrincipalString) {
+            final Node child = this.getNode(childPrincipalString);
+            final Node parent = this.getNode(parentPrincipalString);
+            if (!child.parents.contains(parent)) {
+                child.parents.add(parent);
+            }
+        }
+
+        public PrincipalPermissionIndex build(Date now) {
+            long validUntil = Long.MAX_VALUE;
+            final Set<String> keys = new HashSet<String>();
+            final Set<CacheEntryTag> tags = new HashSet<CacheEntryTag>();
+
+            for (final Node node : this.nodes.values()) {
+                tags.add(AnyUnblockedGrantPermissionPolicy.createPrincipalCacheEntryTag(node.principalString));
+                if (node.permissions == null) {
+                    continue;
+                }
+
+                for (final IPermission permission : node.permissions) {
+                    final Date effective = permission.getEffective();
+                    final Date expires = permission.getExpires();
+                    if (effective != null && effective.after(now)) {
+                        //Not active yet, the index must be rebuilt once it is
+                        validUntil = Math.min(validUntil, effective.getTime());
+                        continue;
+                    }
+                    if (expires != null) {
+                        if (!expires.after(now)) {
+                            continue;
+                        }
+                        validUntil = Math.min(validUntil, expires.getTime());
+                    }
+
+                    final String key = createKey(permission.getOwner(), permission.getActivity(), permission.getTarget());
+                    if (IPermission.PERMISSION_TYPE_DENY.equals(permission.getType())) {
+                        node.denies.add(key);
+                        keys.add(key);
+                    }
+                    else if (IPermission.PERMISSION_TYPE_GRANT.equals(permission.getType())) {
+                        node.grants.add(key);
+                        keys.add(key);
+                    }
+                }
+            }
+
+            //Resolve each owner/activity/target combination seen anywhere in the hierarchy
+            final Set<String> grants = new HashSet<String>();
+            for (final String key : keys) {
+                if (hasUnblockedGrant(this.root, key, new HashMap<Node, Boolean>(), new HashSet<Node>())) {
+                    grants.add(key);
+                }
+            }
+
+            return new PrincipalPermissionIndex(
+                    Collections.unmodifiableSet(grants),
+                    Collections.unmodifiableSet(tags),
+                    validUntil);
+        }
+
+        /**
+         * Same rules as {@link AnyUnblockedGrantPermissionPolicy}: a DENY on a principal blocks every path
+         * through it, a GRANT on a principal is an unblocked path, otherwise any parent with an unblocked path.
+         */
+        private boolean hasUnblockedGrant(Node node, String key, Map<Node, Boolean> results, Set<Node> visiting) {
+            if (node.denies.contains(key)) {
+                return false;
+            }
+            if (node.grants.contains(key)) {
+                return true;
+            }
+
+            final Boolean cachedResult = results.get(node);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+
+            //Membership cycle, this path is already being explored
+            if (!visiting.add(node)) {
+                return false;
+            }
+
+            boolean result = false;
+            for (final Node parent : node.parents) {
+                if (hasUnblockedGrant(parent, key, results, visiting)) {
+                    result = true;
+                    break;
+                }
+            }
+
+            visiting.remove(node);
+            results.put(node, result);
+            return result;
+        }
+
+        private Node getNode(String principalString) {
+            Node node = this.nodes.get(principalString);
+            if (node == null) {
+                node = new Node(principalString);
+                this.nodes.put(principalString, node);
+            }
+            return node;
+        }
+    }
+
+    private static final class Node {
+        private final String principalString;
+        private final List<Node> parents = new ArrayList<Node>(2);
+        private final Set<String> grants = new HashSet<String>();
+        private final Set<String> denies = new HashSet<String>();
+        private IPermission[] permissions;
+
+        public Node(String principalString) {
+            this.principalString = principalString;
+        }
+    }
+}
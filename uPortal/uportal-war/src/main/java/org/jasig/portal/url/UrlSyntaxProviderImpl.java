@@ -32,6 +32,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,7 +48,6 @@ import org.jasig.portal.IUserPreferencesManager;
 import org.jasig.portal.layout.IUserLayout;
 import org.jasig.portal.layout.IUserLayoutManager;
 import org.jasig.portal.portlet.PortletUtils;
-import org.jasig.portal.portlet.om.IPortletEntity;
 import org.jasig.portal.portlet.om.IPortletWindow;
 import org.jasig.portal.portlet.om.IPortletWindowId;
 import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
@@ -112,6 +113,7 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
     private static final String PORTAL_CANONICAL_URL = UrlSyntaxProviderImpl.class.getName() + ".PORTAL_CANONICAL_URL";
     private static final String PORTAL_REQUEST_INFO_ATTR = UrlSyntaxProviderImpl.class.getName() + ".PORTAL_REQUEST_INFO"; 
     private static final String PORTAL_REQUEST_PARSING_IN_PROGRESS_ATTR = UrlSyntaxProviderImpl.class.getName() + ".PORTAL_REQUEST_PARSING_IN_PROGRESS";
+    private static final String URL_PATH_TEMPLATES_ATTR = UrlSyntaxProviderImpl.class.getName() + ".URL_PATH_TEMPLATES";
 
     /**
      * Utility enum used for parsing parameters that can appear multiple times on one URL and may or may not
@@ -986,17 +988,10 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         final String resourceId;
         if (targetedPortletWindowId != null) {
             final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, targetedPortletWindowId);
-            final IPortletEntity portletEntity = portletWindow.getPortletEntity();
+            final UrlPathTemplate pathTemplate = this.getPortletPathTemplate(request, urlNodeSyntaxHelper, targetedPortletWindowId, portletWindow);
             
             //Add folder information if available: /f/tabId
-            final String channelSubscribeId = portletEntity.getLayoutNodeId();
-            final List<String> folderNames = urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, channelSubscribeId);
-            if (!folderNames.isEmpty()) {
-                url.addPath(FOLDER_PATH_PREFIX);
-                for (final String folderName : folderNames) {
-                    url.addPath(folderName);
-                }
-            }
+            url.addPath(pathTemplate.getFolderPath());
             
             final IPortletUrlBuilder targetedPortletUrlBuilder = portletUrlBuilders.get(targetedPortletWindowId);
             
@@ -1011,7 +1006,7 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
             //Resource requests will never have a requested window state
             urlState = this.determineUrlState(portletWindow, targetedPortletUrlBuilder);
             
-            final String targetedPortletString = urlNodeSyntaxHelper.getFolderNameForPortlet(request, targetedPortletWindowId);
+            final String targetedPortletString = pathTemplate.getTargetedPortletString();
             
             //If a non-normal render url or an action/resource url stick the portlet info in the path 
             if ((urlType == UrlType.RENDER && urlState != UrlState.NORMAL) || urlType == UrlType.ACTION || urlType == UrlType.RESOURCE) {
@@ -1025,13 +1020,8 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         }
         else {
             final String targetFolderId = portalUrlBuilder.getTargetFolderId();
-            final List<String> folderNames = urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, targetFolderId);
-            if (folderNames != null && !folderNames.isEmpty()) {
-                url.addPath(FOLDER_PATH_PREFIX);
-                for (final String folderName : folderNames) {
-                    url.addPath(folderName);
-                }
-            }
+            final UrlPathTemplate pathTemplate = this.getFolderPathTemplate(request, urlNodeSyntaxHelper, targetFolderId);
+            url.addPath(pathTemplate.getFolderPath());
             
             urlState = UrlState.NORMAL;
             resourceId = null;
@@ -1067,6 +1057,85 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         return url.toString();
     }
 
+    /**
+     * @return The path elements for URLs targeting the portlet window, reused for the rest of the request
+     */
+    protected UrlPathTemplate getPortletPathTemplate(HttpServletRequest request, IUrlNodeSyntaxHelper urlNodeSyntaxHelper, 
+            IPortletWindowId portletWindowId, IPortletWindow portletWindow) {
+        
+        final UrlPathTemplates pathTemplates = this.getUrlPathTemplates(request);
+        if (pathTemplates != null) {
+            final UrlPathTemplate pathTemplate = pathTemplates.portletTemplates.get(portletWindowId);
+            if (pathTemplate != null) {
+                return pathTemplate;
+            }
+        }
+        
+        final String channelSubscribeId = portletWindow.getPortletEntity().getLayoutNodeId();
+        final List<String> folderNames = urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, channelSubscribeId);
+        final String targetedPortletString = urlNodeSyntaxHelper.getFolderNameForPortlet(request, portletWindowId);
+        final UrlPathTemplate pathTemplate = new UrlPathTemplate(folderNames, targetedPortletString);
+        
+        if (pathTemplates != null) {
+            pathTemplates.portletTemplates.put(portletWindowId, pathTemplate);
+        }
+        return pathTemplate;
+    }
+    
+    /**
+     * @return The path elements for URLs targeting the folder, reused for the rest of the request
+     */
+    protected UrlPathTemplate getFolderPathTemplate(HttpServletRequest request, IUrlNodeSyntaxHelper urlNodeSyntaxHelper, String folderId) {
+        //ConcurrentHashMap doesn't allow null keys, no layout node has an empty ID
+        final String folderKey = folderId != null ? folderId : "";
+        final UrlPathTemplates pathTemplates = this.getUrlPathTemplates(request);
+        if (pathTemplates != null) {
+            final UrlPathTemplate pathTemplate = pathTemplates.folderTemplates.get(folderKey);
+            if (pathTemplate != null) {
+                return pathTemplate;
+            }
+        }
+        
+        final List<String> folderNames = urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, folderId);
+        final UrlPathTemplate pathTemplate = new UrlPathTemplate(folderNames, null);
+        
+        if (pathTemplates != null) {
+            pathTemplates.folderTemplates.put(folderKey, pathTemplate);
+        }
+        return pathTemplate;
+    }
+    
+    /**
+     * @return The path templates for the request, null if the user's layout is not available. The templates
+     *  are replaced when the layout changes during the request.
+     */
+    protected UrlPathTemplates getUrlPathTemplates(HttpServletRequest request) {
+        final IUserInstance userInstance = this.userInstanceManager.getUserInstance(request);
+        if (userInstance == null) {
+            return null;
+        }
+        final IUserPreferencesManager preferencesManager = userInstance.getPreferencesManager();
+        if (preferencesManager == null) {
+            return null;
+        }
+        final IUserLayoutManager userLayoutManager = preferencesManager.getUserLayoutManager();
+        if (userLayoutManager == null) {
+            return null;
+        }
+        final String layoutCacheKey = userLayoutManager.getCacheKey();
+        if (layoutCacheKey == null) {
+            return null;
+        }
+        
+        //Portlets rendering in parallel generate URLs for the same request, a race here only results in an extra lookup
+        UrlPathTemplates pathTemplates = (UrlPathTemplates) request.getAttribute(URL_PATH_TEMPLATES_ATTR);
+        if (pathTemplates == null || !layoutCacheKey.equals(pathTemplates.layoutCacheKey)) {
+            pathTemplates = new UrlPathTemplates(layoutCacheKey);
+            request.setAttribute(URL_PATH_TEMPLATES_ATTR, pathTemplates);
+        }
+        return pathTemplates;
+    }
+    
     /**
      * Add the provided portlet url builder data to the url string builder
      */
@@ -1371,4 +1440,53 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
 
     }
 
+    
+    /**
+     * Parts of the URL path that only depend on the user's layout and the targeted portlet window or folder
+     */
+    protected static final class UrlPathTemplate {
+        private final String[] folderPath;
+        private final String targetedPortletString;
+        
+        public UrlPathTemplate(List<String> folderNames, String targetedPortletString) {
+            if (folderNames == null || folderNames.isEmpty()) {
+                this.folderPath = new String[0];
+            }
+            else {
+                this.folderPath = new String[folderNames.size() + 1];
+                this.folderPath[0] = FOLDER_PATH_PREFIX;
+                for (int i = 0; i < folderNames.size(); i++) {
+                    this.folderPath[i + 1] = folderNames.get(i);
+                }
+            }
+            this.targetedPortletString = targetedPortletString;
+        }
+
+        /**
+         * @return The folder path elements including the folder prefix, empty if there are no folders
+         */
+        public String[] getFolderPath() {
+            return this.folderPath;
+        }
+
+        /**
+         * @return The targeted portlet path element or parameter value, null for folder templates
+         */
+        public String getTargetedPortletString() {
+            return this.targetedPortletString;
+        }
+    }
+    
+    /**
+     * Path templates for a single request and version of the user's layout
+     */
+    protected static final class UrlPathTemplates {
+        private final String layoutCacheKey;
+        private final ConcurrentMap<IPortletWindowId, UrlPathTemplate> portletTemplates = new ConcurrentHashMap<IPortletWindowId, UrlPathTemplate>();
+        private final ConcurrentMap<String, UrlPathTemplate> folderTemplates = new ConcurrentHashMap<String, UrlPathTemplate>();
+        
+        public UrlPathTemplates(String layoutCacheKey) {
+            this.layoutCacheKey = layoutCacheKey;
+        }
+    }
 }
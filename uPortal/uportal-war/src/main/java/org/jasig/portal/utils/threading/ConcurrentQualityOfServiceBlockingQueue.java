@@ -0,0 +1,498 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.utils.threading;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jasig.portal.utils.ConcurrentMapUtils;
+
+/**
+ * A thread-safe blocking queue that places elements into sub-queues based on the key returned for each element by
+ * {@link #getElementKey(Object)} and returns elements round-robin across the keys that have queued elements, one
+ * element per key per turn. This provides the same per-key fairness as a {@link QualityOfServiceBlockingQueue} that
+ * cycles through its keys but does not serialize {@link #offer(Object)} and {@link #poll()} through a single lock.
+ * <p/>
+ * Each key has a {@link ConcurrentLinkedQueue} of elements and a count of elements that have not yet been handed
+ * out. A key is placed in a ring of ready keys when its count goes from zero to one and is re-appended to the end of
+ * the ring by the polling thread as long as it still has elements, so exactly one ring entry exists for each key with
+ * queued elements. Locks are only used to park threads that have to wait in {@link #take()}, {@link #put(Object)} or
+ * the timed offer/poll methods, and are only acquired by other threads if a waiter is present.
+ * <p/>
+ * Unlike {@link QualityOfServiceBlockingQueue} the element returned by {@link #peek()} is not reserved, a concurrent
+ * {@link #poll()} may return a different element.
+ *
+ * @param <K> The type of key used for grouping elements in the queue
+ * @param <T> The type of elements in the queue
+ */
+public abstract class ConcurrentQualityOfServiceBlockingQueue<K, T> extends AbstractQueue<T> implements BlockingQueue<T> {
+    private final ConcurrentMap<K, KeyQueue<T>> keyedQueues = new ConcurrentHashMap<K, KeyQueue<T>>();
+    private final Queue<KeyQueue<T>> readyKeys = new ConcurrentLinkedQueue<KeyQueue<T>>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    //Only used to park waiting threads, never held while modifying the queue
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition notEmpty = waitLock.newCondition();
+    private final Condition notFull = waitLock.newCondition();
+    private final AtomicInteger waitingTakers = new AtomicInteger();
+    private final AtomicInteger waitingPutters = new AtomicInteger();
+
+    public ConcurrentQualityOfServiceBlockingQueue() {
+        this.capacity = Integer.MAX_VALUE;
+    }
+
+    public ConcurrentQualityOfServiceBlockingQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the key for the specified element
+     */
+    protected abstract K getElementKey(T e);
+
+    /**
+     * @return true if there are no elements for the specified key
+     */
+    public final boolean isKeyEmpty(K key) {
+        final KeyQueue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return true;
+        }
+
+        return queue.elements.isEmpty();
+    }
+
+    /**
+     * @return The number of elements in the queue for the specified key
+     */
+    public final int getKeySize(K key) {
+        final KeyQueue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return 0;
+        }
+
+        return queue.elements.size();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#offer(java.lang.Object)
+     */
+    @Override
+    public final boolean offer(T e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        if (!this.reserveCapacity()) {
+            return false;
+        }
+
+        final KeyQueue<T> queue = this.getOrCreateQueue(e);
+        queue.elements.add(e);
+
+        //First element for the key, it becomes ready
+        if (queue.count.getAndIncrement() == 0) {
+            this.readyKeys.add(queue);
+        }
+
+        this.signalWaiters(this.waitingTakers, this.notEmpty);
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+     */
+    @Override
+    public final void put(T e) throws InterruptedException {
+        this.offer(e, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public final boolean offer(T e, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = timeout >= 0 ? unit.toNanos(timeout) : -1;
+        while (!this.offer(e)) {
+            remaining = this.awaitChange(this.waitingPutters, this.notFull, remaining, true);
+            if (remaining == 0) {
+                return this.offer(e);
+            }
+        }
+
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#poll()
+     */
+    @Override
+    public final T poll() {
+        while (this.size.get() > 0) {
+            final KeyQueue<T> queue = this.readyKeys.poll();
+            if (queue == null) {
+                //An offer has reserved capacity but not yet made its key ready
+                Thread.yield();
+                continue;
+            }
+
+            //This thread holds the only ring entry for the key, poll one element and put the key back at the end
+            //of the ring if it still has elements
+            final T e = queue.elements.poll();
+            if (queue.count.decrementAndGet() > 0) {
+                this.readyKeys.add(queue);
+            }
+
+            //Element was removed via remove(Object), the count has been reconciled, try the next key
+            if (e == null) {
+                continue;
+            }
+
+            this.size.decrementAndGet();
+            this.signalWaiters(this.waitingPutters, this.notFull);
+            return e;
+        }
+
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#take()
+     */
+    @Override
+    public final T take() throws InterruptedException {
+        return this.poll(-1, TimeUnit.MILLISECONDS);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public final T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = timeout >= 0 ? unit.toNanos(timeout) : -1;
+        T e;
+        while ((e = this.poll()) == null) {
+            remaining = this.awaitChange(this.waitingTakers, this.notEmpty, remaining, false);
+            if (remaining == 0) {
+                return this.poll();
+            }
+        }
+
+        return e;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#peek()
+     */
+    @Override
+    public final T peek() {
+        for (final KeyQueue<T> queue : this.readyKeys) {
+            final T e = queue.elements.peek();
+            if (e != null) {
+                return e;
+            }
+        }
+
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#remove(java.lang.Object)
+     */
+    @Override
+    public final boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        final K key = this.getElementKey((T)o);
+        final KeyQueue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return false;
+        }
+
+        //The key's count is left as-is, poll() reconciles it when it finds the removed slot empty
+        if (!queue.elements.remove(o)) {
+            return false;
+        }
+
+        this.size.decrementAndGet();
+        this.signalWaiters(this.waitingPutters, this.notFull);
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#contains(java.lang.Object)
+     */
+    @Override
+    public final boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        final K key = this.getElementKey((T)o);
+        final KeyQueue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return false;
+        }
+
+        return queue.elements.contains(o);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+     */
+    @Override
+    public final int remainingCapacity() {
+        return this.capacity - this.size.get();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+     */
+    @Override
+    public final int drainTo(Collection<? super T> c) {
+        return this.drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+     */
+    @Override
+    public final int drainTo(Collection<? super T> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        int count = 0;
+        T e;
+        while (count < maxElements && (e = this.poll()) != null) {
+            c.add(e);
+            count++;
+        }
+
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Collection#size()
+     */
+    @Override
+    public final int size() {
+        return this.size.get();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Collection#isEmpty()
+     */
+    @Override
+    public final boolean isEmpty() {
+        return this.size.get() == 0;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Collection#iterator()
+     */
+    @Override
+    public final Iterator<T> iterator() {
+        return new ElementIterator();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder str = new StringBuilder();
+
+        str.append("{");
+
+        for (final Iterator<K> keyItr = this.keyedQueues.keySet().iterator(); keyItr.hasNext(); ) {
+            final K key = keyItr.next();
+            final KeyQueue<T> queue = this.keyedQueues.get(key);
+
+            str.append(key).append("=").append(queue != null ? queue.elements : "[]");
+
+            if (keyItr.hasNext()) {
+                str.append(", ");
+            }
+        }
+
+        str.append("}");
+
+        return str.toString();
+    }
+
+    /**
+     * Atomically reserve space for one element
+     *
+     * @return false if the queue is at capacity
+     */
+    private boolean reserveCapacity() {
+        while (true) {
+            final int current = this.size.get();
+            if (current >= this.capacity) {
+                return false;
+            }
+            if (this.size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The Queue to use for the specified element
+     */
+    private KeyQueue<T> getOrCreateQueue(T e) {
+        final K key = this.getElementKey(e);
+        KeyQueue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            queue = ConcurrentMapUtils.putIfAbsent(this.keyedQueues, key, new KeyQueue<T>());
+        }
+        return queue;
+    }
+
+    /**
+     * Wake one thread waiting on the condition, the lock is only acquired if there is a waiting thread
+     */
+    private void signalWaiters(AtomicInteger waiters, Condition condition) {
+        if (waiters.get() > 0) {
+            this.waitLock.lock();
+            try {
+                condition.signal();
+            }
+            finally {
+                this.waitLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Park the current thread until the queue state it is waiting for may have changed.
+     *
+     * @param waiters Counter of threads waiting on the condition
+     * @param condition The condition to wait on
+     * @param remaining Nanoseconds left to wait, waits forever if less than 0
+     * @param waitingForSpace If true waits for the queue to have space, if false waits for the queue to have elements
+     * @return The nanoseconds left to wait, 0 if the wait timed out, -1 if waiting forever
+     */
+    private long awaitChange(AtomicInteger waiters, Condition condition, long remaining, boolean waitingForSpace) throws InterruptedException {
+        this.waitLock.lockInterruptibly();
+        waiters.incrementAndGet();
+        try {
+            //Re-check after registering as a waiter so a concurrent offer/poll either sees the waiter or is seen here
+            final boolean ready = waitingForSpace ? this.size.get() < this.capacity : this.size.get() > 0;
+            if (ready) {
+                return remaining;
+            }
+
+            if (remaining < 0) {
+                condition.await();
+                return -1;
+            }
+
+            final long left = condition.awaitNanos(remaining);
+            return left > 0 ? left : 0;
+        }
+        finally {
+            waiters.decrementAndGet();
+            this.waitLock.unlock();
+        }
+    }
+
+    /**
+     * Elements for one key and the number of them that have not yet been handed out by {@link #poll()}
+     */
+    private static final class KeyQueue<T> {
+        private final Queue<T> elements = new ConcurrentLinkedQueue<T>();
+        private final AtomicInteger count = new AtomicInteger();
+    }
+
+    /**
+     * Iterates over the Queue's in the keyedQueues Map
+     */
+    private final class ElementIterator implements Iterator<T> {
+        private final Iterator<KeyQueue<T>> queueIterator;
+        private Iterator<T> elementIterator = null;
+        private T lastReturned = null;
+
+        public ElementIterator() {
+            this.queueIterator = keyedQueues.values().iterator();
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            while (this.elementIterator == null || !this.elementIterator.hasNext()) {
+                if (!this.queueIterator.hasNext()) {
+                    return false;
+                }
+                this.elementIterator = this.queueIterator.next().elements.iterator();
+            }
+
+            return true;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#next()
+         */
+        @Override
+        public T next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.lastReturned = this.elementIterator.next();
+            return this.lastReturned;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#remove()
+         */
+        @Override
+        public void remove() {
+            if (this.lastReturned == null) {
+                throw new IllegalStateException();
+            }
+
+            ConcurrentQualityOfServiceBlockingQueue.this.remove(this.lastReturned);
+            this.lastReturned = null;
+        }
+    }
+}
@@ -27,3 +27,7 @@
                     </c:forEach>
                 </form:select>
             </p>
+            <p>
+                <form:label path="percentiles"><spring:message code="execution.time.percentiles"/></form:label>
+                <form:checkbox path="percentiles" />
+            </p>
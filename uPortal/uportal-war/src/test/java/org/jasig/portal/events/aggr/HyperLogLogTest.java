@@ -0,0 +1,115 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link HyperLogLog}
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void testAccuracyAgainstExact() {
+        final Random r = new Random(0);
+        for (final int population : new int[] { 10, 100, 1000, 10000, 100000 }) {
+            for (final int precision : new int[] { 10, 12, 14 }) {
+                final HyperLogLog sketch = new HyperLogLog(precision);
+                final UniqueStrings exact = new UniqueStrings();
+                int exactCount = 0;
+
+                //Each user logs in about twice
+                for (int i = 0; i < population * 2; i++) {
+                    final String userName = "user" + r.nextInt(population);
+                    sketch.add(userName);
+                    if (exact.add(userName)) {
+                        exactCount++;
+                    }
+                }
+
+                //Allow four standard errors, plus one for rounding at small counts
+                final double allowedError = 4 * 1.04 / Math.sqrt(1 << precision) * exactCount + 1;
+                final long estimate = sketch.cardinality();
+                assertTrue("precision " + precision + " estimated " + estimate + " for " + exactCount + " unique strings",
+                        Math.abs(estimate - exactCount) <= allowedError);
+            }
+        }
+    }
+
+    @Test
+    public void testMergeEqualsUnion() {
+        final HyperLogLog monday = new HyperLogLog(12);
+        final HyperLogLog tuesday = new HyperLogLog(12);
+        final HyperLogLog week = new HyperLogLog(12);
+        for (int i = 0; i < 5000; i++) {
+            monday.add("user" + i);
+            week.add("user" + i);
+        }
+        for (int i = 2500; i < 9000; i++) {
+            tuesday.add("user" + i);
+            week.add("user" + i);
+        }
+
+        monday.merge(tuesday);
+        assertEquals(week, monday);
+        assertEquals(week.cardinality(), monday.cardinality());
+    }
+
+    @Test
+    public void testSerialization() {
+        final HyperLogLog empty = new HyperLogLog(14);
+        final byte[] emptyData = empty.toByteArray();
+        assertTrue("empty sketch serialized to " + emptyData.length + " bytes", emptyData.length < 100);
+        assertEquals(empty, HyperLogLog.fromByteArray(emptyData));
+
+        final HyperLogLog sketch = new HyperLogLog(14);
+        for (int i = 0; i < 50000; i++) {
+            sketch.add("user" + i);
+        }
+        final HyperLogLog copy = HyperLogLog.fromByteArray(sketch.toByteArray());
+        assertEquals(sketch, copy);
+        assertEquals(sketch.cardinality(), copy.cardinality());
+        assertEquals(14, copy.getPrecision());
+    }
+
+    @Test
+    public void testAddReportsChanges() {
+        final HyperLogLog sketch = new HyperLogLog(12);
+        assertTrue(sketch.add("admin"));
+        assertEquals(false, sketch.add("admin"));
+        assertEquals(1, sketch.cardinality());
+    }
+
+    @Test
+    public void testPrecisionMismatch() {
+        try {
+            new HyperLogLog(12).merge(new HyperLogLog(14));
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
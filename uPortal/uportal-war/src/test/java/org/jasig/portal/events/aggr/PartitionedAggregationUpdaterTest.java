@@ -0,0 +1,169 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasig.portal.events.handlers.db.AggregationAbortedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PartitionedAggregationUpdater}
+ */
+public class PartitionedAggregationUpdaterTest {
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        this.executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testUpdatesAppliedInOrderPerPartition() {
+        final PartitionedAggregationUpdater updater = new PartitionedAggregationUpdater(this.executorService, 100);
+
+        final int partitions = 6;
+        final int updatesPerPartition = 10000;
+        final List<List<Integer>> applied = new ArrayList<List<Integer>>();
+        for (int p = 0; p < partitions; p++) {
+            //Not synchronized, updates for a partition must never run concurrently
+            applied.add(new ArrayList<Integer>());
+        }
+
+        for (int i = 0; i < updatesPerPartition; i++) {
+            for (int p = 0; p < partitions; p++) {
+                final List<Integer> partitionApplied = applied.get(p);
+                final int value = i;
+                updater.submit(p, new Runnable() {
+                    @Override
+                    public void run() {
+                        partitionApplied.add(value);
+                    }
+                });
+            }
+        }
+        updater.flush();
+
+        for (int p = 0; p < partitions; p++) {
+            final List<Integer> partitionApplied = applied.get(p);
+            assertEquals(updatesPerPartition, partitionApplied.size());
+            for (int i = 0; i < updatesPerPartition; i++) {
+                assertEquals(i, partitionApplied.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void testFlushAppliesPartialBatch() {
+        final PartitionedAggregationUpdater updater = new PartitionedAggregationUpdater(this.executorService, 1000);
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            updater.submit("a", new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+
+        updater.flush();
+        assertEquals(10, count.get());
+
+        //Nothing left to apply
+        updater.flush();
+        assertEquals(10, count.get());
+    }
+
+    @Test
+    public void testUpdateFailure() {
+        final PartitionedAggregationUpdater updater = new PartitionedAggregationUpdater(this.executorService, 10);
+        final IllegalStateException failure = new IllegalStateException("update failed");
+        updater.submit("a", new Runnable() {
+            @Override
+            public void run() {
+                throw failure;
+            }
+        });
+
+        try {
+            updater.flush();
+            fail("Expected AggregationAbortedException");
+        }
+        catch (AggregationAbortedException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void testCancelWaitsForRunningUpdates() throws Exception {
+        final PartitionedAggregationUpdater updater = new PartitionedAggregationUpdater(this.executorService, 2);
+        final CountDownLatch updateStarted = new CountDownLatch(1);
+        final AtomicBoolean updateRunning = new AtomicBoolean();
+        final AtomicInteger count = new AtomicInteger();
+        updater.submit("a", new Runnable() {
+            @Override
+            public void run() {
+                updateRunning.set(true);
+                updateStarted.countDown();
+                try {
+                    Thread.sleep(10000);
+                }
+                catch (InterruptedException e) {
+                    //Expected, still take a moment to stop
+                    try {
+                        Thread.sleep(100);
+                    }
+                    catch (InterruptedException e1) {
+                    }
+                }
+                updateRunning.set(false);
+            }
+        });
+        updater.submit("a", new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        });
+        
+        updateStarted.await();
+        updater.cancel();
+        
+        assertFalse(updateRunning.get());
+        assertEquals(0, count.get());
+    }
+}
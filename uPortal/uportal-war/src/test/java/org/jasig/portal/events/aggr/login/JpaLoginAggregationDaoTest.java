@@ -18,11 +18,21 @@
  */
 package org.jasig.portal.events.aggr.login;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Random;
 
+import javax.naming.CompositeName;
+
 import org.apache.commons.lang.RandomStringUtils;
+import org.apache.commons.lang.mutable.MutableObject;
+import org.jasig.portal.concurrency.CallableWithoutResult;
+import org.jasig.portal.concurrency.FunctionWithoutResult;
 import org.jasig.portal.events.aggr.AggregationInterval;
 import org.jasig.portal.events.aggr.AggregationIntervalInfo;
 import org.jasig.portal.events.aggr.BaseAggregationPrivateDao;
@@ -30,6 +40,11 @@ import org.jasig.portal.events.aggr.DateDimension;
 import org.jasig.portal.events.aggr.JpaBaseAggregationDaoTest;
 import org.jasig.portal.events.aggr.TimeDimension;
 import org.jasig.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.jasig.portal.groups.IEntityGroup;
+import org.jasig.portal.utils.Tuple;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
@@ -80,4 +95,74 @@ public class JpaLoginAggregationDaoTest
         final LoginAggregationImpl aggr = loginAggregationDao.createAggregation(key);
         return Collections.<LoginAggregationKey, LoginAggregationImpl>singletonMap(key, aggr);
     }
+
+    @Test
+    public void testUnclosedSketchAggregation() throws Exception {
+        final IEntityGroup entityGroupA = mock(IEntityGroup.class);
+        when(entityGroupA.getServiceName()).thenReturn(new CompositeName("local"));
+        when(entityGroupA.getName()).thenReturn("Group A");
+        when(compositeGroupService.findGroup("local.0")).thenReturn(entityGroupA);
+        
+        final DateTime start = new DateTime(1326734644000l, DateTimeZone.UTC).minuteOfDay().roundFloorCopy();
+        final DateTime end = start.plusMinutes(5);
+        final AggregationInterval interval = AggregationInterval.FIVE_MINUTE;
+        
+        final MutableObject keyObj = new MutableObject();
+        
+        //Start an aggregation that counts unique users with a sketch
+        this.executeInTransaction(new CallableWithoutResult() {
+            @Override
+            protected void callWithoutResult() {
+                final AggregatedGroupMapping groupA = aggregatedGroupLookupDao.getGroupMapping("local.0");
+                
+                populateDateTimeDimensions(start, end, new FunctionWithoutResult<Tuple<DateDimension, TimeDimension>>() {
+                    @Override
+                    protected void applyWithoutResult(Tuple<DateDimension, TimeDimension> input) {
+                        final DateTime instant = input.second.getTime().toDateTime(input.first.getDate());
+                        if (keyObj.getValue() == null && instant.equals(interval.determineStart(instant))) {
+                            final AggregationIntervalInfo intervalInfo = aggregationIntervalHelper.getIntervalInfo(interval, instant);
+                            final LoginAggregationKey key = createAggregationKey(intervalInfo, groupA);
+                            final LoginAggregationImpl aggregation = loginAggregationDao.createAggregation(key);
+                            
+                            aggregation.countUser("user1", 10);
+                            aggregation.countUser("user2", 10);
+                            aggregation.countUser("user1", 10);
+                            loginAggregationDao.updateAggregation(aggregation);
+                            
+                            keyObj.setValue(key);
+                        }
+                    }
+                });
+            }
+        });
+
+        //The sketch aggregation is unclosed, close it
+        this.execute(new CallableWithoutResult() {
+            @Override
+            protected void callWithoutResult() {
+                final Collection<LoginAggregationImpl> aggregations = loginAggregationDao
+                        .getUnclosedAggregations(start.minusDays(1), end.plusDays(1), interval);
+                assertEquals(1, aggregations.size());
+                
+                final LoginAggregationImpl aggregation = aggregations.iterator().next();
+                assertEquals(3, aggregation.getLoginCount());
+                assertEquals(2, aggregation.getUniqueLoginCount());
+                
+                aggregation.intervalComplete(5);
+                loginAggregationDao.updateAggregation(aggregation);
+            }
+        });
+
+        //Closed, the sketch has been dropped and the counts are kept
+        this.execute(new CallableWithoutResult() {
+            @Override
+            protected void callWithoutResult() {
+                assertEquals(0, loginAggregationDao.getUnclosedAggregations(start.minusDays(1), end.plusDays(1), interval).size());
+                
+                final LoginAggregationImpl aggregation = loginAggregationDao.getAggregation((LoginAggregationKey) keyObj.getValue());
+                assertEquals(3, aggregation.getLoginCount());
+                assertEquals(2, aggregation.getUniqueLoginCount());
+            }
+        });
+    }
 }
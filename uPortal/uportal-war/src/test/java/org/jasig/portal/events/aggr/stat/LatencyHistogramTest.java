@@ -0,0 +1,112 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.aggr.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentileAccuracy() {
+        final Random r = new Random(0);
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            //Log-normal execution times centered around 20ms
+            values[i] = (long) (Math.exp(r.nextGaussian()) * 20000000);
+            histogram.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (final double percentile : new double[] { 50, 90, 95, 99, 99.9, 100 }) {
+            final long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            final double estimate = histogram.getPercentile(percentile);
+            assertTrue("p" + percentile + " estimated " + estimate + " for " + exact,
+                    Math.abs(estimate - exact) <= exact * 0.035);
+        }
+    }
+
+    @Test
+    public void testSmallValuesExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.add(i);
+        }
+        assertEquals(5.0, histogram.getPercentile(50), 0);
+        assertEquals(9.0, histogram.getPercentile(90), 0);
+        assertEquals(10.0, histogram.getPercentile(100), 0);
+        assertTrue(Double.isNaN(new LatencyHistogram().getPercentile(50)));
+    }
+
+    @Test
+    public void testMergeEqualsCombined() {
+        final Random r = new Random(1);
+        final LatencyHistogram hour1 = new LatencyHistogram();
+        final LatencyHistogram hour2 = new LatencyHistogram();
+        final LatencyHistogram day = new LatencyHistogram();
+        for (int i = 0; i < 10000; i++) {
+            final long value = (long) (r.nextDouble() * 1000000000L);
+            (i % 3 == 0 ? hour1 : hour2).add(value);
+            day.add(value);
+        }
+
+        hour1.merge(hour2);
+        assertEquals(day, hour1);
+        assertEquals(day.getPercentile(99), hour1.getPercentile(99), 0);
+    }
+
+    @Test
+    public void testSerialization() {
+        final LatencyHistogram empty = new LatencyHistogram();
+        assertEquals(empty, LatencyHistogram.fromByteArray(empty.toByteArray()));
+
+        final Random r = new Random(2);
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 10000; i++) {
+            histogram.add((long) (Math.exp(r.nextGaussian() * 2) * 5000000));
+        }
+        histogram.add(Long.MAX_VALUE);
+
+        final byte[] data = histogram.toByteArray();
+        assertTrue("serialized to " + data.length + " bytes", data.length < 1000);
+        final LatencyHistogram copy = LatencyHistogram.fromByteArray(data);
+        assertEquals(histogram, copy);
+        assertEquals(10001, copy.getTotalCount());
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            final long lower = LatencyHistogram.bucketLowerBound(i);
+            assertTrue(lower > LatencyHistogram.bucketLowerBound(i - 1));
+            assertEquals(i, LatencyHistogram.bucketIndex(lower));
+            assertEquals(i - 1, LatencyHistogram.bucketIndex(lower - 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.events.handlers;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Tests for {@link QueueingEventHandler}
+ */
+public class QueueingEventHandlerTest {
+    private File spillDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        this.spillDirectory = File.createTempFile("QueueingEventHandlerTest", "");
+        this.spillDirectory.delete();
+        this.spillDirectory.mkdirs();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(this.spillDirectory);
+    }
+
+    @Test
+    public void testUnboundedQueue() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setBatchSize(3);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 10);
+
+        handler.flush();
+
+        assertEquals(10, handler.handledEvents.size());
+        assertEquals(4, handler.getStatistics().getFlushCount());
+        assertEquals(-1, handler.getStatistics().getQueueCapacity());
+        assertEquals(0, handler.getStatistics().getDroppedCount());
+    }
+
+    @Test
+    public void testDropNew() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setQueueCapacity(5);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.DROP_NEW);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 8);
+
+        assertEquals(5, handler.getStatistics().getQueueDepth());
+        assertEquals(3, handler.getStatistics().getDroppedCount());
+
+        handler.flush();
+        assertEquals(5, handler.handledEvents.size());
+        assertEquals("0", handler.handledEvents.get(0));
+        assertEquals("4", handler.handledEvents.get(4));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setQueueCapacity(5);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.DROP_OLDEST);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 8);
+
+        assertEquals(5, handler.getStatistics().getQueueDepth());
+        assertEquals(3, handler.getStatistics().getDroppedCount());
+
+        handler.flush();
+        assertEquals(5, handler.handledEvents.size());
+        assertEquals("3", handler.handledEvents.get(0));
+        assertEquals("7", handler.handledEvents.get(4));
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setQueueCapacity(100);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SAMPLE);
+        handler.setSampleRate(10);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 175);
+
+        //75 queued before sampling starts, 1 in 10 of the remaining 100
+        assertEquals(85, handler.getStatistics().getQueueDepth());
+        assertEquals(90, handler.getStatistics().getDroppedCount());
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setBeanName("testSpill");
+        handler.setBatchSize(4);
+        handler.setQueueCapacity(5);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SPILL);
+        handler.setSpillDirectory(this.spillDirectory);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 12);
+
+        assertEquals(5, handler.getStatistics().getQueueDepth());
+        assertEquals(7, handler.getStatistics().getSpilledCount());
+        assertTrue(handler.getStatistics().getSpillFileSize() > 0);
+
+        handler.flush();
+
+        assertEquals(12, handler.handledEvents.size());
+        for (int i = 0; i < 12; i++) {
+            assertEquals(String.valueOf(i), handler.handledEvents.get(i));
+        }
+        assertEquals(7, handler.getStatistics().getSpillReplayedCount());
+        assertEquals(0, handler.getStatistics().getSpillFileSize());
+        assertFalse(new File(this.spillDirectory, "testSpill.replay").exists());
+    }
+
+    @Test
+    public void testSpillSurvivesRestart() throws Exception {
+        TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setBeanName("testSpillRestart");
+        handler.setQueueCapacity(2);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SPILL);
+        handler.setSpillDirectory(this.spillDirectory);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 5);
+
+        //Simulate a restart with spilled events still on disk
+        handler = new TestQueueingEventHandler();
+        handler.setBeanName("testSpillRestart");
+        handler.setQueueCapacity(2);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SPILL);
+        handler.setSpillDirectory(this.spillDirectory);
+        handler.afterPropertiesSet();
+
+        handler.flush();
+        assertEquals(3, handler.handledEvents.size());
+        assertEquals("2", handler.handledEvents.get(0));
+    }
+
+    @Test
+    public void testSpillReplayFailureKeepsEvents() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setBeanName("testSpillReplayFailure");
+        handler.setBatchSize(4);
+        handler.setQueueCapacity(5);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SPILL);
+        handler.setSpillDirectory(this.spillDirectory);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 12);
+
+        //Fail the first replayed batch, the spilled events must not be lost
+        handler.failingEvent = "5";
+        handler.flush();
+        assertEquals(5, handler.handledEvents.size());
+        assertTrue(handler.getStatistics().getSpillFileSize() > 0);
+        assertTrue(new File(this.spillDirectory, "testSpillReplayFailure.replay").exists());
+
+        handler.failingEvent = null;
+        handler.flush();
+        assertEquals(12, handler.handledEvents.size());
+        assertEquals("11", handler.handledEvents.get(11));
+        assertEquals(0, handler.getStatistics().getSpillFileSize());
+        assertFalse(new File(this.spillDirectory, "testSpillReplayFailure.replay").exists());
+    }
+
+    @Test
+    public void testFailedFlushIsSpilled() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setBeanName("testFailedFlush");
+        handler.setQueueCapacity(5);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SPILL);
+        handler.setSpillDirectory(this.spillDirectory);
+        handler.afterPropertiesSet();
+        fireEvents(handler, 3);
+
+        handler.failingEvent = "0";
+        handler.flush();
+        assertEquals(0, handler.handledEvents.size());
+        assertEquals(3, handler.getStatistics().getSpilledCount());
+
+        handler.failingEvent = null;
+        handler.flush();
+        assertEquals(3, handler.handledEvents.size());
+    }
+
+    @Test
+    public void testSpillFileSizeInBytes() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setBeanName("testSpillFileSize");
+        handler.setQueueCapacity(1);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SPILL);
+        handler.setSpillDirectory(this.spillDirectory);
+        handler.afterPropertiesSet();
+
+        handler.onApplicationEvent(new TestEvent("queued"));
+        handler.onApplicationEvent(new TestEvent("\u00e9\u00e9"));
+
+        //Two 2 byte characters and a line break
+        assertEquals(5, handler.getStatistics().getSpillFileSize());
+        assertEquals(5, new File(this.spillDirectory, "testSpillFileSize.spill").length());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testSpillRequiresSupport() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.spillSupported = false;
+        handler.setQueueCapacity(5);
+        handler.setOverflowPolicy(EventQueueOverflowPolicy.SPILL);
+        handler.afterPropertiesSet();
+    }
+
+    @Test
+    public void testAdaptiveBatchSize() throws Exception {
+        final TestQueueingEventHandler handler = new TestQueueingEventHandler();
+        handler.setBatchSize(20);
+        handler.setAdaptiveBatchSize(true);
+        handler.setMinBatchSize(5);
+        handler.setMaxBatchSize(30);
+        handler.setTargetFlushTime(20);
+        handler.afterPropertiesSet();
+
+        //Slow flushes shrink the batch size down to the minimum
+        handler.flushDelay = 50;
+        fireEvents(handler, 40);
+        handler.flush();
+        assertEquals(5, handler.getStatistics().getBatchSize());
+
+        //Fast flushes of full batches grow it back up to the maximum
+        handler.flushDelay = 0;
+        fireEvents(handler, 500);
+        handler.flush();
+        assertEquals(30, handler.getStatistics().getBatchSize());
+        assertEquals(540, handler.getStatistics().getFlushedEventCount());
+    }
+
+    private void fireEvents(TestQueueingEventHandler handler, int count) {
+        final int start = handler.firedCount;
+        for (int i = start; i < start + count; i++) {
+            handler.onApplicationEvent(new TestEvent(String.valueOf(i)));
+        }
+        handler.firedCount += count;
+    }
+
+    private static final class TestEvent extends ApplicationEvent {
+        private static final long serialVersionUID = 1L;
+
+        public TestEvent(String data) {
+            super(data);
+        }
+    }
+
+    private static final class TestQueueingEventHandler extends QueueingEventHandler<TestEvent> {
+        private final List<String> handledEvents = new ArrayList<String>();
+        private long flushDelay = 0;
+        private int firedCount = 0;
+        private boolean spillSupported = true;
+        private String failingEvent = null;
+
+        @Override
+        protected void onApplicationEvents(Iterable<TestEvent> events) {
+            for (final TestEvent event : events) {
+                if (event.getSource().equals(this.failingEvent)) {
+                    throw new IllegalStateException("Failing on event " + this.failingEvent);
+                }
+            }
+            for (final TestEvent event : events) {
+                this.handledEvents.add((String) event.getSource());
+            }
+
+            if (this.flushDelay > 0) {
+                try {
+                    Thread.sleep(this.flushDelay);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        protected boolean isSpillSupported() {
+            return this.spillSupported;
+        }
+
+        @Override
+        protected String serializeEvent(TestEvent event) {
+            return (String) event.getSource();
+        }
+
+        @Override
+        protected TestEvent deserializeEvent(String data) {
+            return new TestEvent(data);
+        }
+    }
+}
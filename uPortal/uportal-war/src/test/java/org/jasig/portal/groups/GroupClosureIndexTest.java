@@ -0,0 +1,199 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.groups;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.jasig.portal.EntityIdentifier;
+import org.jasig.portal.security.IPerson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for {@link GroupClosureIndex}
+ */
+public class GroupClosureIndexTest {
+    private final Map<IGroupMember, List<IEntityGroup>> parents = new HashMap<IGroupMember, List<IEntityGroup>>();
+    private CacheManager cacheManager;
+    private GroupClosureIndex closureIndex;
+
+    @Before
+    public void setup() {
+        this.cacheManager = new CacheManager(new Configuration().name("GroupClosureIndexTest"));
+        final Cache cache = new Cache(new CacheConfiguration("ancestorCache", 100));
+        this.cacheManager.addCache(cache);
+
+        this.closureIndex = new GroupClosureIndex();
+        this.closureIndex.setAncestorCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheManager.shutdown();
+    }
+
+    @Test
+    public void testAncestors() throws Exception {
+        final IEntityGroup root = this.createGroup("local.0");
+        final IEntityGroup staff = this.createGroup("local.1", root);
+        final IEntityGroup faculty = this.createGroup("local.2", root);
+        final IEntityGroup admins = this.createGroup("local.3", staff, faculty);
+        final IEntityGroup other = this.createGroup("local.4");
+        final IGroupMember person = this.createEntity("jdoe", admins);
+
+        assertEquals(new HashSet<String>(Arrays.asList("local.3", "local.1", "local.2", "local.0")), this.closureIndex.getAncestorKeys(person));
+        assertEquals(new HashSet<String>(Arrays.asList("local.1", "local.2", "local.0")), this.closureIndex.getAncestorKeys(admins));
+        assertTrue(this.closureIndex.getAncestorKeys(root).isEmpty());
+
+        assertTrue(this.closureIndex.isDeepMemberOf(person, root));
+        assertTrue(this.closureIndex.isDeepMemberOf(person, admins));
+        assertTrue(this.closureIndex.isDeepMemberOf(admins, staff));
+        assertFalse(this.closureIndex.isDeepMemberOf(staff, admins));
+        assertFalse(this.closureIndex.isDeepMemberOf(person, other));
+
+        //root, staff, faculty and admins are each built once
+        assertEquals(4, this.closureIndex.getIndexedGroups());
+        assertEquals(3, this.closureIndex.getAncestorSetBuilds());
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        final IEntityGroup a = this.createGroup("local.0");
+        final IEntityGroup b = this.createGroup("local.1", a);
+        this.parents.put(a, Arrays.asList(b));
+        final IGroupMember person = this.createEntity("jdoe", b);
+
+        assertEquals(new HashSet<String>(Arrays.asList("local.0", "local.1")), this.closureIndex.getAncestorKeys(a));
+        assertEquals(new HashSet<String>(Arrays.asList("local.0", "local.1")), this.closureIndex.getAncestorKeys(b));
+        assertTrue(this.closureIndex.isDeepMemberOf(person, a));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        final IEntityGroup root = this.createGroup("local.0");
+        final IEntityGroup staff = this.createGroup("local.1", root);
+        final IEntityGroup admins = this.createGroup("local.2", staff);
+        final IEntityGroup other = this.createGroup("local.3");
+        final IEntityGroup unrelated = this.createGroup("local.4", other);
+
+        assertTrue(this.closureIndex.isDeepMemberOf(admins, root));
+        assertTrue(this.closureIndex.isDeepMemberOf(staff, root));
+        assertTrue(this.closureIndex.isDeepMemberOf(unrelated, other));
+
+        //Move staff from root to other, cached ancestors are stale until invalidated
+        this.parents.put(staff, Arrays.<IEntityGroup>asList(other));
+        assertTrue(this.closureIndex.isDeepMemberOf(admins, root));
+
+        this.closureIndex.invalidate("local.1");
+        assertFalse(this.closureIndex.isDeepMemberOf(admins, root));
+        assertTrue(this.closureIndex.isDeepMemberOf(admins, other));
+        assertTrue(this.closureIndex.isDeepMemberOf(staff, other));
+
+        //Group ids are per node so every cached set is dropped, not just the ones below staff
+        assertEquals(3, this.closureIndex.getInvalidatedAncestorSets());
+        assertTrue(this.closureIndex.isDeepMemberOf(unrelated, other));
+    }
+
+    @Test
+    public void testInvalidateAfterMembershipUpdate() throws Exception {
+        final IEntityGroup root = this.createGroup("local.0");
+        final IEntityGroup staff = this.createGroup("local.1", root);
+        final IEntityGroup admins = this.createGroup("local.2", staff);
+        final IEntityGroup other = this.createGroup("local.3");
+
+        assertTrue(this.closureIndex.isDeepMemberOf(admins, root));
+
+        //The store commits the move of staff from root to other and invalidates
+        this.closureIndex.invalidate("local.1");
+
+        //A lookup before staff reports its new containing groups caches the old ancestors
+        assertTrue(this.closureIndex.isDeepMemberOf(admins, root));
+
+        //The group service updates the members and invalidates again
+        this.parents.put(staff, Arrays.<IEntityGroup>asList(other));
+        this.closureIndex.invalidateMembers(Arrays.asList(staff));
+
+        assertFalse(this.closureIndex.isDeepMemberOf(admins, root));
+        assertTrue(this.closureIndex.isDeepMemberOf(admins, other));
+    }
+
+    @Test
+    public void testInvalidateDuringBuild() throws Exception {
+        final IEntityGroup root = this.createGroup("local.0");
+        final IEntityGroup staff = this.createGroup("local.1", root);
+        
+        //Invalidate while the ancestors of staff are being read
+        when(root.getContainingGroups()).thenAnswer(new Answer<Iterator<IEntityGroup>>() {
+            @Override
+            public Iterator<IEntityGroup> answer(InvocationOnMock invocation) throws Throwable {
+                closureIndex.invalidate("local.0");
+                return Collections.<IEntityGroup>emptyList().iterator();
+            }
+        });
+
+        assertTrue(this.closureIndex.isDeepMemberOf(staff, root));
+        assertEquals(0, this.closureIndex.getCachedAncestorSets());
+    }
+
+    private IEntityGroup createGroup(String key, IEntityGroup... groupParents) throws GroupsException {
+        final IEntityGroup group = mock(IEntityGroup.class);
+        when(group.isGroup()).thenReturn(true);
+        when(group.getEntityIdentifier()).thenReturn(new EntityIdentifier(key, IEntityGroup.class));
+        this.setupParents(group, groupParents);
+        return group;
+    }
+
+    private IGroupMember createEntity(String key, IEntityGroup... groupParents) throws GroupsException {
+        final IGroupMember entity = mock(IGroupMember.class);
+        when(entity.isGroup()).thenReturn(false);
+        when(entity.getEntityIdentifier()).thenReturn(new EntityIdentifier(key, IPerson.class));
+        this.setupParents(entity, groupParents);
+        return entity;
+    }
+
+    private void setupParents(final IGroupMember member, IEntityGroup... groupParents) throws GroupsException {
+        this.parents.put(member, Arrays.asList(groupParents));
+        when(member.getContainingGroups()).thenAnswer(new Answer<Iterator<IEntityGroup>>() {
+            @Override
+            public Iterator<IEntityGroup> answer(InvocationOnMock invocation) throws Throwable {
+                return parents.get(member).iterator();
+            }
+        });
+    }
+}
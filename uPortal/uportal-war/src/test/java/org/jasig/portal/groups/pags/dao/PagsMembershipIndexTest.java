@@ -0,0 +1,190 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.groups.pags.dao;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasig.portal.groups.pags.testers.StringEqualsTester;
+import org.jasig.portal.security.IPerson;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PagsMembershipIndex}
+ */
+public class PagsMembershipIndexTest {
+    private static final AtomicInteger TEST_COUNT = new AtomicInteger();
+
+    private IPerson person;
+
+    @Before
+    public void setup() {
+        TEST_COUNT.set(0);
+        person = mock(IPerson.class);
+        when(person.getAttributeValues("affiliation")).thenReturn(new Object[] { "staff", "student" });
+        when(person.getAttributeValues("campus")).thenReturn(new Object[] { "main" });
+    }
+
+    @Test
+    public void testContainingGroups() {
+        final IPersonAttributesGroupDefinition staff = group("Staff", test(StringEqualsTester.class, "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition faculty = group("Faculty", test(StringEqualsTester.class, "affiliation", "faculty"));
+        final IPersonAttributesGroupDefinition remote = group("Remote", test(StringEqualsTester.class, "campus", "remote"));
+
+        final PagsMembershipIndex index = PagsMembershipIndex.compile(set(staff, faculty, remote));
+        assertEquals(3, index.getGroupCount());
+
+        final Map<String, String> containingGroups = index.getContainingGroups(person);
+        assertEquals(Collections.singleton("Staff"), containingGroups.keySet());
+        assertEquals("Staff description", containingGroups.get("Staff"));
+
+        assertTrue(index.isMember("Staff", person));
+        assertFalse(index.isMember("Faculty", person));
+        assertFalse(index.isMember("Unknown", person));
+    }
+
+    @Test
+    public void testSharedTesters() {
+        final IPersonAttributesGroupDefinition first = group("First", test(CountingTester.class, "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition second = group("Second",
+                test(CountingTester.class, "affiliation", "staff"),
+                test(CountingTester.class, "campus", "main"));
+        final IPersonAttributesGroupDefinition third = group("Third", test(CountingTester.class, "campus", "main"));
+
+        final PagsMembershipIndex index = PagsMembershipIndex.compile(set(first, second, third));
+        assertEquals(2, index.getTesterCount());
+
+        assertEquals(3, index.getContainingGroups(person).size());
+        assertEquals(2, TEST_COUNT.get());
+    }
+
+    @Test
+    public void testAncestorMustContainPerson() {
+        final IPersonAttributesGroupDefinition parent = group("Parent", test(StringEqualsTester.class, "campus", "remote"));
+        final IPersonAttributesGroupDefinition child = group("Child", test(StringEqualsTester.class, "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition container = group("Container");
+        when(parent.getMembers()).thenReturn(set(child));
+        when(container.getMembers()).thenReturn(set(parent));
+
+        PagsMembershipIndex index = PagsMembershipIndex.compile(set(container, parent, child));
+        assertFalse(index.isMember("Child", person));
+        assertFalse(index.isMember("Container", person));
+        assertTrue(index.getContainingGroups(person).isEmpty());
+
+        //An ancestor with no tests does not restrict membership
+        when(container.getMembers()).thenReturn(set(child));
+        when(parent.getMembers()).thenReturn(Collections.<IPersonAttributesGroupDefinition>emptySet());
+        index = PagsMembershipIndex.compile(set(container, parent, child));
+        assertTrue(index.isMember("Child", person));
+        assertEquals(Collections.singleton("Child"), index.getContainingGroups(person).keySet());
+    }
+
+    @Test
+    public void testInvalidTester() {
+        final IPersonAttributesGroupDefinition broken = group("Broken",
+                test(StringEqualsTester.class, "affiliation", "staff"),
+                test("org.jasig.portal.groups.pags.testers.MissingTester", "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition child = group("Child", test(StringEqualsTester.class, "affiliation", "staff"));
+        when(broken.getMembers()).thenReturn(set(child));
+
+        final PagsMembershipIndex index = PagsMembershipIndex.compile(set(broken, child));
+        assertFalse(index.isMember("Broken", person));
+        assertFalse(index.isMember("Child", person));
+    }
+
+    @Test
+    public void testRecursiveGroups() {
+        final IPersonAttributesGroupDefinition a = group("A", test(StringEqualsTester.class, "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition b = group("B", test(StringEqualsTester.class, "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition c = group("C", test(StringEqualsTester.class, "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition d = group("D", test(StringEqualsTester.class, "affiliation", "staff"));
+        final IPersonAttributesGroupDefinition e = group("E", test(StringEqualsTester.class, "affiliation", "student"));
+        when(a.getMembers()).thenReturn(set(b));
+        when(b.getMembers()).thenReturn(set(a));
+        //D is reachable from E both directly and through C, which is not recursion
+        when(c.getMembers()).thenReturn(set(d));
+        when(e.getMembers()).thenReturn(set(c, d));
+
+        final PagsMembershipIndex index = PagsMembershipIndex.compile(set(a, b, c, d, e));
+        assertFalse(index.isMember("A", person));
+        assertFalse(index.isMember("B", person));
+        assertTrue(index.isMember("C", person));
+        assertTrue(index.isMember("D", person));
+    }
+
+    private static Set<IPersonAttributesGroupDefinition> set(IPersonAttributesGroupDefinition... definitions) {
+        return new LinkedHashSet<IPersonAttributesGroupDefinition>(Arrays.asList(definitions));
+    }
+
+    /**
+     * Create a group with a single test group containing all of the tests
+     */
+    private static IPersonAttributesGroupDefinition group(String name, IPersonAttributesGroupTestDefinition... tests) {
+        final IPersonAttributesGroupDefinition group = mock(IPersonAttributesGroupDefinition.class);
+        when(group.getName()).thenReturn(name);
+        when(group.getDescription()).thenReturn(name + " description");
+        when(group.getMembers()).thenReturn(Collections.<IPersonAttributesGroupDefinition>emptySet());
+
+        if (tests.length == 0) {
+            when(group.getTestGroups()).thenReturn(Collections.<IPersonAttributesGroupTestGroupDefinition>emptySet());
+        }
+        else {
+            final IPersonAttributesGroupTestGroupDefinition testGroup = mock(IPersonAttributesGroupTestGroupDefinition.class);
+            when(testGroup.getTests()).thenReturn(new LinkedHashSet<IPersonAttributesGroupTestDefinition>(Arrays.asList(tests)));
+            when(group.getTestGroups()).thenReturn(Collections.singleton(testGroup));
+        }
+
+        return group;
+    }
+
+    private static IPersonAttributesGroupTestDefinition test(Class<?> testerClass, String attributeName, String testValue) {
+        return test(testerClass.getName(), attributeName, testValue);
+    }
+
+    private static IPersonAttributesGroupTestDefinition test(String testerClassName, String attributeName, String testValue) {
+        final IPersonAttributesGroupTestDefinition test = mock(IPersonAttributesGroupTestDefinition.class);
+        when(test.getTesterClassName()).thenReturn(testerClassName);
+        when(test.getAttributeName()).thenReturn(attributeName);
+        when(test.getTestValue()).thenReturn(testValue);
+        return test;
+    }
+
+    public static class CountingTester extends StringEqualsTester {
+        public CountingTester(IPersonAttributesGroupTestDefinition definition) {
+            super(definition);
+        }
+
+        @Override
+        public boolean test(IPerson person) {
+            TEST_COUNT.incrementAndGet();
+            return super.test(person);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.i18n;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MessageCatalog}
+ */
+public class MessageCatalogTest {
+
+    @Test
+    public void testFallbackLocales() {
+        assertEquals(Arrays.asList(new Locale("en", "US", "POSIX"), new Locale("en", "US"), new Locale("en")),
+                MessageCatalog.getFallbackLocales(new Locale("en", "US", "POSIX")));
+        assertEquals(Arrays.asList(new Locale("en", "US"), new Locale("en")),
+                MessageCatalog.getFallbackLocales(new Locale("en", "US")));
+        assertEquals(Arrays.asList(new Locale("en")),
+                MessageCatalog.getFallbackLocales(new Locale("en")));
+    }
+
+    @Test
+    public void testMoreSpecificLocaleWins() {
+        final Locale enUs = new Locale("en", "US");
+        final Locale en = new Locale("en");
+        final List<Set<Message>> messagesByLocale = Arrays.asList(
+                messages(message("color", enUs, "color")),
+                messages(message("color", en, "colour"), message("tab", en, "Tab {0}")));
+
+        final MessageCatalog catalog = new MessageCatalog(enUs, messagesByLocale);
+        assertEquals(2, catalog.size());
+        assertEquals("color", catalog.getMessage("color"));
+        assertEquals("Tab {0}", catalog.getMessage("tab"));
+        assertEquals("Tab 2", catalog.getMessageFormat("tab").format(new Object[] { 2 }));
+        assertNull(catalog.getMessage("missing"));
+        assertNull(catalog.getMessageFormat("missing"));
+    }
+
+    @Test
+    public void testInvalidPattern() {
+        final Locale en = new Locale("en");
+        final List<Set<Message>> messagesByLocale = Collections.singletonList(messages(message("broken", en, "Tab {0")));
+
+        final MessageCatalog catalog = new MessageCatalog(en, messagesByLocale);
+        assertEquals("Tab {0", catalog.getMessage("broken"));
+        assertNull(catalog.getMessageFormat("broken"));
+    }
+
+    private static Set<Message> messages(Message... messages) {
+        return new HashSet<Message>(Arrays.asList(messages));
+    }
+
+    private static Message message(final String code, final Locale locale, final String value) {
+        return new Message() {
+            @Override
+            public long getId() {
+                return 0;
+            }
+
+            @Override
+            public String getCode() {
+                return code;
+            }
+
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public void setValue(String value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return locale;
+            }
+        };
+    }
+}
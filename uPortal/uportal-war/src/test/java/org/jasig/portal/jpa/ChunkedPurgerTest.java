@@ -0,0 +1,97 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.jpa;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jasig.portal.jpa.ChunkedPurger.PurgeResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+
+/**
+ * Tests for {@link ChunkedPurger}
+ */
+public class ChunkedPurgerTest {
+    private ChunkedPurger chunkedPurger;
+
+    @Before
+    public void setup() {
+        this.chunkedPurger = new ChunkedPurger();
+        this.chunkedPurger.setChunkSize(10);
+        this.chunkedPurger.setChunkDelay(0);
+    }
+
+    @Test
+    public void testPurgeUntilComplete() {
+        final List<Integer> requested = new ArrayList<Integer>();
+        final PurgeResult result = this.chunkedPurger.purge("test", new Function<Integer, Integer>() {
+            private int remaining = 25;
+
+            @Override
+            public Integer apply(Integer maxRows) {
+                requested.add(maxRows);
+                final int deleted = Math.min(maxRows, remaining);
+                remaining -= deleted;
+                return deleted;
+            }
+        });
+
+        assertEquals(25, result.getDeleted());
+        assertEquals(3, result.getChunks());
+        assertTrue(result.isComplete());
+        assertEquals(3, requested.size());
+        assertEquals(10, (int) requested.get(0));
+
+        assertEquals(25L, (long) this.chunkedPurger.getLastPurgeCounts().get("test"));
+        assertTrue(this.chunkedPurger.getRunningPurges().isEmpty());
+    }
+
+    @Test
+    public void testMaxPurgeTime() {
+        this.chunkedPurger.setMaxPurgeTime(0);
+
+        final PurgeResult result = this.chunkedPurger.purge("test", new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer maxRows) {
+                return maxRows;
+            }
+        });
+
+        assertEquals(10, result.getDeleted());
+        assertEquals(1, result.getChunks());
+        assertFalse(result.isComplete());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testConcurrentPurgeRejected() {
+        this.chunkedPurger.purge("test", new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer maxRows) {
+                return chunkedPurger.purge("test", this).getDeleted();
+            }
+        });
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.jasig.portal.layout.dlm.Constants;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests for {@link CompactLayoutTree}
+ */
+public class CompactLayoutTreeTest {
+    private static final String LAYOUT =
+            "<layout xmlns:dlm=\"" + Constants.NS_URI + "\" ID=\"u1l1\">" +
+                "<folder ID=\"s1\" name=\"Root\" type=\"root\">" +
+                    "<folder ID=\"u2l1s2\" dlm:fragment=\"0\" name=\"Welcome\" type=\"regular\">" +
+                        "<channel ID=\"u2l1n3\" fname=\"welcome\"><parameter name=\"a\" value=\"b\"/></channel>" +
+                    "</folder>" +
+                    "<!-- comment -->text" +
+                "</folder>" +
+            "</layout>";
+
+    @Test
+    public void testToDocument() throws Exception {
+        final Document original = parse(LAYOUT);
+        final CompactLayoutTree tree = CompactLayoutTree.fromDocument(original);
+        assertEquals(7, tree.getNodeCount());
+
+        final Document copy = tree.toDocument();
+        final Element channel = copy.getElementById("u2l1n3");
+        assertNotNull(channel);
+        assertEquals("welcome", channel.getAttribute("fname"));
+
+        final Element folder = copy.getElementById("u2l1s2");
+        assertEquals("0", folder.getAttributeNS(Constants.NS_URI, "fragment"));
+
+        //The copy is independent of the tree
+        channel.setAttribute("fname", "changed");
+        assertEquals("welcome", tree.toDocument().getElementById("u2l1n3").getAttribute("fname"));
+    }
+
+    @Test
+    public void testEventReader() throws Exception {
+        final CompactLayoutTree tree = CompactLayoutTree.fromDocument(parse(LAYOUT));
+
+        final String first = write(tree.getEventReader());
+        assertEquals(first, write(tree.getEventReader()));
+
+        final Document reparsed = parse(first.substring(first.indexOf("<layout")));
+        assertEquals("0", reparsed.getElementsByTagName("folder").item(1).getAttributes().getNamedItemNS(Constants.NS_URI, "fragment").getNodeValue());
+        assertTrue(first.contains("<!-- comment -->text"));
+    }
+
+    @Test
+    public void testNonNamespaceAwareDocument() throws Exception {
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        final Element layout = document.createElement("layout");
+        document.appendChild(layout);
+        layout.setAttribute(Constants.NS_DECL, Constants.NS_URI);
+        final Element folder = document.createElement("folder");
+        folder.setAttribute(Constants.ATT_ORIGIN, "u2l1s2");
+        layout.appendChild(folder);
+        final Element channel = document.createElementNS(Constants.NS_URI, "dlm:delete");
+        folder.appendChild(channel);
+
+        final XMLEventReader eventReader = CompactLayoutTree.fromDocument(document).getEventReader();
+        boolean foundOrigin = false;
+        boolean foundDelete = false;
+        while (eventReader.hasNext()) {
+            final XMLEvent event = eventReader.nextEvent();
+            if (!event.isStartElement()) {
+                continue;
+            }
+
+            final StartElement startElement = event.asStartElement();
+            if ("folder".equals(startElement.getName().getLocalPart())) {
+                final String origin = startElement.getAttributeByName(new QName(Constants.NS_URI, "origin")).getValue();
+                assertEquals("u2l1s2", origin);
+                foundOrigin = true;
+            }
+            else if ("delete".equals(startElement.getName().getLocalPart())) {
+                assertEquals(Constants.NS_URI, startElement.getName().getNamespaceURI());
+                foundDelete = true;
+            }
+        }
+        assertTrue(foundOrigin);
+        assertTrue(foundDelete);
+        assertFalse(eventReader.hasNext());
+    }
+
+    private static Document parse(String xml) throws Exception {
+        final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        final Document document = documentBuilderFactory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        final Element root = document.getDocumentElement();
+        markIds(root);
+        return document;
+    }
+
+    private static void markIds(Element element) {
+        if (element.hasAttribute("ID")) {
+            element.setIdAttribute("ID", true);
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                markIds((Element) child);
+            }
+        }
+    }
+
+    private static String write(XMLEventReader eventReader) throws Exception {
+        final StringWriter writer = new StringWriter();
+        final XMLEventWriter eventWriter = XMLOutputFactory.newFactory().createXMLEventWriter(writer);
+        eventWriter.add(eventReader);
+        eventWriter.close();
+        return writer.toString();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.dlm;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests for {@link ILFBuilder}
+ */
+public class ILFBuilderTest {
+    private static final String FRAGMENT_1 =
+            "<layout ID=\"u2l1\">" +
+                "<folder ID=\"u2l1s1\" type=\"root\">" +
+                    "<folder ID=\"u2l1s2\" type=\"regular\">" +
+                        "<channel ID=\"u2l1n3\" chanID=\"10\"/>" +
+                        "<channel ID=\"u2l1n4\" chanID=\"11\"/>" +
+                    "</folder>" +
+                "</folder>" +
+            "</layout>";
+    private static final String FRAGMENT_2 =
+            "<layout ID=\"u3l1\">" +
+                "<folder ID=\"u3l1s1\" type=\"root\">" +
+                    "<folder ID=\"u3l1s2\" type=\"regular\">" +
+                        "<channel ID=\"u3l1n3\" chanID=\"12\"/>" +
+                    "</folder>" +
+                "</folder>" +
+            "</layout>";
+    private static final String PLF =
+            "<layout ID=\"u9l1\" struct=\"1\">" +
+                "<folder ID=\"s1\" name=\"Root folder\" type=\"root\">" +
+                    "<channel ID=\"n2\" chanID=\"20\"/>" +
+                "</folder>" +
+            "</layout>";
+
+    @Test
+    public void testConstructILFFromTemplate() throws Exception {
+        final List<Document> fragments = Arrays.asList(parse(FRAGMENT_1), parse(FRAGMENT_2));
+        final Document template = ILFBuilder.constructILFTemplate(fragments, Collections.singleton("11"));
+
+        final Document ilf = ILFBuilder.constructILF(parse(PLF), template);
+
+        final Element layout = ilf.getDocumentElement();
+        assertEquals("u9l1", layout.getAttribute("ID"));
+        assertEquals("1", layout.getAttribute("struct"));
+
+        final Element root = ilf.getElementById("s1");
+        assertNotNull(root);
+        assertSame(layout.getFirstChild(), root);
+        assertEquals("Root folder", root.getAttribute("name"));
+
+        //Fragment nodes are found by ID, the denied channel is left out and the PLF content is not merged
+        assertEquals(root, ilf.getElementById("u2l1s2").getParentNode());
+        assertNotNull(ilf.getElementById("u2l1n3"));
+        assertNull(ilf.getElementById("u2l1n4"));
+        assertNotNull(ilf.getElementById("u3l1n3"));
+        assertNull(ilf.getElementById("n2"));
+        assertEquals(2, countElements(root, "folder"));
+    }
+
+    @Test
+    public void testTemplateNotModified() throws Exception {
+        final List<Document> fragments = Arrays.asList(parse(FRAGMENT_1));
+        final Document template = ILFBuilder.constructILFTemplate(fragments, Collections.<String>emptySet());
+
+        final Document ilf = ILFBuilder.constructILF(parse(PLF), template);
+        ilf.getElementById("u2l1s2").setAttribute("name", "changed");
+        ilf.getElementById("s1").removeChild(ilf.getElementById("u2l1s2"));
+
+        final Element templateLayout = template.getDocumentElement();
+        assertEquals("", templateLayout.getAttribute("ID"));
+        assertEquals("", ((Element) templateLayout.getFirstChild()).getAttribute("ID"));
+        assertEquals("", template.getElementById("u2l1s2").getAttribute("name"));
+        assertNotNull(template.getElementById("u2l1n4"));
+
+        final Document second = ILFBuilder.constructILF(parse(PLF), template);
+        assertNotNull(second.getElementById("u2l1s2"));
+    }
+
+    private static int countElements(Element parent, String name) {
+        int count = 0;
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (name.equals(child.getNodeName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Document parse(String xml) throws Exception {
+        final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        final Document document = documentBuilderFactory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        markIds(document.getDocumentElement());
+        return document;
+    }
+
+    private static void markIds(Element element) {
+        if (element.hasAttribute("ID")) {
+            element.setIdAttribute("ID", true);
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                markIds((Element) child);
+            }
+        }
+    }
+}
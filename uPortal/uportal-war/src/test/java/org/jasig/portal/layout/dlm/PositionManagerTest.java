@@ -0,0 +1,236 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.dlm;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.jasig.portal.layout.IUserLayoutStore;
+import org.jasig.portal.spring.locator.UserLayoutStoreLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Tests for {@link PositionManager}
+ */
+public class PositionManagerTest {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private UserLayoutStoreLocator userLayoutStoreLocator;
+
+    @Before
+    public void setup() throws Exception {
+        //Precedence looks up the fragment precedence from the layout store
+        this.userLayoutStoreLocator = new UserLayoutStoreLocator(mock(IUserLayoutStore.class));
+        this.userLayoutStoreLocator.afterPropertiesSet();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        this.userLayoutStoreLocator.destroy();
+    }
+
+    @Test
+    public void testReparentNode() throws Exception {
+        final Document ilf = createFragment(2, 2);
+        final Element tab = ilf.getElementById("u2l1s1");
+        final Element positionSet = createPositionSet(createDocument(), "u2l1n0_0", "u2l1n1_0", "u2l1n1_1");
+
+        final IntegrationResult result = new IntegrationResult();
+        PositionManager.applyPositions(tab, positionSet, result);
+
+        assertTrue(result.isChangedILF());
+        assertFalse(result.isChangedPLF());
+        assertEquals(Arrays.asList("u2l1n0_0", "u2l1n1_0", "u2l1n1_1"), getChildIds(tab));
+        assertEquals(Arrays.asList("u2l1n0_1"), getChildIds(ilf.getElementById("u2l1s0")));
+    }
+
+    @Test
+    public void testReparentBlockedByLockedSibling() throws Exception {
+        final Document ilf = createFragment(2, 2);
+        ilf.getElementById("u2l1n1_0").setAttribute(Constants.ATT_MOVE_ALLOWED, "false");
+        final Element tab = ilf.getElementById("u2l1s1");
+        final Element positionSet = createPositionSet(createDocument(), "u2l1n0_0", "u2l1n1_0", "u2l1n1_1");
+
+        final IntegrationResult result = new IntegrationResult();
+        PositionManager.applyPositions(tab, positionSet, result);
+
+        assertFalse(result.isChangedILF());
+        assertTrue(result.isChangedPLF());
+        assertEquals(Arrays.asList("u2l1n1_0", "u2l1n1_1"), getChildIds(tab));
+        assertEquals(Arrays.asList("u2l1n0_0", "u2l1n0_1"), getChildIds(ilf.getElementById("u2l1s0")));
+        assertEquals(Arrays.asList("u2l1n1_0", "u2l1n1_1"), getPositionNames(positionSet));
+    }
+
+    /**
+     * Builds ILFs for a large synthetic layout where every tab pulls in a channel from the previous tab and
+     * logs the average time to create the ILF and merge the PLF into it.
+     */
+    @Ignore
+    @Test
+    public void benchmarkLargeLayout() throws Exception {
+        final int tabs = 100;
+        final int channels = 20;
+        final int iterations = 200;
+
+        final Document template = ILFBuilder.constructILFTemplate(
+                Collections.singletonList(createFragment(tabs, channels)), Collections.<String>emptySet());
+        final Document plf = createPlf(tabs, channels);
+
+        //Warm up
+        for (int i = 0; i < iterations; i++) {
+            buildIlf(plf, template);
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            buildIlf(plf, template);
+        }
+        final long duration = System.nanoTime() - start;
+
+        logger.info("Built {} ILFs with {} tabs of {} channels, {}ms per ILF",
+                iterations, tabs, channels, duration / 1000000d / iterations);
+    }
+
+    private static void buildIlf(Document plf, Document template) {
+        final Document plfCopy = (Document) plf.cloneNode(true);
+        final Document ilf = ILFBuilder.constructILF(plfCopy, template);
+        final IntegrationResult result = new IntegrationResult();
+        PLFIntegrator.mergePLFintoILF(plfCopy, ilf, result);
+        assertTrue(result.isChangedILF());
+    }
+
+    /**
+     * Fragment layout with tabs u2l1s[tab] containing channels u2l1n[tab]_[channel]
+     */
+    private static Document createFragment(int tabs, int channels) {
+        final Document document = createDocument();
+        final Element layout = document.createElement("layout");
+        layout.setAttribute(Constants.ATT_ID, "u2l1");
+        document.appendChild(layout);
+        final Element root = createNode(document, layout, "folder", "u2l1s");
+        root.setAttribute(Constants.ATT_TYPE, "root");
+
+        for (int tab = 0; tab < tabs; tab++) {
+            final Element folder = createNode(document, root, "folder", "u2l1s" + tab);
+            folder.setAttribute(Constants.ATT_TYPE, "regular");
+            for (int channel = 0; channel < channels; channel++) {
+                final Element node = createNode(document, folder, "channel", "u2l1n" + tab + "_" + channel);
+                node.setAttribute(Constants.ATT_CHANNEL_ID, Integer.toString(channel));
+            }
+        }
+
+        return document;
+    }
+
+    /**
+     * PLF where every tab after the first moves the first channel of the previous tab to its front
+     */
+    private static Document createPlf(int tabs, int channels) {
+        final Document document = createDocument();
+        final Element layout = document.createElement("layout");
+        layout.setAttribute(Constants.ATT_ID, "u9l1");
+        document.appendChild(layout);
+        final Element root = document.createElement("folder");
+        root.setAttribute(Constants.ATT_ID, "s1");
+        root.setIdAttribute(Constants.ATT_ID, true);
+        root.setAttribute(Constants.ATT_TYPE, "root");
+        layout.appendChild(root);
+
+        for (int tab = 1; tab < tabs; tab++) {
+            final Element folder = document.createElement("folder");
+            folder.setAttribute(Constants.ATT_ID, "u2l1s" + tab);
+            folder.setIdAttribute(Constants.ATT_ID, true);
+            root.appendChild(folder);
+
+            final String[] names = new String[channels + 1];
+            names[0] = "u2l1n" + (tab - 1) + "_0";
+            for (int channel = 0; channel < channels; channel++) {
+                names[channel + 1] = "u2l1n" + tab + "_" + channel;
+            }
+            folder.appendChild(createPositionSet(document, names));
+        }
+
+        return document;
+    }
+
+    private static Element createNode(Document document, Element parent, String name, String id) {
+        final Element node = document.createElement(name);
+        node.setAttribute(Constants.ATT_ID, id);
+        node.setIdAttribute(Constants.ATT_ID, true);
+        node.setAttribute(Constants.ATT_HIDDEN, "false");
+        node.setAttribute(Constants.ATT_FRAGMENT, "0");
+        parent.appendChild(node);
+        return node;
+    }
+
+    private static Element createPositionSet(Document document, String... names) {
+        final Element positionSet = document.createElement(Constants.ELM_POSITION_SET);
+        for (int i = 0; i < names.length; i++) {
+            final Element position = document.createElement(Constants.ELM_POSITION);
+            position.setAttribute(Constants.ATT_ID, "p" + i);
+            position.setAttribute(Constants.ATT_NAME, names[i]);
+            positionSet.appendChild(position);
+        }
+        return positionSet;
+    }
+
+    private static List<String> getChildIds(Element parent) {
+        return getAttributes(parent, Constants.ATT_ID);
+    }
+
+    private static List<String> getPositionNames(Element positionSet) {
+        return getAttributes(positionSet, Constants.ATT_NAME);
+    }
+
+    private static List<String> getAttributes(Element parent, String attribute) {
+        final List<String> values = new ArrayList<String>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            values.add(((Element) child).getAttribute(attribute));
+        }
+        return values;
+    }
+
+    private static Document createDocument() {
+        try {
+            final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            documentBuilderFactory.setNamespaceAware(true);
+            return documentBuilderFactory.newDocumentBuilder().newDocument();
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.layout.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.jasig.portal.layout.simple.LayoutRowSet.Delta;
+import org.jasig.portal.layout.simple.LayoutRowSet.StructureRow;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LayoutRowSet}
+ */
+public class LayoutRowSetTest {
+
+    @Test
+    public void testUnchangedLayout() {
+        final Delta delta = createLayout().computeDelta(createLayout());
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    public void testEmptyStringMatchesNull() {
+        final LayoutRowSet existing = new LayoutRowSet();
+        existing.addStructure(new StructureRow(2, 0, 3, null, null, null, "regular", "N", "N", "N"));
+
+        final LayoutRowSet rows = new LayoutRowSet();
+        rows.addStructure(new StructureRow(2, 0, 3, null, null, "", "regular", "N", "N", "N"));
+
+        assertTrue(rows.computeDelta(existing).isEmpty());
+    }
+
+    @Test
+    public void testMovedPortlet() {
+        final LayoutRowSet existing = createLayout();
+
+        //Swap the order of the two portlets in the column
+        final LayoutRowSet rows = new LayoutRowSet();
+        rows.addStructure(new StructureRow(1, 0, 2, null, null, "Tab", "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(2, 0, 4, null, null, "Column", "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(3, 0, 0, null, 10, null, "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(4, 3, 0, null, 11, null, "regular", "N", "N", "N"));
+        rows.addParameter(1, "dlm:deleteAllowed", "false");
+        rows.addParameter(3, "skin", "blue");
+
+        final Delta delta = rows.computeDelta(existing);
+        assertEquals(0, delta.getStructureInserts().size());
+        assertEquals(3, delta.getStructureUpdates().size());
+        assertEquals(0, delta.getStructureDeletes().size());
+        assertTrue(delta.getParameterInserts().isEmpty());
+        assertTrue(delta.getParameterUpdates().isEmpty());
+        assertTrue(delta.getParameterDeletes().isEmpty());
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        final LayoutRowSet existing = createLayout();
+
+        //Remove portlet 4, add portlet 5, change a parameter value and add a new parameter
+        final LayoutRowSet rows = new LayoutRowSet();
+        rows.addStructure(new StructureRow(1, 0, 2, null, null, "Tab", "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(2, 0, 3, null, null, "Column", "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(3, 5, 0, null, 10, null, "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(5, 0, 0, null, 12, null, "regular", "N", "N", "N"));
+        rows.addParameter(1, "dlm:deleteAllowed", "false");
+        rows.addParameter(3, "skin", "red");
+        rows.addParameter(5, "skin", "green");
+
+        final Delta delta = rows.computeDelta(existing);
+        assertEquals(1, delta.getStructureInserts().size());
+        assertEquals(5, delta.getStructureInserts().get(0).getStructId());
+        assertEquals(1, delta.getStructureUpdates().size());
+        assertEquals(3, delta.getStructureUpdates().get(0).getStructId());
+        assertEquals(1, delta.getStructureDeletes().size());
+        assertEquals(4, delta.getStructureDeletes().get(0).getStructId());
+
+        assertEquals(1, delta.getParameterInserts().size());
+        assertEquals(5, delta.getParameterInserts().get(0).getStructId());
+        assertEquals(1, delta.getParameterUpdates().size());
+        assertEquals("red", delta.getParameterUpdates().get(0).getValue());
+        assertEquals(0, delta.getParameterDeletes().size());
+    }
+
+    private LayoutRowSet createLayout() {
+        final LayoutRowSet rows = new LayoutRowSet();
+        rows.addStructure(new StructureRow(1, 0, 2, null, null, "Tab", "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(2, 0, 3, null, null, "Column", "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(3, 4, 0, null, 10, null, "regular", "N", "N", "N"));
+        rows.addStructure(new StructureRow(4, 0, 0, null, 11, null, "regular", "N", "N", "N"));
+        rows.addParameter(1, "dlm:deleteAllowed", "false");
+        rows.addParameter(3, "skin", "blue");
+        return rows;
+    }
+}
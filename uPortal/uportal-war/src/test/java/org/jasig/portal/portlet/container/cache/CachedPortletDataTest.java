@@ -0,0 +1,78 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.container.cache;
+
+import static junit.framework.Assert.assertEquals;
+
+import org.jasig.portal.portlet.rendering.ResourcePortletOutputHandler;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Test CachedPortletData
+ */
+public class CachedPortletDataTest {
+    
+    @Test
+    public void testReplayWriterOutput() throws Exception {
+        final CachedPortletData<Long> cachedPortletData = new CachedPortletData<Long>(
+                1000l, "h\u00e9llo", null, "text/plain; charset=UTF-8", false, null, -1);
+        
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        cachedPortletData.replay(new ResourcePortletOutputHandler(response));
+        
+        assertEquals("h\u00e9llo", response.getContentAsString());
+    }
+    
+    @Test
+    public void testReplayEncodedWriterOutput() throws Exception {
+        final PortletOutputReplayStatistics replayStatistics = new PortletOutputReplayStatistics();
+        final CachedPortletData<Long> cachedPortletData = new CachedPortletData<Long>(
+                1000l, "h\u00e9llo", null, "text/plain; charset=UTF-8", false, null, -1);
+        cachedPortletData.enableEncodedReplay(replayStatistics);
+        
+        //First replay encodes the output
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        cachedPortletData.replay(new ResourcePortletOutputHandler(response));
+        
+        assertEquals("h\u00e9llo", response.getContentAsString());
+        assertEquals(1, replayStatistics.getReplayCount());
+        assertEquals(0, replayStatistics.getBytesSaved());
+        
+        //Second replay in the same charset re-uses the encoded bytes
+        response = new MockHttpServletResponse();
+        cachedPortletData.replay(new ResourcePortletOutputHandler(response));
+        
+        assertEquals("h\u00e9llo", response.getContentAsString());
+        assertEquals(2, replayStatistics.getReplayCount());
+        assertEquals(6, replayStatistics.getBytesSaved());
+        
+        //Replay in a different charset re-encodes the output
+        final CachedPortletData<Long> latinCachedPortletData = new CachedPortletData<Long>(
+                1000l, "h\u00e9llo", null, "text/plain; charset=ISO-8859-1", false, null, -1);
+        latinCachedPortletData.enableEncodedReplay(replayStatistics);
+        response = new MockHttpServletResponse();
+        latinCachedPortletData.replay(new ResourcePortletOutputHandler(response));
+        
+        assertEquals("h\u00e9llo", response.getContentAsString());
+        assertEquals(5, response.getContentAsByteArray().length);
+        assertEquals(3, replayStatistics.getReplayCount());
+        assertEquals(6, replayStatistics.getBytesSaved());
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.jasig.portal.portlet.container.services;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
@@ -60,6 +61,7 @@ public class PortletCookieServiceImplTest {
 		
 		PortletCookieServiceImpl cookieService = new PortletCookieServiceImpl();
 		cookieService.setPortletCookieDao(portletCookieDao);
+		cookieService.setExpirationWriteBehind(false);
 		
 		MockHttpServletRequest request = new MockHttpServletRequest();
 		MockHttpServletResponse response = new MockHttpServletResponse();
@@ -71,6 +73,41 @@ public class PortletCookieServiceImplTest {
 		EasyMock.verify(portletCookieDao);
 	}
 	
+	/**
+	 * Test {@link PortletCookieServiceImpl#updatePortalCookie(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)}
+	 * with write-behind expiration updates: repeated requests are coalesced into a single update that is written by
+	 * {@link PortletCookieServiceImpl#flushPortalCookieExpirations()}.
+	 */
+	@Test
+	public void testUpdatePortletCookieWriteBehind() {
+		IPortletCookieDao portletCookieDao = EasyMock.createMock(IPortletCookieDao.class);
+		
+		MockPortalCookie portalCookie = new MockPortalCookie();
+		portalCookie.setValue("ABCDEF");
+		EasyMock.expect(portletCookieDao.getPortalCookie("ABCDEF")).andReturn(portalCookie).times(3);
+		EasyMock.expect(portletCookieDao.updatePortalCookieExpirations(EasyMock.eq(Collections.singletonList("ABCDEF")), EasyMock.eq(PortletCookieServiceImpl.DEFAULT_MAX_AGE))).andReturn(1);
+		EasyMock.replay(portletCookieDao);
+		
+		PortletCookieServiceImpl cookieService = new PortletCookieServiceImpl();
+		cookieService.setPortletCookieDao(portletCookieDao);
+		
+		for (int i = 0; i < 3; i++) {
+			MockHttpServletRequest request = new MockHttpServletRequest();
+			request.getSession().setAttribute(PortletCookieServiceImpl.SESSION_ATTRIBUTE__PORTAL_COOKIE_ID, "ABCDEF");
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			cookieService.updatePortalCookie(request, response);
+			Assert.assertEquals(1, response.getCookies().length);
+		}
+		Assert.assertEquals(1, cookieService.getPendingExpirationUpdates());
+		Assert.assertEquals(2, cookieService.getCoalescedExpirationUpdates());
+		
+		cookieService.flushPortalCookieExpirations();
+		Assert.assertEquals(0, cookieService.getPendingExpirationUpdates());
+		Assert.assertEquals(1, cookieService.getExpirationFlushCount());
+		Assert.assertEquals(1, cookieService.getLastExpirationFlushBatchSize());
+		EasyMock.verify(portletCookieDao);
+	}
+	
 	/**
 	 * Test {@link PortletCookieServiceImpl#getOrCreatePortalCookie(javax.servlet.http.HttpServletRequest)}.
 	 * that results in creating a new PortalCookie.
@@ -21,7 +21,9 @@ package org.jasig.portal.portlet.dao.jpa;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 
 import javax.servlet.http.Cookie;
@@ -29,6 +31,7 @@ import javax.servlet.http.Cookie;
 import org.jasig.portal.portlet.dao.IPortletCookieDao;
 import org.jasig.portal.portlet.om.IPortalCookie;
 import org.jasig.portal.test.BasePortalJpaDaoTest;
+import org.joda.time.DateTime;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -108,4 +111,72 @@ public class JpaPortletCookieDaoImplTest extends BasePortalJpaDaoTest {
             }
         });
 	}
+
+	@Test
+	public void testUpdatePortalCookieExpirations() {
+        final String value = this.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return portletCookieDao.createPortalCookie(1).getValue();
+            }
+        });
+
+        this.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                assertEquals(1, portletCookieDao.updatePortalCookieExpirations(Arrays.asList(value, "missing"), 3600));
+                
+                //Expirations are never shortened
+                assertEquals(0, portletCookieDao.updatePortalCookieExpirations(Arrays.asList(value), 1));
+                
+                return null;
+            }
+        });
+
+        this.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                final IPortalCookie portalCookie = portletCookieDao.getPortalCookie(value);
+                assertNotNull(portalCookie);
+                assertTrue(portalCookie.getExpires().isAfter(DateTime.now().plusMinutes(50)));
+                
+                return null;
+            }
+        });
+	}
+
+	@Test
+	public void testPurgeExpiredCookiesInChunks() throws Exception {
+        this.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                for (int i = 0; i < 3; i++) {
+                    portletCookieDao.createPortalCookie(1);
+                }
+                
+                return null;
+            }
+        });
+        
+        Thread.sleep(1500);
+
+        this.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                assertEquals(2, portletCookieDao.purgeExpiredCookies(1, 2));
+                
+                return null;
+            }
+        });
+
+        this.execute(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                assertEquals(1, portletCookieDao.purgeExpiredCookies(1, 2));
+                assertEquals(0, portletCookieDao.purgeExpiredCookies(1, 2));
+                
+                return null;
+            }
+        });
+	}
 }
@@ -0,0 +1,53 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.marketplace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link GroupMembershipFingerprint}
+ */
+public class GroupMembershipFingerprintTest {
+
+    @Test
+    public void testGroupOrderIgnored() {
+        final GroupMembershipFingerprint first = new GroupMembershipFingerprint(Arrays.asList("local.0", "pags.students", "local.12"), false, null);
+        final GroupMembershipFingerprint second = new GroupMembershipFingerprint(Arrays.asList("local.12", "local.0", "pags.students", "local.0"), false, null);
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(3, second.getGroupKeys().size());
+    }
+
+    @Test
+    public void testDistinguishingAttributes() {
+        final GroupMembershipFingerprint student = new GroupMembershipFingerprint(Arrays.asList("local.0", "pags.students"), false, null);
+
+        assertFalse(student.equals(new GroupMembershipFingerprint(Arrays.asList("local.0"), false, null)));
+        assertFalse(student.equals(new GroupMembershipFingerprint(Arrays.asList("local.0", "pags.students"), true, null)));
+        assertFalse(student.equals(new GroupMembershipFingerprint(Arrays.asList("local.0", "pags.students"), false, "student1")));
+        assertFalse(new GroupMembershipFingerprint(Arrays.asList("local.0"), false, "student1")
+                .equals(new GroupMembershipFingerprint(Arrays.asList("local.0"), false, "student2")));
+    }
+}
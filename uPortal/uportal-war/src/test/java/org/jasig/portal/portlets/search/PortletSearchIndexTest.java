@@ -0,0 +1,180 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlets.search;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jasig.portal.portlet.om.IPortletDefinitionId;
+import org.jasig.portal.portlets.search.PortletSearchIndex.Field;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests for {@link PortletSearchIndex}, including a comparison against the linear scan it replaced
+ */
+public class PortletSearchIndexTest {
+    private static final Set<Field> ALL_FIELDS = EnumSet.allOf(Field.class);
+    private static final String[] WORDS = { "calendar", "email", "news", "weather", "campus", "map", "course",
+        "grades", "library", "bookmarks", "feed", "directory", "search", "student", "faculty", "employee",
+        "payroll", "events", "sports", "dining", "parking", "housing", "financial", "aid" };
+    
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+    
+    @Test
+    public void testSearchRanking() {
+        final PortletSearchIndex.Builder builder = new PortletSearchIndex.Builder();
+        final IPortletDefinitionId calendar = new TestPortletDefinitionId(1);
+        final IPortletDefinitionId events = new TestPortletDefinitionId(2);
+        final IPortletDefinitionId weather = new TestPortletDefinitionId(3);
+        builder.addPortlet(calendar, "Calendar")
+            .addField(Field.TITLE, "Calendar")
+            .addField(Field.FNAME, "calendar")
+            .addField(Field.DESCRIPTION, "Shows your schedule");
+        builder.addPortlet(events, "Campus Events")
+            .addField(Field.TITLE, "Campus Events")
+            .addField(Field.FNAME, "events")
+            .addField(Field.DESCRIPTION, "Events from the campus calendar");
+        builder.addPortlet(weather, "Weather")
+            .addField(Field.TITLE, "Weather")
+            .addField(Field.KEYWORD, "forecast")
+            .addField(Field.CATEGORY, "Campus Life");
+        final PortletSearchIndex searchIndex = builder.build();
+        
+        assertEquals(3, searchIndex.size());
+        assertEquals(Arrays.asList(calendar, events), searchIndex.search("CALENDAR", ALL_FIELDS));
+        assertEquals(Arrays.asList(calendar, events), searchIndex.search("cal", ALL_FIELDS));
+        assertEquals(Arrays.asList(calendar), searchIndex.search("cal", EnumSet.of(Field.TITLE)));
+        assertEquals(Arrays.asList(weather), searchIndex.search("forecast", ALL_FIELDS));
+        assertEquals(Arrays.asList(events, weather), searchIndex.search("campus", ALL_FIELDS));
+        assertEquals(Arrays.asList(events), searchIndex.search("campus", EnumSet.of(Field.TITLE, Field.DESCRIPTION)));
+        assertEquals(Arrays.asList(calendar), searchIndex.search("endar", EnumSet.of(Field.FNAME)));
+        assertTrue(searchIndex.search("calendars", ALL_FIELDS).isEmpty());
+        assertTrue(searchIndex.search("x", ALL_FIELDS).isEmpty());
+        assertEquals(3, searchIndex.search("", ALL_FIELDS).size());
+    }
+    
+    /**
+     * Verifies the index matches exactly the same portlets as a linear scan and logs the time taken by each
+     */
+    @Test
+    public void testMatchesLinearScan() {
+        final Random random = new Random(42);
+        final List<String[]> portlets = new ArrayList<String[]>();
+        final PortletSearchIndex.Builder builder = new PortletSearchIndex.Builder();
+        for (int i = 0; i < 1000; i++) {
+            final String title = randomWords(random, 2);
+            final String description = randomWords(random, 12);
+            final String fname = title.replace(' ', '-') + "-" + i;
+            portlets.add(new String[] { title, description, fname });
+            
+            builder.addPortlet(new TestPortletDefinitionId(i), title)
+                .addField(Field.TITLE, title)
+                .addField(Field.DESCRIPTION, description)
+                .addField(Field.FNAME, fname);
+        }
+        final PortletSearchIndex searchIndex = builder.build();
+        
+        final List<String> queries = new ArrayList<String>();
+        for (final String word : WORDS) {
+            for (int length = 1; length <= word.length(); length++) {
+                queries.add(word.substring(0, length));
+            }
+        }
+        queries.add("ar dir");
+        queries.add("-1");
+        queries.add("99");
+        
+        final int iterations = 20;
+        long scanTime = 0;
+        long indexTime = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (final String query : queries) {
+                long start = System.nanoTime();
+                final Set<Long> expected = new HashSet<Long>();
+                for (int i = 0; i < portlets.size(); i++) {
+                    final String[] portlet = portlets.get(i);
+                    if (portlet[0].toLowerCase().contains(query) || portlet[1].toLowerCase().contains(query) || portlet[2].toLowerCase().contains(query)) {
+                        expected.add((long) i);
+                    }
+                }
+                scanTime += System.nanoTime() - start;
+                
+                start = System.nanoTime();
+                final List<IPortletDefinitionId> results = searchIndex.search(query, ALL_FIELDS);
+                indexTime += System.nanoTime() - start;
+                
+                final Set<Long> actual = new HashSet<Long>();
+                for (final IPortletDefinitionId result : results) {
+                    actual.add(result.getLongId());
+                }
+                assertEquals(query, expected, actual);
+            }
+        }
+        
+        this.logger.info("{} searches over {} portlets: linear scan {}ms, index {}ms", 
+                iterations * queries.size(), portlets.size(), scanTime / 1000000, indexTime / 1000000);
+    }
+    
+    private static String randomWords(Random random, int count) {
+        final StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            final String word = WORDS[random.nextInt(WORDS.length)];
+            words.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+        }
+        return words.toString();
+    }
+    
+    private static final class TestPortletDefinitionId implements IPortletDefinitionId {
+        private static final long serialVersionUID = 1L;
+        
+        private final long id;
+        
+        public TestPortletDefinitionId(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getStringId() {
+            return Long.toString(this.id);
+        }
+
+        @Override
+        public long getLongId() {
+            return this.id;
+        }
+        
+        @Override
+        public String toString() {
+            return this.getStringId();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jasig.portal.IUserPreferencesManager;
+import org.jasig.portal.layout.IStylesheetUserPreferencesService;
+import org.jasig.portal.layout.IStylesheetUserPreferencesService.PreferencesScope;
+import org.jasig.portal.layout.IUserLayoutManager;
+import org.jasig.portal.layout.node.IUserLayoutFolderDescription;
+import org.jasig.portal.layout.node.IUserLayoutNodeDescription;
+import org.jasig.portal.layout.node.IUserLayoutNodeDescription.LayoutNodeType;
+import org.jasig.portal.portlet.om.IPortletWindow;
+import org.jasig.portal.portlet.om.IPortletWindowId;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
+import org.jasig.portal.url.IPortalRequestInfo;
+import org.jasig.portal.url.IUrlNodeSyntaxHelper;
+import org.jasig.portal.url.IUrlNodeSyntaxHelperRegistry;
+import org.jasig.portal.url.IUrlSyntaxProvider;
+import org.jasig.portal.url.UrlState;
+import org.jasig.portal.user.IUserInstance;
+import org.jasig.portal.user.IUserInstanceManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests for {@link PortletRenderingPrefetchStAXComponent}, the expected portlets follow the NORMAL mode rules
+ * in layout/structure/columns/columns.xsl
+ */
+public class PortletRenderingPrefetchStAXComponentTest {
+    @Mock private IPortletExecutionManager portletExecutionManager;
+    @Mock private IPortletWindowRegistry portletWindowRegistry;
+    @Mock private IUserInstanceManager userInstanceManager;
+    @Mock private IUserInstance userInstance;
+    @Mock private IUserPreferencesManager userPreferencesManager;
+    @Mock private IUserLayoutManager userLayoutManager;
+    @Mock private IUrlSyntaxProvider urlSyntaxProvider;
+    @Mock private IPortalRequestInfo portalRequestInfo;
+    @Mock private IUrlNodeSyntaxHelperRegistry urlNodeSyntaxHelperRegistry;
+    @Mock private IUrlNodeSyntaxHelper urlNodeSyntaxHelper;
+    @Mock private IStylesheetUserPreferencesService stylesheetUserPreferencesService;
+    @Mock private StAXPipelineComponent wrappedComponent;
+    
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final Map<String, List<String>> layoutChildren = new HashMap<String, List<String>>();
+    private final Map<String, IPortletWindowId> portletWindowIds = new HashMap<String, IPortletWindowId>();
+    private PortletRenderingPrefetchStAXComponent component;
+    
+    @Before
+    public void setup() {
+        initMocks(this);
+        
+        when(this.urlSyntaxProvider.getPortalRequestInfo(this.request)).thenReturn(this.portalRequestInfo);
+        when(this.portalRequestInfo.getUrlState()).thenReturn(UrlState.NORMAL);
+        when(this.userInstanceManager.getUserInstance(this.request)).thenReturn(this.userInstance);
+        when(this.userInstance.getPreferencesManager()).thenReturn(this.userPreferencesManager);
+        when(this.userPreferencesManager.getUserLayoutManager()).thenReturn(this.userLayoutManager);
+        when(this.urlNodeSyntaxHelperRegistry.getCurrentUrlNodeSyntaxHelper(this.request)).thenReturn(this.urlNodeSyntaxHelper);
+        when(this.urlNodeSyntaxHelper.getDefaultLayoutNodeId(this.request)).thenReturn("s2");
+        when(this.userLayoutManager.getRootFolderId()).thenReturn("root");
+        when(this.userLayoutManager.getChildIds(any(String.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                final List<String> children = layoutChildren.get(invocation.getArguments()[0]);
+                return Collections.enumeration(children != null ? children : Collections.<String>emptyList());
+            }
+        });
+        
+        //Regions, tabs and the special folders columns.xsl treats differently
+        this.addFolder("root", "s1", "header", false);
+        this.addPortlet("s1", "n1");
+        this.addFolder("root", "s2", IUserLayoutFolderDescription.REGULAR_TYPE, false);
+        this.addPortlet("s2", "n2");
+        this.addFolder("root", "s3", IUserLayoutFolderDescription.REGULAR_TYPE, false);
+        this.addFolder("s3", "s4", IUserLayoutFolderDescription.REGULAR_TYPE, false);
+        this.addPortlet("s4", "n3");
+        this.addFolder("root", "s5", IUserLayoutFolderDescription.SIDEBAR_TYPE, false);
+        this.addPortlet("s5", "n5");
+        this.addFolder("root", "s6", IUserLayoutFolderDescription.FAVORITES_TYPE, false);
+        this.addPortlet("s6", "n6");
+        this.addFolder("root", "s7", IUserLayoutFolderDescription.FAVORITE_COLLECTION_TYPE, false);
+        this.addPortlet("s7", "n7");
+        this.addFolder("root", "s8", IUserLayoutFolderDescription.REGULAR_TYPE, true);
+        this.addPortlet("s8", "n8");
+        this.addFolder("root", "s9", "footer", false);
+        this.addPortlet("s9", "n9");
+        
+        this.component = new PortletRenderingPrefetchStAXComponent();
+        this.component.setEnabled(true);
+        this.component.setPortletExecutionManager(this.portletExecutionManager);
+        this.component.setPortletWindowRegistry(this.portletWindowRegistry);
+        this.component.setUserInstanceManager(this.userInstanceManager);
+        this.component.setUrlSyntaxProvider(this.urlSyntaxProvider);
+        this.component.setUrlNodeSyntaxHelperRegistry(this.urlNodeSyntaxHelperRegistry);
+        this.component.setStylesheetUserPreferencesService(this.stylesheetUserPreferencesService);
+        this.component.setWrappedComponent(this.wrappedComponent);
+    }
+    
+    @Test
+    public void testRegionsAndFocusedTab() {
+        this.setFocusedTab("s3");
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        assertEquals(this.getPortletWindowIds("n1", "n3", "n9"), this.getPrefetchedPortletWindowIds());
+    }
+    
+    @Test
+    public void testNoFocusedTabUsesDefaultTab() {
+        this.setFocusedTab(null);
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        assertEquals(this.getPortletWindowIds("n1", "n2", "n9"), this.getPrefetchedPortletWindowIds());
+    }
+    
+    @Test
+    public void testHiddenFocusedTabUsesDefaultTab() {
+        this.setFocusedTab("s8");
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        assertEquals(this.getPortletWindowIds("n1", "n2", "n9"), this.getPrefetchedPortletWindowIds());
+    }
+    
+    @Test
+    public void testMissingFocusedTabUsesDefaultTab() {
+        this.setFocusedTab("s42");
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        assertEquals(this.getPortletWindowIds("n1", "n2", "n9"), this.getPrefetchedPortletWindowIds());
+    }
+    
+    @Test
+    public void testSidebarFocusedTabUsesDefaultTab() {
+        this.setFocusedTab("s5");
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        assertEquals(this.getPortletWindowIds("n1", "n2", "n9"), this.getPrefetchedPortletWindowIds());
+    }
+    
+    @Test
+    public void testFocusedFavoriteCollection() {
+        this.setFocusedTab("s7");
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        assertEquals(this.getPortletWindowIds("n1", "n7", "n9"), this.getPrefetchedPortletWindowIds());
+    }
+    
+    @Test
+    public void testMaximizedNotPrefetched() {
+        when(this.portalRequestInfo.getUrlState()).thenReturn(UrlState.MAX);
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        verify(this.portletExecutionManager, never()).prefetchPortletRenders(anyCollectionOf(IPortletWindowId.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
+        verify(this.wrappedComponent).getEventReader(this.request, this.response);
+    }
+    
+    @Test
+    public void testDisabled() {
+        this.component.setEnabled(false);
+        
+        this.component.getEventReader(this.request, this.response);
+        
+        verify(this.portletExecutionManager, never()).prefetchPortletRenders(anyCollectionOf(IPortletWindowId.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
+    }
+    
+    private void setFocusedTab(String focusedTabId) {
+        when(this.stylesheetUserPreferencesService.getStylesheetParameter(this.request, PreferencesScope.STRUCTURE, "focusedTabID")).thenReturn(focusedTabId);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Set<IPortletWindowId> getPrefetchedPortletWindowIds() {
+        final ArgumentCaptor<Collection> portletWindowIdsCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(this.portletExecutionManager).prefetchPortletRenders(portletWindowIdsCaptor.capture(), any(HttpServletRequest.class), any(HttpServletResponse.class));
+        return new LinkedHashSet<IPortletWindowId>(portletWindowIdsCaptor.getValue());
+    }
+    
+    private Set<IPortletWindowId> getPortletWindowIds(String... nodeIds) {
+        final Set<IPortletWindowId> result = new LinkedHashSet<IPortletWindowId>();
+        for (final String nodeId : nodeIds) {
+            result.add(this.portletWindowIds.get(nodeId));
+        }
+        return result;
+    }
+    
+    private void addChild(String parentId, String childId) {
+        List<String> children = this.layoutChildren.get(parentId);
+        if (children == null) {
+            children = new ArrayList<String>();
+            this.layoutChildren.put(parentId, children);
+        }
+        children.add(childId);
+    }
+    
+    private void addFolder(String parentId, String folderId, String folderType, boolean hidden) {
+        final IUserLayoutFolderDescription folder = mock(IUserLayoutFolderDescription.class);
+        when(folder.getType()).thenReturn(LayoutNodeType.FOLDER);
+        when(folder.getFolderType()).thenReturn(folderType);
+        when(folder.isHidden()).thenReturn(hidden);
+        when(this.userLayoutManager.getNode(folderId)).thenReturn(folder);
+        this.addChild(parentId, folderId);
+    }
+    
+    private void addPortlet(String parentId, String nodeId) {
+        final IUserLayoutNodeDescription portlet = mock(IUserLayoutNodeDescription.class);
+        when(portlet.getType()).thenReturn(LayoutNodeType.PORTLET);
+        when(this.userLayoutManager.getNode(nodeId)).thenReturn(portlet);
+        this.addChild(parentId, nodeId);
+        
+        final IPortletWindowId portletWindowId = mock(IPortletWindowId.class);
+        final IPortletWindow portletWindow = mock(IPortletWindow.class);
+        when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+        when(this.portletWindowRegistry.getOrCreateDefaultPortletWindowByLayoutNodeId(this.request, nodeId)).thenReturn(portletWindow);
+        this.portletWindowIds.put(nodeId, portletWindowId);
+    }
+}
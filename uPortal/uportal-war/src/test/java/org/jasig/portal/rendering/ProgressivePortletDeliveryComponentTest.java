@@ -0,0 +1,170 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jasig.portal.character.stream.CharacterEventBufferReader;
+import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.events.CharacterDataEvent;
+import org.jasig.portal.character.stream.events.CharacterDataEventImpl;
+import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.PortletContentPlaceholderEventImpl;
+import org.jasig.portal.portlet.om.IPortletWindowId;
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
+import org.jasig.portal.url.IPortalRequestInfo;
+import org.jasig.portal.url.IUrlSyntaxProvider;
+import org.jasig.portal.url.UrlState;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests for {@link ProgressivePortletDeliveryComponent}
+ */
+public class ProgressivePortletDeliveryComponentTest {
+    @Mock private IPortletExecutionManager portletExecutionManager;
+    @Mock private IUrlSyntaxProvider urlSyntaxProvider;
+    @Mock private IPortalRequestInfo portalRequestInfo;
+    @Mock private CharacterPipelineComponent wrappedComponent;
+    @Mock private IPortletWindowId fastPortletWindowId;
+    @Mock private IPortletWindowId slowPortletWindowId;
+    
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private ProgressivePortletDeliveryComponent component;
+    
+    @Before
+    public void setup() {
+        initMocks(this);
+        
+        when(this.urlSyntaxProvider.getPortalRequestInfo(this.request)).thenReturn(this.portalRequestInfo);
+        when(this.portalRequestInfo.getUrlState()).thenReturn(UrlState.NORMAL);
+        
+        this.component = new ProgressivePortletDeliveryComponent();
+        this.component.setPortletExecutionManager(this.portletExecutionManager);
+        this.component.setUrlSyntaxProvider(this.urlSyntaxProvider);
+        this.component.setWrappedComponent(this.wrappedComponent);
+        this.component.setEnabled(true);
+        this.component.setPollInterval(1);
+    }
+    
+    @Test
+    public void testSlowPortletDeferred() {
+        final CharacterEvent fastPlaceholder = new PortletContentPlaceholderEventImpl(this.fastPortletWindowId);
+        this.setupEvents(
+                CharacterDataEventImpl.create("<html><body>"),
+                new PortletContentPlaceholderEventImpl(this.slowPortletWindowId),
+                fastPlaceholder,
+                CharacterDataEventImpl.create("<p>footer</p></body></html>"));
+        
+        when(this.portletExecutionManager.isPortletRenderComplete(this.fastPortletWindowId, this.request, this.response)).thenReturn(true);
+        when(this.portletExecutionManager.isPortletRenderComplete(this.slowPortletWindowId, this.request, this.response)).thenReturn(false, false, true);
+        when(this.portletExecutionManager.getPortletOutput(this.slowPortletWindowId, this.request, this.response)).thenReturn("<p>slow</p>");
+        
+        final CharacterEventReader eventReader = this.component.getEventReader(this.request, this.response).getEventReader();
+        
+        assertEquals("<html><body>", getData(eventReader.next()));
+        assertEquals("<div id=\"up-deferred-portlet-1\" class=\"up-portlet-deferred\"></div>", getData(eventReader.next()));
+        //Complete portlets are left for the incorporation component
+        assertSame(fastPlaceholder, eventReader.next());
+        assertEquals("<p>footer</p>", getData(eventReader.next()));
+        
+        final String deferredContent = getData(eventReader.next());
+        assertTrue(deferredContent.startsWith("<div id=\"up-deferred-portlet-1-content\" style=\"display:none\"><p>slow</p></div><script"));
+        
+        assertEquals("</body></html>", getData(eventReader.next()));
+        assertFalse(eventReader.hasNext());
+    }
+    
+    @Test
+    public void testDeferredAtEndWithoutBody() {
+        this.setupEvents(
+                new PortletContentPlaceholderEventImpl(this.slowPortletWindowId),
+                CharacterDataEventImpl.create("<p>footer</p>"));
+        
+        when(this.portletExecutionManager.isPortletRenderComplete(this.slowPortletWindowId, this.request, this.response)).thenReturn(false);
+        when(this.portletExecutionManager.getPortletOutput(this.slowPortletWindowId, this.request, this.response)).thenReturn("<p>slow</p>");
+        this.component.setMaxPollTime(0);
+        
+        final CharacterEventReader eventReader = this.component.getEventReader(this.request, this.response).getEventReader();
+        
+        assertEquals("<div id=\"up-deferred-portlet-1\" class=\"up-portlet-deferred\"></div>", getData(eventReader.next()));
+        assertEquals("<p>footer</p>", getData(eventReader.next()));
+        assertTrue(getData(eventReader.next()).contains("<p>slow</p>"));
+        assertFalse(eventReader.hasNext());
+    }
+    
+    @Test
+    public void testMaxPollTimeSharedByDeferredPortlets() {
+        this.setupEvents(
+                new PortletContentPlaceholderEventImpl(this.slowPortletWindowId),
+                new PortletContentPlaceholderEventImpl(this.fastPortletWindowId));
+        
+        //Neither portlet ever reports complete
+        when(this.portletExecutionManager.isPortletRenderComplete(this.slowPortletWindowId, this.request, this.response)).thenReturn(false);
+        when(this.portletExecutionManager.isPortletRenderComplete(this.fastPortletWindowId, this.request, this.response)).thenReturn(false);
+        when(this.portletExecutionManager.getPortletOutput(this.slowPortletWindowId, this.request, this.response)).thenReturn("<p>slow</p>");
+        when(this.portletExecutionManager.getPortletOutput(this.fastPortletWindowId, this.request, this.response)).thenReturn("<p>fast</p>");
+        this.component.setMaxPollTime(500);
+        
+        final CharacterEventReader eventReader = this.component.getEventReader(this.request, this.response).getEventReader();
+        eventReader.next();
+        eventReader.next();
+        
+        final long start = System.currentTimeMillis();
+        assertTrue(getData(eventReader.next()).contains("<p>slow</p>"));
+        assertTrue(getData(eventReader.next()).contains("<p>fast</p>"));
+        assertFalse(eventReader.hasNext());
+        
+        //One max poll time for both portlets, not one each
+        assertTrue(System.currentTimeMillis() - start < 900);
+    }
+    
+    @Test
+    public void testDisabled() {
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader = this.setupEvents(
+                new PortletContentPlaceholderEventImpl(this.slowPortletWindowId));
+        this.component.setEnabled(false);
+        
+        assertSame(pipelineEventReader, this.component.getEventReader(this.request, this.response));
+    }
+    
+    private PipelineEventReader<CharacterEventReader, CharacterEvent> setupEvents(CharacterEvent... events) {
+        final List<CharacterEvent> eventBuffer = Arrays.asList(events);
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader = 
+                new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(new CharacterEventBufferReader(eventBuffer.listIterator()));
+        when(this.wrappedComponent.getEventReader(this.request, this.response)).thenReturn(pipelineEventReader);
+        return pipelineEventReader;
+    }
+    
+    private static String getData(CharacterEvent event) {
+        return ((CharacterDataEvent) event).getData();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.rendering;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests for {@link ResponseFlusher}
+ */
+public class ResponseFlusherTest {
+    
+    @Test
+    public void testImmediateFlush() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        final ResponseFlusher responseFlusher = new ResponseFlusher(request, response, new ImmediateFlushStrategy());
+        responseFlusher.write("abc");
+        responseFlusher.write("def");
+        responseFlusher.flush();
+        responseFlusher.close();
+        
+        assertEquals(2, responseFlusher.getFlushCount());
+        assertEquals(6, responseFlusher.getFlushedCharacters());
+        assertEquals("abcdef", response.getContentAsString());
+    }
+    
+    @Test
+    public void testCoalescingFlush() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        final CoalescingFlushStrategy flushStrategy = new CoalescingFlushStrategy();
+        flushStrategy.setBufferThreshold(10);
+        
+        final ResponseFlusher responseFlusher = new ResponseFlusher(request, response, flushStrategy);
+        for (int i = 0; i < 25; i++) {
+            responseFlusher.write("x");
+        }
+        assertEquals(2, responseFlusher.getFlushCount());
+        
+        responseFlusher.flush();
+        responseFlusher.close();
+        
+        assertEquals(3, responseFlusher.getFlushCount());
+        assertEquals(25, responseFlusher.getFlushedCharacters());
+        assertEquals(8, responseFlusher.getCharactersPerFlush());
+        assertEquals(25, response.getContentAsString().length());
+    }
+    
+    @Test
+    public void testFlushBeforeBlocking() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        final CoalescingFlushStrategy flushStrategy = new CoalescingFlushStrategy();
+        flushStrategy.setBufferThreshold(0);
+        
+        final ResponseFlusher responseFlusher = new ResponseFlusher(request, response, flushStrategy);
+        responseFlusher.write("<html>");
+        assertEquals(0, responseFlusher.getFlushCount());
+        
+        ResponseFlusher.flushBeforeBlocking(request);
+        assertEquals(1, responseFlusher.getFlushCount());
+        assertTrue(response.isCommitted());
+        
+        //Nothing buffered, no flush
+        ResponseFlusher.flushBeforeBlocking(request);
+        assertEquals(1, responseFlusher.getFlushCount());
+        
+        responseFlusher.close();
+        responseFlusher.write("</html>");
+        ResponseFlusher.flushBeforeBlocking(request);
+        assertEquals(1, responseFlusher.getFlushCount());
+    }
+}
@@ -25,6 +25,7 @@ import static org.easymock.EasyMock.notNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -33,7 +34,11 @@ import net.sf.ehcache.Element;
 
 import org.jasig.portal.character.stream.CharacterEventBufferReader;
 import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.events.CharacterDataEvent;
+import org.jasig.portal.character.stream.events.CharacterDataEventImpl;
 import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.PortletContentPlaceholderEventImpl;
+import org.jasig.portal.portlet.om.IPortletWindowId;
 import org.jasig.portal.rendering.CharacterPipelineComponent;
 import org.jasig.portal.rendering.PipelineEventReader;
 import org.jasig.portal.rendering.PipelineEventReaderImpl;
@@ -116,4 +121,45 @@ public class CachingCharacterPipelineComponentTest {
         
         verify(cache, targetComponent, elementsProvider);
     }
+    
+    @Test
+    public void testCacheMissCoalescesCharacterData() {
+        final MockHttpServletRequest mockReq = new MockHttpServletRequest();
+        final MockHttpServletResponse mockRes = new MockHttpServletResponse();
+        final CacheKey cacheKey = CacheKey.build("testCacheKey");
+        final CharacterEvent placeholderEvent = new PortletContentPlaceholderEventImpl(createMock(IPortletWindowId.class));
+        final List<CharacterEvent> eventBuffer = Arrays.<CharacterEvent>asList(
+                CharacterDataEventImpl.create("<div>"),
+                CharacterDataEventImpl.create("foo"),
+                placeholderEvent,
+                CharacterDataEventImpl.create("</div>"));
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> eventReader = new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(new CharacterEventBufferReader(eventBuffer.listIterator()));
+        
+        final Ehcache cache = createMock(Ehcache.class);
+        final CharacterPipelineComponent targetComponent = createMock(CharacterPipelineComponent.class);
+        final ResourcesElementsProvider elementsProvider = createMock(ResourcesElementsProvider.class);
+        
+        expect(elementsProvider.getDefaultIncludedType()).andReturn(Included.AGGREGATED);
+        expect(targetComponent.getCacheKey(mockReq, mockRes)).andReturn(cacheKey);
+        expect(cache.get(cacheKey)).andReturn(null);
+        expect(targetComponent.getEventReader(mockReq, mockRes)).andReturn(eventReader);
+        cache.put((Element)notNull());
+        expectLastCall();
+        
+        replay(cache, targetComponent, elementsProvider);
+        
+        final CachingCharacterPipelineComponent cachingComponent = new CachingCharacterPipelineComponent();
+        cachingComponent.setCache(cache);
+        cachingComponent.setWrappedComponent(targetComponent);
+        cachingComponent.setResourcesElementsProvider(elementsProvider);
+        
+        final CharacterEventReader actualEventReader = cachingComponent.getEventReader(mockReq, mockRes).getEventReader();
+        
+        Assert.assertEquals("<div>foo", ((CharacterDataEvent)actualEventReader.next()).getData());
+        Assert.assertSame(placeholderEvent, actualEventReader.next());
+        Assert.assertEquals("</div>", ((CharacterDataEvent)actualEventReader.next()).getData());
+        Assert.assertFalse(actualEventReader.hasNext());
+        
+        verify(cache, targetComponent, elementsProvider);
+    }
 }
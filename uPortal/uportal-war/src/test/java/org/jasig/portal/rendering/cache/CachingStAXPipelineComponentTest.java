@@ -25,14 +25,24 @@ import static org.easymock.EasyMock.notNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.events.XMLEvent;
 
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
 
 import org.jasig.portal.rendering.PipelineEventReader;
 import org.jasig.portal.rendering.PipelineEventReaderImpl;
@@ -117,4 +127,84 @@ public class CachingStAXPipelineComponentTest {
         
         verify(cache, targetComponent, elementsProvider);
     }
+    
+    @Test
+    public void testSingleFlightCoalescesConcurrentMisses() throws Exception {
+        final CacheKey cacheKey = CacheKey.build("testCacheKey");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger parentCalls = new AtomicInteger();
+        
+        final StAXPipelineComponent targetComponent = new StAXPipelineComponent() {
+            @Override
+            public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+                return cacheKey;
+            }
+            
+            @Override
+            public PipelineEventReader<XMLEventReader, XMLEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
+                parentCalls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                final List<XMLEvent> eventBuffer = Collections.emptyList();
+                return new PipelineEventReaderImpl<XMLEventReader, XMLEvent>(new XMLEventBufferReader(eventBuffer.listIterator()));
+            }
+        };
+        
+        final ResourcesElementsProvider elementsProvider = createMock(ResourcesElementsProvider.class);
+        expect(elementsProvider.getDefaultIncludedType()).andReturn(Included.AGGREGATED).anyTimes();
+        replay(elementsProvider);
+        
+        final CacheManager cacheManager = new CacheManager(new Configuration().name("testSingleFlightCoalescesConcurrentMisses"));
+        try {
+            final Cache cache = new Cache(new CacheConfiguration("events", 100));
+            cacheManager.addCache(cache);
+            
+            final CachingStAXPipelineComponent cachingComponent = new CachingStAXPipelineComponent();
+            cachingComponent.setCache(cache);
+            cachingComponent.setSingleFlight(true);
+            cachingComponent.setWrappedComponent(targetComponent);
+            cachingComponent.setResourcesElementsProvider(elementsProvider);
+            
+            final Runnable render = new Runnable() {
+                @Override
+                public void run() {
+                    cachingComponent.getEventReader(new MockHttpServletRequest(), new MockHttpServletResponse());
+                }
+            };
+            
+            final Thread leader = new Thread(render);
+            leader.start();
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            
+            final List<Thread> followers = new ArrayList<Thread>();
+            for (int i = 0; i < 4; i++) {
+                final Thread follower = new Thread(render);
+                follower.start();
+                followers.add(follower);
+            }
+            
+            release.countDown();
+            leader.join(5000);
+            for (final Thread follower : followers) {
+                follower.join(5000);
+            }
+            
+            final CachingPipelineComponentStatisticsMBean statistics = cachingComponent.getStatistics();
+            Assert.assertEquals(1, parentCalls.get());
+            Assert.assertEquals(1, statistics.getMissCount());
+            Assert.assertEquals(4, statistics.getHitCount() + statistics.getCoalescedCount());
+            Assert.assertEquals(0, statistics.getInFlightCount());
+        }
+        finally {
+            cacheManager.shutdown();
+        }
+        
+        verify(elementsProvider);
+    }
 }
@@ -0,0 +1,134 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.security.provider;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.jasig.portal.security.IPermission;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PrincipalPermissionIndex}
+ */
+public class PrincipalPermissionIndexTest {
+    private static final long ONE_DAY = 24L * 60L * 60L * 1000L;
+
+    @Test
+    public void testDirectGrantAndDeny() {
+        final PrincipalPermissionIndex.Builder builder = PrincipalPermissionIndex.builder("2.user");
+        builder.addPrincipal("2.user", new IPermission[] {
+                permission("2.user", "GRANT", "CUSTOMIZE", "ALL"),
+                permission("2.user", "DENY", "SUBSCRIBE", "ALL") });
+        final PrincipalPermissionIndex index = builder.build(new Date());
+
+        assertTrue(index.hasUnblockedGrant("UP_SYSTEM", "CUSTOMIZE", "ALL"));
+        assertFalse(index.hasUnblockedGrant("UP_SYSTEM", "SUBSCRIBE", "ALL"));
+        assertFalse(index.hasUnblockedGrant("UP_SYSTEM", "VIEW", "ALL"));
+        assertEquals(1, index.getGrantCount());
+        assertEquals(1, index.getTags().size());
+    }
+
+    @Test
+    public void testInheritedGrants() {
+        // user -- small (DENY) -- bigger (GRANT)
+        // user -- other -- bigger
+        // user -- other -- huge (GRANT VIEW)
+        final PrincipalPermissionIndex.Builder builder = PrincipalPermissionIndex.builder("2.user");
+        builder.addPrincipal("2.user", new IPermission[0]);
+        builder.addParent("2.user", "3.small");
+        builder.addParent("2.user", "3.other");
+        builder.addPrincipal("3.small", new IPermission[] {
+                permission("3.small", "DENY", "SUBSCRIBE", "P1"),
+                permission("3.small", "DENY", "BROWSE", "P1") });
+        builder.addParent("3.small", "3.bigger");
+        builder.addPrincipal("3.other", new IPermission[] {
+                permission("3.other", "DENY", "BROWSE", "P1") });
+        builder.addParent("3.other", "3.bigger");
+        builder.addParent("3.other", "3.huge");
+        builder.addPrincipal("3.bigger", new IPermission[] {
+                permission("3.bigger", "GRANT", "SUBSCRIBE", "P1"),
+                permission("3.bigger", "GRANT", "BROWSE", "P1") });
+        builder.addPrincipal("3.huge", new IPermission[] {
+                permission("3.huge", "GRANT", "VIEW", "P1") });
+        assertFalse(builder.addPrincipal("3.bigger", new IPermission[0]));
+
+        final PrincipalPermissionIndex index = builder.build(new Date());
+
+        // Blocked through small but not through other
+        assertTrue(index.hasUnblockedGrant("UP_SYSTEM", "SUBSCRIBE", "P1"));
+        // Blocked on both paths
+        assertFalse(index.hasUnblockedGrant("UP_SYSTEM", "BROWSE", "P1"));
+        assertTrue(index.hasUnblockedGrant("UP_SYSTEM", "VIEW", "P1"));
+        assertFalse(index.hasUnblockedGrant("UP_SYSTEM", "VIEW", "P2"));
+        assertEquals(5, index.getTags().size());
+        assertTrue(index.getTags().contains(AnyUnblockedGrantPermissionPolicy.createPrincipalCacheEntryTag("3.huge")));
+    }
+
+    @Test
+    public void testMembershipCycle() {
+        final PrincipalPermissionIndex.Builder builder = PrincipalPermissionIndex.builder("2.user");
+        builder.addPrincipal("2.user", new IPermission[0]);
+        builder.addParent("2.user", "3.a");
+        builder.addPrincipal("3.a", new IPermission[0]);
+        builder.addParent("3.a", "3.b");
+        builder.addPrincipal("3.b", new IPermission[] {
+                permission("3.b", "GRANT", "VIEW", "P1") });
+        builder.addParent("3.b", "3.a");
+
+        final PrincipalPermissionIndex index = builder.build(new Date());
+        assertTrue(index.hasUnblockedGrant("UP_SYSTEM", "VIEW", "P1"));
+    }
+
+    @Test
+    public void testInactivePermissions() {
+        final long now = System.currentTimeMillis();
+
+        final IPermission expired = permission("2.user", "GRANT", "VIEW", "P1");
+        expired.setExpires(new Date(now - ONE_DAY));
+        final IPermission future = permission("2.user", "GRANT", "VIEW", "P2");
+        future.setEffective(new Date(now + ONE_DAY));
+        final IPermission expiring = permission("2.user", "GRANT", "VIEW", "P3");
+        expiring.setExpires(new Date(now + 2 * ONE_DAY));
+
+        final PrincipalPermissionIndex.Builder builder = PrincipalPermissionIndex.builder("2.user");
+        builder.addPrincipal("2.user", new IPermission[] { expired, future, expiring });
+        final PrincipalPermissionIndex index = builder.build(new Date(now));
+
+        assertFalse(index.hasUnblockedGrant("UP_SYSTEM", "VIEW", "P1"));
+        assertFalse(index.hasUnblockedGrant("UP_SYSTEM", "VIEW", "P2"));
+        assertTrue(index.hasUnblockedGrant("UP_SYSTEM", "VIEW", "P3"));
+
+        // Must be rebuilt once the future permission becomes effective
+        assertFalse(index.isExpired(now));
+        assertTrue(index.isExpired(now + ONE_DAY));
+    }
+
+    private static IPermission permission(String principal, String type, String activity, String target) {
+        final IPermission permission = new PermissionImpl("UP_SYSTEM");
+        permission.setPrincipal(principal);
+        permission.setType(type);
+        permission.setActivity(activity);
+        permission.setTarget(target);
+        return permission;
+    }
+}
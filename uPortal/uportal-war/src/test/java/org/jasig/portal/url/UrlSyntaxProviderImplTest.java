@@ -1006,4 +1006,43 @@ public class UrlSyntaxProviderImplTest {
                         "/uPortal/f/welcome/p/uportal-links.u32l1n12/max/render.uP"));
     }
 
+    @Test
+    public void testUrlPathTemplateReusedWithinRequest() throws Exception {
+        final String layoutNodeId = "n2";
+        final String subscribeId = "s3";
+        final String fname = "fname";
+        
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContextPath("/uPortal");
+        
+        final MockPortletWindowId portletWindowId = new MockPortletWindowId("pw1");
+        
+        when(portalRequestUtils.getOriginalPortalRequest(request)).thenReturn(request);
+        when(urlNodeSyntaxHelperRegistry.getCurrentUrlNodeSyntaxHelper(request)).thenReturn(urlNodeSyntaxHelper);
+        when(urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, subscribeId)).thenReturn(Arrays.asList(layoutNodeId));
+        when(urlNodeSyntaxHelper.getFolderNameForPortlet(request, portletWindowId)).thenReturn(fname + "." + subscribeId);
+        
+        when(portletWindowRegistry.getPortletWindow(request, portletWindowId)).thenReturn(portletWindow1);
+        when(portletWindow1.getPortletEntity()).thenReturn(portletEntity1);
+        when(portletEntity1.getLayoutNodeId()).thenReturn(subscribeId);
+        
+        when(userInstanceManager.getUserInstance(request)).thenReturn(userInstance);
+        when(userInstance.getPreferencesManager()).thenReturn(userPreferencesManager);
+        when(userPreferencesManager.getUserLayoutManager()).thenReturn(userLayoutManager);
+        when(userLayoutManager.getCacheKey()).thenReturn("layout1");
+        
+        for (int i = 0; i < 3; i++) {
+            final PortalUrlBuilder portalUrlBuilder = new PortalUrlBuilder(urlSyntaxProvider, request, layoutNodeId, portletWindowId, UrlType.RENDER);
+            assertEquals("/uPortal/f/n2/normal/render.uP?pCt=fname.s3", portalUrlBuilder.getUrlString());
+        }
+        Mockito.verify(urlNodeSyntaxHelper, Mockito.times(1)).getFolderNamesForLayoutNode(request, subscribeId);
+        Mockito.verify(urlNodeSyntaxHelper, Mockito.times(1)).getFolderNameForPortlet(request, portletWindowId);
+        
+        //A layout change during the request discards the templates
+        when(userLayoutManager.getCacheKey()).thenReturn("layout2");
+        when(urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, subscribeId)).thenReturn(Arrays.asList("n5"));
+        final PortalUrlBuilder portalUrlBuilder = new PortalUrlBuilder(urlSyntaxProvider, request, layoutNodeId, portletWindowId, UrlType.RENDER);
+        assertEquals("/uPortal/f/n5/normal/render.uP?pCt=fname.s3", portalUrlBuilder.getUrlString());
+    }
+
 }
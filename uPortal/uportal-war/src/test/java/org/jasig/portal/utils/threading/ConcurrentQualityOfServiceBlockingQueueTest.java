@@ -0,0 +1,306 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.utils.threading;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests for {@link ConcurrentQualityOfServiceBlockingQueue}
+ */
+public class ConcurrentQualityOfServiceBlockingQueueTest {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Test
+    public void testRoundRobinByKey() {
+        final KeyedElementQueue queue = new KeyedElementQueue();
+        queue.add(new KeyedElement("a", 1));
+        queue.add(new KeyedElement("a", 2));
+        queue.add(new KeyedElement("a", 3));
+        queue.add(new KeyedElement("b", 1));
+        queue.add(new KeyedElement("c", 1));
+        queue.add(new KeyedElement("c", 2));
+
+        assertEquals(6, queue.size());
+        assertEquals(3, queue.getKeySize("a"));
+
+        assertEquals(new KeyedElement("a", 1), queue.poll());
+        assertEquals(new KeyedElement("b", 1), queue.poll());
+        assertEquals(new KeyedElement("c", 1), queue.poll());
+        assertEquals(new KeyedElement("a", 2), queue.poll());
+        assertEquals(new KeyedElement("c", 2), queue.poll());
+        assertEquals(new KeyedElement("a", 3), queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        final KeyedElementQueue queue = new KeyedElementQueue(2);
+        assertTrue(queue.offer(new KeyedElement("a", 1)));
+        assertTrue(queue.offer(new KeyedElement("b", 1)));
+        assertFalse(queue.offer(new KeyedElement("c", 1)));
+        assertFalse(queue.offer(new KeyedElement("c", 1), 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+
+        assertEquals(new KeyedElement("a", 1), queue.poll());
+        assertTrue(queue.offer(new KeyedElement("c", 1)));
+    }
+
+    @Test
+    public void testRemove() {
+        final KeyedElementQueue queue = new KeyedElementQueue();
+        queue.add(new KeyedElement("a", 1));
+        queue.add(new KeyedElement("a", 2));
+        queue.add(new KeyedElement("b", 1));
+
+        assertTrue(queue.remove(new KeyedElement("a", 1)));
+        assertFalse(queue.remove(new KeyedElement("a", 1)));
+        assertEquals(2, queue.size());
+
+        final Iterator<KeyedElement> itr = queue.iterator();
+        while (itr.hasNext()) {
+            if (itr.next().key.equals("b")) {
+                itr.remove();
+            }
+        }
+        assertEquals(1, queue.size());
+
+        assertEquals(new KeyedElement("a", 2), queue.poll());
+        assertNull(queue.poll());
+
+        //Removed slots must not block new elements for the same key
+        queue.add(new KeyedElement("b", 2));
+        assertEquals(new KeyedElement("b", 2), queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTakeWaitsForOffer() throws Exception {
+        final KeyedElementQueue queue = new KeyedElementQueue();
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                queue.add(new KeyedElement("a", 1));
+            }
+        };
+        producer.start();
+
+        assertEquals(new KeyedElement("a", 1), queue.take());
+        producer.join();
+    }
+
+    @Test
+    public void testConcurrentStress() throws Exception {
+        final ConcurrentQualityOfServiceBlockingQueue<String, KeyedElement> queue = new KeyedElementQueue(100);
+        final int producers = 8;
+        final int consumers = 8;
+        final int elementsPerProducer = 20000;
+
+        final Set<KeyedElement> consumed = Collections.newSetFromMap(new ConcurrentHashMap<KeyedElement, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        runProducersAndConsumers(queue, producers, consumers, elementsPerProducer, consumed, duplicates);
+
+        assertEquals(0, duplicates.get());
+        assertEquals(producers * elementsPerProducer, consumed.size());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Throughput comparison against {@link QualityOfServiceBlockingQueue}, not run as part of the build
+     */
+    @Ignore
+    @Test
+    public void testThroughput() throws Exception {
+        for (int run = 0; run < 3; run++) {
+            final long lockedTime = timeThroughput(new LockingKeyedElementQueue(1000));
+            final long concurrentTime = timeThroughput(new KeyedElementQueue(1000));
+            logger.info("QualityOfServiceBlockingQueue: {}ms, ConcurrentQualityOfServiceBlockingQueue: {}ms",
+                    TimeUnit.NANOSECONDS.toMillis(lockedTime), TimeUnit.NANOSECONDS.toMillis(concurrentTime));
+        }
+    }
+
+    private long timeThroughput(BlockingQueue<KeyedElement> queue) throws Exception {
+        final long start = System.nanoTime();
+        runProducersAndConsumers(queue, 16, 16, 100000, null, new AtomicInteger());
+        return System.nanoTime() - start;
+    }
+
+    private void runProducersAndConsumers(final BlockingQueue<KeyedElement> queue, int producers, int consumers,
+            final int elementsPerProducer, final Set<KeyedElement> consumed, final AtomicInteger duplicates) throws Exception {
+
+        final int total = producers * elementsPerProducer;
+        final AtomicInteger remaining = new AtomicInteger(total);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < elementsPerProducer; i++) {
+                            queue.put(new KeyedElement("fname" + (i % 10), producer * elementsPerProducer + i));
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (remaining.get() > 0) {
+                            final KeyedElement e = queue.poll(10, TimeUnit.MILLISECONDS);
+                            if (e == null) {
+                                continue;
+                            }
+                            remaining.decrementAndGet();
+                            if (consumed != null && !consumed.add(e)) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        for (final Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(2));
+        }
+
+        assertEquals(0, remaining.get());
+    }
+
+    private static final class KeyedElement {
+        private final String key;
+        private final int id;
+
+        public KeyedElement(String key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof KeyedElement))
+                return false;
+            final KeyedElement other = (KeyedElement) obj;
+            return id == other.id && key.equals(other.key);
+        }
+
+        @Override
+        public String toString() {
+            return key + ":" + id;
+        }
+    }
+
+    private static final class KeyedElementQueue extends ConcurrentQualityOfServiceBlockingQueue<String, KeyedElement> {
+        public KeyedElementQueue() {
+        }
+
+        public KeyedElementQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        protected String getElementKey(KeyedElement e) {
+            return e.key;
+        }
+    }
+
+    /**
+     * Same key cycling as PortletWorkerExecutionQueue
+     */
+    private static final class LockingKeyedElementQueue extends QualityOfServiceBlockingQueue<String, KeyedElement> {
+        private Iterator<String> keyIterator = this.getKeySet().iterator();
+
+        public LockingKeyedElementQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        protected String getElementKey(KeyedElement e) {
+            return e.key;
+        }
+
+        @Override
+        protected String getNextElementKey() {
+            String key;
+            do {
+                if (!this.keyIterator.hasNext()) {
+                    this.keyIterator = this.getKeySet().iterator();
+                }
+                key = this.keyIterator.next();
+            } while (this.isKeyEmpty(key));
+
+            return key;
+        }
+    }
+}